@@ -0,0 +1,329 @@
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.*;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+/**
+ * The workloads measured by the JMH benchmarks.
+ * <p>
+ * JMH refuses benchmarks in the default package, and named packages cannot reference the default package, so
+ * every workload is handed to the benchmarks as plain JDK interfaces: {@link Callable} for the measured operation,
+ * {@link Runnable} for the per-invocation reset that runs outside of the measurement, and {@link AutoCloseable}
+ * for cleanup.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BenchmarkWorkloads {
+
+    public static final String CHUNKED_SUITE = "CHUNKED";
+
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    /**
+     * Static class
+     */
+    private BenchmarkWorkloads() {
+    }
+
+    /**
+     * Creates a workload
+     *
+     * @param name   the workload name
+     * @param params the benchmark params: fileSize, bufferSize, suite and ioMode, as relevant for the workload
+     * @return the workload, implementing Callable, Runnable and AutoCloseable
+     * @throws Exception in case the workload cannot be set up
+     */
+    public static Object create(String name, Map<String, String> params) throws Exception {
+        switch (name) {
+            case "pipeStreams":
+                return new PipeStreams(params);
+            case "digestStream":
+                return new DigestStream(params);
+            case "sign":
+                return new Sign(false);
+            case "verify":
+                return new Sign(true);
+            case "encrypt":
+                return new FileCipher(params, false);
+            case "decrypt":
+                return new FileCipher(params, true);
+            case "encryptAndSign":
+                return new EndToEnd(params, false);
+            case "decryptAndValidate":
+                return new EndToEnd(params, true);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown workload %s", name));
+        }
+    }
+
+    /**
+     * Owns a temporary directory with a random source file
+     */
+    private abstract static class Workload implements Callable<Object>, Runnable, AutoCloseable {
+
+        protected final Path directory;
+        protected final Path source;
+
+        Workload(Map<String, String> params) throws IOException {
+            directory = Files.createTempDirectory(Paths.get(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir"))), "bench");
+            source = directory.resolve("source");
+
+            if (params.containsKey("fileSize")) {
+                writeRandomFile(source, Long.parseLong(params.get("fileSize")));
+            }
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (Stream<Path> walk = Files.walk(directory)) {
+                walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+
+        protected static void deleteQuietly(Path... paths) {
+            for (Path path : paths) {
+                path.toFile().delete();
+            }
+        }
+
+        private static void writeRandomFile(Path path, long size) throws IOException {
+            final byte[] buffer = new byte[1024 * 1024];
+            final Random random = new Random(size);
+
+            try (OutputStream out = Files.newOutputStream(path)) {
+                for (long written = 0; written < size; written += buffer.length) {
+                    random.nextBytes(buffer);
+                    out.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+                }
+            }
+        }
+    }
+
+    private static class PipeStreams extends Workload {
+
+        private final int bufferSize;
+
+        PipeStreams(Map<String, String> params) throws IOException {
+            super(params);
+            bufferSize = Integer.parseInt(params.get("bufferSize"));
+        }
+
+        @Override
+        public Object call() throws IOException {
+            try (InputStream in = new FileInputStream(source.toFile())) {
+                Utils.pipeStreams(in, NULL_STREAM, bufferSize);
+            }
+
+            return null;
+        }
+    }
+
+    private static class DigestStream extends Workload {
+
+        private final StreamDigester streamDigester;
+
+        DigestStream(Map<String, String> params) throws IOException, NoSuchAlgorithmException {
+            super(params);
+            streamDigester = new StreamDigester("SHA-256");
+        }
+
+        @Override
+        public Object call() throws IOException {
+            return streamDigester.digestStream(source);
+        }
+    }
+
+    private static class Sign extends Workload {
+
+        private final boolean verify;
+        private final DataSigner dataSigner;
+        private final KeyPair keyPair;
+        private final byte[] digest;
+        private final byte[] signature;
+
+        Sign(boolean verify) throws IOException, GeneralSecurityException {
+            super(java.util.Collections.emptyMap());
+            this.verify = verify;
+
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+
+            keyPair = keyPairGenerator.generateKeyPair();
+            dataSigner = new DataSigner("SHA256withRSA");
+            digest = MessageDigest.getInstance("SHA-256").digest(new byte[]{1, 2, 3});
+            signature = dataSigner.sign(digest, keyPair.getPrivate());
+        }
+
+        @Override
+        public Object call() throws GeneralSecurityException {
+            return verify ?
+                    dataSigner.verify(digest, signature, keyPair.getPublic()) :
+                    dataSigner.sign(digest, keyPair.getPrivate());
+        }
+    }
+
+    private static class FileCipher extends Workload {
+
+        private final boolean decrypt;
+        private final Path encrypted;
+        private final Path output;
+        private final MessageDigest messageDigest;
+        private final SecretKey key;
+        private final IFileEncrypt fileEncrypt;
+        private final IFileDecrypt fileDecrypt;
+        private final byte[] iv;
+
+        FileCipher(Map<String, String> params, boolean decrypt) throws IOException, GeneralSecurityException {
+            super(params);
+            this.decrypt = decrypt;
+
+            final String suite = params.get("suite");
+            final IoMode ioMode = IoMode.valueOf(params.get("ioMode"));
+            final SecureRandom secureRandom = new SecureRandom();
+
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(128, secureRandom);
+
+            encrypted = directory.resolve("encrypted");
+            output = directory.resolve("output");
+            messageDigest = MessageDigest.getInstance("SHA-256");
+            key = keyGenerator.generateKey();
+
+            if (CHUNKED_SUITE.equals(suite)) {
+                fileEncrypt = new ChunkedFileEncrypt(secureRandom);
+                fileDecrypt = new ChunkedFileDecrypt();
+            } else {
+                fileEncrypt = new FileEncrypt(Cipher.getInstance(suite), ioMode);
+                fileDecrypt = new FileDecrypt(Cipher.getInstance(suite), ioMode);
+            }
+
+            fileEncrypt.encrypt(source, encrypted, key);
+            iv = fileEncrypt.getIV();
+        }
+
+        @Override
+        public void run() {
+            deleteQuietly(output);
+        }
+
+        @Override
+        public Object call() throws GeneralSecurityException, IOException {
+            return decrypt ?
+                    fileDecrypt.decrypt(encrypted, output, key, iv, messageDigest) :
+                    fileEncrypt.encrypt(source, output, key, messageDigest);
+        }
+    }
+
+    private static class EndToEnd extends Workload {
+
+        private static final String PASSWORD = "bench123";
+
+        private final boolean decrypt;
+        private final Path encrypted;
+        private final Path output;
+        private final Encrypter encrypter;
+        private final Decrypter decrypter;
+
+        EndToEnd(Map<String, String> params, boolean decrypt) throws Exception {
+            super(params);
+            this.decrypt = decrypt;
+
+            final boolean chunked = CHUNKED_SUITE.equals(params.get("suite"));
+            final String suite = chunked ? "AES/CBC/PKCS5Padding" : params.get("suite");
+            final SecureRandom secureRandom = new SecureRandom();
+            final KeyStore keystore = createKeystore();
+            final ICryptoProvider cryptoProvider = new ThreadLocalCryptoProvider(
+                    suite, "RSA/ECB/PKCS1Padding", "SHA-256", "SHA256withRSA", "AES", 128, secureRandom);
+
+            encrypted = directory.resolve("encrypted");
+            output = directory.resolve("output");
+
+            encrypter = new Encrypter(keystore, cryptoProvider, () -> chunked ?
+                    new ChunkedFileEncrypt(secureRandom) :
+                    new FileEncrypt(cryptoProvider.symmetricCipher()));
+            encrypter.initialize("sender", PASSWORD, "recipient-cert");
+
+            decrypter = new Decrypter(keystore, cryptoProvider, () -> chunked ?
+                    new ChunkedFileDecrypt() :
+                    new FileDecrypt(cryptoProvider.symmetricCipher()));
+            decrypter.initialize("recipient", PASSWORD, "sender-cert");
+
+            encrypter.encryptAndSign(source, encrypted);
+        }
+
+        @Override
+        public void run() {
+            deleteQuietly(decrypt ? output : encrypted);
+        }
+
+        @Override
+        public Object call() throws Exception {
+            if (decrypt) {
+                decrypter.decryptAndValidate(encrypted, output);
+            } else {
+                encrypter.encryptAndSign(source, encrypted);
+            }
+
+            return null;
+        }
+
+        /**
+         * Creates a single keystore holding both sides, the way java_keytool/keytool_script.txt does
+         */
+        private KeyStore createKeystore() throws Exception {
+            final Path keystoreFile = directory.resolve("bench.jks");
+            final String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+
+            for (String alias : new String[]{"sender", "recipient"}) {
+                keytool(keytool, "-genkeypair", "-alias", alias, "-keyalg", "RSA", "-keysize", "2048", "-storetype", "JKS",
+                        "-keystore", keystoreFile.toString(), "-dname", "CN=" + alias, "-storepass", PASSWORD, "-keypass", PASSWORD);
+
+                Path certificate = directory.resolve(alias + ".crt");
+                keytool(keytool, "-exportcert", "-alias", alias, "-keystore", keystoreFile.toString(),
+                        "-file", certificate.toString(), "-storepass", PASSWORD);
+                keytool(keytool, "-importcert", "-alias", alias + "-cert", "-keystore", keystoreFile.toString(),
+                        "-file", certificate.toString(), "-storepass", PASSWORD, "-noprompt");
+            }
+
+            final KeyStore keystore = KeyStore.getInstance("JKS");
+            try (InputStream in = new FileInputStream(keystoreFile.toFile())) {
+                keystore.load(in, PASSWORD.toCharArray());
+            }
+
+            return keystore;
+        }
+
+        private void keytool(String... command) throws IOException, InterruptedException {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            Utils.pipeStreams(process.getInputStream(), NULL_STREAM);
+
+            if (process.waitFor() != 0) {
+                throw new IOException(String.format("keytool failed: %s", String.join(" ", command)));
+            }
+        }
+    }
+}
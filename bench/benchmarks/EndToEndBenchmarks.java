@@ -0,0 +1,70 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypter.encryptAndSign / Decrypter.decryptAndValidate end to end, including the RSA operations and the config file,
+ * per cipher suite (CHUNKED standing for the parallel AES-GCM engines)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmarks {
+
+    @State(Scope.Thread)
+    public abstract static class EndToEndState {
+
+        @Param({"4096", "1048576", "67108864"})
+        public String fileSize;
+
+        @Param({"AES/CBC/PKCS5Padding", "CHUNKED"})
+        public String suite;
+
+        Workload workload;
+
+        abstract String workloadName();
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            workload = new Workload(workloadName(), "fileSize", fileSize, "suite", suite);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            workload.reset();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    public static class EncryptAndSignState extends EndToEndState {
+        @Override
+        String workloadName() {
+            return "encryptAndSign";
+        }
+    }
+
+    public static class DecryptAndValidateState extends EndToEndState {
+        @Override
+        String workloadName() {
+            return "decryptAndValidate";
+        }
+    }
+
+    @Benchmark
+    public Object encryptAndSign(EncryptAndSignState state) throws Exception {
+        return state.workload.call();
+    }
+
+    @Benchmark
+    public Object decryptAndValidate(DecryptAndValidateState state) throws Exception {
+        return state.workload.call();
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileEncrypt.encrypt / FileDecrypt.decrypt, with the plain content digested in the same pass,
+ * per cipher suite (CHUNKED standing for the parallel AES-GCM engines) and I/O mode
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileCipherBenchmarks {
+
+    @State(Scope.Thread)
+    public abstract static class CipherState {
+
+        @Param({"1048576", "67108864"})
+        public String fileSize;
+
+        @Param({"AES/CBC/PKCS5Padding", "AES/CTR/NoPadding", "CHUNKED"})
+        public String suite;
+
+        @Param({"STREAM", "CHANNEL", "MAPPED"})
+        public String ioMode;
+
+        Workload workload;
+
+        abstract String workloadName();
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            workload = new Workload(workloadName(), "fileSize", fileSize, "suite", suite, "ioMode", ioMode);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            workload.reset();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    public static class EncryptState extends CipherState {
+        @Override
+        String workloadName() {
+            return "encrypt";
+        }
+    }
+
+    public static class DecryptState extends CipherState {
+        @Override
+        String workloadName() {
+            return "decrypt";
+        }
+    }
+
+    @Benchmark
+    public Object encrypt(EncryptState state) throws Exception {
+        return state.workload.call();
+    }
+
+    @Benchmark
+    public Object decrypt(DecryptState state) throws Exception {
+        return state.workload.call();
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utils.pipeStreams and StreamDigester.digestStream over a file
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamBenchmarks {
+
+    @State(Scope.Thread)
+    public static class PipeState {
+
+        @Param({"1048576", "67108864"})
+        public String fileSize;
+
+        @Param({"1024", "65536", "1048576"})
+        public String bufferSize;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            workload = new Workload("pipeStreams", "fileSize", fileSize, "bufferSize", bufferSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class DigestState {
+
+        @Param({"1048576", "67108864"})
+        public String fileSize;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            workload = new Workload("digestStream", "fileSize", fileSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            workload.close();
+        }
+    }
+
+    @Benchmark
+    public Object pipeStreams(PipeState state) throws Exception {
+        return state.workload.call();
+    }
+
+    @Benchmark
+    public Object digestStream(DigestState state) throws Exception {
+        return state.workload.call();
+    }
+}
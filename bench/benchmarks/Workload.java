@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Bridges to a workload of BenchmarkWorkloads, which lives in the default package and so can only be reached reflectively.
+ * Reflection is used once while setting up, the measured calls go through plain interfaces.
+ */
+final class Workload {
+
+    private final Callable<?> operation;
+    private final Runnable reset;
+    private final AutoCloseable resources;
+
+    /**
+     * Creates a workload
+     *
+     * @param name   the workload name
+     * @param params alternating param names and values
+     */
+    Workload(String name, String... params) throws Exception {
+        final Map<String, String> paramsMap = new HashMap<>();
+        for (int i = 0; i < params.length; i += 2) {
+            paramsMap.put(params[i], params[i + 1]);
+        }
+
+        final Object workload = Class.forName("BenchmarkWorkloads")
+                .getMethod("create", String.class, Map.class)
+                .invoke(null, name, paramsMap);
+
+        this.operation = (Callable<?>) workload;
+        this.reset = (Runnable) workload;
+        this.resources = (AutoCloseable) workload;
+    }
+
+    Object call() throws Exception {
+        return operation.call();
+    }
+
+    void reset() {
+        reset.run();
+    }
+
+    void close() throws Exception {
+        resources.close();
+    }
+}
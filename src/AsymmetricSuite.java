@@ -0,0 +1,75 @@
+import java.security.SecureRandom;
+
+/**
+ * The public key operations content keys are wrapped and content is signed with, each with a stable one byte ID
+ * an encrypted container records. Containers that record none were wrapped and signed with RSA.
+ */
+@SuppressWarnings("WeakerAccess")
+public enum AsymmetricSuite {
+
+    /**
+     * Keys encrypted with the recipient's RSA public key, signed with SHA256withRSA
+     */
+    RSA((byte) 1, "RSA", "SHA256withRSA"),
+
+    /**
+     * Keys wrapped ECIES style with ECDH and HKDF on the recipient's curve, such as P-256 (see {@link EcdhKeyWrapper}),
+     * signed with SHA256withECDSA
+     */
+    EC((byte) 2, "EC", "SHA256withECDSA");
+
+    private final byte id;
+    private final String keyAlgorithm;
+    private final String signatureAlgorithm;
+
+    AsymmetricSuite(byte id, String keyAlgorithm, String signatureAlgorithm) {
+        this.id = id;
+        this.keyAlgorithm = keyAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * Gets the algorithm of the keys the suite works with, as reported by {@link java.security.Key#getAlgorithm()}
+     *
+     * @return the key algorithm
+     */
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /**
+     * Creates the key wrapper of the suite
+     *
+     * @param cryptoProvider provides the RSA Cipher of the calling thread
+     * @param secureRandom   the source of the EC ephemeral keys, or null for the default source
+     * @return the key wrapper, for the calling thread only
+     */
+    public IKeyWrapper newKeyWrapper(ICryptoProvider cryptoProvider, SecureRandom secureRandom) {
+        return this == EC ? new EcdhKeyWrapper(secureRandom) : new CipherKeyWrapper(cryptoProvider.asymmetricCipher());
+    }
+
+    /**
+     * Finds the suite by its ID
+     *
+     * @param id the ID as recorded in a container
+     * @return the suite
+     * @throws IllegalArgumentException for unknown IDs
+     */
+    public static AsymmetricSuite forId(byte id) {
+        for (AsymmetricSuite suite : values()) {
+            if (suite.id == id) {
+                return suite;
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("Unknown asymmetric suite ID %d", id));
+    }
+}
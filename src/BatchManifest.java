@@ -0,0 +1,257 @@
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A manifest of the containers encrypted in a batch, signed once instead of signing every container.
+ * <p>
+ * Every entry records a container's path relative to the manifest's directory, the plain size of its file and the
+ * digest that would otherwise have been signed. Containers in the batch record the batch id in their header and hold
+ * no signature of their own, so they are validated by checking their digest against the entry of a verified manifest.
+ * The manifest is kept as JSON, and the signature covers a canonical encoding of the id and the entries sorted by path.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BatchManifest {
+
+    static final int ID_LENGTH = 16; // bytes
+
+    private static final SecureRandom ids = new SecureRandom();
+    private static final Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+
+    private final byte[] id;
+    private final String signatureAlgorithm;
+    private final Path directory;
+    private final Map<String, Entry> entries = new ConcurrentSkipListMap<>();
+
+    private byte[] signature;
+
+    private BatchManifest(byte[] id, String signatureAlgorithm, Path directory) {
+        this.id = id;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.directory = directory;
+    }
+
+    /**
+     * Creates an empty manifest with a new batch id
+     *
+     * @param manifestFile       the path the manifest is to be written to, entries are relative to its directory
+     * @param signatureAlgorithm the Signature algorithm the manifest is to be signed with
+     * @return the manifest
+     */
+    public static BatchManifest create(Path manifestFile, String signatureAlgorithm) {
+        final byte[] id = new byte[ID_LENGTH];
+        ids.nextBytes(id);
+
+        return new BatchManifest(id, signatureAlgorithm, directoryOf(manifestFile));
+    }
+
+    /**
+     * Reads a manifest written by {@link #write}, which still has to be verified
+     *
+     * @param manifestFile the path to the manifest
+     * @return the manifest
+     * @throws IOException in case of read issues or a malformed manifest
+     */
+    public static BatchManifest read(Path manifestFile) throws IOException {
+        final Json json;
+
+        try {
+            json = gson.fromJson(new String(Files.readAllBytes(manifestFile), StandardCharsets.UTF_8), Json.class);
+
+        } catch (RuntimeException e) {
+            throw new IOException(String.format("%s is not a batch manifest", manifestFile.getFileName()), e);
+        }
+
+        if (json == null || json.id == null || json.signatureAlgorithm == null || json.signature == null || json.files == null) {
+            throw new IOException(String.format("%s is not a batch manifest", manifestFile.getFileName()));
+        }
+
+        try {
+            final BatchManifest manifest = new BatchManifest(Base64.getDecoder().decode(json.id), json.signatureAlgorithm, directoryOf(manifestFile));
+            manifest.signature = Base64.getDecoder().decode(json.signature);
+
+            for (JsonEntry entry : json.files) {
+                manifest.entries.put(entry.path, new Entry(entry.size, Base64.getDecoder().decode(entry.digest)));
+            }
+
+            if (manifest.id.length != ID_LENGTH || manifest.entries.size() != json.files.size()) {
+                throw new IOException(String.format("Batch manifest %s is malformed", manifestFile.getFileName()));
+            }
+
+            return manifest;
+
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IOException(String.format("Batch manifest %s is malformed", manifestFile.getFileName()), e);
+        }
+    }
+
+    /**
+     * Records a container of the batch. Safe for concurrent use.
+     *
+     * @param container the path of the container
+     * @param plainSize the plain size of its file
+     * @param digest    the digest of its content, as it would otherwise have been signed
+     */
+    public void add(Path container, long plainSize, byte[] digest) {
+        entries.put(nameOf(container), new Entry(plainSize, digest.clone()));
+    }
+
+    /**
+     * Checks a container's digest against its entry
+     *
+     * @param container the path of the container
+     * @param digest    the digest of its decrypted content
+     * @return true in case the manifest records the container with this digest
+     */
+    public boolean matches(Path container, byte[] digest) {
+        final Entry entry = entries.get(nameOf(container));
+
+        return entry != null && MessageDigest.isEqual(entry.digest, digest);
+    }
+
+    /**
+     * Signs the entries recorded so far
+     *
+     * @param dataSigner a signer using the manifest's signature algorithm
+     * @param privateKey the private key to sign with
+     */
+    public void sign(IDataSigner dataSigner, PrivateKey privateKey) throws InvalidKeyException, SignatureException {
+        signature = dataSigner.sign(signedContent(), privateKey);
+    }
+
+    /**
+     * Verifies the manifest's signature
+     *
+     * @param dataSigner a signer using the manifest's signature algorithm
+     * @param publicKey  the public key of the sender
+     * @return true if the signature matches the entries
+     */
+    public boolean verify(IDataSigner dataSigner, PublicKey publicKey) throws InvalidKeyException, SignatureException {
+        return signature != null && dataSigner.verify(signedContent(), signature, publicKey);
+    }
+
+    /**
+     * Writes the signed manifest, replacing the file only once it is whole
+     *
+     * @param manifestFile the path to write to
+     * @throws IOException in case of write issues
+     */
+    public void write(Path manifestFile) throws IOException {
+        if (signature == null) {
+            throw new IllegalStateException("Batch manifest should be signed before it is written");
+        }
+
+        final Json json = new Json();
+        json.id = Base64.getEncoder().encodeToString(id);
+        json.signatureAlgorithm = signatureAlgorithm;
+        json.signature = Base64.getEncoder().encodeToString(signature);
+        json.files = new ArrayList<>();
+
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            JsonEntry jsonEntry = new JsonEntry();
+            jsonEntry.path = entry.getKey();
+            jsonEntry.size = entry.getValue().plainSize;
+            jsonEntry.digest = Base64.getEncoder().encodeToString(entry.getValue().digest);
+            json.files.add(jsonEntry);
+        }
+
+        final Path temporary = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        Files.write(temporary, gson.toJson(json).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    byte[] getId() {
+        return id;
+    }
+
+    String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the entry name of a container, its path relative to the manifest's directory with / separators
+     */
+    private String nameOf(Path container) {
+        return directory.relativize(container.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private static Path directoryOf(Path manifestFile) {
+        return manifestFile.toAbsolutePath().normalize().getParent();
+    }
+
+    /**
+     * Encodes the id, signature algorithm and entries in path order, independently of the JSON layout
+     */
+    private byte[] signedContent() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(id);
+            out.writeUTF(signatureAlgorithm);
+            out.writeInt(entries.size());
+
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                byte[] path = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(path.length);
+                out.write(path);
+                out.writeLong(entry.getValue().plainSize);
+                out.writeShort(entry.getValue().digest.length);
+                out.write(entry.getValue().digest);
+            }
+
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static final class Entry {
+
+        private final long plainSize;
+        private final byte[] digest;
+
+        Entry(long plainSize, byte[] digest) {
+            this.plainSize = plainSize;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * The JSON layout of the manifest file
+     */
+    private static final class Json {
+        String id;
+        String signatureAlgorithm;
+        List<JsonEntry> files;
+        String signature;
+    }
+
+    private static final class JsonEntry {
+        String path;
+        long size;
+        String digest;
+    }
+}
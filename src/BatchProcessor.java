@@ -0,0 +1,93 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a file task over many files on a bounded pool of workers, and summarizes the throughput.
+ */
+@SuppressWarnings("WeakerAccess")
+public class BatchProcessor {
+
+    /**
+     * Processes a single file, owned by a single worker thread
+     */
+    public interface FileTask {
+        void process(Path file) throws Exception;
+    }
+
+    /**
+     * Creates the task of a worker thread, once per worker
+     */
+    public interface FileTaskFactory {
+        FileTask create() throws Exception;
+    }
+
+    private final int workers;
+
+    /**
+     * Initializes a new BatchProcessor
+     *
+     * @param workers the number of worker threads
+     */
+    public BatchProcessor(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Processes all files and prints a throughput summary.
+     * Failures are reported and counted, and do not stop the batch.
+     *
+     * @param files       the files to process
+     * @param taskFactory creates the task of every worker thread
+     * @return the number of failed files
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public int process(List<Path> files, FileTaskFactory taskFactory) throws InterruptedException {
+        final ThreadLocal<FileTask> tasks = new ThreadLocal<>();
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        final long start = System.nanoTime();
+
+        for (Path file : files) {
+            executor.execute(() -> {
+                try {
+                    if (tasks.get() == null) {
+                        tasks.set(taskFactory.create());
+                    }
+
+                    long size = Files.size(file);
+                    tasks.get().process(file);
+
+                    bytes.addAndGet(size);
+                    succeeded.incrementAndGet();
+
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    System.err.println(String.format("Failed processing %s: %s", file, e));
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        final double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        System.out.println(String.format("Processed %d files (%d failed) in %.2fs on %d workers: %.1f files/s, %.1f MB/s",
+                succeeded.get() + failed.get(),
+                failed.get(),
+                seconds,
+                workers,
+                succeeded.get() / seconds,
+                bytes.get() / (1024.0 * 1024.0) / seconds));
+
+        return failed.get();
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+/**
+ * The durable progress of a chunked encryption or decryption, kept in a file next to its output,
+ * so a run that dies midway can continue from the last checkpoint instead of starting over.
+ * <p>
+ * A checkpoint records how many segments of the output are durably written, the digest of the plain content
+ * they hold and the tag of the last of them, along with the size and modification time of the source they
+ * were produced from. Encryption also records its base nonce and the content key, wrapped with the encrypting
+ * side's own public key. The digest cannot be resumed as is, so a resumed run digests the already done plain
+ * content again, which also verifies it did not change.
+ */
+@SuppressWarnings("WeakerAccess")
+final class Checkpoint {
+
+    private static final String FILE_TEMPLATE = "%s.checkpoint";
+    private static final String TEMPORARY_FILE_TEMPLATE = "%s.tmp";
+    private static final int MAGIC = 0x4A594350; // "JYCP"
+    private static final byte VERSION = 1;
+
+    private final Path path;
+    private final long interval;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final byte[] key;
+
+    private byte[] iv;
+    private long segments;
+    private byte[] digest;
+    private byte[] tag;
+
+    private Checkpoint(Path path, long interval, long sourceSize, long sourceModified, byte[] key) {
+        this.path = path;
+        this.interval = interval;
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.key = key;
+    }
+
+    /**
+     * Starts tracking the progress of a new run, nothing is persisted until the first save
+     *
+     * @param output   the output being written
+     * @param source   the source the output is produced from
+     * @param interval the plain bytes to process between checkpoints
+     * @param key      the wrapped content key to be kept along, may be null
+     * @return the checkpoint, recording no progress
+     * @throws IOException in case the source attributes cannot be read
+     */
+    static Checkpoint start(Path output, Path source, long interval, byte[] key) throws IOException {
+        return new Checkpoint(pathFor(output), interval, Files.size(source), Files.getLastModifiedTime(source).toMillis(), key);
+    }
+
+    /**
+     * Loads the checkpoint of an output left behind by an interrupted run. A checkpoint that recorded no progress,
+     * was taken from a different source or lost its output is removed along with the output it was tracking.
+     *
+     * @param output   the output to be resumed
+     * @param source   the source the output is produced from
+     * @param interval the plain bytes to process between checkpoints
+     * @return the checkpoint to resume from, or null in case the run should start over
+     * @throws IOException in case of read issues or a malformed checkpoint
+     */
+    static Checkpoint resume(Path output, Path source, long interval) throws IOException {
+        final Path path = pathFor(output);
+
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        final Checkpoint checkpoint = load(path, interval);
+
+        if (checkpoint.segments > 0 && Files.exists(output)
+                && checkpoint.sourceSize == Files.size(source)
+                && checkpoint.sourceModified == Files.getLastModifiedTime(source).toMillis()) {
+
+            return checkpoint;
+        }
+
+        Files.deleteIfExists(output);
+        checkpoint.delete();
+
+        return null;
+    }
+
+    private static Checkpoint load(Path path, long interval) throws IOException {
+        try (InputStream file = Files.newInputStream(path)) {
+            DataInputStream in = new DataInputStream(file);
+
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException(String.format("%s is not a checkpoint", path.toAbsolutePath()));
+            }
+
+            Checkpoint checkpoint = new Checkpoint(path, interval, in.readLong(), in.readLong(), readBytes(in));
+            checkpoint.iv = readBytes(in);
+            checkpoint.segments = in.readLong();
+            checkpoint.digest = readBytes(in);
+            checkpoint.tag = readBytes(in);
+
+            return checkpoint;
+
+        } catch (EOFException e) {
+            throw new IOException(String.format("Checkpoint %s is truncated", path.toAbsolutePath()), e);
+        }
+    }
+
+    /**
+     * Persists the progress, replacing the previous checkpoint atomically once the new one is on disk.
+     * The segments recorded should already be durable in the output.
+     *
+     * @param segments the count of segments durably written
+     * @param digest   the digest of the plain content of those segments, may be null when there are none
+     * @param tag      the tag of the last of those segments, may be null
+     * @throws IOException in case of write issues
+     */
+    void save(long segments, byte[] digest, byte[] tag) throws IOException {
+        final Path temporaryPath = Paths.get(String.format(TEMPORARY_FILE_TEMPLATE, path.toAbsolutePath()));
+
+        try (FileOutputStream file = new FileOutputStream(temporaryPath.toFile())) {
+            DataOutputStream out = new DataOutputStream(file);
+
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(sourceSize);
+            out.writeLong(sourceModified);
+            writeBytes(out, key);
+            writeBytes(out, iv);
+            out.writeLong(segments);
+            writeBytes(out, digest);
+            writeBytes(out, tag);
+            out.flush();
+
+            file.getFD().sync();
+        }
+
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        this.segments = segments;
+        this.digest = digest;
+        this.tag = tag;
+    }
+
+    /**
+     * Removes the checkpoint, once its output is complete
+     *
+     * @throws IOException in case of IO issues
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Gets the digest of the content updated so far, leaving the digest to be updated further
+     *
+     * @param digest the digest, should support cloning
+     * @return the digest of the content so far
+     */
+    static byte[] digestSoFar(MessageDigest digest) {
+        try {
+            return ((MessageDigest) digest.clone()).digest();
+
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(String.format("%s digest cannot be checkpointed", digest.getAlgorithm()), e);
+        }
+    }
+
+    static Path pathFor(Path output) {
+        return Paths.get(String.format(FILE_TEMPLATE, output.toAbsolutePath()));
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Gets the plain bytes to process between checkpoints
+     *
+     * @return the interval in bytes
+     */
+    long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Gets the count of segments durably written, which is where a resumed run continues from
+     *
+     * @return the segments count
+     */
+    long getSegments() {
+        return segments;
+    }
+
+    /**
+     * Gets the content key, wrapped with the encrypting side's own public key
+     *
+     * @return the wrapped key, or null for decryption
+     */
+    byte[] getKey() {
+        return key;
+    }
+
+    byte[] getIV() {
+        return iv;
+    }
+
+    void setIV(byte[] iv) {
+        this.iv = iv;
+    }
+
+    byte[] getDigest() {
+        return digest;
+    }
+
+    byte[] getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,374 @@
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decrypts files written by {@link ChunkedFileEncrypt}, opening segments concurrently on a fork-join pool.
+ * See {@link ChunkedFormat} for the layout.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ChunkedFileDecrypt implements IFileDecrypt {
+
+    private final int segmentSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Initializes a new ChunkedFileDecrypt using the default segment size and the common pool
+     */
+    public ChunkedFileDecrypt() {
+        this(ChunkedFormat.DEFAULT_SEGMENT_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initializes a new ChunkedFileDecrypt
+     *
+     * @param segmentSize the plain size of every segment, must match the encrypting side
+     * @param pool        the pool segments are opened on
+     */
+    public ChunkedFileDecrypt(int segmentSize, ForkJoinPool pool) {
+        this.segmentSize = segmentSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Decrypts a file
+     *
+     * @param sourceFilePath the path to the encrypted file to be decrypted
+     * @param destFilePath   the path to the decrypted file
+     * @param key            the decryption key to be used
+     * @param iv             the base nonce used for encryption
+     * @throws IOException         in case files are not accessible, read / write issues or failed authentication
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public void decrypt(Path sourceFilePath, Path destFilePath, Key key, byte[] iv) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        decryptSegments(sourceFilePath, destFilePath, key, iv, null);
+    }
+
+    /**
+     * Decrypts a file and digests the plain content as it is written.
+     * The digest is updated on the calling thread, in order, once every window of segments is opened.
+     *
+     * @param sourceFilePath the path to the encrypted file to be decrypted
+     * @param destFilePath   the path to the decrypted file
+     * @param key            the decryption key to be used
+     * @param iv             the base nonce used for encryption
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible, read / write issues or failed authentication
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] decrypt(Path sourceFilePath, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        digest.reset();
+        decryptSegments(sourceFilePath, destFilePath, key, iv, digest);
+
+        return digest.digest();
+    }
+
+    /**
+     * Decrypts a region of an open file, such as the payload of an encrypted container,
+     * and digests the plain content as it is written
+     *
+     * @param source       the channel of the encrypted file
+     * @param position     the position the encrypted content starts at
+     * @param length       the length of the encrypted content
+     * @param destFilePath the path to the decrypted file
+     * @param key          the decryption key to be used
+     * @param iv           the base nonce used for encryption
+     * @param digest       the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible, read / write issues or failed authentication
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] decrypt(FileChannel source, long position, long length, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        digest.reset();
+        openSegments(source, position, length, destFilePath, key, iv, digest, null);
+
+        return digest.digest();
+    }
+
+    /**
+     * Decrypts a region of an open file like {@link #decrypt(FileChannel, long, long, Path, Key, byte[], MessageDigest)},
+     * persisting progress to the checkpoint every interval. In case the checkpoint records progress, the decrypted file
+     * is expected to hold the segments it covers, which are verified and digested, and decryption continues after them.
+     *
+     * @param source       the channel of the encrypted file
+     * @param position     the position the encrypted content starts at
+     * @param length       the length of the encrypted content
+     * @param destFilePath the path to the decrypted file
+     * @param key          the decryption key to be used
+     * @param iv           the base nonce used for encryption
+     * @param digest       the digest to be updated with the plain content, reset before use
+     * @param checkpoint   the checkpoint to resume from and persist progress to
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible, read / write issues, failed authentication or
+     *                             a decrypted file that does not match the checkpoint
+     * @throws InvalidKeyException in case of key issues
+     */
+    byte[] decrypt(FileChannel source, long position, long length, Path destFilePath, Key key, byte[] iv, MessageDigest digest, Checkpoint checkpoint) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        digest.reset();
+        openSegments(source, position, length, destFilePath, key, iv, digest, checkpoint);
+
+        return digest.digest();
+    }
+
+    /**
+     * Decrypts a stream into another, and digests the plain content as it is written.
+     * Segments are read on the calling thread while the previously read ones are opened,
+     * and written in order once opened. Neither stream is closed.
+     *
+     * @param source the encrypted stream, read to its end
+     * @param dest   the stream to write the plain content to
+     * @param key    the decryption key to be used
+     * @param iv     the base nonce used for encryption
+     * @param digest the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case of read / write issues or failed authentication
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] decrypt(InputStream source, OutputStream dest, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        digest.reset();
+        ensureBaseNonce(key, iv);
+
+        final PushbackInputStream input = new PushbackInputStream(source, 1);
+        final int storedSegmentSize = segmentSize + ChunkedFormat.TAG_LENGTH;
+        final int window = pool.getParallelism() * 2;
+        final byte[][][] slots = new byte[2][window][];
+
+        List<OpenSegment> inFlightTasks = new ArrayList<>();
+        ForkJoinTask<?> inFlight = null;
+        boolean last = false;
+
+        try {
+            for (long first = 0, round = 0; !last; first += window, round++) {
+                final byte[][] buffers = slots[(int) (round % 2)];
+                final List<OpenSegment> tasks = new ArrayList<>();
+
+                // read this window while the previous one is being opened
+                for (int i = 0; i < window && !last; i++) {
+                    if (buffers[i] == null) {
+                        buffers[i] = new byte[storedSegmentSize];
+                    }
+
+                    final int length = Utils.fill(input, buffers[i], storedSegmentSize);
+                    if (length < ChunkedFormat.TAG_LENGTH) {
+                        throw new CorruptContentException("Encrypted content is truncated");
+                    }
+
+                    last = length < storedSegmentSize || ChunkedFormat.atEnd(input);
+                    tasks.add(new OpenSegment(null, key, iv, first + i, last, buffers[i], length));
+                }
+
+                ChunkedFormat.await(inFlight);
+                writeSegments(inFlightTasks, dest, digest);
+
+                inFlightTasks = tasks;
+                inFlight = pool.submit(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            }
+
+            ChunkedFormat.await(inFlight);
+            writeSegments(inFlightTasks, dest, digest);
+
+        } finally {
+            // never hand the buffers back under segments still in flight
+            if (inFlight != null) {
+                inFlight.quietlyJoin();
+            }
+        }
+
+        return digest.digest();
+    }
+
+    private void decryptSegments(Path sourceFilePath, Path destFilePath, Key key, byte[] baseNonce, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        Utils.ensurePathReadable(sourceFilePath);
+
+        try (FileChannel source = FileChannel.open(sourceFilePath, StandardOpenOption.READ)) {
+            openSegments(source, 0, source.size(), destFilePath, key, baseNonce, digest, null);
+        }
+    }
+
+    private void openSegments(FileChannel source, long base, long encryptedSize, Path destFilePath, Key key, byte[] baseNonce, MessageDigest digest, Checkpoint checkpoint) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        final long resumed = checkpoint == null ? 0 : checkpoint.getSegments();
+
+        if (resumed == 0) {
+            Utils.ensurePathWritable(destFilePath);
+        }
+
+        ensureBaseNonce(key, baseNonce);
+
+        try (FileChannel dest = FileChannel.open(destFilePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final int storedSegmentSize = segmentSize + ChunkedFormat.TAG_LENGTH;
+            final long segments = Math.max(1, (encryptedSize + storedSegmentSize - 1) / storedSegmentSize);
+
+            if (encryptedSize - (segments - 1) * storedSegmentSize < ChunkedFormat.TAG_LENGTH) {
+                throw new CorruptContentException("Encrypted content is truncated");
+            }
+
+            final long checkpointSegments = checkpoint == null ? 0 : Math.max(1, checkpoint.getInterval() / segmentSize);
+            final int window = pool.getParallelism() * 2;
+            final byte[][][] slots = new byte[2][window][];
+
+            if (resumed > 0) {
+                resumeFrom(checkpoint, dest, digest);
+            }
+
+            List<OpenSegment> inFlightTasks = new ArrayList<>();
+            ForkJoinTask<?> inFlight = null;
+
+            try {
+                for (long first = resumed, round = 0; first < segments; first += window, round++) {
+                    final byte[][] buffers = slots[(int) (round % 2)];
+                    final List<OpenSegment> tasks = new ArrayList<>();
+
+                    // read this window while the previous one is being opened
+                    for (int i = 0; i < window && first + i < segments; i++) {
+                        final long index = first + i;
+                        final int length = (int) Math.min(storedSegmentSize, encryptedSize - index * storedSegmentSize);
+
+                        if (buffers[i] == null) {
+                            buffers[i] = new byte[storedSegmentSize];
+                        }
+
+                        Utils.readFully(source, ByteBuffer.wrap(buffers[i], 0, length), base + index * storedSegmentSize);
+                        tasks.add(new OpenSegment(dest, key, baseNonce, index, index == segments - 1, buffers[i], length));
+                    }
+
+                    ChunkedFormat.await(inFlight);
+                    digestSegments(inFlightTasks, digest);
+
+                    // the segments before this window are all written and digested by now
+                    if (checkpoint != null && first - checkpoint.getSegments() >= checkpointSegments) {
+                        dest.force(false);
+                        checkpoint.save(first, Checkpoint.digestSoFar(digest), null);
+                    }
+
+                    inFlightTasks = tasks;
+                    inFlight = pool.submit(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+                }
+
+                ChunkedFormat.await(inFlight);
+                digestSegments(inFlightTasks, digest);
+
+            } finally {
+                // never close the channels under segments still in flight
+                if (inFlight != null) {
+                    inFlight.quietlyJoin();
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifies the decrypted file still holds the plain content of the segments a checkpoint covers, digesting it on the way
+     */
+    private void resumeFrom(Checkpoint checkpoint, FileChannel dest, MessageDigest digest) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(segmentSize);
+
+        // segments before a checkpoint are never the last one, so they are all full
+        for (long index = 0; index < checkpoint.getSegments(); index++) {
+            buffer.clear();
+            Utils.readFully(dest, buffer, index * segmentSize);
+            digest.update(buffer.array(), 0, segmentSize);
+        }
+
+        if (!MessageDigest.isEqual(Checkpoint.digestSoFar(digest), checkpoint.getDigest())) {
+            throw new IOException("Decrypted file does not match its checkpoint");
+        }
+    }
+
+    private static void ensureBaseNonce(Key key, byte[] baseNonce) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (baseNonce.length != ChunkedFormat.NONCE_LENGTH) {
+            throw new InvalidAlgorithmParameterException(String.format("Base nonce should be %d bytes long", ChunkedFormat.NONCE_LENGTH));
+        }
+
+        // fail fast on key issues before any segment is dispatched
+        ChunkedFormat.cipherFor(Cipher.DECRYPT_MODE, key, baseNonce, 0, false);
+    }
+
+    private static void writeSegments(List<OpenSegment> segments, OutputStream dest, MessageDigest digest) throws IOException {
+        for (OpenSegment segment : segments) {
+            digest.update(segment.buffer, 0, segment.plainLength);
+            dest.write(segment.buffer, 0, segment.plainLength);
+        }
+    }
+
+    private static void digestSegments(List<OpenSegment> segments, MessageDigest digest) {
+        if (digest == null) {
+            return;
+        }
+
+        for (OpenSegment segment : segments) {
+            digest.update(segment.buffer, 0, segment.plainLength);
+        }
+    }
+
+    /**
+     * Opens one segment in place and writes it to its position in the decrypted file, if given one
+     */
+    private class OpenSegment extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel dest;
+        private final Key key;
+        private final byte[] baseNonce;
+        private final long index;
+        private final boolean last;
+        private final byte[] buffer;
+        private final int length;
+
+        private int plainLength;
+
+        OpenSegment(FileChannel dest, Key key, byte[] baseNonce, long index, boolean last, byte[] buffer, int length) {
+            this.dest = dest;
+            this.key = key;
+            this.baseNonce = baseNonce;
+            this.index = index;
+            this.last = last;
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Cipher cipher = ChunkedFormat.cipherFor(Cipher.DECRYPT_MODE, key, baseNonce, index, last);
+                plainLength = cipher.doFinal(buffer, 0, length, buffer, 0);
+
+                if (dest != null) {
+                    Utils.writeFully(dest, ByteBuffer.wrap(buffer, 0, plainLength), index * segmentSize);
+                }
+
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+
+            } catch (AEADBadTagException e) {
+                throw new UncheckedIOException(new CorruptContentException(String.format("Segment %d failed authentication", index), e));
+
+            } catch (GeneralSecurityException e) {
+                throw new UncheckedIOException(new IOException(String.format("Segment %d cannot be opened", index), e));
+            }
+        }
+    }
+}
@@ -0,0 +1,426 @@
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encrypts files in fixed size AES-GCM segments sealed concurrently on a fork-join pool.
+ * See {@link ChunkedFormat} for the layout.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ChunkedFileEncrypt implements IFileEncrypt {
+
+    private final SecureRandom secureRandom;
+    private final int segmentSize;
+    private final ForkJoinPool pool;
+
+    private byte[] iv;
+
+    /**
+     * Initializes a new ChunkedFileEncrypt using the default segment size and the common pool
+     *
+     * @param secureRandom the source for the base nonce of every file
+     */
+    public ChunkedFileEncrypt(SecureRandom secureRandom) {
+        this(secureRandom, ChunkedFormat.DEFAULT_SEGMENT_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initializes a new ChunkedFileEncrypt
+     *
+     * @param secureRandom the source for the base nonce of every file
+     * @param segmentSize  the plain size of every segment, must match the decrypting side
+     * @param pool         the pool segments are sealed on
+     */
+    public ChunkedFileEncrypt(SecureRandom secureRandom, int segmentSize, ForkJoinPool pool) {
+        this.secureRandom = secureRandom;
+        this.segmentSize = segmentSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Encrypts a file
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param destFilePath   the path to the encrypted file
+     * @param key            the encryption key to be used
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public void encrypt(Path sourceFilePath, Path destFilePath, Key key) throws IOException, InvalidKeyException {
+        encryptSegments(sourceFilePath, destFilePath, key, null);
+    }
+
+    /**
+     * Encrypts a file and digests its plain content in the same read pass.
+     * The digest is updated on the calling thread while the previously read segments are sealed.
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param destFilePath   the path to the encrypted file
+     * @param key            the encryption key to be used
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] encrypt(Path sourceFilePath, Path destFilePath, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        digest.reset();
+        encryptSegments(sourceFilePath, destFilePath, key, digest);
+
+        return digest.digest();
+    }
+
+    /**
+     * Encrypts a file into an open channel, starting at its current position, and digests its plain content
+     * in the same read pass. The channel position is left right after the encrypted content.
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param dest           the channel to write the encrypted content to
+     * @param key            the encryption key to be used
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] encrypt(Path sourceFilePath, FileChannel dest, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        Utils.ensurePathReadable(sourceFilePath);
+
+        digest.reset();
+        sealSegments(sourceFilePath, dest, key, digest, null);
+
+        return digest.digest();
+    }
+
+    /**
+     * Encrypts a file into an open channel like {@link #encrypt(Path, FileChannel, Key, MessageDigest)},
+     * persisting progress to the checkpoint every interval. In case the checkpoint records progress, the segments
+     * it covers are verified against the channel, which should be readable, and encryption continues after them.
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param dest           the channel to write the encrypted content to, positioned where the content starts
+     * @param key            the encryption key to be used, the one the checkpoint was taken with when resuming
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @param checkpoint     the checkpoint to resume from and persist progress to
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible, read / write issues or files that do not match the checkpoint
+     * @throws InvalidKeyException in case of key issues
+     */
+    byte[] encrypt(Path sourceFilePath, FileChannel dest, Key key, MessageDigest digest, Checkpoint checkpoint) throws IOException, InvalidKeyException {
+        Utils.ensurePathReadable(sourceFilePath);
+
+        digest.reset();
+        sealSegments(sourceFilePath, dest, key, digest, checkpoint);
+
+        return digest.digest();
+    }
+
+    /**
+     * Encrypts a stream into another, and digests its plain content in the same pass.
+     * Segments are read and digested on the calling thread while the previously read ones are sealed,
+     * and written in order once sealed. Neither stream is closed.
+     *
+     * @param source the plain stream, read to its end
+     * @param dest   the stream to write the encrypted content to
+     * @param key    the encryption key to be used
+     * @param digest the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case of read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] encrypt(InputStream source, OutputStream dest, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        digest.reset();
+
+        final byte[] baseNonce = baseNonceFor(key, null);
+        final PushbackInputStream input = new PushbackInputStream(source, 1);
+        final int window = pool.getParallelism() * 2;
+        final byte[][][] slots = new byte[2][window][];
+
+        List<SealSegment> inFlightTasks = new ArrayList<>();
+        ForkJoinTask<?> inFlight = null;
+        boolean last = false;
+
+        try {
+            for (long first = 0, round = 0; !last; first += window, round++) {
+                final byte[][] buffers = slots[(int) (round % 2)];
+                final List<SealSegment> tasks = new ArrayList<>();
+
+                // read and digest this window while the previous one is being sealed
+                for (int i = 0; i < window && !last; i++) {
+                    if (buffers[i] == null) {
+                        buffers[i] = new byte[segmentSize + ChunkedFormat.TAG_LENGTH];
+                    }
+
+                    final int length = Utils.fill(input, buffers[i], segmentSize);
+                    last = length < segmentSize || ChunkedFormat.atEnd(input);
+
+                    digest.update(buffers[i], 0, length);
+                    tasks.add(new SealSegment(null, 0, key, baseNonce, first + i, last, buffers[i], length));
+                }
+
+                ChunkedFormat.await(inFlight);
+                writeSegments(inFlightTasks, dest);
+
+                inFlightTasks = tasks;
+                inFlight = pool.submit(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            }
+
+            ChunkedFormat.await(inFlight);
+            writeSegments(inFlightTasks, dest);
+
+        } finally {
+            // never hand the buffers back under segments still in flight
+            if (inFlight != null) {
+                inFlight.quietlyJoin();
+            }
+        }
+
+        return digest.digest();
+    }
+
+    @Override
+    public ContentAlgorithm getAlgorithm() {
+        return ContentAlgorithm.AES_GCM_CHUNKED;
+    }
+
+    @Override
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    @Override
+    public Compression getCompression() {
+        return Compression.NONE;
+    }
+
+    @Override
+    public Compression getContentCompression() {
+        return Compression.NONE;
+    }
+
+    /**
+     * Gets the base nonce used for encryption
+     *
+     * @return byte array containing the base nonce
+     */
+    @Override
+    public byte[] getIV() {
+        return iv;
+    }
+
+    private void encryptSegments(Path sourceFilePath, Path destFilePath, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        Utils.ensurePathReadable(sourceFilePath);
+        Utils.ensurePathWritable(destFilePath);
+
+        try (FileChannel dest = FileChannel.open(destFilePath, StandardOpenOption.WRITE)) {
+            sealSegments(sourceFilePath, dest, key, digest, null);
+        }
+    }
+
+    /**
+     * Gets the base nonce of a checkpoint being resumed, or a new one, recorded in the checkpoint if given one
+     */
+    private byte[] baseNonceFor(Key key, Checkpoint checkpoint) throws InvalidKeyException {
+        final byte[] baseNonce;
+
+        if (checkpoint != null && checkpoint.getSegments() > 0) {
+            baseNonce = checkpoint.getIV();
+
+        } else {
+            baseNonce = new byte[ChunkedFormat.NONCE_LENGTH];
+            secureRandom.nextBytes(baseNonce);
+
+            if (checkpoint != null) {
+                checkpoint.setIV(baseNonce);
+            }
+        }
+
+        iv = baseNonce;
+
+        try {
+            // fail fast on key issues before any segment is dispatched, without consuming a nonce for encryption
+            ChunkedFormat.cipherFor(Cipher.DECRYPT_MODE, key, baseNonce, 0, false);
+
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return baseNonce;
+    }
+
+    private static void writeSegments(List<SealSegment> segments, OutputStream dest) throws IOException {
+        for (SealSegment segment : segments) {
+            dest.write(segment.buffer, 0, segment.sealedLength);
+        }
+    }
+
+    /**
+     * Verifies the segments a checkpoint covers were written and the plain content they were sealed from did not
+     * change, digesting that content on the way
+     */
+    private void resumeFrom(Checkpoint checkpoint, FileChannel source, FileChannel dest, long base, MessageDigest digest) throws IOException {
+        final long segments = checkpoint.getSegments();
+        final ByteBuffer tag = ByteBuffer.allocate(ChunkedFormat.TAG_LENGTH);
+        final ByteBuffer buffer = ByteBuffer.allocate(segmentSize);
+
+        Utils.readFully(dest, tag, base + segments * (segmentSize + ChunkedFormat.TAG_LENGTH) - ChunkedFormat.TAG_LENGTH);
+
+        if (!Arrays.equals(tag.array(), checkpoint.getTag())) {
+            throw new IOException("Encrypted file does not match its checkpoint");
+        }
+
+        // segments before a checkpoint are never the last one, so they are all full
+        for (long index = 0; index < segments; index++) {
+            buffer.clear();
+            Utils.readFully(source, buffer, index * segmentSize);
+            digest.update(buffer.array(), 0, segmentSize);
+        }
+
+        if (!MessageDigest.isEqual(Checkpoint.digestSoFar(digest), checkpoint.getDigest())) {
+            throw new IOException("File changed since its checkpoint, it cannot be resumed");
+        }
+    }
+
+    private void sealSegments(Path sourceFilePath, FileChannel dest, Key key, MessageDigest digest, Checkpoint checkpoint) throws IOException, InvalidKeyException {
+        final byte[] baseNonce = baseNonceFor(key, checkpoint);
+
+        try (FileChannel source = FileChannel.open(sourceFilePath, StandardOpenOption.READ)) {
+            final long base = dest.position();
+            final long plainSize = source.size();
+            final long segments = ChunkedFormat.segmentsCount(plainSize, segmentSize);
+            final long resumed = checkpoint == null ? 0 : checkpoint.getSegments();
+            final long checkpointSegments = checkpoint == null ? 0 : Math.max(1, checkpoint.getInterval() / segmentSize);
+            final int window = pool.getParallelism() * 2;
+            final byte[][][] slots = new byte[2][window][];
+
+            if (resumed > 0) {
+                resumeFrom(checkpoint, source, dest, base, digest);
+            }
+
+            List<SealSegment> inFlightTasks = new ArrayList<>();
+            ForkJoinTask<?> inFlight = null;
+
+            try {
+                for (long first = resumed, round = 0; first < segments; first += window, round++) {
+                    final byte[][] buffers = slots[(int) (round % 2)];
+                    final List<SealSegment> tasks = new ArrayList<>();
+
+                    // the segments before this window are durable once the previous one is written, digest them now
+                    final byte[] checkpointDigest = checkpoint != null && first - checkpoint.getSegments() >= checkpointSegments ?
+                            Checkpoint.digestSoFar(digest) : null;
+
+                    // read and digest this window while the previous one is being sealed
+                    for (int i = 0; i < window && first + i < segments; i++) {
+                        final long index = first + i;
+                        final int length = (int) Math.min(segmentSize, plainSize - index * segmentSize);
+
+                        if (buffers[i] == null) {
+                            buffers[i] = new byte[segmentSize + ChunkedFormat.TAG_LENGTH];
+                        }
+
+                        Utils.readFully(source, ByteBuffer.wrap(buffers[i], 0, length), index * segmentSize);
+
+                        if (digest != null) {
+                            digest.update(buffers[i], 0, length);
+                        }
+
+                        long position = base + index * (segmentSize + ChunkedFormat.TAG_LENGTH);
+                        tasks.add(new SealSegment(dest, position, key, baseNonce, index, index == segments - 1, buffers[i], length));
+                    }
+
+                    ChunkedFormat.await(inFlight);
+
+                    if (checkpointDigest != null) {
+                        dest.force(false);
+                        checkpoint.save(first, checkpointDigest, inFlightTasks.get(inFlightTasks.size() - 1).tag());
+                    }
+
+                    inFlightTasks = tasks;
+                    inFlight = pool.submit(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+                }
+
+                ChunkedFormat.await(inFlight);
+                dest.position(base + plainSize + segments * ChunkedFormat.TAG_LENGTH);
+
+            } finally {
+                // never close the channels under segments still in flight
+                if (inFlight != null) {
+                    inFlight.quietlyJoin();
+                }
+            }
+        }
+    }
+
+    /**
+     * Seals one segment in place and writes it to its position in the encrypted file, if given one
+     */
+    private static class SealSegment extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel dest;
+        private final long position;
+        private final Key key;
+        private final byte[] baseNonce;
+        private final long index;
+        private final boolean last;
+        private final byte[] buffer;
+        private final int length;
+
+        private int sealedLength;
+
+        SealSegment(FileChannel dest, long position, Key key, byte[] baseNonce, long index, boolean last, byte[] buffer, int length) {
+            this.dest = dest;
+            this.position = position;
+            this.key = key;
+            this.baseNonce = baseNonce;
+            this.index = index;
+            this.last = last;
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Cipher cipher = ChunkedFormat.cipherFor(Cipher.ENCRYPT_MODE, key, baseNonce, index, last);
+                sealedLength = cipher.doFinal(buffer, 0, length, buffer, 0);
+
+                if (dest != null) {
+                    Utils.writeFully(dest, ByteBuffer.wrap(buffer, 0, sealedLength), position);
+                }
+
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+
+            } catch (GeneralSecurityException e) {
+                throw new UncheckedIOException(new IOException(String.format("Segment %d cannot be sealed", index), e));
+            }
+        }
+
+        byte[] tag() {
+            return Arrays.copyOfRange(buffer, sealedLength - ChunkedFormat.TAG_LENGTH, sealedLength);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Layout shared by the chunked AES-GCM engines.
+ * <p>
+ * The plain content is split into fixed size segments, each sealed on its own and stored as
+ * ciphertext followed by its authentication tag. The nonce of every segment is derived from the
+ * file's base nonce and the segment index, and the index along with a last-segment flag is bound
+ * into the AAD so segments cannot be reordered, dropped or truncated.
+ */
+@SuppressWarnings("WeakerAccess")
+final class ChunkedFormat {
+
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024; // bytes
+    static final int NONCE_LENGTH = 12; // bytes
+    static final int TAG_LENGTH = 16; // bytes
+
+    private static final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * Static class
+     */
+    private ChunkedFormat() {
+    }
+
+    /**
+     * Gets the number of segments a plain content of the given size is split to
+     *
+     * @param plainSize   the plain content size
+     * @param segmentSize the segment size
+     * @return the segments count, an empty content still takes one segment
+     */
+    static long segmentsCount(long plainSize, int segmentSize) {
+        return Math.max(1, (plainSize + segmentSize - 1) / segmentSize);
+    }
+
+    /**
+     * Gets a cipher initialized for the given segment, owned by the calling thread
+     *
+     * @param mode      Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+     * @param key       the content key
+     * @param baseNonce the file's base nonce
+     * @param index     the segment index
+     * @param last      whether this is the last segment of the file
+     * @return the initialized cipher
+     */
+    static Cipher cipherFor(int mode, Key key, byte[] baseNonce, long index, boolean last) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        byte[] nonce = baseNonce.clone();
+        for (int i = 0; i < Long.BYTES; i++) {
+            nonce[NONCE_LENGTH - 1 - i] ^= (byte) (index >>> (8 * i));
+        }
+
+        Cipher cipher = ciphers.get();
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(ByteBuffer.allocate(Long.BYTES + 1).putLong(index).put((byte) (last ? 1 : 0)).array());
+
+        return cipher;
+    }
+
+    /**
+     * Tells whether a stream has ended, without consuming any of it.
+     * A full segment read from a stream is only known to be the last one this way.
+     *
+     * @param in the stream
+     * @return true in case the stream ended
+     * @throws IOException in case of read issues
+     */
+    static boolean atEnd(PushbackInputStream in) throws IOException {
+        int next = in.read();
+
+        if (next < 0) {
+            return true;
+        }
+
+        in.unread(next);
+        return false;
+    }
+
+    /**
+     * Waits for the segments task to complete, surfacing IO failures of its segments
+     *
+     * @param task the segments task, may be null
+     * @throws IOException in case a segment failed on IO or authentication
+     */
+    static void await(ForkJoinTask<?> task) throws IOException {
+        if (task == null) {
+            return;
+        }
+
+        try {
+            task.join();
+
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+
+            throw e;
+        }
+    }
+}
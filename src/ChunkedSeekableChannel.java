@@ -0,0 +1,177 @@
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+
+/**
+ * A read-only channel over the plain content of chunked AES-GCM encrypted content, decrypting at random positions.
+ * See {@link ChunkedFormat} for the layout.
+ * <p>
+ * Segments are stored at fixed offsets, so a read only fetches and opens the segments covering it, and every byte
+ * returned is authenticated by its segment's tag. The last segment is opened up front, so the size is authenticated
+ * as well. The sender's signature covers the whole content, and is only validated by decrypting all of it.
+ */
+@SuppressWarnings("WeakerAccess")
+final class ChunkedSeekableChannel implements SeekableByteChannel {
+
+    private final FileChannel source;
+    private final long base;
+    private final int segmentSize;
+    private final Key key;
+    private final byte[] baseNonce;
+    private final long encryptedSize;
+    private final long segments;
+    private final long plainSize;
+
+    private final byte[] segment;
+    private long segmentIndex = -1;
+    private int segmentLength;
+    private long position;
+
+    /**
+     * Initializes a new ChunkedSeekableChannel, taking ownership of the source channel
+     *
+     * @param source        the channel of the encrypted file
+     * @param base          the position the encrypted content starts at
+     * @param encryptedSize the length of the encrypted content
+     * @param segmentSize   the plain segment size the content was encrypted with
+     * @param key           the content key
+     * @param baseNonce     the base nonce the content was encrypted with
+     * @throws IOException in case of read issues, truncated content or failed authentication of the last segment
+     */
+    ChunkedSeekableChannel(FileChannel source, long base, long encryptedSize, int segmentSize, Key key, byte[] baseNonce) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        if (baseNonce.length != ChunkedFormat.NONCE_LENGTH) {
+            throw new InvalidAlgorithmParameterException(String.format("Base nonce should be %d bytes long", ChunkedFormat.NONCE_LENGTH));
+        }
+
+        final int storedSegmentSize = segmentSize + ChunkedFormat.TAG_LENGTH;
+
+        this.source = source;
+        this.base = base;
+        this.segmentSize = segmentSize;
+        this.key = key;
+        this.baseNonce = baseNonce;
+        this.encryptedSize = encryptedSize;
+        this.segments = Math.max(1, (encryptedSize + storedSegmentSize - 1) / storedSegmentSize);
+        this.plainSize = encryptedSize - segments * ChunkedFormat.TAG_LENGTH;
+        this.segment = new byte[storedSegmentSize];
+
+        if (encryptedSize - (segments - 1) * storedSegmentSize < ChunkedFormat.TAG_LENGTH) {
+            throw new CorruptContentException("Encrypted content is truncated");
+        }
+
+        // fail fast on key issues, and authenticate the size along with the last segment
+        ChunkedFormat.cipherFor(Cipher.DECRYPT_MODE, key, baseNonce, 0, false);
+        loadSegment(segments - 1);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+
+        if (position >= plainSize) {
+            return -1;
+        }
+
+        int total = 0;
+
+        while (dst.hasRemaining() && position < plainSize) {
+            final long index = position / segmentSize;
+            loadSegment(index);
+
+            final int offset = (int) (position - index * segmentSize);
+            final int count = Math.min(dst.remaining(), segmentLength - offset);
+
+            dst.put(segment, offset, count);
+            position += count;
+            total += count;
+        }
+
+        return total;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position should not be negative");
+        }
+
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return plainSize;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return source.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!source.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Reads and opens a segment into the segment buffer, unless it is already there
+     */
+    private void loadSegment(long index) throws IOException {
+        if (index == segmentIndex) {
+            return;
+        }
+
+        final int storedSegmentSize = segmentSize + ChunkedFormat.TAG_LENGTH;
+        final int length = (int) Math.min(storedSegmentSize, encryptedSize - index * storedSegmentSize);
+
+        segmentIndex = -1;
+        Utils.readFully(source, ByteBuffer.wrap(segment, 0, length), base + index * storedSegmentSize);
+
+        try {
+            Cipher cipher = ChunkedFormat.cipherFor(Cipher.DECRYPT_MODE, key, baseNonce, index, index == segments - 1);
+            segmentLength = cipher.doFinal(segment, 0, length, segment, 0);
+            segmentIndex = index;
+
+        } catch (AEADBadTagException e) {
+            throw new CorruptContentException(String.format("Segment %d failed authentication", index), e);
+
+        } catch (GeneralSecurityException e) {
+            throw new IOException(String.format("Segment %d cannot be opened", index), e);
+        }
+    }
+}
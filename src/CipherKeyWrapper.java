@@ -0,0 +1,38 @@
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.PublicKey;
+
+/**
+ * Wraps secrets by encrypting them with the recipient's public key, as RSA does.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CipherKeyWrapper implements IKeyWrapper {
+
+    private final Cipher asymmetricCipher;
+
+    /**
+     * Initializes a new CipherKeyWrapper
+     *
+     * @param asymmetricCipher a Cipher instance, such as RSA/ECB/PKCS1Padding
+     */
+    public CipherKeyWrapper(Cipher asymmetricCipher) {
+        this.asymmetricCipher = asymmetricCipher;
+    }
+
+    @Override
+    public byte[] wrap(byte[] secret, PublicKey publicKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        asymmetricCipher.init(Cipher.ENCRYPT_MODE, publicKey);
+
+        return asymmetricCipher.doFinal(secret);
+    }
+
+    @Override
+    public byte[] unwrap(byte[] wrapped, Key privateKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        asymmetricCipher.init(Cipher.DECRYPT_MODE, privateKey);
+
+        return asymmetricCipher.doFinal(wrapped);
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The codecs plain content may be compressed with before it is encrypted, each with a stable one byte ID
+ * recorded in encrypted containers.
+ */
+@SuppressWarnings("WeakerAccess")
+public enum Compression {
+
+    NONE((byte) 0),
+    DEFLATE((byte) 1);
+
+    /**
+     * Content whose sample does not shrink below this share of its size is stored as is
+     */
+    public static final double MAX_RATIO = 0.9;
+
+    /**
+     * Plain content may inflate to at most this many times the compressed content read so far. The bound is tied to
+     * the encoder: the JDK's zlib deflates uniform content at {@link Deflater#BEST_SPEED} about 229 times, half of it
+     * leaves room for other zlib builds, while deflate itself gets past 1000 times. A plain size recorded in the
+     * header would bound it without the encoder, but the header is not authenticated before the content is.
+     */
+    public static final int MAX_EXPANSION = 512;
+
+    private static final int BUFFER_SIZE = 64 * 1024; // bytes
+
+    private final byte id;
+
+    Compression(byte id) {
+        this.id = id;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * Gets the name the codec is given on the command line
+     *
+     * @return the lower case codec name
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Creates a compressor for this codec, to be reused for the content of a single thread
+     *
+     * @return the compressor, or null for {@link #NONE}
+     */
+    public Deflater newDeflater() {
+        return this == DEFLATE ? new Deflater(Deflater.BEST_SPEED) : null;
+    }
+
+    /**
+     * Creates a decompressor for this codec, to be reused for the content of a single thread
+     *
+     * @return the decompressor, or null for {@link #NONE}
+     */
+    public Inflater newInflater() {
+        return this == DEFLATE ? new Inflater() : null;
+    }
+
+    /**
+     * Compresses whatever is written to the returned stream into another. Closing the returned stream
+     * finishes the compressed content and closes out, the deflater is reset and left for the next content.
+     *
+     * @param out      the stream to write the compressed content to
+     * @param deflater a compressor created by {@link #newDeflater()}
+     * @return the compressing stream
+     */
+    public static OutputStream compress(OutputStream out, Deflater deflater) {
+        deflater.reset();
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+    }
+
+    /**
+     * Decompresses the content of a stream. The compressed content should end with the stream, which is checked
+     * once the returned stream is read to its end. Content inflating beyond {@link #MAX_EXPANSION} is rejected
+     * as soon as it does, so a crafted stream cannot fill the disk before its signature is validated.
+     *
+     * @param in       the compressed stream
+     * @param inflater a decompressor created by {@link #newInflater()}
+     * @return the decompressing stream
+     */
+    public static InputStream decompress(InputStream in, Inflater inflater) {
+        inflater.reset();
+
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int bytesRead = super.read(b, off, len);
+
+                if (bytesRead > 0 && inflater.getBytesWritten() > BUFFER_SIZE + MAX_EXPANSION * inflater.getBytesRead()) {
+                    throw new CorruptContentException(String.format("Compressed content inflates beyond %d times its size", MAX_EXPANSION));
+                }
+
+                // content padded with more than the compressed stream was tampered with, or is not compressed
+                if (bytesRead < 0 && (inflater.getRemaining() > 0 || in.read() >= 0)) {
+                    throw new IOException("Compressed content is followed by unexpected data");
+                }
+
+                return bytesRead;
+            }
+        };
+    }
+
+    /**
+     * Tells whether a sample of the content shrinks enough to be worth compressing the whole content,
+     * which is not the case for content that is already compressed or encrypted
+     *
+     * @param sample   the sample, such as blocks taken from a few places in the content
+     * @param length   the sample length
+     * @param deflater a compressor created by {@link #newDeflater()}, reset before and after use
+     * @return true in case the content should be compressed
+     */
+    public static boolean isCompressible(byte[] sample, int length, Deflater deflater) {
+        if (length == 0) {
+            return false;
+        }
+
+        final byte[] compressed = new byte[BUFFER_SIZE];
+        final long limit = (long) (length * MAX_RATIO);
+
+        deflater.reset();
+        deflater.setInput(sample, 0, length);
+        deflater.finish();
+
+        try {
+            while (!deflater.finished()) {
+                deflater.deflate(compressed);
+
+                if (deflater.getBytesWritten() >= limit) {
+                    return false;
+                }
+            }
+
+            return true;
+
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    /**
+     * Finds the codec by its ID
+     *
+     * @param id the ID as recorded in a container
+     * @return the codec
+     * @throws IllegalArgumentException for unknown IDs
+     */
+    public static Compression forId(byte id) {
+        for (Compression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("Unknown compression ID %d", id));
+    }
+}
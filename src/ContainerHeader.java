@@ -0,0 +1,814 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.RSAKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The header of an encrypted container, a single file holding everything needed to decrypt and validate its payload.
+ * <p>
+ * Layout, all integers big endian:
+ * <pre>
+ * magic     4 bytes   "JYFE"
+ * version   1 byte
+ * length    4 bytes   length of the fields that follow
+ * fields    tag (1 byte), value length (2 bytes), value - repeated
+ * payload   the encrypted content, up to the end of the file
+ * </pre>
+ * The IV and signature are only known once the payload is written, so the encrypting side reserves room for them
+ * and rewrites the header in place when done. The signature field holds the signature length (2 bytes) followed by
+ * the signature, zero padded up to the reserved capacity. The payload starts right after the fields, whatever they
+ * hold, so fields of unknown tags are skipped. They are kept and written back after the known ones, and a header
+ * this revision cannot reproduce byte for byte is never rewritten, nor authenticated by its header signature.
+ * <p>
+ * Containers written to a stream cannot be rewritten, so their header is written once the IV is known, and the
+ * signature field follows the payload as a fixed length trailer instead, its length recorded in the header.
+ * <p>
+ * Containers encrypted in a signed batch record the batch id instead, with an empty signature field, and are
+ * validated against the batch's signed manifest (see {@link BatchManifest}).
+ * <p>
+ * Content that may be compressed before it is encrypted records the codec (see {@link Compression}), reserved up front
+ * and rewritten with the codec actually used, as content sampled as incompressible is stored as is. Revisions that
+ * take the header length from its prefix skip the codec field, older ones cannot read such containers at all.
+ * <p>
+ * Content encrypted for several recipients keeps the content key wrapped for the first one in the key field, and a
+ * recipient key field for every other one: the SHA-256 fingerprint of the recipient's certificate (32 bytes) followed
+ * by the content key wrapped with its public key. Revisions that take the header length from its prefix still decrypt
+ * such content for the first recipient, older ones cannot read it at all. The other recipients' keys share the room
+ * of the fields, at most {@link #MAX_RECIPIENT_KEYS_LENGTH} bytes of it.
+ * <p>
+ * The suite the keys are wrapped and the payload is signed with is recorded (see {@link AsymmetricSuite}) unless it
+ * is RSA, which containers that record none were wrapped and signed with.
+ * <p>
+ * Containers whose segments may be read on their own also carry a header signature: the sender's signature over
+ * the header as written without either signature field (see {@link #getSignedBytes()}), which binds the content key,
+ * nonce and layout to the sender. It is encoded like the signature field, in room reserved for it up front.
+ */
+@SuppressWarnings("WeakerAccess")
+final class ContainerHeader {
+
+    static final byte VERSION = 1;
+
+    private static final byte[] MAGIC = {'J', 'Y', 'F', 'E'};
+    static final int PREFIX_LENGTH = MAGIC.length + 1 + Integer.BYTES;
+    private static final int READ_SIZE = 4096; // bytes, covers the header of a 4096 bits RSA key with room to spare
+    private static final int DEFAULT_SIGNATURE_CAPACITY = 1024; // bytes
+    static final int MAX_FIELDS_LENGTH = Short.MAX_VALUE; // bytes
+    static final int MAX_RECIPIENT_KEYS_LENGTH = MAX_FIELDS_LENGTH - 8192; // bytes, leaves room for the other fields with 8192 bits keys
+
+    private static final byte CONTENT_ALGORITHM = 1;
+    private static final byte SEGMENT_SIZE = 2;
+    private static final byte SIGNATURE_ALGORITHM = 3;
+    private static final byte KEY_ENCRYPTION_KEY = 4;
+    private static final byte KEY = 5;
+    private static final byte IV = 6;
+    private static final byte SIGNATURE = 7;
+    private static final byte TRAILER_LENGTH = 8;
+    private static final byte SENDER_KEY = 9;
+    private static final byte BATCH_ID = 10;
+    private static final byte COMPRESSION = 11;
+    private static final byte RECIPIENT_KEY = 12;
+    private static final byte ASYMMETRIC_SUITE = 13;
+    private static final byte HEADER_SIGNATURE = 14;
+
+    static final int FINGERPRINT_LENGTH = 32; // bytes, a SHA-256 digest
+
+    private final ContentAlgorithm contentAlgorithm;
+    private final int segmentSize;
+    private final String signatureAlgorithm;
+    private final byte[] keyEncryptionKey;
+    private final byte[] key;
+    private final List<byte[]> recipientKeys;
+    private final byte[] senderKey;
+    private final int signatureCapacity;
+    private byte[] batchId;
+    private Compression compression;
+    private final boolean signatureTrailer;
+    private AsymmetricSuite suite;
+
+    private byte[] iv;
+    private byte[] signature;
+    private byte[] headerSignature = new byte[0];
+    private int headerSignatureCapacity;
+    private List<byte[]> unknownFields = new ArrayList<>();
+    private boolean reproducible = true;
+    private int length;
+
+    /**
+     * Initializes a new header, reserving room for the IV and the signature
+     *
+     * @param contentAlgorithm   the content encryption algorithm
+     * @param segmentSize        the plain segment size, or 0 for content encrypted as a single stream
+     * @param signatureAlgorithm the Signature algorithm the payload is signed with
+     * @param keyEncryptionKey   the wrapped key-encryption key of the batch, may be null
+     * @param key                the wrapped content key
+     * @param signingKey         the private key the payload is signed with, sizing the signature field
+     * @param signatureTrailer   whether the signature follows the payload, for containers written to a stream
+     */
+    ContainerHeader(ContentAlgorithm contentAlgorithm, int segmentSize, String signatureAlgorithm, byte[] keyEncryptionKey, byte[] key, Key signingKey, boolean signatureTrailer) {
+        this(contentAlgorithm, segmentSize, signatureAlgorithm, keyEncryptionKey, key, null, signingKey, signatureTrailer);
+    }
+
+    /**
+     * Initializes a new header that also keeps the content key for the encrypting side, so it can encrypt
+     * the changed content again, reserving room for the IV and the signature
+     *
+     * @param contentAlgorithm   the content encryption algorithm
+     * @param segmentSize        the plain segment size, or 0 for content encrypted as a single stream
+     * @param signatureAlgorithm the Signature algorithm the payload is signed with
+     * @param keyEncryptionKey   the wrapped key-encryption key of the batch, may be null
+     * @param key                the wrapped content key
+     * @param senderKey          the content key wrapped with the encrypting side's own public key, may be null
+     * @param signingKey         the private key the payload is signed with, sizing the signature field
+     * @param signatureTrailer   whether the signature follows the payload, for containers written to a stream
+     */
+    ContainerHeader(ContentAlgorithm contentAlgorithm, int segmentSize, String signatureAlgorithm, byte[] keyEncryptionKey, byte[] key, byte[] senderKey, Key signingKey, boolean signatureTrailer) {
+        this(contentAlgorithm, segmentSize, signatureAlgorithm, keyEncryptionKey, key, senderKey, null, signingKey, signatureTrailer);
+    }
+
+    /**
+     * Initializes a new header, reserving room for the IV, and for the signature unless the container is
+     * validated against the signed manifest of its batch
+     *
+     * @param contentAlgorithm   the content encryption algorithm
+     * @param segmentSize        the plain segment size, or 0 for content encrypted as a single stream
+     * @param signatureAlgorithm the Signature algorithm the payload or the batch manifest is signed with
+     * @param keyEncryptionKey   the wrapped key-encryption key of the batch, may be null
+     * @param key                the wrapped content key
+     * @param senderKey          the content key wrapped with the encrypting side's own public key, may be null
+     * @param batchId            the id of the signed batch manifest recording the container, may be null
+     * @param signingKey         the private key the payload is signed with, sizing the signature field
+     * @param signatureTrailer   whether the signature follows the payload, for containers written to a stream
+     */
+    ContainerHeader(ContentAlgorithm contentAlgorithm, int segmentSize, String signatureAlgorithm, byte[] keyEncryptionKey, byte[] key, byte[] senderKey, byte[] batchId, Key signingKey, boolean signatureTrailer) {
+        this(contentAlgorithm, segmentSize, signatureAlgorithm, keyEncryptionKey, key, senderKey, batchId, null, signingKey, signatureTrailer);
+    }
+
+    /**
+     * Initializes a new header, reserving room for the IV, the codec the content is compressed with,
+     * and for the signature unless the container is validated against the signed manifest of its batch
+     *
+     * @param contentAlgorithm   the content encryption algorithm
+     * @param segmentSize        the plain segment size, or 0 for content encrypted as a single stream
+     * @param signatureAlgorithm the Signature algorithm the payload or the batch manifest is signed with
+     * @param keyEncryptionKey   the wrapped key-encryption key of the batch, may be null
+     * @param key                the wrapped content key
+     * @param senderKey          the content key wrapped with the encrypting side's own public key, may be null
+     * @param batchId            the id of the signed batch manifest recording the container, may be null
+     * @param compression        the codec the content may be compressed with, may be null for content that is not
+     * @param signingKey         the private key the payload is signed with, sizing the signature field
+     * @param signatureTrailer   whether the signature follows the payload, for containers written to a stream
+     */
+    ContainerHeader(ContentAlgorithm contentAlgorithm, int segmentSize, String signatureAlgorithm, byte[] keyEncryptionKey, byte[] key, byte[] senderKey, byte[] batchId, Compression compression, Key signingKey, boolean signatureTrailer) {
+        this(contentAlgorithm, segmentSize, signatureAlgorithm, keyEncryptionKey, key, new ArrayList<>(), senderKey, batchId, compression, null,
+                new byte[contentAlgorithm.getIvLength()], new byte[0], batchId != null ? 0 : signatureCapacity(signingKey), signatureTrailer);
+    }
+
+    private ContainerHeader(ContentAlgorithm contentAlgorithm, int segmentSize, String signatureAlgorithm, byte[] keyEncryptionKey, byte[] key, List<byte[]> recipientKeys, byte[] senderKey, byte[] batchId, Compression compression, AsymmetricSuite suite, byte[] iv, byte[] signature, int signatureCapacity, boolean signatureTrailer) {
+        this.contentAlgorithm = contentAlgorithm;
+        this.segmentSize = segmentSize;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.keyEncryptionKey = keyEncryptionKey;
+        this.key = key;
+        this.recipientKeys = recipientKeys;
+        this.senderKey = senderKey;
+        this.batchId = batchId;
+        this.compression = compression;
+        this.suite = suite;
+        this.iv = iv;
+        this.signature = signature;
+        this.signatureCapacity = signatureCapacity;
+        this.signatureTrailer = signatureTrailer;
+        this.length = toBytes(true).length;
+    }
+
+    /**
+     * Reads the header at the beginning of the channel, in a single read for any common key size
+     *
+     * @param channel the channel of a file that may be a container
+     * @return the header, or null in case the file is not a container
+     * @throws IOException in case of read issues, an unsupported version or a malformed header
+     */
+    static ContainerHeader read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_SIZE, channel.size()));
+        Utils.readFully(channel, buffer, 0);
+        buffer.flip();
+
+        int fieldsLength = fieldsLength(buffer);
+        if (fieldsLength < 0) {
+            return null;
+        }
+
+        if (PREFIX_LENGTH + (long) fieldsLength > channel.size()) {
+            throw new IOException("Container header is truncated");
+        }
+
+        if (buffer.remaining() < fieldsLength) {
+            // only headers of unusually large keys take a second read
+            buffer = ByteBuffer.allocate(fieldsLength);
+            Utils.readFully(channel, buffer, PREFIX_LENGTH);
+            buffer.flip();
+        }
+
+        buffer.limit(buffer.position() + fieldsLength);
+
+        try {
+            return parseFields(buffer);
+
+        } catch (RuntimeException e) {
+            throw new IOException("Container header is malformed", e);
+        }
+    }
+
+    /**
+     * Reads the header at the beginning of the stream, leaving the stream right at the payload
+     *
+     * @param in the stream of a container
+     * @return the header
+     * @throws IOException in case of read issues, a stream that is not a container, an unsupported version or a malformed header
+     */
+    static ContainerHeader read(InputStream in) throws IOException {
+        byte[] prefix = new byte[PREFIX_LENGTH];
+        int fieldsLength = fieldsLength(ByteBuffer.wrap(prefix, 0, Utils.fill(in, prefix, PREFIX_LENGTH)));
+
+        if (fieldsLength < 0) {
+            throw new IOException("Stream is not an encrypted container");
+        }
+
+        byte[] fields = new byte[fieldsLength];
+        if (Utils.fill(in, fields, fieldsLength) < fieldsLength) {
+            throw new IOException("Container header is truncated");
+        }
+
+        try {
+            return parseFields(ByteBuffer.wrap(fields));
+
+        } catch (RuntimeException e) {
+            throw new IOException("Container header is malformed", e);
+        }
+    }
+
+    /**
+     * Gets the length of the header at the beginning of the buffer, from its prefix, for headers that arrive in pieces
+     *
+     * @param buffer the beginning of a container, left untouched
+     * @return the header length, or -1 in case the buffer is shorter than the prefix
+     * @throws IOException in case this is not a container, or of an unsupported version
+     */
+    static int lengthOf(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < PREFIX_LENGTH) {
+            return -1;
+        }
+
+        int fieldsLength = fieldsLength(buffer.duplicate());
+        if (fieldsLength < 0) {
+            throw new IOException("Stream is not an encrypted container");
+        }
+
+        return PREFIX_LENGTH + fieldsLength;
+    }
+
+    /**
+     * Reads the magic, version and fields length
+     *
+     * @return the fields length, or -1 in case this is not a container
+     */
+    private static int fieldsLength(ByteBuffer prefix) throws IOException {
+        if (prefix.remaining() < PREFIX_LENGTH) {
+            return -1;
+        }
+
+        byte[] magic = new byte[MAGIC.length];
+        prefix.get(magic);
+
+        if (!Arrays.equals(magic, MAGIC)) {
+            return -1;
+        }
+
+        byte version = prefix.get();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported container version %d", version));
+        }
+
+        int fieldsLength = prefix.getInt();
+        if (fieldsLength < 0 || fieldsLength > MAX_FIELDS_LENGTH) {
+            throw new IOException("Container header is malformed");
+        }
+
+        return fieldsLength;
+    }
+
+    private static ContainerHeader parseFields(ByteBuffer fields) {
+        ByteBuffer encoded = fields.duplicate();
+        List<byte[]> unknownFields = new ArrayList<>();
+        ContentAlgorithm contentAlgorithm = null;
+        int segmentSize = 0;
+        String signatureAlgorithm = null;
+        byte[] keyEncryptionKey = null;
+        byte[] key = null;
+        List<byte[]> recipientKeys = new ArrayList<>();
+        byte[] senderKey = null;
+        byte[] batchId = null;
+        Compression compression = null;
+        AsymmetricSuite suite = null;
+        byte[] iv = null;
+        byte[] signature = null;
+        int signatureCapacity = 0;
+        boolean signatureTrailer = false;
+        byte[] headerSignature = null;
+        int headerSignatureCapacity = 0;
+
+        while (fields.hasRemaining()) {
+            byte tag = fields.get();
+            byte[] value = new byte[fields.getShort() & 0xFFFF];
+            fields.get(value);
+
+            switch (tag) {
+                case CONTENT_ALGORITHM:
+                    contentAlgorithm = ContentAlgorithm.forId(value[0]);
+                    break;
+                case SEGMENT_SIZE:
+                    segmentSize = ByteBuffer.wrap(value).getInt();
+                    break;
+                case SIGNATURE_ALGORITHM:
+                    signatureAlgorithm = new String(value, StandardCharsets.UTF_8);
+                    break;
+                case KEY_ENCRYPTION_KEY:
+                    keyEncryptionKey = value;
+                    break;
+                case KEY:
+                    key = value;
+                    break;
+                case IV:
+                    iv = value;
+                    break;
+                case SIGNATURE:
+                    signature = decodeSignature(value);
+                    signatureCapacity = value.length - Short.BYTES;
+                    break;
+                case TRAILER_LENGTH:
+                    signature = new byte[0];
+                    signatureCapacity = ByteBuffer.wrap(value).getInt() - Short.BYTES;
+                    signatureTrailer = true;
+                    break;
+                case SENDER_KEY:
+                    senderKey = value;
+                    break;
+                case BATCH_ID:
+                    batchId = value;
+                    break;
+                case COMPRESSION:
+                    compression = Compression.forId(value[0]);
+                    break;
+                case RECIPIENT_KEY:
+                    if (value.length <= FINGERPRINT_LENGTH) {
+                        throw new IllegalArgumentException("Container header recipient key is truncated");
+                    }
+                    recipientKeys.add(value);
+                    break;
+                case ASYMMETRIC_SUITE:
+                    suite = AsymmetricSuite.forId(value[0]);
+                    break;
+                case HEADER_SIGNATURE:
+                    headerSignature = decodeSignature(value);
+                    headerSignatureCapacity = value.length - Short.BYTES;
+                    break;
+                default:
+                    // written by a later revision of this version, kept to be written back
+                    unknownFields.add(ByteBuffer.allocate(1 + Short.BYTES + value.length).put(tag).putShort((short) value.length).put(value).array());
+            }
+        }
+
+        if (contentAlgorithm == null || signatureAlgorithm == null || key == null || iv == null || signature == null) {
+            throw new IllegalArgumentException("Container header is missing required fields");
+        }
+
+        if (contentAlgorithm.isSegmented() && segmentSize <= 0) {
+            throw new IllegalArgumentException("Container header is missing the segment size");
+        }
+
+        ContainerHeader header = new ContainerHeader(contentAlgorithm, segmentSize, signatureAlgorithm, keyEncryptionKey, key, recipientKeys, senderKey, batchId, compression, suite, iv, signature, signatureCapacity, signatureTrailer);
+
+        if (headerSignature != null) {
+            header.headerSignature = headerSignature;
+            header.headerSignatureCapacity = headerSignatureCapacity;
+        }
+
+        // the payload follows the fields as written, whichever of them this revision knows
+        header.unknownFields = unknownFields;
+        header.length = PREFIX_LENGTH + encoded.remaining();
+
+        byte[] reencoded = header.toBytes(true);
+        header.reproducible = ByteBuffer.wrap(reencoded, PREFIX_LENGTH, reencoded.length - PREFIX_LENGTH).equals(encoded);
+
+        return header;
+    }
+
+    /**
+     * Writes the header at the beginning of the channel, leaving the channel position untouched
+     *
+     * @param channel the channel of the container
+     * @throws IOException in case of write issues
+     */
+    void write(FileChannel channel) throws IOException {
+        ensureReproducible();
+        Utils.writeFully(channel, ByteBuffer.wrap(toBytes(true)), 0);
+    }
+
+    /**
+     * Writes the header to the stream
+     *
+     * @param out the stream of the container
+     * @throws IOException in case of write issues
+     */
+    void write(OutputStream out) throws IOException {
+        ensureReproducible();
+        out.write(toBytes(true));
+    }
+
+    private void ensureReproducible() throws IOException {
+        if (!reproducible) {
+            throw new IOException("Container header was written by a later revision, it cannot be rewritten");
+        }
+    }
+
+    /**
+     * Gets the header as it is written, for containers published in chunks
+     *
+     * @return the header bytes
+     */
+    byte[] getBytes() {
+        return toBytes(true);
+    }
+
+    /**
+     * Gets the header as it is written but without the signature and header signature fields, which is what the
+     * header signature covers
+     *
+     * @return the signed header bytes
+     */
+    byte[] getSignedBytes() {
+        return toBytes(false);
+    }
+
+    /**
+     * Gets the signature trailer, to follow the payload of a container written to a stream
+     *
+     * @return the trailer, of the length recorded in the header
+     */
+    byte[] getTrailer() {
+        return encodeSignature();
+    }
+
+    /**
+     * Sets the signature from the trailer following the payload
+     *
+     * @param trailer the trailer, of the length recorded in the header
+     */
+    void setTrailer(byte[] trailer) {
+        signature = decodeSignature(trailer);
+    }
+
+    /**
+     * Gets the length of the signature trailer following the payload
+     *
+     * @return the length in bytes, or 0 in case the signature is in the header
+     */
+    int getTrailerLength() {
+        return signatureTrailer ? Short.BYTES + signatureCapacity : 0;
+    }
+
+    private byte[] encodeSignature() {
+        return encodeSignature(signature, signatureCapacity);
+    }
+
+    private static byte[] encodeSignature(byte[] signature, int capacity) {
+        return ByteBuffer.allocate(Short.BYTES + capacity)
+                .putShort((short) signature.length)
+                .put(signature)
+                .array();
+    }
+
+    private static byte[] decodeSignature(byte[] value) {
+        ByteBuffer field = ByteBuffer.wrap(value);
+        byte[] signature = new byte[field.getShort() & 0xFFFF];
+        field.get(signature);
+
+        return signature;
+    }
+
+    private byte[] toBytes(boolean signatures) {
+        ByteBuffer fields = ByteBuffer.allocate(MAX_FIELDS_LENGTH);
+
+        putField(fields, CONTENT_ALGORITHM, new byte[]{contentAlgorithm.getId()});
+        if (segmentSize > 0) {
+            putField(fields, SEGMENT_SIZE, ByteBuffer.allocate(Integer.BYTES).putInt(segmentSize).array());
+        }
+        putField(fields, SIGNATURE_ALGORITHM, signatureAlgorithm.getBytes(StandardCharsets.UTF_8));
+        if (suite != null) {
+            putField(fields, ASYMMETRIC_SUITE, new byte[]{suite.getId()});
+        }
+        if (keyEncryptionKey != null) {
+            putField(fields, KEY_ENCRYPTION_KEY, keyEncryptionKey);
+        }
+        putField(fields, KEY, key);
+        for (byte[] recipientKey : recipientKeys) {
+            putField(fields, RECIPIENT_KEY, recipientKey);
+        }
+        if (senderKey != null) {
+            putField(fields, SENDER_KEY, senderKey);
+        }
+        if (batchId != null) {
+            putField(fields, BATCH_ID, batchId);
+        }
+        if (compression != null) {
+            putField(fields, COMPRESSION, new byte[]{compression.getId()});
+        }
+        putField(fields, IV, iv);
+        if (signatureTrailer) {
+            putField(fields, TRAILER_LENGTH, ByteBuffer.allocate(Integer.BYTES).putInt(getTrailerLength()).array());
+        } else if (signatures) {
+            putField(fields, SIGNATURE, encodeSignature());
+        }
+        if (signatures && headerSignatureCapacity > 0) {
+            putField(fields, HEADER_SIGNATURE, encodeSignature(headerSignature, headerSignatureCapacity));
+        }
+        for (byte[] unknownField : unknownFields) {
+            fields.put(unknownField);
+        }
+
+        fields.flip();
+
+        return ByteBuffer.allocate(PREFIX_LENGTH + fields.remaining())
+                .put(MAGIC)
+                .put(VERSION)
+                .putInt(fields.remaining())
+                .put(fields)
+                .array();
+    }
+
+    private static void putField(ByteBuffer fields, byte tag, byte[] value) {
+        fields.put(tag).putShort((short) value.length).put(value);
+    }
+
+    /**
+     * Gets the room a signature by the given key may take, so it can be reserved before signing
+     */
+    private static int signatureCapacity(Key signingKey) {
+        if (signingKey instanceof RSAKey) {
+            return (((RSAKey) signingKey).getModulus().bitLength() + 7) / 8;
+        }
+
+        if (signingKey instanceof ECKey) {
+            // DER sequence of two integers, each with its tag, length and a possible leading zero byte
+            BigInteger order = ((ECKey) signingKey).getParams().getOrder();
+            return 2 * ((order.bitLength() + 7) / 8 + 3) + 3;
+        }
+
+        return DEFAULT_SIGNATURE_CAPACITY;
+    }
+
+    /**
+     * Gets the header length, which is where the payload starts
+     *
+     * @return the length in bytes
+     */
+    long getLength() {
+        return length;
+    }
+
+    ContentAlgorithm getContentAlgorithm() {
+        return contentAlgorithm;
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /**
+     * Gets the wrapped key-encryption key of the batch the container was encrypted in
+     *
+     * @return the wrapped key-encryption key, or null when the content key is wrapped with the recipient's key
+     */
+    byte[] getKeyEncryptionKey() {
+        return keyEncryptionKey;
+    }
+
+    byte[] getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the content key wrapped for a recipient, picked by the fingerprint of its certificate
+     *
+     * @param fingerprint the fingerprint of the recipient's certificate, see {@link #fingerprint}
+     * @return the recipient's wrapped key, or the key field in case no recipient key matches, as the first
+     * recipient's key is kept there
+     */
+    byte[] getKeyFor(byte[] fingerprint) {
+        for (byte[] recipientKey : recipientKeys) {
+            if (MessageDigest.isEqual(fingerprint, Arrays.copyOf(recipientKey, FINGERPRINT_LENGTH))) {
+                return Arrays.copyOfRange(recipientKey, FINGERPRINT_LENGTH, recipientKey.length);
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Adds the content key wrapped for another recipient, before the header is first written as it grows
+     *
+     * @param fingerprint the fingerprint of the recipient's certificate, see {@link #fingerprint}
+     * @param wrappedKey  the content key wrapped with the recipient's public key
+     */
+    void addRecipientKey(byte[] fingerprint, byte[] wrappedKey) {
+        if (fingerprint.length != FINGERPRINT_LENGTH) {
+            throw new IllegalArgumentException(String.format("Recipient fingerprint should be %d bytes long", FINGERPRINT_LENGTH));
+        }
+
+        if (length - PREFIX_LENGTH + recipientKeyLength(wrappedKey.length) > MAX_FIELDS_LENGTH) {
+            throw new IllegalArgumentException("Container header has no room left for another recipient's key");
+        }
+
+        recipientKeys.add(ByteBuffer.allocate(FINGERPRINT_LENGTH + wrappedKey.length).put(fingerprint).put(wrappedKey).array());
+        length = toBytes(true).length;
+    }
+
+    /**
+     * Returns the bytes a recipient key field takes in the header
+     *
+     * @param wrappedKeyLength the length of the content key wrapped for the recipient
+     */
+    static int recipientKeyLength(int wrappedKeyLength) {
+        return 1 + Short.BYTES + FINGERPRINT_LENGTH + wrappedKeyLength;
+    }
+
+    /**
+     * Gets the recipients the content key is wrapped for
+     *
+     * @return the number of recipients, 1 for content encrypted for a single one
+     */
+    int getRecipients() {
+        return 1 + recipientKeys.size();
+    }
+
+    /**
+     * Gets the fingerprint recipient keys are picked by, the SHA-256 digest of the recipient's encoded certificate
+     *
+     * @param certificate the recipient's certificate
+     * @return the fingerprint
+     * @throws CertificateEncodingException in case the certificate cannot be encoded
+     */
+    static byte[] fingerprint(Certificate certificate) throws CertificateEncodingException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded());
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the suite the content key is wrapped and the payload is signed with
+     *
+     * @return the suite, {@link AsymmetricSuite#RSA} in case the container records none
+     */
+    AsymmetricSuite getSuite() {
+        return suite != null ? suite : AsymmetricSuite.RSA;
+    }
+
+    /**
+     * Records the suite the content key is wrapped and the payload is signed with, before the header is first
+     * written as it grows. RSA is what containers that record none use, so it is left out, and RSA containers
+     * stay readable by revisions that predate suites.
+     *
+     * @param suite the suite
+     */
+    void setSuite(AsymmetricSuite suite) {
+        this.suite = suite != AsymmetricSuite.RSA ? suite : null;
+        length = toBytes(true).length;
+    }
+
+    /**
+     * Gets the content key wrapped for the encrypting side, kept by containers that may be encrypted again
+     *
+     * @return the wrapped key, or null in case only the recipient can recover the content key
+     */
+    byte[] getSenderKey() {
+        return senderKey;
+    }
+
+    /**
+     * Gets the id of the signed batch manifest the container is validated against
+     *
+     * @return the batch id, or null in case the container holds a signature of its own
+     */
+    byte[] getBatchId() {
+        return batchId;
+    }
+
+    /**
+     * Moves the container to another signed batch, for containers encrypted again in place
+     *
+     * @param batchId the id of the new batch, of the length of the current one
+     */
+    void setBatchId(byte[] batchId) {
+        if (this.batchId == null || batchId.length != this.batchId.length) {
+            throw new IllegalArgumentException("Batch id should replace one of the same length");
+        }
+
+        this.batchId = batchId;
+    }
+
+    /**
+     * Gets the codec the content is compressed with before it is encrypted
+     *
+     * @return the codec, {@link Compression#NONE} in case the content is stored as is
+     */
+    Compression getCompression() {
+        return compression != null ? compression : Compression.NONE;
+    }
+
+    /**
+     * Sets the codec the content was actually compressed with, once it is encrypted
+     *
+     * @param compression the codec, replacing the one the header was created with
+     */
+    void setCompression(Compression compression) {
+        if (this.compression == null && compression != Compression.NONE) {
+            throw new IllegalArgumentException("Compression should replace a codec the header was created with");
+        }
+
+        if (this.compression != null) {
+            this.compression = compression;
+        }
+    }
+
+    byte[] getIV() {
+        return iv;
+    }
+
+    void setIV(byte[] iv) {
+        if (iv.length != this.iv.length) {
+            throw new IllegalArgumentException(String.format("IV of %s should be %d bytes long", contentAlgorithm, this.iv.length));
+        }
+
+        this.iv = iv;
+    }
+
+    byte[] getSignature() {
+        return signature;
+    }
+
+    void setSignature(byte[] signature) {
+        if (signature.length > signatureCapacity) {
+            throw new IllegalArgumentException(String.format("Signature exceeds the %d bytes reserved for it", signatureCapacity));
+        }
+
+        this.signature = signature;
+    }
+
+    /**
+     * Reserves room for a header signature, before the header is first written as it grows
+     *
+     * @param signingKey the private key the header is signed with, sizing the header signature field
+     */
+    void reserveHeaderSignature(Key signingKey) {
+        headerSignatureCapacity = signatureCapacity(signingKey);
+        length = toBytes(true).length;
+    }
+
+    /**
+     * Gets the sender's signature over the header, see {@link #getSignedBytes()}
+     *
+     * @return the header signature, or null in case the container carries none, or one over fields this revision
+     * cannot reproduce
+     */
+    byte[] getHeaderSignature() {
+        return headerSignatureCapacity > 0 && reproducible ? headerSignature : null;
+    }
+
+    void setHeaderSignature(byte[] headerSignature) {
+        if (headerSignature.length > headerSignatureCapacity) {
+            throw new IllegalArgumentException(String.format("Header signature exceeds the %d bytes reserved for it", headerSignatureCapacity));
+        }
+
+        this.headerSignature = headerSignature;
+    }
+}
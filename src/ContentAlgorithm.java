@@ -0,0 +1,105 @@
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The content encryption algorithms an encrypted container may record, each with a stable one byte ID.
+ */
+@SuppressWarnings("WeakerAccess")
+public enum ContentAlgorithm {
+
+    AES_CBC((byte) 1, "AES/CBC/PKCS5Padding", 16),
+    AES_CTR((byte) 2, "AES/CTR/NoPadding", 16),
+    AES_GCM_CHUNKED((byte) 3, ChunkedFormat.TRANSFORMATION, ChunkedFormat.NONCE_LENGTH),
+    AES_GCM_MANIFEST((byte) 4, ManifestFormat.TRANSFORMATION, ManifestFormat.NONCE_LENGTH);
+
+    private final byte id;
+    private final String transformation;
+    private final int ivLength;
+
+    ContentAlgorithm(byte id, String transformation, int ivLength) {
+        this.id = id;
+        this.transformation = transformation;
+        this.ivLength = ivLength;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    public String getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * Gets the length of the IV, or the base nonce of segmented content
+     *
+     * @return the length in bytes
+     */
+    public int getIvLength() {
+        return ivLength;
+    }
+
+    /**
+     * Tells whether content is split to segments, with a segment size recorded along
+     *
+     * @return true for segmented content
+     */
+    public boolean isSegmented() {
+        return this == AES_GCM_CHUNKED || this == AES_GCM_MANIFEST;
+    }
+
+    /**
+     * Creates a file decryption engine for content encrypted with this algorithm
+     *
+     * @param segmentSize the plain segment size recorded with segmented content, ignored otherwise
+     * @param ioMode      the way bytes are moved between the disk and a single stream cipher
+     * @return the engine
+     */
+    public IFileDecrypt newFileDecrypt(int segmentSize, IoMode ioMode) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        if (this == AES_GCM_CHUNKED) {
+            return new ChunkedFileDecrypt(segmentSize, ForkJoinPool.commonPool());
+        }
+
+        if (this == AES_GCM_MANIFEST) {
+            return new ManifestFileDecrypt(segmentSize, ForkJoinPool.commonPool());
+        }
+
+        return new FileDecrypt(Cipher.getInstance(transformation), ioMode);
+    }
+
+    /**
+     * Finds the algorithm by its ID
+     *
+     * @param id the ID as recorded in a container
+     * @return the algorithm
+     * @throws IllegalArgumentException for unknown IDs
+     */
+    public static ContentAlgorithm forId(byte id) {
+        for (ContentAlgorithm algorithm : values()) {
+            if (algorithm.id == id) {
+                return algorithm;
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("Unknown content algorithm ID %d", id));
+    }
+
+    /**
+     * Finds the algorithm of a single stream Cipher transformation
+     *
+     * @param transformation the Cipher transformation
+     * @return the algorithm
+     * @throws IllegalArgumentException for transformations a container cannot record
+     */
+    public static ContentAlgorithm forTransformation(String transformation) {
+        for (ContentAlgorithm algorithm : values()) {
+            if (!algorithm.isSegmented() && algorithm.transformation.equalsIgnoreCase(transformation)) {
+                return algorithm;
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("Content algorithm %s cannot be recorded in a container", transformation));
+    }
+}
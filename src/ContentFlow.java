@@ -0,0 +1,72 @@
+/**
+ * The interfaces of demand-driven streams of content, for embedding encryption in asynchronous services.
+ * <p>
+ * They mirror java.util.concurrent.Flow (and the Reactive Streams specification it follows) method for method,
+ * as this code targets Java 8 where Flow is not available yet. Adapting a Flow or Reactive Streams publisher
+ * or subscriber is a matter of forwarding each call as is.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ContentFlow {
+
+    private ContentFlow() {
+    }
+
+    /**
+     * A producer of items received by subscribers, as they request them
+     *
+     * @param <T> the published item type
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+
+        /**
+         * Adds a subscriber, which is then given a subscription through {@link Subscriber#onSubscribe}
+         *
+         * @param subscriber the subscriber
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items. The calls of a subscription are never concurrent, and are made in order.
+     *
+     * @param <T> the subscribed item type
+     */
+    public interface Subscriber<T> {
+
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Links a publisher and a subscriber, carrying the subscriber's demand
+     */
+    public interface Subscription {
+
+        /**
+         * Adds to the number of items the subscriber is ready to receive
+         *
+         * @param n the number of items, positive
+         */
+        void request(long n);
+
+        /**
+         * Stops the publisher from sending further items, as soon as it can
+         */
+        void cancel();
+    }
+
+    /**
+     * A subscriber that publishes the items it transforms
+     *
+     * @param <T> the subscribed item type
+     * @param <R> the published item type
+     */
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
@@ -0,0 +1,290 @@
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encrypts or decrypts a single container as chunks flow through, without blocking: chunks are transformed
+ * on the thread delivering them, and a chunk is only requested from upstream once downstream asked for one,
+ * so a slow consumer holds back the producer instead of queueing content. Many transfers can thus share a few threads.
+ * <p>
+ * The digest and signature of the content are delivered by {@link #getResult()} once the content is complete,
+ * after the last chunk is published. Decrypted chunks are published before the signature can be verified,
+ * so they should be discarded unless the result completes normally.
+ * <p>
+ * A processor serves one subscriber, and one transfer. Created by {@link Encrypter#newEncryptProcessor} and
+ * {@link Decrypter#newDecryptProcessor}.
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class ContentProcessor implements ContentFlow.Processor<ByteBuffer, ByteBuffer> {
+
+    /**
+     * The digest of a container's plain content, and the signature it is signed with
+     */
+    public static final class Result {
+
+        private final byte[] digest;
+        private final byte[] signature;
+
+        Result(byte[] digest, byte[] signature) {
+            this.digest = digest;
+            this.signature = signature;
+        }
+
+        public byte[] getDigest() {
+            return digest;
+        }
+
+        public byte[] getSignature() {
+            return signature;
+        }
+    }
+
+    private final Queue<ByteBuffer> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    private final CompletableFuture<Result> result = new CompletableFuture<>();
+
+    private volatile ContentFlow.Subscription upstream;
+    private volatile ContentFlow.Subscriber<? super ByteBuffer> downstream;
+    private volatile boolean upstreamPending;
+    private volatile boolean finished;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+    private volatile Result resultValue;
+
+    // only touched while draining
+    private boolean terminated;
+
+    /**
+     * Transforms a chunk of the content
+     *
+     * @param chunk the chunk, read to its end
+     * @return the chunk to publish, or null in case there is nothing to publish yet
+     * @throws Exception in case the content cannot be transformed, failing the transfer
+     */
+    protected abstract ByteBuffer process(ByteBuffer chunk) throws Exception;
+
+    /**
+     * Finishes the content once every chunk is processed, calling {@link #resolve} with its digest and signature
+     *
+     * @return the last chunk to publish, or null
+     * @throws Exception in case the content cannot be finished or validated, failing the transfer
+     */
+    protected abstract ByteBuffer finish() throws Exception;
+
+    /**
+     * Sets the result, delivered once the last chunk is published
+     *
+     * @param digest    the digest of the plain content
+     * @param signature the signature of the digest
+     */
+    protected final void resolve(byte[] digest, byte[] signature) {
+        resultValue = new Result(digest, signature);
+    }
+
+    /**
+     * Gets the digest and signature of the content, completing exceptionally in case the transfer fails,
+     * the signature is invalid or the subscriber cancels
+     *
+     * @return the future result
+     */
+    public CompletableFuture<Result> getResult() {
+        return result;
+    }
+
+    @Override
+    public void subscribe(ContentFlow.Subscriber<? super ByteBuffer> subscriber) {
+        if (downstream != null) {
+            subscriber.onSubscribe(new ContentFlow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Content processor serves a single subscriber"));
+            return;
+        }
+
+        subscriber.onSubscribe(new ContentFlow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException("Requested chunks should be positive"));
+                    return;
+                }
+
+                requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+                result.completeExceptionally(new CancellationException("Content subscriber cancelled"));
+                drain();
+            }
+        });
+
+        downstream = subscriber;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(ContentFlow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+
+        upstream = subscription;
+
+        if (cancelled) {
+            subscription.cancel();
+        }
+
+        drain();
+    }
+
+    @Override
+    public void onNext(ByteBuffer chunk) {
+        if (finished || failure != null) {
+            return;
+        }
+
+        try {
+            final ByteBuffer output = process(chunk);
+
+            if (output != null && output.hasRemaining()) {
+                ready.add(output);
+            }
+
+        } catch (Exception e) {
+            cancelUpstream();
+            fail(e);
+            return;
+        }
+
+        upstreamPending = false;
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (finished || failure != null) {
+            return;
+        }
+
+        try {
+            final ByteBuffer output = finish();
+
+            if (output != null && output.hasRemaining()) {
+                ready.add(output);
+            }
+
+        } catch (Exception e) {
+            fail(e);
+            return;
+        }
+
+        finished = true;
+        drain();
+    }
+
+    private void fail(Throwable throwable) {
+        if (failure == null) {
+            failure = throwable;
+        }
+
+        drain();
+    }
+
+    private void cancelUpstream() {
+        final ContentFlow.Subscription subscription = upstream;
+
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * Publishes what downstream asked for and asks upstream for the next chunk, on one thread at a time.
+     * Calls made while another thread drains are picked up by that thread before it leaves.
+     */
+    private void drain() {
+        if (work.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+
+        do {
+            drainOnce();
+            missed = work.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainOnce() {
+        final ContentFlow.Subscriber<? super ByteBuffer> subscriber = downstream;
+
+        if (terminated || subscriber == null) {
+            return;
+        }
+
+        if (cancelled) {
+            terminated = true;
+            ready.clear();
+            return;
+        }
+
+        final Throwable e = failure;
+
+        if (e != null) {
+            terminated = true;
+            ready.clear();
+            subscriber.onError(e);
+            result.completeExceptionally(e);
+            return;
+        }
+
+        while (requested.get() > 0 && !cancelled) {
+            final ByteBuffer chunk = ready.poll();
+
+            if (chunk == null) {
+                break;
+            }
+
+            if (requested.get() != Long.MAX_VALUE) {
+                requested.decrementAndGet();
+            }
+
+            subscriber.onNext(chunk);
+        }
+
+        if (finished && ready.isEmpty() && !cancelled) {
+            terminated = true;
+            subscriber.onComplete();
+            result.complete(resultValue);
+            return;
+        }
+
+        final ContentFlow.Subscription subscription = upstream;
+
+        if (!finished && ready.isEmpty() && requested.get() > 0 && subscription != null && !upstreamPending) {
+            upstreamPending = true;
+            subscription.request(1);
+        }
+    }
+}
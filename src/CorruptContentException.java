@@ -0,0 +1,19 @@
+import java.io.IOException;
+
+/**
+ * Thrown when encrypted content fails authentication or is malformed, such as truncated, reordered or tampered
+ * segments. Unlike other I/O failures, reading the content again cannot succeed, so nothing decrypted from it is kept.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CorruptContentException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CorruptContentException(String message) {
+        super(message);
+    }
+
+    public CorruptContentException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
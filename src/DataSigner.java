@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.security.*;
 
 @SuppressWarnings("WeakerAccess")
@@ -55,6 +57,21 @@ public class DataSigner implements IDataSigner {
         return sign(data.getBytes(), privateKey);
     }
 
+    /**
+     * Signs the digest of a file with the given private key, such as the root of a {@link MerkleStreamDigester}
+     *
+     * @param digester   the digester the file is digested with
+     * @param filePath   the file to be signed
+     * @param privateKey the privateKey to be used when signing
+     * @return the signature as byte array
+     * @throws IOException         for file IO issues
+     * @throws InvalidKeyException for privateKey issues
+     * @throws SignatureException  for Signing issues
+     */
+    public byte[] sign(IStreamDigester digester, Path filePath, PrivateKey privateKey) throws IOException, InvalidKeyException, SignatureException {
+        return sign(digester.digestStream(filePath), privateKey);
+    }
+
     /**
      * Verifies the data's signature given a public key
      *
@@ -86,4 +103,20 @@ public class DataSigner implements IDataSigner {
     public boolean verify(String data, byte[] signatureHash, PublicKey publicKey) throws SignatureException, InvalidKeyException {
         return verify(data.getBytes(), signatureHash, publicKey);
     }
+
+    /**
+     * Verifies the signature of a file's digest given a public key
+     *
+     * @param digester      the digester the file was digested with when signed
+     * @param filePath      the file to be verified
+     * @param signatureHash the signature of the file's digest
+     * @param publicKey     the public key to verify with
+     * @return true if the signatureHash matches the signature of the file's digest
+     * @throws IOException         for file IO issues
+     * @throws InvalidKeyException for publicKey issues
+     * @throws SignatureException  for Signing issues
+     */
+    public boolean verify(IStreamDigester digester, Path filePath, byte[] signatureHash, PublicKey publicKey) throws IOException, InvalidKeyException, SignatureException {
+        return verify(digester.digestStream(filePath), signatureHash, publicKey);
+    }
 }
@@ -5,29 +5,71 @@ import com.google.gson.reflect.TypeToken;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.*;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @SuppressWarnings("WeakerAccess")
 public class Decrypter {
 
+    /**
+     * Creates the file decryption engine for content encrypted with the given algorithm, once per thread and algorithm
+     */
+    public interface FileDecryptFactory {
+        IFileDecrypt create(ContentAlgorithm algorithm, int segmentSize) throws GeneralSecurityException;
+    }
+
+    /**
+     * Validates the digest of decrypted content, against a signature or a signed batch manifest
+     */
+    private interface DigestValidator {
+        void validate(byte[] fileDigest) throws GeneralSecurityException;
+    }
+
+    private static final String PARTIAL_FILE_TEMPLATE = "%s.part";
+    private static final String LEGACY_CONFIG_FILE_TEMPLATE = "%s-config.json";
+    private static final int MAX_KEY_ENCRYPTION_KEYS = 16;
     private static final java.util.Base64.Decoder Base64 = java.util.Base64.getDecoder();
 
-    private final KeyStore keystore;
-    private final Cipher asymmetricCipher;
-    private final IFileDecrypt fileDecrypt;
-    private final IStreamDigester streamDigester;
-    private final IDataSigner dataSigner;
+    private final ICryptoProvider cryptoProvider;
+    private final FileDecryptFactory fileDecryptFactory;
+    private final ContentAlgorithm legacyAlgorithm;
+    private final ThreadLocal<Map<String, IFileDecrypt>> fileDecrypts = ThreadLocal.withInitial(HashMap::new);
+    private final Map<ByteBuffer, KeyEncryptionKey> keyEncryptionKeys = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, BatchManifest> batchManifests = new ConcurrentHashMap<>();
     private final Gson gson;
 
-    private Key myPrivateKey;
-    private Certificate senderCertificate;
+    private volatile Key myPrivateKey;
+    private volatile byte[] myFingerprint;
+    private volatile SessionKeyCache sessionKeyCache;
+    private volatile Certificate senderCertificate;
+    private volatile long checkpointInterval;
+    private volatile Metrics metrics = Metrics.getDefault();
+    private volatile KeyResolver keyResolver;
 
     /**
      * Initializes a new instance of Decrypter
@@ -44,11 +86,59 @@ public class Decrypter {
                      MessageDigest messageDigest,
                      Signature signature) {
 
-        this.keystore = keystore;
-        this.asymmetricCipher = asymmetricCipher;
-        this.fileDecrypt = new FileDecrypt(symmetricCipher);
-        this.streamDigester = new StreamDigester(messageDigest);
-        this.dataSigner = new DataSigner(signature);
+        this(keystore,
+                new FileDecrypt(symmetricCipher),
+                asymmetricCipher,
+                messageDigest,
+                signature);
+    }
+
+    /**
+     * Initializes a new instance of Decrypter with a file decryption engine of your choice
+     *
+     * @param keystore         a loaded keystore
+     * @param fileDecrypt      the file decryption engine, used for every file regardless of the algorithm it records
+     * @param asymmetricCipher a Cipher instance
+     * @param messageDigest    a MessageDigest instance
+     * @param signature        a Signature instance
+     */
+    public Decrypter(KeyStore keystore,
+                     IFileDecrypt fileDecrypt,
+                     Cipher asymmetricCipher,
+                     MessageDigest messageDigest,
+                     Signature signature) {
+
+        this(keystore,
+                new SingleCryptoProvider(null, asymmetricCipher, messageDigest, signature, null, null, 0),
+                () -> fileDecrypt);
+    }
+
+    /**
+     * Initializes a new instance of Decrypter that is safe for concurrent use
+     * as long as the crypto provider hands every thread instances of its own.
+     *
+     * @param keystore           a loaded keystore
+     * @param cryptoProvider     the provider of crypto instances
+     * @param fileDecryptFactory creates the file decryption engine of every thread, used for every file
+     */
+    public Decrypter(KeyStore keystore, ICryptoProvider cryptoProvider, Supplier<IFileDecrypt> fileDecryptFactory) {
+        this(keystore, cryptoProvider, (algorithm, segmentSize) -> fileDecryptFactory.get(), null);
+    }
+
+    /**
+     * Initializes a new instance of Decrypter that picks the file decryption engine recorded by every container.
+     * Safe for concurrent use as long as the crypto provider hands every thread instances of its own.
+     *
+     * @param keystore           a loaded keystore
+     * @param cryptoProvider     the provider of crypto instances
+     * @param fileDecryptFactory creates the file decryption engines of every thread
+     * @param legacyAlgorithm    the algorithm of files encrypted with a JSON config file, which does not record it
+     */
+    public Decrypter(KeyStore keystore, ICryptoProvider cryptoProvider, FileDecryptFactory fileDecryptFactory, ContentAlgorithm legacyAlgorithm) {
+        this.cryptoProvider = cryptoProvider;
+        this.fileDecryptFactory = fileDecryptFactory;
+        this.keyResolver = new KeyResolver(keystore);
+        this.legacyAlgorithm = legacyAlgorithm;
         this.gson = new GsonBuilder().disableHtmlEscaping().create();
     }
 
@@ -62,58 +152,599 @@ public class Decrypter {
      * @throws KeyStoreException for bad private key password
      */
     public void initialize(String privateKeyAlias, String privateKeyPassword, String recipientCertificateAlias) throws KeyStoreException {
-        System.out.print("Initializing decrypter: ...");
+        metrics.print("Initializing decrypter: ...");
 
-        if (!keystore.isKeyEntry(privateKeyAlias)) {
-            throw new KeyStoreException("private key alias not found in keystore");
-        }
+        final KeyResolver resolver = keyResolver;
+        final Key privateKey = resolver.getPrivateKey(privateKeyAlias, privateKeyPassword);
 
-        if (!keystore.isCertificateEntry(recipientCertificateAlias)) {
+        if (!resolver.isCertificateEntry(recipientCertificateAlias)) {
             throw new KeyStoreException("recipient's certificate alias not found in keystore");
         }
 
         try {
-            myPrivateKey = keystore.getKey(privateKeyAlias, privateKeyPassword.toCharArray());
+            myFingerprint = ContainerHeader.fingerprint(resolver.getCertificate(privateKeyAlias));
+
+        } catch (CertificateEncodingException e) {
+            throw new KeyStoreException(String.format("%s certificate cannot be encoded", privateKeyAlias), e);
+        }
+
+        myPrivateKey = privateKey;
 
-        } catch (NoSuchAlgorithmException | UnrecoverableKeyException e) {
-            throw new KeyStoreException("Bad private key password");
+        senderCertificate = resolver.getCertificate(recipientCertificateAlias);
+
+        metrics.println("DONE");
+    }
+
+    /**
+     * Makes files decrypted by a {@link ChunkedFileDecrypt} engine resumable: progress on the partial file is
+     * checkpointed (see {@link Checkpoint}), and decrypting a file again after an interrupted run continues from
+     * its last checkpoint. The partial file and its checkpoint are kept when decryption fails on IO, and removed
+     * once the file is decrypted or fails validation.
+     *
+     * @param checkpointInterval the plain bytes to decrypt between checkpoints, or 0 to disable checkpoints
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Sets the metrics the stages of every file are recorded to, and its progress printed with
+     *
+     * @param metrics the metrics, {@link Metrics#getDefault()} unless set
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the resolver private keys and certificates are looked up with on {@link #initialize}, such as one shared
+     * by the decrypters of other aliases so each key is unlocked once
+     *
+     * @param keyResolver the resolver, one of this decrypter's own keystore unless set
+     */
+    public void setKeyResolver(KeyResolver keyResolver) {
+        this.keyResolver = keyResolver;
+    }
+
+    /**
+     * Keeps the content keys and IVs unwrapped with our private key, so decrypting the same containers
+     * again skips the private key operations
+     *
+     * @param sessionKeyCache the cache, of this decrypter's private key only, or null to unwrap every time
+     */
+    public void setSessionKeyCache(SessionKeyCache sessionKeyCache) {
+        this.sessionKeyCache = sessionKeyCache;
+    }
+
+    /**
+     * Verifies the signature of a batch manifest once, so the containers it records are validated by comparing
+     * their digest against it instead of verifying a signature of their own (see {@link Encrypter#startSignedBatch})
+     *
+     * @param manifestFile the path to the batch manifest, containers are looked up relative to its directory
+     * @return the count of containers the manifest records
+     * @throws IOException        in case of read issues or a malformed manifest
+     * @throws SignatureException in case the manifest's signature is invalid
+     */
+    public int loadBatchManifest(Path manifestFile) throws IOException, GeneralSecurityException {
+        metrics.print("Verifying batch manifest: %s\t...", manifestFile.getFileName());
+
+        final BatchManifest manifest = BatchManifest.read(manifestFile);
+        final Signature signature = cryptoProvider.signature();
+
+        if (!signature.getAlgorithm().equalsIgnoreCase(manifest.getSignatureAlgorithm())) {
+            throw new SignatureException(String.format("Batch manifest is signed with %s", manifest.getSignatureAlgorithm()));
         }
 
-        senderCertificate = keystore.getCertificate(recipientCertificateAlias);
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.VERIFY)) {
+            if (!manifest.verify(new DataSigner(signature), senderCertificate.getPublicKey())) {
+                throw new SignatureException("Batch manifest's signature is invalid");
+            }
+
+            timer.stop();
+        }
+
+        batchManifests.put(ByteBuffer.wrap(manifest.getId()), manifest);
+
+        metrics.println("DONE (%d files)", manifest.size());
 
-        System.out.println("DONE");
+        return manifest.size();
     }
 
     /**
-     * Decrypts the file and validates its completeness
+     * Decrypts the file and validates its completeness, reading a JSON config file
+     * next to it in case the file is not a container
      *
      * @param encryptedFile the path to the encrypted file
-     * @param configFile    the path to the config file
+     * @param output        the path to the decrypted file
+     */
+    public void decryptAndValidate(Path encryptedFile, Path output) throws IOException, GeneralSecurityException {
+        decryptAndValidate(encryptedFile, Paths.get(String.format(LEGACY_CONFIG_FILE_TEMPLATE, encryptedFile.toAbsolutePath())), output);
+    }
+
+    /**
+     * Decrypts the file and validates its completeness.
+     * The plain content is written to a partial file next to the output, and moved into place
+     * only once its signature is validated.
+     *
+     * @param encryptedFile the path to the encrypted file, either a container or encrypted content alone
+     * @param configFile    the path to the JSON config file, only read in case the file is not a container, may be null
+     * @param output        the path to the decrypted file
+     */
+    public void decryptAndValidate(Path encryptedFile, Path configFile, Path output) throws IOException, GeneralSecurityException {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.FILE_DECRYPT)) {
+            decryptFile(encryptedFile, configFile, output);
+            timer.stop(Files.size(output));
+        }
+    }
+
+    /**
+     * Validates the file's completeness without writing its plain content anywhere, reading a JSON config file
+     * next to it in case the file is not a container
+     *
+     * @param encryptedFile the path to the encrypted file
+     */
+    public void validate(Path encryptedFile) throws IOException, GeneralSecurityException {
+        validate(encryptedFile, Paths.get(String.format(LEGACY_CONFIG_FILE_TEMPLATE, encryptedFile.toAbsolutePath())));
+    }
+
+    /**
+     * Validates the file's completeness without writing its plain content anywhere:
+     * the content is decrypted only to be digested, and discarded as it is.
+     *
+     * @param encryptedFile the path to the encrypted file, either a container or encrypted content alone
+     * @param configFile    the path to the JSON config file, only read in case the file is not a container, may be null
+     */
+    public void validate(Path encryptedFile, Path configFile) throws IOException, GeneralSecurityException {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.FILE_DECRYPT)) {
+            decryptFile(encryptedFile, configFile, null);
+            timer.stop(Files.size(encryptedFile));
+        }
+    }
+
+    /**
+     * Decrypts the file into the output, or only validates it in case the output is null
+     */
+    private void decryptFile(Path encryptedFile, Path configFile, Path output) throws IOException, GeneralSecurityException {
+        metrics.println("Decrypting and verifying signature of file: %s", encryptedFile.getFileName());
+
+        if (output != null) {
+            Utils.ensurePathAvailable(output);
+        }
+
+        Utils.ensurePathReadable(encryptedFile);
+
+        try (FileChannel source = FileChannel.open(encryptedFile, StandardOpenOption.READ)) {
+            final ContainerHeader header = ContainerHeader.read(source);
+
+            if (header != null) {
+                decryptContainer(encryptedFile, source, header, output);
+            } else if (configFile == null) {
+                throw new IOException(String.format("%s is not an encrypted container", encryptedFile.getFileName()));
+            } else {
+                decryptLegacy(encryptedFile, source, deserializeConfigFile(configFile), output);
+            }
+        }
+
+        metrics.println("File %s decrypted and validated successfully", encryptedFile.getFileName());
+    }
+
+    /**
+     * Decrypts a container read from a stream into another stream and validates its completeness,
+     * in a single pass and without temporary files. Neither stream is closed.
+     * <p>
+     * The plain content is written as it is decrypted, before the signature can be validated,
+     * so whatever was written must be discarded in case an exception is thrown.
+     *
+     * @param source the stream of the container, read to its end
+     * @param output the stream to write the plain content to
+     */
+    public void decryptAndValidate(InputStream source, OutputStream output) throws IOException, GeneralSecurityException {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.FILE_DECRYPT)) {
+            decryptStream(source, output);
+            timer.stop();
+        }
+    }
+
+    private void decryptStream(InputStream source, OutputStream output) throws IOException, GeneralSecurityException {
+        metrics.println("Decrypting and verifying signature of stream");
+
+        final ContainerHeader header = ContainerHeader.read(source);
+
+        if (header.getBatchId() != null) {
+            throw new SignatureException("Stream is validated against a batch manifest, it can only be decrypted from a file");
+        }
+
+        final Signature signature = cryptoProvider.signature();
+        final Key key = contentKeyFor(header, signature);
+        final IFileDecrypt fileDecrypt = fileDecryptFor(header.getContentAlgorithm(), header.getSegmentSize(), header.getCompression());
+        final byte[] fileDigest;
+
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.DECRYPT)) {
+            if (header.getTrailerLength() > 0) {
+                final TrailerInputStream payload = new TrailerInputStream(source, header.getTrailerLength());
+
+                fileDigest = fileDecrypt.decrypt(payload, output, key, header.getIV(), cryptoProvider.messageDigest());
+                header.setTrailer(payload.getTrailer());
+
+            } else {
+                fileDigest = fileDecrypt.decrypt(source, output, key, header.getIV(), cryptoProvider.messageDigest());
+            }
+
+            output.flush();
+            timer.stop();
+        }
+
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.VERIFY)) {
+            if (!new DataSigner(signature).verify(fileDigest, header.getSignature(), senderCertificate.getPublicKey())) {
+                throw new SignatureException("Stream's content signature is invalid");
+            }
+
+            timer.stop();
+        }
+
+        metrics.println("Stream decrypted and validated successfully");
+    }
+
+    /**
+     * Decrypts a container read from a channel into another channel and validates its completeness.
+     * Neither channel is closed, and whatever was written must be discarded in case an exception is thrown.
+     *
+     * @param source the channel of the container, read to its end
+     * @param output the channel to write the plain content to
+     */
+    public void decryptAndValidate(ReadableByteChannel source, WritableByteChannel output) throws IOException, GeneralSecurityException {
+        decryptAndValidate(Channels.newInputStream(source), Channels.newOutputStream(output));
+    }
+
+    /**
+     * Creates a processor decrypting the chunks of a container it subscribes to, as written by
+     * {@link Encrypter#encryptAndSign(InputStream, OutputStream)} or {@link Encrypter#newEncryptProcessor},
+     * and publishing the plain content as chunks. The result completes once the signature is validated,
+     * the chunks published before that must be discarded in case it completes exceptionally.
+     * Each processor decrypts a single container, and never blocks.
+     *
+     * @return the processor, to be subscribed to the container's chunks
+     */
+    public ContentProcessor newDecryptProcessor() {
+        return new DecryptProcessor();
+    }
+
+    /**
+     * Opens a container of chunked content for random access: reads decrypt and authenticate only the segments
+     * covering them, so any byte range is available without decrypting the whole file.
+     * <p>
+     * The sender is authenticated before the channel is handed out. Containers encrypted for us alone carry the
+     * sender's signature over their header, binding the content key every segment is authenticated under, so only
+     * the header is verified. Any other container, one whose key other recipients or a batch also hold, or one
+     * written before headers were signed, has its whole content validated against its signature first.
+     *
+     * @param encryptedFile the path to a container encrypted with {@link ContentAlgorithm#AES_GCM_CHUNKED}
+     * @return a read-only channel over the plain content, to be closed by the caller
+     */
+    public SeekableByteChannel openSeekable(Path encryptedFile) throws IOException, GeneralSecurityException {
+        Utils.ensurePathReadable(encryptedFile);
+        final FileChannel source = FileChannel.open(encryptedFile, StandardOpenOption.READ);
+
+        try {
+            final ContainerHeader header = ContainerHeader.read(source);
+
+            if (header == null || header.getContentAlgorithm() != ContentAlgorithm.AES_GCM_CHUNKED) {
+                throw new IOException(String.format("%s is not a container of chunked content, it can only be decrypted whole", encryptedFile.getFileName()));
+            }
+
+            final Signature signature = cryptoProvider.signature();
+            final Key key = contentKeyFor(header, signature);
+
+            if (header.getHeaderSignature() != null && header.getRecipients() == 1 && header.getKeyEncryptionKey() == null && header.getBatchId() == null) {
+                try (Metrics.Timer timer = metrics.time(Metrics.Stage.VERIFY)) {
+                    if (!new DataSigner(signature).verify(header.getSignedBytes(), header.getHeaderSignature(), senderCertificate.getPublicKey())) {
+                        throw new SignatureException("File's header signature is invalid");
+                    }
+
+                    timer.stop();
+                }
+
+            } else {
+                // anyone else holding the content key could have sealed segments under a genuine header
+                decryptContainer(encryptedFile, source, header, signature, key, null);
+            }
+
+            final long payloadLength = source.size() - header.getLength() - header.getTrailerLength();
+
+            return new ChunkedSeekableChannel(source, header.getLength(), payloadLength, header.getSegmentSize(), key, header.getIV());
+
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Decrypts a byte range of a container of chunked content, reading only the segments covering it once the
+     * sender is authenticated, see {@link #openSeekable}
+     *
+     * @param encryptedFile the path to a container encrypted with {@link ContentAlgorithm#AES_GCM_CHUNKED}
+     * @param position      the plain position the range starts at
+     * @param length        the range length
+     * @return the plain range, shorter than length in case the content ends first
+     */
+    public byte[] decryptRange(Path encryptedFile, long position, int length) throws IOException, GeneralSecurityException {
+        try (SeekableByteChannel channel = openSeekable(encryptedFile)) {
+            final ByteBuffer range = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - position)));
+            channel.position(position);
+
+            while (range.hasRemaining()) {
+                if (channel.read(range) < 0) {
+                    break;
+                }
+            }
+
+            return range.array();
+        }
+    }
+
+    private void decryptContainer(Path encryptedFile, FileChannel source, ContainerHeader header, Path output) throws IOException, GeneralSecurityException {
+        final Signature signature = cryptoProvider.signature();
+
+        decryptContainer(encryptedFile, source, header, signature, contentKeyFor(header, signature), output);
+    }
+
+    private void decryptContainer(Path encryptedFile, FileChannel source, ContainerHeader header, Signature signature, Key key, Path output) throws IOException, GeneralSecurityException {
+        final long payloadLength = source.size() - header.getLength() - header.getTrailerLength();
+
+        if (payloadLength < 0) {
+            throw new IOException("Container is truncated");
+        }
+
+        if (header.getTrailerLength() > 0) {
+            // written to a stream, so the signature follows the payload
+            final ByteBuffer trailer = ByteBuffer.allocate(header.getTrailerLength());
+            Utils.readFully(source, trailer, source.size() - header.getTrailerLength());
+            header.setTrailer(trailer.array());
+        }
+
+        decryptAndVerify(encryptedFile, source, header.getLength(), payloadLength,
+                fileDecryptFor(header.getContentAlgorithm(), header.getSegmentSize(), header.getCompression()),
+                key, header.getIV(), validatorFor(encryptedFile, header, signature), output);
+    }
+
+    /**
+     * Validates a container's digest against its own signature, or against its entry in a loaded batch manifest
+     */
+    private DigestValidator validatorFor(Path encryptedFile, ContainerHeader header, Signature signature) throws SignatureException {
+        if (header.getBatchId() == null) {
+            return signatureValidator(new DataSigner(signature), header.getSignature());
+        }
+
+        final BatchManifest manifest = batchManifests.get(ByteBuffer.wrap(header.getBatchId()));
+
+        if (manifest == null) {
+            throw new SignatureException(String.format("%s is validated against a batch manifest that was not loaded", encryptedFile.getFileName()));
+        }
+
+        return fileDigest -> {
+            if (!manifest.matches(encryptedFile, fileDigest)) {
+                throw new SignatureException("File's content does not match its batch manifest entry");
+            }
+        };
+    }
+
+    private DigestValidator signatureValidator(IDataSigner dataSigner, byte[] providedSignature) {
+        return fileDigest -> {
+            try (Metrics.Timer timer = metrics.time(Metrics.Stage.VERIFY)) {
+                if (!dataSigner.verify(fileDigest, providedSignature, senderCertificate.getPublicKey())) {
+                    throw new SignatureException("File's content signature is invalid");
+                }
+
+                timer.stop();
+            }
+        };
+    }
+
+    /**
+     * Recovers the symmetric key of a container, once it is known to be signed the way we validate,
+     * with the suite the container records
+     */
+    private Key contentKeyFor(ContainerHeader header, Signature signature) throws GeneralSecurityException {
+        final AsymmetricSuite suite = header.getSuite();
+
+        if (!signature.getAlgorithm().equalsIgnoreCase(header.getSignatureAlgorithm())) {
+            throw new SignatureException(String.format("File is signed with %s", header.getSignatureAlgorithm()));
+        }
+
+        if (!suite.getKeyAlgorithm().equalsIgnoreCase(myPrivateKey.getAlgorithm())) {
+            throw new InvalidKeyException(String.format("File's key is wrapped for %s keys", suite.getKeyAlgorithm()));
+        }
+
+        final IKeyWrapper keyWrapper = suite.newKeyWrapper(cryptoProvider, null);
+
+        if (header.getKeyEncryptionKey() != null) {
+            // unwrap symmetric key with the batch's key-encryption key
+            return keyEncryptionKeyFor(header.getKeyEncryptionKey(), keyWrapper).unwrap(header.getKey());
+        }
+
+        // decrypt symmetric key, wrapped for us among the container's recipients
+        return secretKey(unwrapSecret(header.getKeyFor(myFingerprint), keyWrapper));
+    }
+
+    /**
+     * Recovers a secret wrapped with our public key, from the session key cache in case one is set
      */
-    public void decryptAndValidate(Path encryptedFile, Path configFile, Path output) throws IOException, InvalidAlgorithmParameterException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException, SignatureException {
-        System.out.println("Decrypting and verifying signature of file: " + encryptedFile.getFileName());
+    private byte[] unwrapSecret(byte[] wrapped, IKeyWrapper keyWrapper) throws GeneralSecurityException {
+        final SessionKeyCache cache = sessionKeyCache;
+
+        if (cache != null) {
+            return cache.unwrap(wrapped, blob -> privateDecrypt(blob, keyWrapper));
+        }
+
+        return privateDecrypt(wrapped, keyWrapper);
+    }
+
+    private byte[] privateDecrypt(byte[] wrapped, IKeyWrapper keyWrapper) throws GeneralSecurityException {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.KEY_UNWRAP)) {
+            final byte[] secret = keyWrapper.unwrap(wrapped, myPrivateKey);
+            timer.stop();
+
+            return secret;
+        }
+    }
 
-        final Map<String, String> config = deserializeConfigFile(configFile);
+    /**
+     * Turns unwrapped key bytes into a key, wiping them as the key keeps a copy
+     */
+    private static Key secretKey(byte[] secret) {
+        final Key key = new SecretKeySpec(secret, "AES");
+        Arrays.fill(secret, (byte) 0);
 
-        // decrypt symmetric key and IV
-        asymmetricCipher.init(Cipher.DECRYPT_MODE, myPrivateKey);
-        byte[] iv = asymmetricCipher.doFinal(Base64.decode(config.get("iv")));
-        byte[] decryptedSecretKey = asymmetricCipher.doFinal(Base64.decode(config.get("key")));
-        Key key = new SecretKeySpec(decryptedSecretKey, "AES");
+        return key;
+    }
 
-        // decrypt file
-        fileDecrypt.decrypt(encryptedFile, output, key, iv);
+    private void decryptLegacy(Path encryptedFile, FileChannel source, Map<String, String> config, Path output) throws IOException, GeneralSecurityException {
+        // files with a JSON config predate the other suites
+        final IKeyWrapper keyWrapper = AsymmetricSuite.RSA.newKeyWrapper(cryptoProvider, null);
+        final byte[] iv;
+        final Key key;
 
-        // validate file signature
-        byte[] fileDigest = streamDigester.digestStream(output);
-        byte[] providedSignature = Base64.decode(config.get("sig"));
-        boolean fileDigestValid = dataSigner.verify(fileDigest, providedSignature, senderCertificate.getPublicKey());
+        if (config.containsKey("kek")) {
+            // unwrap symmetric key with the batch's key-encryption key, the IV is kept plain
+            key = keyEncryptionKeyFor(Base64.decode(config.get("kek")), keyWrapper).unwrap(Base64.decode(config.get("key")));
+            iv = Base64.decode(config.get("iv"));
 
-        if (!fileDigestValid) {
-            throw new SignatureException("File's content signature is invalid");
+        } else {
+            // decrypt symmetric key and IV
+            iv = unwrapSecret(Base64.decode(config.get("iv")), keyWrapper);
+            key = secretKey(unwrapSecret(Base64.decode(config.get("key")), keyWrapper));
         }
 
-        System.out.println("File " + encryptedFile.getFileName() + " decrypted and validated successfully");
+        decryptAndVerify(encryptedFile, source, 0, source.size(),
+                fileDecryptFor(legacyAlgorithm, ChunkedFormat.DEFAULT_SEGMENT_SIZE, Compression.NONE),
+                key, iv, signatureValidator(new DataSigner(cryptoProvider.signature()), Base64.decode(config.get("sig"))), output);
+    }
+
+    /**
+     * Decrypts the encrypted content into a partial file, and moves it into place once its digest is validated.
+     * In case the output is null, the content is only digested and validated.
+     */
+    private void decryptAndVerify(Path encryptedFile, FileChannel source, long position, long length, IFileDecrypt fileDecrypt, Key key, byte[] iv,
+                                  DigestValidator digestValidator, Path output) throws IOException, GeneralSecurityException {
+
+        if (output == null) {
+            final byte[] fileDigest;
+
+            try (Metrics.Timer timer = metrics.time(Metrics.Stage.DECRYPT)) {
+                fileDigest = fileDecrypt.digest(source, position, length, key, iv, cryptoProvider.messageDigest());
+                timer.stop(length);
+            }
+
+            digestValidator.validate(fileDigest);
+            return;
+        }
+
+        final Path partialOutput = Paths.get(String.format(PARTIAL_FILE_TEMPLATE, output.toAbsolutePath()));
+        final long interval = checkpointInterval;
+        final boolean checkpointed = interval > 0 && fileDecrypt instanceof ChunkedFileDecrypt;
+        Checkpoint checkpoint = checkpointed ? Checkpoint.resume(partialOutput, encryptedFile, interval) : null;
+
+        if (checkpoint != null) {
+            metrics.println("Resuming from checkpoint after %d segments", checkpoint.getSegments());
+
+        } else {
+            // a partial file without a checkpoint is only left behind by an interrupted run
+            Files.deleteIfExists(partialOutput);
+
+            if (checkpointed) {
+                checkpoint = Checkpoint.start(partialOutput, encryptedFile, interval, null);
+            }
+        }
+
+        boolean resumable = false;
+
+        try {
+            // decrypt file and digest its plain content in the same pass
+            final byte[] fileDigest;
+
+            try (Metrics.Timer timer = metrics.time(Metrics.Stage.DECRYPT)) {
+                fileDigest = checkpoint != null ?
+                        ((ChunkedFileDecrypt) fileDecrypt).decrypt(source, position, length, partialOutput, key, iv, cryptoProvider.messageDigest(), checkpoint) :
+                        fileDecrypt.decrypt(source, position, length, partialOutput, key, iv, cryptoProvider.messageDigest());
+                timer.stop(Files.size(partialOutput));
+            }
+
+            // validate file signature
+            digestValidator.validate(fileDigest);
+
+            Files.move(partialOutput, output, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (CorruptContentException e) {
+            // content that failed authentication never succeeds on the next run, so nothing of it is kept
+            throw e;
+
+        } catch (IOException e) {
+            // keep the progress of a checkpointed run for the next one
+            resumable = checkpoint != null;
+            throw e;
+
+        } finally {
+            if (!resumable) {
+                Files.deleteIfExists(partialOutput);
+
+                if (checkpoint != null) {
+                    checkpoint.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the file decryption engine of the calling thread for the given algorithm, decompressing with the given codec
+     */
+    private IFileDecrypt fileDecryptFor(ContentAlgorithm algorithm, int segmentSize, Compression compression) throws GeneralSecurityException {
+        final Map<String, IFileDecrypt> engines = fileDecrypts.get();
+        final String engineKey = String.format("%s/%d", algorithm, segmentSize);
+
+        IFileDecrypt fileDecrypt = engines.get(engineKey);
+
+        if (fileDecrypt == null) {
+            fileDecrypt = fileDecryptFactory.create(algorithm, segmentSize);
+            engines.put(engineKey, fileDecrypt);
+        }
+
+        if (fileDecrypt instanceof FileDecrypt) {
+            ((FileDecrypt) fileDecrypt).setCompression(compression);
+
+        } else if (compression != Compression.NONE) {
+            throw new NoSuchAlgorithmException(String.format("%s content compressed with %s is not supported", algorithm, compression.getName()));
+        }
+
+        return fileDecrypt;
+    }
+
+    /**
+     * Gets the key-encryption key of a batch, unwrapping it with our private key only the first time it is seen
+     *
+     * @param wrappedKey the wrapped key-encryption key
+     * @param keyWrapper the key wrapper of the container's suite
+     * @return the key-encryption key
+     */
+    private KeyEncryptionKey keyEncryptionKeyFor(byte[] wrappedKey, IKeyWrapper keyWrapper) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        final ByteBuffer cacheKey = ByteBuffer.wrap(wrappedKey.clone());
+        KeyEncryptionKey keyEncryptionKey = keyEncryptionKeys.get(cacheKey);
+
+        if (keyEncryptionKey == null) {
+            try (Metrics.Timer timer = metrics.time(Metrics.Stage.KEY_UNWRAP)) {
+                keyEncryptionKey = KeyEncryptionKey.unwrap(wrappedKey, keyWrapper, myPrivateKey);
+                timer.stop();
+            }
+
+            // batches are few and short lived, so simply start over once too many were seen
+            if (keyEncryptionKeys.size() >= MAX_KEY_ENCRYPTION_KEYS) {
+                keyEncryptionKeys.clear();
+            }
+
+            keyEncryptionKeys.put(cacheKey, keyEncryptionKey);
+        }
+
+        return keyEncryptionKey;
     }
 
     /**
@@ -130,4 +761,142 @@ public class Decrypter {
 
         return gson.fromJson(configJson, deserializationType);
     }
+
+    /**
+     * Decrypts the chunks of a single container with instances of its own, as its chunks may arrive on any thread.
+     * The header is gathered from the first chunks, and the signature trailer is held back from the cipher
+     * until the content ends.
+     */
+    private class DecryptProcessor extends ContentProcessor {
+
+        private ByteBuffer headerBuffer = ByteBuffer.allocate(ContainerHeader.PREFIX_LENGTH);
+        private ContainerHeader header;
+        private Cipher cipher;
+        private MessageDigest digest;
+        private ByteBuffer trailer;
+
+        @Override
+        protected ByteBuffer process(ByteBuffer chunk) throws IOException, GeneralSecurityException {
+            if (header == null && !readHeader(chunk)) {
+                return null;
+            }
+
+            // hold back what may be the trailer, deciphering only what precedes it
+            final int release = trailer.position() + chunk.remaining() - trailer.capacity();
+
+            if (release <= 0) {
+                trailer.put(chunk);
+                return null;
+            }
+
+            final ByteBuffer output = ByteBuffer.allocate(cipher.getOutputSize(release));
+            final int fromTrailer = Math.min(release, trailer.position());
+
+            trailer.flip();
+            update(slice(trailer, fromTrailer), output);
+            trailer.compact();
+
+            update(slice(chunk, release - fromTrailer), output);
+            trailer.put(chunk);
+
+            output.flip();
+            digest.update(output.duplicate());
+
+            return output;
+        }
+
+        @Override
+        protected ByteBuffer finish() throws IOException, GeneralSecurityException {
+            if (header == null) {
+                throw new IOException("Container header is truncated");
+            }
+
+            if (trailer.hasRemaining()) {
+                throw new IOException("Container is truncated");
+            }
+
+            final ByteBuffer output = ByteBuffer.allocate(cipher.getOutputSize(0));
+            cipher.doFinal(ByteBuffer.allocate(0), output);
+            output.flip();
+            digest.update(output.duplicate());
+
+            if (trailer.capacity() > 0) {
+                header.setTrailer(trailer.array());
+            }
+
+            final byte[] fileDigest = digest.digest();
+            signatureValidator(new DataSigner(cryptoProvider.signature()), header.getSignature()).validate(fileDigest);
+            resolve(fileDigest, header.getSignature());
+
+            return output;
+        }
+
+        /**
+         * Gathers the header from the chunk, and prepares for the payload once it is complete
+         *
+         * @return true in case the header is complete, the chunk being left at the payload
+         */
+        private boolean readHeader(ByteBuffer chunk) throws IOException, GeneralSecurityException {
+            while (chunk.hasRemaining()) {
+                headerBuffer.put(slice(chunk, Math.min(chunk.remaining(), headerBuffer.remaining())));
+
+                if (headerBuffer.hasRemaining()) {
+                    return false;
+                }
+
+                headerBuffer.flip();
+                final int length = ContainerHeader.lengthOf(headerBuffer);
+
+                if (length > headerBuffer.limit()) {
+                    headerBuffer = ByteBuffer.allocate(length).put(headerBuffer);
+                    continue;
+                }
+
+                startPayload(ContainerHeader.read(new ByteArrayInputStream(headerBuffer.array(), 0, length)));
+                return true;
+            }
+
+            return false;
+        }
+
+        private void startPayload(ContainerHeader header) throws IOException, GeneralSecurityException {
+            if (header.getBatchId() != null) {
+                throw new SignatureException("Stream is validated against a batch manifest, it can only be decrypted from a file");
+            }
+
+            if (header.getContentAlgorithm().isSegmented() || header.getCompression() != Compression.NONE) {
+                throw new NoSuchAlgorithmException(String.format("%s content compressed with %s cannot be decrypted by a processor",
+                        header.getContentAlgorithm(), header.getCompression().getName()));
+            }
+
+            final Key key = contentKeyFor(header, cryptoProvider.signature());
+
+            cipher = Cipher.getInstance(header.getContentAlgorithm().getTransformation());
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(header.getIV()));
+            digest = MessageDigest.getInstance(cryptoProvider.messageDigest().getAlgorithm());
+            trailer = ByteBuffer.allocate(header.getTrailerLength());
+
+            this.header = header;
+        }
+
+        private void update(ByteBuffer input, ByteBuffer output) throws IOException {
+            try {
+                cipher.update(input, output);
+
+            } catch (ShortBufferException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Takes the next bytes of a buffer as a buffer of their own, moving the buffer past them
+         */
+        private ByteBuffer slice(ByteBuffer buffer, int length) {
+            final ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + length);
+            buffer.position(buffer.position() + length);
+
+            return slice;
+        }
+    }
 }
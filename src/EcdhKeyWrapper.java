@@ -0,0 +1,232 @@
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * Wraps secrets ECIES style: an ephemeral key pair is generated on the recipient's curve, the ECDH shared secret
+ * of the ephemeral private key and the recipient's public key goes through HKDF-SHA256 (RFC 5869) into an AES-256
+ * key and GCM nonce, and the secret is encrypted with them. The recipient agrees on the same shared secret with
+ * its private key and the ephemeral public key.
+ * <p>
+ * Layout of a wrapped secret:
+ * <pre>
+ * length    2 bytes   length of the ephemeral public key
+ * ephemeral           the ephemeral public key, X.509 encoded
+ * secret              the secret encrypted with AES-GCM, followed by the tag
+ * </pre>
+ * Every wrap agrees on a key of its own, so the nonce is derived along with it rather than picked at random.
+ */
+@SuppressWarnings("WeakerAccess")
+public class EcdhKeyWrapper implements IKeyWrapper {
+
+    private static final String KEY_ALGORITHM = "EC";
+    private static final String AGREEMENT_ALGORITHM = "ECDH";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte[] INFO = "JYFE ECDH key wrap".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int KEY_LENGTH = 32; // bytes, AES-256
+    private static final int NONCE_LENGTH = 12; // bytes
+    private static final int TAG_LENGTH = 16; // bytes
+
+    private final SecureRandom secureRandom;
+
+    /**
+     * Initializes a new EcdhKeyWrapper
+     *
+     * @param secureRandom the source of the ephemeral keys, or null for the default source
+     */
+    public EcdhKeyWrapper(SecureRandom secureRandom) {
+        this.secureRandom = secureRandom;
+    }
+
+    /**
+     * Wraps a secret for the holder of an EC private key
+     *
+     * @param secret    the secret to be wrapped
+     * @param publicKey the recipient's EC public key, its curve is the ephemeral key's curve
+     * @return the wrapped secret
+     * @throws InvalidKeyException in case the key is not an EC public key
+     */
+    @Override
+    public byte[] wrap(byte[] secret, PublicKey publicKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        if (!(publicKey instanceof ECPublicKey)) {
+            throw new InvalidKeyException(String.format("Secrets are wrapped with EC public keys, not %s", publicKey.getAlgorithm()));
+        }
+
+        final KeyPair ephemeral;
+        try {
+            final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(KEY_ALGORITHM);
+            if (secureRandom != null) {
+                keyPairGenerator.initialize(((ECPublicKey) publicKey).getParams(), secureRandom);
+            } else {
+                keyPairGenerator.initialize(((ECPublicKey) publicKey).getParams());
+            }
+
+            ephemeral = keyPairGenerator.generateKeyPair();
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException("Recipient's curve is not supported", e);
+        }
+
+        final byte[] ephemeralKey = ephemeral.getPublic().getEncoded();
+        final byte[] encrypted = crypt(Cipher.ENCRYPT_MODE, secret, agree(ephemeral.getPrivate(), publicKey), ephemeralKey);
+
+        return ByteBuffer.allocate(Short.BYTES + ephemeralKey.length + encrypted.length)
+                .putShort((short) ephemeralKey.length)
+                .put(ephemeralKey)
+                .put(encrypted)
+                .array();
+    }
+
+    /**
+     * Recovers a secret wrapped for us
+     *
+     * @param wrapped    the wrapped secret
+     * @param privateKey our EC private key
+     * @return the secret
+     * @throws BadPaddingException in case the secret is malformed, was not wrapped for us, or was tampered with
+     */
+    @Override
+    public byte[] unwrap(byte[] wrapped, Key privateKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        final ByteBuffer buffer = ByteBuffer.wrap(wrapped);
+        final int ephemeralKeyLength = buffer.remaining() < Short.BYTES ? -1 : buffer.getShort() & 0xFFFF;
+
+        if (ephemeralKeyLength < 0 || buffer.remaining() < ephemeralKeyLength + TAG_LENGTH) {
+            throw new BadPaddingException("Wrapped secret is truncated");
+        }
+
+        final byte[] ephemeralKey = new byte[ephemeralKeyLength];
+        final byte[] encrypted = new byte[buffer.get(ephemeralKey).remaining()];
+        buffer.get(encrypted);
+
+        final PublicKey ephemeralPublicKey;
+        try {
+            ephemeralPublicKey = KeyFactory.getInstance(KEY_ALGORITHM).generatePublic(new X509EncodedKeySpec(ephemeralKey));
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+
+        } catch (InvalidKeySpecException e) {
+            throw new BadPaddingException("Wrapped secret's ephemeral key is malformed");
+        }
+
+        return crypt(Cipher.DECRYPT_MODE, encrypted, agree(privateKey, ephemeralPublicKey), ephemeralKey);
+    }
+
+    /**
+     * Gets the ECDH shared secret of a private key and the other side's public key
+     */
+    private static byte[] agree(Key privateKey, PublicKey publicKey) throws InvalidKeyException {
+        try {
+            final KeyAgreement keyAgreement = KeyAgreement.getInstance(AGREEMENT_ALGORITHM);
+            keyAgreement.init(privateKey);
+            keyAgreement.doPhase(publicKey, true);
+
+            return keyAgreement.generateSecret();
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encrypts or decrypts with the key and nonce derived from the shared secret, wiping both once done
+     *
+     * @param sharedSecret the ECDH shared secret
+     * @param ephemeralKey the encoded ephemeral public key, bound to the derived key
+     */
+    private static byte[] crypt(int mode, byte[] input, byte[] sharedSecret, byte[] ephemeralKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        final byte[] info = ByteBuffer.allocate(INFO.length + ephemeralKey.length).put(INFO).put(ephemeralKey).array();
+        final byte[] keyMaterial = hkdf(new byte[0], sharedSecret, info, KEY_LENGTH + NONCE_LENGTH);
+
+        try {
+            final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, new SecretKeySpec(keyMaterial, 0, KEY_LENGTH, "AES"),
+                    new GCMParameterSpec(TAG_LENGTH * 8, keyMaterial, KEY_LENGTH, NONCE_LENGTH));
+
+            return cipher.doFinal(input);
+
+        } catch (AEADBadTagException e) {
+            throw new BadPaddingException("Wrapped secret was not wrapped for us, or was tampered with");
+
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException e) {
+            throw new IllegalStateException(e);
+
+        } finally {
+            Arrays.fill(sharedSecret, (byte) 0);
+            Arrays.fill(keyMaterial, (byte) 0);
+        }
+    }
+
+    /**
+     * Derives key material with HKDF-SHA256 (RFC 5869)
+     *
+     * @param salt   the extract salt, empty for a salt of zeros
+     * @param ikm    the input key material
+     * @param info   the context the material is bound to
+     * @param length the bytes to derive, at most 255 times the hash length
+     * @return the output key material
+     */
+    static byte[] hkdf(byte[] salt, byte[] ikm, byte[] info, int length) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            final int hashLength = mac.getMacLength();
+
+            if (length > 255 * hashLength) {
+                throw new IllegalArgumentException(String.format("HKDF derives at most %d bytes", 255 * hashLength));
+            }
+
+            // extract
+            mac.init(new SecretKeySpec(salt.length > 0 ? salt : new byte[hashLength], HMAC_ALGORITHM));
+            final byte[] pseudoRandomKey = mac.doFinal(ikm);
+
+            // expand
+            mac.init(new SecretKeySpec(pseudoRandomKey, HMAC_ALGORITHM));
+            final ByteBuffer output = ByteBuffer.allocate(length);
+            byte[] block = new byte[0];
+
+            for (int counter = 1; output.hasRemaining(); counter++) {
+                mac.update(block);
+                mac.update(info);
+                mac.update((byte) counter);
+                block = mac.doFinal();
+
+                output.put(block, 0, Math.min(block.length, output.remaining()));
+            }
+
+            Arrays.fill(pseudoRandomKey, (byte) 0);
+            Arrays.fill(block, (byte) 0);
+
+            return output.array();
+
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+
+/**
+ * Keeps a warm Encrypter and Decrypter resident and serves jobs over a loopback socket.
+ * <p>
+ * Every connection starts by authenticating with the daemon's token, which it writes to a file only its own
+ * user can read (see {@link #writeToken}). Connections that do not are answered with an error and closed before
+ * any job runs:
+ * <pre>
+ * AUTH  token
+ * </pre>
+ * Every request is a single line of tab separated fields:
+ * <pre>
+ * ENCRYPT  source  output
+ * DECRYPT  encrypted  [config]  output
+ * VERIFY   encrypted  [config]
+ * PING
+ * </pre>
+ * The config field is only needed for files encrypted with a JSON config file of a custom path.
+ * Jobs of a connection run concurrently, and every job is answered with a single line as soon as it completes,
+ * tagged with the job's number within the connection (starting at 1):
+ * <pre>
+ * OK   job  elapsed-ms
+ * ERR  job  message
+ * </pre>
+ * A failed authentication is answered as job 0.
+ * The socket is bound to the loopback interface only, and paths are resolved with the daemon's own permissions.
+ */
+@SuppressWarnings("WeakerAccess")
+public class EncryptDaemon {
+
+    private static final int TOKEN_LENGTH = 32; // bytes
+
+    private final Encrypter encrypter;
+    private final Decrypter decrypter;
+    private final ExecutorService jobs;
+    private final ExecutorService connections;
+    private final byte[] token;
+
+    /**
+     * Initializes a new EncryptDaemon
+     *
+     * @param encrypter an initialized, thread safe Encrypter
+     * @param decrypter an initialized, thread safe Decrypter
+     * @param workers   the number of jobs processed concurrently
+     * @param token     the token every connection authenticates with
+     */
+    public EncryptDaemon(Encrypter encrypter, Decrypter decrypter, int workers, String token) {
+        this.encrypter = encrypter;
+        this.decrypter = decrypter;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.jobs = Executors.newFixedThreadPool(workers);
+        this.connections = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Accepts connections on the loopback interface until the process is stopped
+     *
+     * @param port the port to listen on
+     * @throws IOException in case the port cannot be bound
+     */
+    public void serve(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println(String.format("Listening on %s", serverSocket.getLocalSocketAddress()));
+
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                final Socket socket = serverSocket.accept();
+                connections.execute(() -> handleConnection(socket));
+            }
+        }
+    }
+
+    /**
+     * Writes a fresh random token to a file only the daemon's user can read and write, replacing any previous one
+     *
+     * @param tokenFile    the file clients read the token from
+     * @param secureRandom the source of the token
+     * @return the token
+     * @throws IOException in case the file cannot be written
+     */
+    public static String writeToken(Path tokenFile, SecureRandom secureRandom) throws IOException {
+        final byte[] bytes = new byte[TOKEN_LENGTH];
+        secureRandom.nextBytes(bytes);
+
+        final String token = Utils.bytesToHex(bytes);
+
+        // created afresh with its permissions, so it is never readable by others, not even briefly
+        Files.deleteIfExists(tokenFile);
+
+        if (tokenFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            final File file = Files.createFile(tokenFile).toFile();
+
+            if (!file.setReadable(false, false) || !file.setReadable(true, true) || !file.setWritable(false, false) || !file.setWritable(true, true)) {
+                throw new IOException(String.format("%s cannot be restricted to its owner", tokenFile));
+            }
+        }
+
+        Files.write(tokenFile, token.getBytes(StandardCharsets.UTF_8));
+
+        return token;
+    }
+
+    private void handleConnection(Socket socket) {
+        try (Socket connection = socket) {
+            handle(connection.getInputStream(), connection.getOutputStream());
+
+        } catch (IOException e) {
+            System.err.println(String.format("Connection failed: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Serves the requests of a connection until its input ends, answering jobs still running before returning
+     *
+     * @param in  the connection's input
+     * @param out the connection's output
+     * @throws IOException in case of read / write issues
+     */
+    void handle(InputStream in, OutputStream out) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+
+            if (!authenticate(reader.readLine())) {
+                writer.println("ERR\t0\tAuthentication failed");
+                return;
+            }
+
+            final Phaser pending = new Phaser(1);
+            String line;
+            int jobId = 0;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                final String[] request = line.split("\t");
+                final int job = ++jobId;
+
+                pending.register();
+                jobs.execute(() -> {
+                    final long start = System.nanoTime();
+                    String response;
+
+                    try {
+                        runJob(request);
+                        response = String.format("OK\t%d\t%d", job, (System.nanoTime() - start) / 1000000);
+
+                    } catch (Throwable e) {
+                        // errors are answered too, a job left unanswered would hold the connection open for good
+                        response = String.format("ERR\t%d\t%s", job, String.valueOf(e.getMessage()).replace('\n', ' '));
+                    }
+
+                    try {
+                        synchronized (writer) {
+                            writer.println(response);
+                            writer.flush();
+                        }
+
+                    } finally {
+                        pending.arriveAndDeregister();
+                    }
+                });
+            }
+
+            // answer jobs still running before the connection is closed
+            pending.arriveAndAwaitAdvance();
+        }
+    }
+
+    private boolean authenticate(String line) {
+        if (line == null || !line.startsWith("AUTH\t")) {
+            return false;
+        }
+
+        // compared in constant time, so the token cannot be guessed byte by byte
+        return MessageDigest.isEqual(token, line.substring("AUTH\t".length()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void runJob(String[] request) throws Exception {
+        switch (request[0].toUpperCase()) {
+            case "PING":
+                return;
+
+            case "ENCRYPT":
+                ensureFields(request, 3, 3);
+                encrypter.encryptAndSign(Paths.get(request[1]), Paths.get(request[2]));
+                return;
+
+            case "DECRYPT":
+                ensureFields(request, 3, 4);
+                if (request.length == 3) {
+                    decrypter.decryptAndValidate(Paths.get(request[1]), Paths.get(request[2]));
+                } else {
+                    decrypter.decryptAndValidate(Paths.get(request[1]), Paths.get(request[2]), Paths.get(request[3]));
+                }
+                return;
+
+            case "VERIFY":
+                ensureFields(request, 2, 3);
+
+                // the plain content is only digested, it never touches the disk
+                if (request.length == 2) {
+                    decrypter.validate(Paths.get(request[1]));
+                } else {
+                    decrypter.validate(Paths.get(request[1]), Paths.get(request[2]));
+                }
+                return;
+
+            default:
+                throw new IllegalArgumentException(String.format("Unknown request %s", request[0]));
+        }
+    }
+
+    private static void ensureFields(String[] request, int min, int max) {
+        if (request.length < min || request.length > max) {
+            throw new IllegalArgumentException(min == max ?
+                    String.format("%s expects %d tab separated fields", request[0], min) :
+                    String.format("%s expects %d to %d tab separated fields", request[0], min, max));
+        }
+    }
+}
@@ -1,14 +1,14 @@
-import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
-import java.io.FileInputStream;
-import java.io.IOException;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
-import java.security.MessageDigest;
 import java.security.SecureRandom;
-import java.security.Signature;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 public class EncryptTool {
 
@@ -17,18 +17,49 @@ public class EncryptTool {
     private static final List<String> switches = new LinkedList<String>() {{
         add("encrypt");
         add("decrypt");
+        add("chunked");
+        add("daemon");
+        add("batchKey".toLowerCase());
+        add("incremental");
+        add("compress");
     }};
 
     private static final Map<String, String> programParams = new HashMap<>();
 
     private static final String ENCRYPT_SWITCH_NAME = "encrypt";
     private static final String DECRYPT_SWITCH_NAME = "decrypt";
+    private static final String CHUNKED_SWITCH_NAME = "chunked";
+    private static final String DAEMON_SWITCH_NAME = "daemon";
+    private static final String BATCH_KEY_SWITCH_NAME = "batchKey".toLowerCase();
+    private static final String INCREMENTAL_SWITCH_NAME = "incremental";
+    private static final String COMPRESS_SWITCH_NAME = "compress";
     private static final String KEYSTORE_PARAM_NAME = "keystore";
     private static final String KEYSTORE_PASSWORD_PARAM_NAME = "password";
     private static final String MY_ALIAS_PARAM_NAME = "myAlias".toLowerCase();
     private static final String MY_ALIAS_PASSWORD_PARAM_NAME = "myAliasPassword".toLowerCase();
     private static final String RECIPIENT_ALIAS_PARAM_NAME = "recAlias".toLowerCase();
+    private static final String RECIPIENT_ALIAS_SEPARATOR = ",";
     private static final String FILE_PARAM_PATH = "file";
+    private static final String IO_MODE_PARAM_NAME = "io";
+    private static final String PIPELINE_DEPTH_PARAM_NAME = "pipelineDepth".toLowerCase();
+    private static final String KEY_CACHE_PARAM_NAME = "keyCache".toLowerCase();
+    private static final String SUITE_PARAM_NAME = "suite";
+    private static final String DIR_PARAM_NAME = "dir";
+    private static final String FILES_FROM_PARAM_NAME = "filesFrom".toLowerCase();
+    private static final String THREADS_PARAM_NAME = "threads";
+    private static final String PORT_PARAM_NAME = "port";
+    private static final String TOKEN_FILE_PARAM_NAME = "tokenFile".toLowerCase();
+    private static final String CHECKPOINT_PARAM_NAME = "checkpoint";
+    private static final String MANIFEST_PARAM_NAME = "manifest";
+    private static final String METRICS_PARAM_NAME = "metrics";
+    private static final String METRICS_CSV_PARAM_NAME = "metricsCsv".toLowerCase();
+    private static final String METRICS_DOMAIN = "JYFileEncrypter";
+    private static final String DEFAULT_METRICS_PERIOD = "10"; // seconds
+    private static final String DEFAULT_PORT = "7443";
+    private static final String DEFAULT_TOKEN_FILE = ".jyfe-daemon-token";
+    private static final String ENCRYPTED_FILE_SUFFIX = "-encrypted";
+    private static final String STANDARD_STREAMS_PATH = "-";
+    private static final int STANDARD_STREAMS_BUFFER_SIZE = 64 * 1024; // bytes
 
     @SuppressWarnings("FieldCanBeLocal")
     private static String guide_message = "FileEncrypt tool\n" +
@@ -36,79 +67,352 @@ public class EncryptTool {
             "Run:\n" +
             "java EncryptTool -encrypt -keystore <keystore file> -password <pass> -myAlias <your keystore alias> -myAliasPassword <your alias password> -file <file path>\n" +
             "java EncryptTool -decrypt -keystore <keystore file> -password <pass> -myAlias <your keystore alias> -myAliasPassword <your alias password> -file <file path>\n" +
+            "java EncryptTool -encrypt|-decrypt -keystore <keystore file> -password <pass> -myAlias <your keystore alias> -myAliasPassword <your alias password> -recAlias <recipient alias> -file - < input > output\n" +
+            "java EncryptTool -encrypt|-decrypt -keystore <keystore file> -password <pass> -myAlias <your keystore alias> -myAliasPassword <your alias password> -recAlias <recipient alias> -dir <directory> -threads <workers>\n" +
+            "java EncryptTool -daemon -keystore <keystore file> -password <pass> -myAlias <your keystore alias> -myAliasPassword <your alias password> -recAlias <peer alias> -port <port> -tokenFile <token file> -threads <workers>\n" +
             "\n" +
             "Options:\n" +
             "    -encrypt            Encrypts the file and creates a signature\n" +
             "    -decrypt            Encrypts the file validates signature\n" +
+            "    -daemon             Stays resident, serving encrypt / decrypt / verify jobs on a loopback port (see EncryptDaemon)\n" +
             "    -keystore           Key Store file path\n" +
             "    -password           Key Store password\n" +
             "    -myAlias            Key Store alias for my cert with private key\n" +
             "    -myAliasPassword    alias password for my cert with private key (if not defined, using keystore password)\n" +
-            "    -recAlias           Key Store alias for recipient cert\n" +
-            "    -file               File to encrypt and sign";
+            "    -recAlias           Key Store alias for recipient cert, -encrypt takes several separated by commas to encrypt once for all of them\n" +
+            "    -file               File to encrypt and sign, or - to read stdin and write to stdout (progress goes to stderr)\n" +
+            "    -dir                Directory to walk, encrypting or decrypting every file in it (instead of -file)\n" +
+            "    -filesFrom          Text file listing the files to encrypt or decrypt, one per line (instead of -file)\n" +
+            "    -threads            Worker threads for -dir / -filesFrom / -daemon (defaults to the number of cores)\n" +
+            "    -port               Loopback port for -daemon (defaults to 7443)\n" +
+            "    -tokenFile          File -daemon writes the token clients authenticate with to, readable by its user only (defaults to ~/.jyfe-daemon-token)\n" +
+            "    -batchKey           Wraps all files' keys with one key-encryption key, wrapped for the recipient once per run\n" +
+            "    -chunked            Uses parallel AES-GCM segments instead of AES-CBC (only needed to decrypt files with a JSON config)\n" +
+            "    -incremental        Uses AES-GCM segments recorded in a signed manifest, so encrypting a changed file again rewrites only the changed segments\n" +
+            "    -compress           Deflates AES-CBC content before encrypting it, storing content that samples as incompressible as is (decrypting needs no option)\n" +
+            "    -checkpoint         MiB of -chunked content between checkpoints, so an interrupted -file / -dir run resumes where it stopped\n" +
+            "    -manifest           Batch manifest file: -encrypt records every file's digest in it and signs it once instead of each file, -decrypt verifies it once\n" +
+            "    -metrics            Seconds between reports of per-stage counts, latencies and throughput (also exposed over JMX, -dir / -filesFrom / -daemon runs print no per-file progress)\n" +
+            "    -metricsCsv         File to append the per-stage reports to as CSV rows, instead of printing them\n" +
+            "    -io                 stream (default), channel, mapped or pipelined: how bytes are moved between disk and AES-CBC\n" +
+            "    -pipelineDepth      Buffers of 1 MiB that -io pipelined reads ahead and writes behind the cipher (defaults to 4)\n" +
+            "    -keyCache           Unwrapped content keys -decrypt / -daemon keep, so files decrypted again skip the private key operations (off unless set)\n" +
+            "    -suite              rsa (default) or ec: RSA-wrapped keys signed with SHA256withRSA, or ECDH + HKDF agreed keys signed with SHA256withECDSA, for keystores of EC keys such as P-256";
 
     public static void main(String[] args) throws Exception {
+        final OutputStream stdout = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), STANDARD_STREAMS_BUFFER_SIZE);
+
+        // stdout carries the data when reading stdin, so progress goes to stderr
+        if (Arrays.asList(args).contains(STANDARD_STREAMS_PATH)) {
+            System.setOut(System.err);
+        }
+
         validateInput(args);
 
+        final Metrics metrics = Metrics.getDefault();
+        metrics.registerMBeans(ManagementFactory.getPlatformMBeanServer(), METRICS_DOMAIN);
+
+        final MetricsReporter metricsReporter = startMetricsReporter(metrics);
         final KeyStore keystore = loadKeystore("JKS", "SUN");
 
+        // the encrypter and decrypter of -daemon share the private key, unlocked once
+        final KeyResolver keyResolver = new KeyResolver(keystore);
+        keyResolver.registerMBean(ManagementFactory.getPlatformMBeanServer(), METRICS_DOMAIN);
+
         System.out.print("Initializing cryptography instances ...");
-        final Cipher symmetricCipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        final Cipher asymmetricCipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
-        final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-        final Signature signature = Signature.getInstance("SHA256withRSA");
-        final KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
         final SecureRandom secureRandom = SecureRandom.getInstanceStrong();
-        final int symmetricKeyLength = 128; // bits
+        final ThreadLocalCryptoProvider cryptoProvider = new ThreadLocalCryptoProvider(
+                "AES/CBC/PKCS5Padding",
+                "RSA/ECB/PKCS1Padding",
+                "SHA-256",
+                suite().getSignatureAlgorithm(),
+                "AES",
+                128,
+                secureRandom);
+
+        // keys and IVs are generated ahead of time from a single seed of the strong source, decrypting takes none
+        final KeyMaterialPool keyMaterialPool = programParams.containsKey(DECRYPT_SWITCH_NAME) ? null :
+                new KeyMaterialPool(secureRandom, "AES", 128);
+
+        if (keyMaterialPool != null) {
+            keyMaterialPool.registerMBean(ManagementFactory.getPlatformMBeanServer(), METRICS_DOMAIN);
+        }
 
         System.out.println("DONE");
 
-        if (programParams.containsKey(ENCRYPT_SWITCH_NAME)) {
+        int failures = 0;
+
+        if (programParams.containsKey(DAEMON_SWITCH_NAME)) {
+            metrics.setConsole(false);
+
+            final int threads = Integer.parseInt(programParams.getOrDefault(THREADS_PARAM_NAME,
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+            final Path tokenFile = programParams.containsKey(TOKEN_FILE_PARAM_NAME) ?
+                    Paths.get(programParams.get(TOKEN_FILE_PARAM_NAME)) :
+                    Paths.get(System.getProperty("user.home"), DEFAULT_TOKEN_FILE);
+
+            new EncryptDaemon(
+                    createEncrypter(keystore, keyResolver, cryptoProvider, keyMaterialPool),
+                    createDecrypter(keystore, keyResolver, cryptoProvider),
+                    threads,
+                    EncryptDaemon.writeToken(tokenFile, secureRandom)).serve(Integer.parseInt(programParams.getOrDefault(PORT_PARAM_NAME, DEFAULT_PORT)));
+
+        } else if (STANDARD_STREAMS_PATH.equals(programParams.get(FILE_PARAM_PATH))) {
+            final InputStream stdin = new BufferedInputStream(System.in, STANDARD_STREAMS_BUFFER_SIZE);
+
+            if (programParams.containsKey(ENCRYPT_SWITCH_NAME)) {
+                createEncrypter(keystore, keyResolver, cryptoProvider, keyMaterialPool).encryptAndSign(stdin, stdout);
+            } else {
+                createDecrypter(keystore, keyResolver, cryptoProvider).decryptAndValidate(stdin, stdout);
+            }
+
+        } else if (programParams.containsKey(FILE_PARAM_PATH)) {
+
+            if (programParams.containsKey(ENCRYPT_SWITCH_NAME)) {
+                final Path sourceFilePath = Paths.get(programParams.get(FILE_PARAM_PATH));
+                final Encrypter encrypter = createEncrypter(keystore, keyResolver, cryptoProvider, keyMaterialPool);
+
+                encrypt(encrypter, sourceFilePath);
+                endSignedBatch(encrypter);
+
+            } else if (programParams.containsKey(DECRYPT_SWITCH_NAME)) {
+                final Path encryptedSourceFile = Paths.get(programParams.get(FILE_PARAM_PATH));
+                final Path decryptedFile = Paths.get(String.format("%s/decrypted.txt", encryptedSourceFile.getParent().toAbsolutePath()));
+
+                createDecrypter(keystore, keyResolver, cryptoProvider).decryptAndValidate(encryptedSourceFile, decryptedFile);
+            }
+
+        } else {
+            metrics.setConsole(false);
+
+            final boolean encrypt = programParams.containsKey(ENCRYPT_SWITCH_NAME);
+            final List<Path> files = listBatchFiles(encrypt);
+            final int threads = Integer.parseInt(programParams.getOrDefault(THREADS_PARAM_NAME,
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+            final BatchProcessor batchProcessor = new BatchProcessor(threads);
+
+            // a single instance serves all workers, each of them using crypto instances of its own
+            if (encrypt) {
+                final Encrypter encrypter = createEncrypter(keystore, keyResolver, cryptoProvider, keyMaterialPool);
+                failures = batchProcessor.process(files, () -> file -> encrypt(encrypter, file));
+                endSignedBatch(encrypter);
+
+                System.out.println(keyMaterialPool.getStats());
+
+            } else {
+                final Decrypter decrypter = createDecrypter(keystore, keyResolver, cryptoProvider);
+                failures = batchProcessor.process(files, () -> file -> decrypter.decryptAndValidate(file, decryptedPathFor(file)));
+            }
+
+            System.out.println(cryptoProvider.getStats());
+        }
+
+        if (metricsReporter != null) {
+            metricsReporter.close();
+        }
+
+        // a batch that failed on any file fails the run
+        System.exit(failures > 0 ? 1 : 0);
+    }
+
+    private static Encrypter createEncrypter(KeyStore keystore, KeyResolver keyResolver, ICryptoProvider cryptoProvider, KeyMaterialPool keyMaterialPool) throws Exception {
+        final boolean chunked = programParams.containsKey(CHUNKED_SWITCH_NAME);
+        final IoMode ioMode = ioMode();
+
+        final boolean incremental = programParams.containsKey(INCREMENTAL_SWITCH_NAME);
+        final Compression compression = programParams.containsKey(COMPRESS_SWITCH_NAME) ? Compression.DEFLATE : Compression.NONE;
+
+        final Encrypter encrypter = new Encrypter(keystore, cryptoProvider, () -> incremental ?
+                new ManifestFileEncrypt(keyMaterialPool.getRandom()) : chunked ?
+                new ChunkedFileEncrypt(keyMaterialPool.getRandom()) :
+                newFileEncrypt(cryptoProvider, ioMode, compression, keyMaterialPool));
+
+        encrypter.setKeyMaterialPool(keyMaterialPool);
+        encrypter.setKeyResolver(keyResolver);
+        encrypter.setSuite(suite());
+
+        encrypter.initialize(
+                programParams.get(MY_ALIAS_PARAM_NAME),
+                programParams.containsKey(MY_ALIAS_PASSWORD_PARAM_NAME) ?
+                        programParams.get(MY_ALIAS_PASSWORD_PARAM_NAME) :
+                        programParams.get(KEYSTORE_PASSWORD_PARAM_NAME),
+                Arrays.asList(programParams.get(RECIPIENT_ALIAS_PARAM_NAME).split(RECIPIENT_ALIAS_SEPARATOR)));
+
+        if (programParams.containsKey(BATCH_KEY_SWITCH_NAME)) {
+            encrypter.startBatch();
+        }
+
+        encrypter.setCheckpointInterval(checkpointInterval());
+
+        if (programParams.containsKey(MANIFEST_PARAM_NAME)) {
+            encrypter.startSignedBatch(Paths.get(programParams.get(MANIFEST_PARAM_NAME)));
+        }
+
+        return encrypter;
+    }
+
+    private static FileEncrypt newFileEncrypt(ICryptoProvider cryptoProvider, IoMode ioMode, Compression compression, KeyMaterialPool keyMaterialPool) {
+        final FileEncrypt fileEncrypt = new FileEncrypt(cryptoProvider.symmetricCipher(), ioMode);
+        fileEncrypt.setCompression(compression);
+        fileEncrypt.setKeyMaterialPool(keyMaterialPool);
+
+        if (ioMode == IoMode.PIPELINED) {
+            fileEncrypt.setPipeline(newPipeline());
+        }
+
+        return fileEncrypt;
+    }
+
+    /**
+     * Encrypts a file next to itself, or encrypts its changes into the existing encrypted file with -incremental
+     */
+    private static void encrypt(Encrypter encrypter, Path sourceFile) throws Exception {
+        if (programParams.containsKey(INCREMENTAL_SWITCH_NAME)) {
+            encrypter.reencryptAndSign(sourceFile, encryptedPathFor(sourceFile));
+        } else {
+            encrypter.encryptAndSign(sourceFile, encryptedPathFor(sourceFile));
+        }
+    }
+
+    /**
+     * Signs and writes the batch manifest with -manifest, once every file is encrypted
+     */
+    private static void endSignedBatch(Encrypter encrypter) throws Exception {
+        if (programParams.containsKey(MANIFEST_PARAM_NAME)) {
+            encrypter.endSignedBatch();
+        }
+    }
+
+    private static Decrypter createDecrypter(KeyStore keystore, KeyResolver keyResolver, ICryptoProvider cryptoProvider) throws Exception {
+        final boolean chunked = programParams.containsKey(CHUNKED_SWITCH_NAME);
+        final IoMode ioMode = ioMode();
+
+        // containers record their algorithm, -chunked only tells it for files with a JSON config
+        final Decrypter decrypter = new Decrypter(keystore, cryptoProvider,
+                (algorithm, segmentSize) -> newFileDecrypt(algorithm, segmentSize, ioMode),
+                chunked ? ContentAlgorithm.AES_GCM_CHUNKED : ContentAlgorithm.AES_CBC);
+
+        decrypter.setKeyResolver(keyResolver);
+
+        if (programParams.containsKey(KEY_CACHE_PARAM_NAME)) {
+            final SessionKeyCache sessionKeyCache = new SessionKeyCache(Integer.parseInt(programParams.get(KEY_CACHE_PARAM_NAME)));
+            sessionKeyCache.registerMBean(ManagementFactory.getPlatformMBeanServer(), METRICS_DOMAIN);
+            decrypter.setSessionKeyCache(sessionKeyCache);
+        }
+
+        decrypter.initialize(programParams.get(MY_ALIAS_PARAM_NAME),
+                programParams.containsKey(MY_ALIAS_PASSWORD_PARAM_NAME) ?
+                        programParams.get(MY_ALIAS_PASSWORD_PARAM_NAME) :
+                        programParams.get(KEYSTORE_PASSWORD_PARAM_NAME),
+                programParams.get(RECIPIENT_ALIAS_PARAM_NAME));
+
+        decrypter.setCheckpointInterval(checkpointInterval());
+
+        if (programParams.containsKey(MANIFEST_PARAM_NAME)) {
+            decrypter.loadBatchManifest(Paths.get(programParams.get(MANIFEST_PARAM_NAME)));
+        }
+
+        return decrypter;
+    }
+
+    private static IFileDecrypt newFileDecrypt(ContentAlgorithm algorithm, int segmentSize, IoMode ioMode) throws GeneralSecurityException {
+        final IFileDecrypt fileDecrypt = algorithm.newFileDecrypt(segmentSize, ioMode);
+
+        if (ioMode == IoMode.PIPELINED && fileDecrypt instanceof FileDecrypt) {
+            ((FileDecrypt) fileDecrypt).setPipeline(newPipeline());
+        }
+
+        return fileDecrypt;
+    }
+
+    private static PipelinedTransfer newPipeline() {
+        return new PipelinedTransfer(
+                Integer.parseInt(programParams.getOrDefault(PIPELINE_DEPTH_PARAM_NAME, String.valueOf(PipelinedTransfer.DEFAULT_DEPTH))),
+                PipelinedTransfer.DEFAULT_BUFFER_SIZE);
+    }
+
+    private static IoMode ioMode() {
+        return IoMode.valueOf(programParams.getOrDefault(IO_MODE_PARAM_NAME, "stream").toUpperCase());
+    }
 
-            final Encrypter encrypter = new Encrypter(
-                    keystore,
-                    symmetricCipher,
-                    asymmetricCipher,
-                    messageDigest,
-                    signature,
-                    keyGenerator,
-                    secureRandom,
-                    symmetricKeyLength);
+    private static AsymmetricSuite suite() {
+        return AsymmetricSuite.valueOf(programParams.getOrDefault(SUITE_PARAM_NAME, "rsa").toUpperCase());
+    }
 
-            encrypter.initialize(
-                    programParams.get(MY_ALIAS_PARAM_NAME),
-                    programParams.containsKey(MY_ALIAS_PASSWORD_PARAM_NAME) ?
-                            programParams.get(MY_ALIAS_PASSWORD_PARAM_NAME) :
-                            programParams.get(KEYSTORE_PASSWORD_PARAM_NAME),
-                    programParams.get(RECIPIENT_ALIAS_PARAM_NAME));
+    private static long checkpointInterval() {
+        return Long.parseLong(programParams.getOrDefault(CHECKPOINT_PARAM_NAME, "0")) * 1024 * 1024;
+    }
 
-            final Path sourceFilePath = Paths.get(programParams.get(FILE_PARAM_PATH));
-            final Path encryptedFilePath = Paths.get(String.format("%s-encrypted", sourceFilePath.toAbsolutePath()));
-            encrypter.encryptAndSign(sourceFilePath, encryptedFilePath);
+    private static Path encryptedPathFor(Path sourceFile) {
+        return Paths.get(String.format("%s%s", sourceFile.toAbsolutePath(), ENCRYPTED_FILE_SUFFIX));
+    }
 
-        } else if (programParams.containsKey(DECRYPT_SWITCH_NAME)) {
+    private static Path decryptedPathFor(Path encryptedFile) {
+        final String encryptedPath = encryptedFile.toAbsolutePath().toString();
+        final String originalPath = encryptedPath.endsWith(ENCRYPTED_FILE_SUFFIX) ?
+                encryptedPath.substring(0, encryptedPath.length() - ENCRYPTED_FILE_SUFFIX.length()) :
+                encryptedPath;
 
-            final Decrypter decrypter = new Decrypter(
-                    keystore,
-                    symmetricCipher,
-                    asymmetricCipher,
-                    messageDigest,
-                    signature);
+        return Paths.get(String.format("%s-decrypted", originalPath));
+    }
 
-            decrypter.initialize(programParams.get(MY_ALIAS_PARAM_NAME),
-                    programParams.containsKey(MY_ALIAS_PASSWORD_PARAM_NAME) ?
-                            programParams.get(MY_ALIAS_PASSWORD_PARAM_NAME) :
-                            programParams.get(KEYSTORE_PASSWORD_PARAM_NAME),
-                    programParams.get(RECIPIENT_ALIAS_PARAM_NAME));
+    /**
+     * Lists the files of a batch run, either walked from -dir or read from -filesFrom.
+     * Walking a directory to encrypt skips outputs of previous runs, and walking it to decrypt picks only encrypted files.
+     */
+    private static List<Path> listBatchFiles(boolean encrypt) throws IOException {
+        System.out.print("Listing files ...");
+        final List<Path> files = new ArrayList<>();
+
+        if (programParams.containsKey(FILES_FROM_PARAM_NAME)) {
+            for (String line : Files.readAllLines(Paths.get(programParams.get(FILES_FROM_PARAM_NAME)))) {
+                if (!line.trim().isEmpty()) {
+                    files.add(Paths.get(line.trim()));
+                }
+            }
 
-            final Path encryptedSourceFile = Paths.get(programParams.get(FILE_PARAM_PATH));
-            final Path decryptedFile = Paths.get(String.format("%s/decrypted.txt", encryptedSourceFile.getParent().toAbsolutePath()));
-            final Path configFilePath = Paths.get(String.format("%s-config.json", encryptedSourceFile.toAbsolutePath()));
+        } else {
+            try (Stream<Path> walk = Files.walk(Paths.get(programParams.get(DIR_PARAM_NAME)))) {
+                walk.filter(Files::isRegularFile)
+                        .filter(file -> {
+                            String name = file.getFileName().toString();
+                            return encrypt ?
+                                    !name.endsWith(ENCRYPTED_FILE_SUFFIX) && !name.endsWith("-config.json") && !name.endsWith("-decrypted")
+                                            && !name.endsWith(".checkpoint") && !isManifestFile(file) :
+                                    name.endsWith(ENCRYPTED_FILE_SUFFIX);
+                        })
+                        .forEach(files::add);
+            }
+        }
 
-            decrypter.decryptAndValidate(encryptedSourceFile, configFilePath, decryptedFile);
+        System.out.println(String.format("DONE (%d files)", files.size()));
+
+        return files;
+    }
+
+    private static boolean isManifestFile(Path file) {
+        return programParams.containsKey(MANIFEST_PARAM_NAME)
+                && file.toAbsolutePath().normalize().equals(Paths.get(programParams.get(MANIFEST_PARAM_NAME)).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Starts reporting the metrics with -metrics or -metricsCsv
+     *
+     * @return the running reporter, or null in case neither is used
+     */
+    private static MetricsReporter startMetricsReporter(Metrics metrics) throws IOException {
+        if (!programParams.containsKey(METRICS_PARAM_NAME) && !programParams.containsKey(METRICS_CSV_PARAM_NAME)) {
+            return null;
         }
 
-        System.exit(1);
+        final long period = Long.parseLong(programParams.getOrDefault(METRICS_PARAM_NAME, DEFAULT_METRICS_PERIOD));
+        final MetricsReporter reporter = programParams.containsKey(METRICS_CSV_PARAM_NAME) ?
+                MetricsReporter.csv(metrics, Paths.get(programParams.get(METRICS_CSV_PARAM_NAME))) :
+                MetricsReporter.log(metrics, System.out);
+
+        return reporter.start(period, TimeUnit.SECONDS);
     }
 
     private static KeyStore loadKeystore(String type, String provider) throws Exception {
@@ -117,8 +421,12 @@ public class EncryptTool {
         final Path keystoreFilePath = Paths.get(programParams.get(KEYSTORE_PARAM_NAME));
         final String keystorePassword = programParams.get(KEYSTORE_PASSWORD_PARAM_NAME);
 
-        FileInputStream fip = new FileInputStream(keystoreFilePath.toFile());
-        keystore.load(fip, keystorePassword.toCharArray());
+        try (Metrics.Timer timer = Metrics.getDefault().time(Metrics.Stage.KEYSTORE_LOAD);
+             FileInputStream fip = new FileInputStream(keystoreFilePath.toFile())) {
+
+            keystore.load(fip, keystorePassword.toCharArray());
+            timer.stop();
+        }
 
         System.out.println("DONE");
 
@@ -135,12 +443,33 @@ public class EncryptTool {
             Utils.ensureParamDefinition(KEYSTORE_PASSWORD_PARAM_NAME, programParams);
             Utils.ensureParamDefinition(MY_ALIAS_PASSWORD_PARAM_NAME, programParams);
             Utils.ensureParamDefinition(RECIPIENT_ALIAS_PARAM_NAME, programParams);
-            Utils.ensureParamDefinition(FILE_PARAM_PATH, programParams);
 
-            if ((programParams.containsKey(ENCRYPT_SWITCH_NAME) && programParams.containsKey(DECRYPT_SWITCH_NAME))
-                    || !programParams.containsKey(ENCRYPT_SWITCH_NAME) && !programParams.containsKey(DECRYPT_SWITCH_NAME)) {
+            if (Stream.of(ENCRYPT_SWITCH_NAME, DECRYPT_SWITCH_NAME, DAEMON_SWITCH_NAME).filter(programParams::containsKey).count() != 1) {
+                throw new MissingFormatArgumentException("Exactly one of -encrypt, -decrypt or -daemon should be used");
+            }
+
+            if (!programParams.containsKey(DAEMON_SWITCH_NAME)
+                    && Stream.of(FILE_PARAM_PATH, DIR_PARAM_NAME, FILES_FROM_PARAM_NAME).filter(programParams::containsKey).count() != 1) {
+
+                throw new MissingFormatArgumentException("Exactly one of -file, -dir or -filesFrom should be used");
+            }
+
+            if (programParams.get(RECIPIENT_ALIAS_PARAM_NAME).contains(RECIPIENT_ALIAS_SEPARATOR)) {
+                if (!programParams.containsKey(ENCRYPT_SWITCH_NAME)) {
+                    throw new IllegalArgumentException("Only -encrypt takes several -recAlias recipients");
+                }
+
+                if (programParams.containsKey(BATCH_KEY_SWITCH_NAME)) {
+                    throw new IllegalArgumentException("-batchKey wraps the key-encryption key for a single -recAlias recipient");
+                }
+            }
+
+            if (programParams.containsKey(IO_MODE_PARAM_NAME)) {
+                IoMode.valueOf(programParams.get(IO_MODE_PARAM_NAME).toUpperCase());
+            }
 
-                throw new MissingFormatArgumentException("Either -encrypt or -decrypt should be used, but not both");
+            if (programParams.containsKey(SUITE_PARAM_NAME)) {
+                AsymmetricSuite.valueOf(programParams.get(SUITE_PARAM_NAME).toUpperCase());
             }
 
         } catch (Exception e) {
@@ -150,7 +479,11 @@ public class EncryptTool {
         }
 
         try {
-            Utils.ensurePathReadable(Paths.get(programParams.get("file")));
+            for (String pathParam : Arrays.asList(FILE_PARAM_PATH, DIR_PARAM_NAME, FILES_FROM_PARAM_NAME)) {
+                if (programParams.containsKey(pathParam) && !STANDARD_STREAMS_PATH.equals(programParams.get(pathParam))) {
+                    Utils.ensurePathReadable(Paths.get(programParams.get(pathParam)));
+                }
+            }
 
         } catch (IOException e) {
             e.printStackTrace();
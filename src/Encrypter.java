@@ -1,36 +1,52 @@
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
-import java.io.FileOutputStream;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.*;
 import java.security.cert.Certificate;
-import java.util.HashMap;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
 
 @SuppressWarnings("WeakerAccess")
 public class Encrypter {
 
-    private static final String CONFIG_FILE_TEMPLATE = "%s-encrypted-config.json";
-    private static final java.util.Base64.Encoder Base64 = java.util.Base64.getEncoder();
+    private static final int MAX_CONTENT_KEY_LENGTH = 32; // bytes, a 256 bits AES key
 
-    private final KeyStore keystore;
-    private final Cipher asymmetricCipher;
-    private final IFileEncrypt fileEncrypt;
-    private final IStreamDigester streamDigester;
-    private final IDataSigner dataSigner;
-    private final KeyGenerator keyGenerator;
-    private final SecureRandom secureRandom;
-    private final int symmetricKeyLength;
-    private final Gson gson;
+    private final ICryptoProvider cryptoProvider;
+    private final ThreadLocal<IFileEncrypt> fileEncrypts;
 
-    private Key myPrivateKey;
-    private Certificate recipientCertificate;
+    private volatile Key myPrivateKey;
+    private volatile Certificate myCertificate;
+    private volatile Certificate recipientCertificate;
+    private volatile List<Recipient> otherRecipients = Collections.emptyList();
+    private volatile KeyEncryptionKey keyEncryptionKey;
+    private volatile long checkpointInterval;
+    private volatile BatchManifest batchManifest;
+    private volatile Path batchManifestFile;
+    private volatile Metrics metrics = Metrics.getDefault();
+    private volatile KeyMaterialPool keyMaterialPool;
+    private volatile KeyResolver keyResolver;
+    private volatile AsymmetricSuite suite = AsymmetricSuite.RSA;
 
     /**
      * Initializes a new instance of Encrypter
@@ -53,20 +69,58 @@ public class Encrypter {
                      SecureRandom secureRandom,
                      int symmetricKeyLengthBits) {
 
-        this.keystore = keystore;
-        this.asymmetricCipher = asymmetricCipher;
-        this.fileEncrypt = new FileEncrypt(symmetricCipher);
-        this.streamDigester = new StreamDigester(messageDigest);
-        this.dataSigner = new DataSigner(signature);
-        this.keyGenerator = keyGenerator;
-        this.secureRandom = secureRandom;
-        this.symmetricKeyLength = symmetricKeyLengthBits;
-        this.gson = new GsonBuilder().disableHtmlEscaping().create();
+        this(keystore,
+                new FileEncrypt(symmetricCipher),
+                asymmetricCipher,
+                messageDigest,
+                signature,
+                keyGenerator,
+                secureRandom,
+                symmetricKeyLengthBits);
+    }
+
+    /**
+     * Initializes a new instance of Encrypter with a file encryption engine of your choice
+     *
+     * @param keystore               a loaded keystore
+     * @param fileEncrypt            the file encryption engine
+     * @param asymmetricCipher       a Cipher instance
+     * @param messageDigest          a MessageDigest instance
+     * @param signature              a Signature instance
+     * @param keyGenerator           a KeyGenerator instance
+     * @param secureRandom           a SecureRandom instance
+     * @param symmetricKeyLengthBits length in bits of the symmetric key
+     */
+    public Encrypter(KeyStore keystore,
+                     IFileEncrypt fileEncrypt,
+                     Cipher asymmetricCipher,
+                     MessageDigest messageDigest,
+                     Signature signature,
+                     KeyGenerator keyGenerator,
+                     SecureRandom secureRandom,
+                     int symmetricKeyLengthBits) {
+
+        this(keystore,
+                new SingleCryptoProvider(null, asymmetricCipher, messageDigest, signature, keyGenerator, secureRandom, symmetricKeyLengthBits),
+                () -> fileEncrypt);
+    }
+
+    /**
+     * Initializes a new instance of Encrypter that is safe for concurrent use
+     * as long as the crypto provider hands every thread instances of its own.
+     *
+     * @param keystore           a loaded keystore
+     * @param cryptoProvider     the provider of crypto instances
+     * @param fileEncryptFactory creates the file encryption engine of every thread
+     */
+    public Encrypter(KeyStore keystore, ICryptoProvider cryptoProvider, Supplier<IFileEncrypt> fileEncryptFactory) {
+        this.cryptoProvider = cryptoProvider;
+        this.fileEncrypts = ThreadLocal.withInitial(fileEncryptFactory);
+        this.keyResolver = new KeyResolver(keystore);
     }
 
     /**
      * Initializes the Encrypter instance with the relevant private key and public certificate.
-     * Also - initializes the key generator
      *
      * @param privateKeyAlias           the alias for the private key
      * @param privateKeyPassword        the password for the private key
@@ -74,31 +128,206 @@ public class Encrypter {
      * @throws KeyStoreException for bad private key password
      */
     public void initialize(String privateKeyAlias, String privateKeyPassword, String recipientCertificateAlias) throws KeyStoreException {
-        System.out.print("Initializing encrypter: ...");
+        initialize(privateKeyAlias, privateKeyPassword, Collections.singletonList(recipientCertificateAlias));
+    }
+
+    /**
+     * Initializes the Encrypter instance with the relevant private key and the public certificates of several
+     * recipients. Content is encrypted once, and its key is wrapped for every recipient (see {@link ContainerHeader}).
+     *
+     * @param privateKeyAlias             the alias for the private key
+     * @param privateKeyPassword          the password for the private key
+     * @param recipientCertificateAliases the aliases for the recipients' public certificates, the first one
+     *                                    being the recipient whose key has the key field of the header
+     * @throws KeyStoreException for bad private key password, keys of another suite than the one set,
+     *                           recipient certificates that cannot be encoded, or more recipients than a
+     *                           header holds the keys of
+     */
+    public void initialize(String privateKeyAlias, String privateKeyPassword, List<String> recipientCertificateAliases) throws KeyStoreException {
+        metrics.print("Initializing encrypter: ...");
+
+        final KeyResolver resolver = keyResolver;
+        final Key privateKey = resolver.getPrivateKey(privateKeyAlias, privateKeyPassword);
+        final List<Recipient> recipients = new ArrayList<>();
+        final AsymmetricSuite keySuite = suite;
+
+        if (!keySuite.getKeyAlgorithm().equalsIgnoreCase(privateKey.getAlgorithm())) {
+            throw new KeyStoreException(String.format("%s is an %s key, the %s suite takes %s keys",
+                    privateKeyAlias, privateKey.getAlgorithm(), keySuite, keySuite.getKeyAlgorithm()));
+        }
+
+        if (recipientCertificateAliases.isEmpty()) {
+            throw new KeyStoreException("at least one recipient's certificate alias is needed");
+        }
+
+        for (String recipientCertificateAlias : recipientCertificateAliases) {
+            if (!resolver.isCertificateEntry(recipientCertificateAlias)) {
+                throw new KeyStoreException("recipient's certificate alias not found in keystore");
+            }
+
+            final Certificate certificate = resolver.getCertificate(recipientCertificateAlias);
+
+            if (!keySuite.getKeyAlgorithm().equalsIgnoreCase(certificate.getPublicKey().getAlgorithm())) {
+                throw new KeyStoreException(String.format("%s is an %s key, the %s suite takes %s keys",
+                        recipientCertificateAlias, certificate.getPublicKey().getAlgorithm(), keySuite, keySuite.getKeyAlgorithm()));
+            }
+
+            try {
+                recipients.add(new Recipient(certificate));
+
+            } catch (CertificateEncodingException e) {
+                throw new KeyStoreException(String.format("%s certificate cannot be encoded", recipientCertificateAlias), e);
+            }
+        }
+
+        // every other recipient's key is a field of each header, refuse up front more recipients than a header holds
+        final byte[] largestContentKey = new byte[MAX_CONTENT_KEY_LENGTH];
+        int recipientKeysLength = 0;
+
+        for (Recipient recipient : recipients.subList(1, recipients.size())) {
+            try {
+                recipientKeysLength += ContainerHeader.recipientKeyLength(keyWrapper().wrap(largestContentKey, recipient.certificate.getPublicKey()).length);
+
+            } catch (GeneralSecurityException e) {
+                throw new KeyStoreException("a content key cannot be wrapped for every recipient", e);
+            }
+        }
+
+        if (recipientKeysLength > ContainerHeader.MAX_RECIPIENT_KEYS_LENGTH) {
+            throw new KeyStoreException(String.format("the content key wrapped for %d recipients takes %d bytes, at most %d bytes fit in a container header",
+                    recipients.size() - 1, recipientKeysLength, ContainerHeader.MAX_RECIPIENT_KEYS_LENGTH));
+        }
+
+        myPrivateKey = privateKey;
+
+        myCertificate = resolver.getCertificate(privateKeyAlias);
+        recipientCertificate = recipients.get(0).certificate;
+        otherRecipients = Collections.unmodifiableList(recipients.subList(1, recipients.size()));
+
+        metrics.println("DONE");
+    }
+
+    /**
+     * Makes files encrypted by a {@link ChunkedFileEncrypt} engine resumable: progress is checkpointed next to
+     * the output (see {@link Checkpoint}), and encrypting to an output left behind by an interrupted run continues
+     * from its last checkpoint instead of failing on the existing file.
+     *
+     * @param checkpointInterval the plain bytes to encrypt between checkpoints, or 0 to disable checkpoints
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Sets the metrics the stages of every file are recorded to, and its progress printed with
+     *
+     * @param metrics the metrics, {@link Metrics#getDefault()} unless set
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the resolver private keys and certificates are looked up with on {@link #initialize}, such as one shared
+     * by the encrypters of other aliases so each key is unlocked once
+     *
+     * @param keyResolver the resolver, one of this encrypter's own keystore unless set
+     */
+    public void setKeyResolver(KeyResolver keyResolver) {
+        this.keyResolver = keyResolver;
+    }
+
+    /**
+     * Takes symmetric keys, and the IVs of processors, from a pool generating them ahead of time
+     * instead of generating them per file
+     *
+     * @param keyMaterialPool the pool, or null to generate keys with the crypto provider's KeyGenerator
+     */
+    public void setKeyMaterialPool(KeyMaterialPool keyMaterialPool) {
+        this.keyMaterialPool = keyMaterialPool;
+    }
+
+    /**
+     * Sets the suite symmetric keys are wrapped with, recorded in every container. Set before {@link #initialize},
+     * which checks the keys are those of the suite, as should be the crypto provider's Signature.
+     *
+     * @param suite the suite, {@link AsymmetricSuite#RSA} unless set
+     */
+    public void setSuite(AsymmetricSuite suite) {
+        this.suite = suite;
+    }
+
+    /**
+     * Starts a batch: the symmetric keys of the files encrypted from now on are wrapped with a single key-encryption
+     * key, which is wrapped with the recipient's public key only once. Replaces the key of a previous batch, if any.
+     *
+     * @throws InvalidKeyException for recipient key issues
+     */
+    public void startBatch() throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        if (!otherRecipients.isEmpty()) {
+            throw new IllegalStateException("A batch key is wrapped for a single recipient");
+        }
+
+        final SecretKey key = generateKey();
 
-        if (!keystore.isKeyEntry(privateKeyAlias)) {
-            throw new KeyStoreException("private key alias not found in keystore");
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.KEY_WRAP)) {
+            keyEncryptionKey = KeyEncryptionKey.create(key, keyWrapper(), recipientCertificate.getPublicKey());
+            timer.stop();
         }
+    }
+
+    /**
+     * Ends the current batch, so each file's symmetric key is wrapped with the recipient's public key again
+     */
+    public void endBatch() {
+        keyEncryptionKey = null;
+    }
+
+    /**
+     * Starts a signed batch: the files encrypted from now on into containers are not signed one by one, their
+     * digests are recorded in a manifest instead, signed once by {@link #endSignedBatch}. Streams are still signed
+     * one by one. Replaces the manifest of a previous batch that was not ended, if any.
+     *
+     * @param manifestFile the path the manifest is written to, containers are recorded relative to its directory
+     */
+    public void startSignedBatch(Path manifestFile) {
+        batchManifestFile = manifestFile;
+        batchManifest = BatchManifest.create(manifestFile, cryptoProvider.signature().getAlgorithm());
+    }
+
+    /**
+     * Ends the current signed batch, signing its manifest and writing it. Should only be called once all the
+     * files of the batch are encrypted.
+     *
+     * @return the count of containers the manifest records
+     * @throws IOException         for IO issues writing the manifest
+     * @throws InvalidKeyException for private key issues
+     * @throws SignatureException  for signature issues
+     */
+    public int endSignedBatch() throws IOException, InvalidKeyException, SignatureException {
+        final BatchManifest manifest = batchManifest;
 
-        if (!keystore.isCertificateEntry(recipientCertificateAlias)) {
-            throw new KeyStoreException("recipient's certificate alias not found in keystore");
+        if (manifest == null) {
+            throw new IllegalStateException("No signed batch was started");
         }
 
-        try {
-            myPrivateKey = keystore.getKey(privateKeyAlias, privateKeyPassword.toCharArray());
+        batchManifest = null;
 
-        } catch (NoSuchAlgorithmException | UnrecoverableKeyException e) {
-            throw new KeyStoreException("Bad private key password");
+        metrics.print("Signing batch manifest of %d files to: %s\t...", manifest.size(), batchManifestFile.toAbsolutePath());
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.SIGN)) {
+            manifest.sign(new DataSigner(cryptoProvider.signature()), (PrivateKey) myPrivateKey);
+            timer.stop();
         }
 
-        recipientCertificate = keystore.getCertificate(recipientCertificateAlias);
-        keyGenerator.init(symmetricKeyLength, secureRandom);
+        manifest.write(batchManifestFile);
+        metrics.println("DONE");
 
-        System.out.println("DONE");
+        return manifest.size();
     }
 
     /**
-     * Encrypts and signs the content of the given file
+     * Encrypts and signs the content of the given file into a single container,
+     * holding the wrapped key, IV and signature in its header (see {@link ContainerHeader})
      *
      * @param filePath the path of the file to encrypt and sign
      * @param output   the output encrypted file path
@@ -107,49 +336,560 @@ public class Encrypter {
      * @throws SignatureException  for signature issues
      */
     public void encryptAndSign(Path filePath, Path output) throws IOException, InvalidKeyException, SignatureException, BadPaddingException, IllegalBlockSizeException {
-        System.out.println("Encrypting and signing file: " + filePath.getFileName());
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.FILE_ENCRYPT)) {
+            encryptFile(filePath, output);
+            timer.stop(Files.size(filePath));
+        }
+    }
 
-        final HashMap<String, String> config = new HashMap<>();
+    private void encryptFile(Path filePath, Path output) throws IOException, InvalidKeyException, SignatureException, BadPaddingException, IllegalBlockSizeException {
+        metrics.println("Encrypting and signing file: %s", filePath.getFileName());
 
-        // sign content
-        byte[] fileDigest = streamDigester.digestStream(filePath);
-        byte[] fileSignature = dataSigner.sign(fileDigest, (PrivateKey) myPrivateKey);
-        config.put("sig", Base64.encodeToString(fileSignature));
+        final Signature signature = cryptoProvider.signature();
+        final IFileEncrypt fileEncrypt = fileEncrypts.get();
+        final long interval = checkpointInterval;
+
+        if (interval > 0 && fileEncrypt instanceof ChunkedFileEncrypt) {
+            encryptResumable(filePath, output, (ChunkedFileEncrypt) fileEncrypt, signature, interval);
+            return;
+        }
 
         // generate symmetric key
-        Key symmetricKey = keyGenerator.generateKey();
+        final Key symmetricKey = generateKey();
+        final ContainerHeader header = createHeader(fileEncrypt, signature, symmetricKey, batchManifest, false);
 
-        // encrypt symmetric key with recipient's public key
-        asymmetricCipher.init(Cipher.ENCRYPT_MODE, recipientCertificate.getPublicKey());
-        byte[] symmetricKeyEncrypted = asymmetricCipher.doFinal(symmetricKey.getEncoded());
-        config.put("key", Base64.encodeToString(symmetricKeyEncrypted));
+        Utils.ensurePathWritable(output);
+
+        try (FileChannel dest = FileChannel.open(output, StandardOpenOption.WRITE)) {
+            // reserve the header, then encrypt and digest the file in a single read pass right after it
+            header.write(dest);
+            dest.position(header.getLength());
+
+            final byte[] fileDigest;
+
+            try (Metrics.Timer timer = metrics.time(Metrics.Stage.ENCRYPT)) {
+                fileDigest = fileEncrypt.encrypt(filePath, dest, symmetricKey, cryptoProvider.messageDigest());
+                timer.stop(Files.size(filePath));
+            }
+
+            // sign content, the IV is not secret so it is kept plain
+            header.setIV(fileEncrypt.getIV());
+            header.setCompression(fileEncrypt.getContentCompression());
+            signContent(header, signature, fileDigest, filePath, output);
+            signHeader(header, signature);
+
+            metrics.print("Writing container header to: %s\t...", output.toAbsolutePath());
+            header.write(dest);
+        }
+
+        metrics.println("DONE");
+    }
+
+    /**
+     * Encrypts and signs a file into a container, checkpointing progress, or continues an output left behind
+     * by an interrupted run from its last checkpoint. The content key is kept in the checkpoint wrapped with
+     * our own public key, as the header only holds it wrapped for the recipient.
+     */
+    private void encryptResumable(Path filePath, Path output, ChunkedFileEncrypt fileEncrypt, Signature signature, long interval) throws IOException, InvalidKeyException, SignatureException, BadPaddingException, IllegalBlockSizeException {
+        Utils.ensurePathReadable(filePath);
+
+        Checkpoint checkpoint = Checkpoint.resume(output, filePath, interval);
+        final ContainerHeader header;
+        final Key symmetricKey;
+
+        if (checkpoint != null) {
+            metrics.println("Resuming from checkpoint after %d segments", checkpoint.getSegments());
+
+            try (FileChannel dest = FileChannel.open(output, StandardOpenOption.READ)) {
+                header = ContainerHeader.read(dest);
+            }
+
+            if (header == null || header.getContentAlgorithm() != fileEncrypt.getAlgorithm() || header.getSegmentSize() != fileEncrypt.getSegmentSize()) {
+                throw new IOException(String.format("%s does not match its checkpoint", output.getFileName()));
+            }
+
+            joinCurrentBatch(header, output);
+
+            symmetricKey = unwrapForMyself(checkpoint.getKey());
+
+        } else {
+            Utils.ensurePathAvailable(output);
+
+            // generate symmetric key, and keep it for ourselves in the checkpoint before the output exists
+            symmetricKey = generateKey();
+            header = createHeader(fileEncrypt, signature, symmetricKey, batchManifest, false);
+
+            checkpoint = Checkpoint.start(output, filePath, interval, wrapForMyself(symmetricKey));
+            checkpoint.save(0, null, null);
+
+            Utils.ensurePathWritable(output);
+        }
+
+        try (FileChannel dest = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (checkpoint.getSegments() == 0) {
+                header.write(dest);
+            }
+
+            dest.position(header.getLength());
+
+            final byte[] fileDigest;
+
+            try (Metrics.Timer timer = metrics.time(Metrics.Stage.ENCRYPT)) {
+                fileDigest = fileEncrypt.encrypt(filePath, dest, symmetricKey, cryptoProvider.messageDigest(), checkpoint);
+                timer.stop(Files.size(filePath));
+            }
+
+            // sign content, the IV is not secret so it is kept plain
+            header.setIV(fileEncrypt.getIV());
+            signContent(header, signature, fileDigest, filePath, output);
+            signHeader(header, signature);
+
+            metrics.print("Writing container header to: %s\t...", output.toAbsolutePath());
+            header.write(dest);
+            dest.force(true);
+        }
+
+        checkpoint.delete();
+
+        metrics.println("DONE");
+    }
+
+    /**
+     * Encrypts a changed file again into the container it was encrypted to before and signs it, resealing and
+     * writing only the segments that changed since (see {@link ManifestFileEncrypt#reencrypt}), or encrypts it
+     * into a new container in case there is none yet. Needs the {@link ManifestFileEncrypt} engine.
+     *
+     * @param filePath the path of the file to encrypt and sign
+     * @param output   the path of the container, previously encrypted from this file with our key
+     * @throws IOException         for IO issues, or an output that is not a container we can encrypt again
+     * @throws InvalidKeyException for symmetric key issues
+     * @throws SignatureException  for signature issues
+     */
+    public void reencryptAndSign(Path filePath, Path output) throws IOException, InvalidKeyException, SignatureException, BadPaddingException, IllegalBlockSizeException {
+        final IFileEncrypt fileEncrypt = fileEncrypts.get();
+
+        if (!(fileEncrypt instanceof ManifestFileEncrypt)) {
+            throw new IllegalStateException("Encrypting files again takes the ManifestFileEncrypt engine");
+        }
+
+        if (!Files.exists(output)) {
+            encryptAndSign(filePath, output);
+            return;
+        }
+
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.FILE_ENCRYPT)) {
+            reencryptFile(filePath, output, (ManifestFileEncrypt) fileEncrypt);
+            timer.stop(Files.size(filePath));
+        }
+    }
+
+    private void reencryptFile(Path filePath, Path output, ManifestFileEncrypt manifestEncrypt) throws IOException, InvalidKeyException, SignatureException, BadPaddingException, IllegalBlockSizeException {
+        metrics.println("Encrypting again and signing file: %s", filePath.getFileName());
+
+        final Signature signature = cryptoProvider.signature();
+
+        try (FileChannel dest = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ContainerHeader header = ContainerHeader.read(dest);
 
-        // encrypt file and persist the IV
-        fileEncrypt.encrypt(filePath, output, symmetricKey);
-        byte[] encryptedIV = asymmetricCipher.doFinal(fileEncrypt.getIV());
-        config.put("iv", Base64.encodeToString(encryptedIV));
+            if (header == null || header.getContentAlgorithm() != manifestEncrypt.getAlgorithm() || header.getSenderKey() == null) {
+                throw new IOException(String.format("%s is not a container that can be encrypted again", output.getFileName()));
+            }
 
-        // write config file
-        createConfigFileFor(config, filePath);
+            if (header.getSegmentSize() != manifestEncrypt.getSegmentSize() || !signature.getAlgorithm().equalsIgnoreCase(header.getSignatureAlgorithm())
+                    || header.getSuite() != suite) {
+
+                throw new IOException(String.format("%s was encrypted with %d bytes segments, %s keys and signed with %s",
+                        output.getFileName(), header.getSegmentSize(), header.getSuite(), header.getSignatureAlgorithm()));
+            }
+
+            joinCurrentBatch(header, output);
+            dest.position(header.getLength());
+
+            final Key symmetricKey = unwrapForMyself(header.getSenderKey());
+            final byte[] manifestDigest;
+
+            try (Metrics.Timer timer = metrics.time(Metrics.Stage.ENCRYPT)) {
+                manifestDigest = manifestEncrypt.reencrypt(filePath, dest, symmetricKey, header.getIV(), cryptoProvider.messageDigest());
+                timer.stop(Files.size(filePath));
+            }
+
+            // sign the manifest, which covers every segment
+            header.setIV(manifestEncrypt.getIV());
+            signContent(header, signature, manifestDigest, filePath, output);
+
+            metrics.print("Writing container header to: %s (%d segments resealed)\t...", output.toAbsolutePath(), manifestEncrypt.getResealedSegments());
+            header.write(dest);
+        }
+
+        metrics.println("DONE");
+    }
+
+    /**
+     * Encrypts and signs the content of a stream into a container written to another stream, in a single pass
+     * and without temporary files. The signature follows the payload, as the stream cannot be rewritten.
+     * Neither stream is closed.
+     *
+     * @param source the plain stream, read to its end
+     * @param output the stream to write the container to
+     * @throws IOException         for IO issues
+     * @throws InvalidKeyException for symmetric key issues
+     * @throws SignatureException  for signature issues
+     */
+    public void encryptAndSign(InputStream source, OutputStream output) throws IOException, InvalidKeyException, SignatureException, BadPaddingException, IllegalBlockSizeException {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.FILE_ENCRYPT)) {
+            encryptStream(source, output);
+            timer.stop();
+        }
+    }
+
+    private void encryptStream(InputStream source, OutputStream output) throws IOException, InvalidKeyException, SignatureException, BadPaddingException, IllegalBlockSizeException {
+        metrics.println("Encrypting and signing stream");
+
+        final Signature signature = cryptoProvider.signature();
+        final IFileEncrypt fileEncrypt = fileEncrypts.get();
+
+        // generate symmetric key
+        final Key symmetricKey = generateKey();
+        final ContainerHeader header = createHeader(fileEncrypt, signature, symmetricKey, null, true);
+        final HeaderFirstOutputStream payload = new HeaderFirstOutputStream(output, header, fileEncrypt, signature);
+        final byte[] fileDigest;
+
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.ENCRYPT)) {
+            fileDigest = fileEncrypt.encrypt(source, payload, symmetricKey, cryptoProvider.messageDigest());
+            timer.stop();
+        }
+
+        // content encrypted to nothing still gets its header
+        payload.writeHeader();
+
+        header.setSignature(sign(signature, fileDigest));
+        output.write(header.getTrailer());
+        output.flush();
+    }
+
+    /**
+     * Encrypts and signs the content of a channel into a container written to another channel.
+     * Neither channel is closed.
+     *
+     * @param source the plain channel, read to its end
+     * @param output the channel to write the container to
+     * @throws IOException         for IO issues
+     * @throws InvalidKeyException for symmetric key issues
+     * @throws SignatureException  for signature issues
+     */
+    public void encryptAndSign(ReadableByteChannel source, WritableByteChannel output) throws IOException, InvalidKeyException, SignatureException, BadPaddingException, IllegalBlockSizeException {
+        encryptAndSign(Channels.newInputStream(source), Channels.newOutputStream(output));
+    }
+
+    /**
+     * Creates a processor encrypting and signing the plain chunks it subscribes to into a container, published
+     * as chunks: the header first, then the encrypted content, then the signature trailer, just as
+     * {@link #encryptAndSign(InputStream, OutputStream)} writes it. Each processor encrypts a single container
+     * with a key of its own, and never blocks.
+     *
+     * @param algorithm the content algorithm, one encrypting the content as a single stream such as AES_CBC
+     * @return the processor, to be subscribed to the plain chunks
+     * @throws GeneralSecurityException for segmented algorithms, or symmetric key issues
+     */
+    public ContentProcessor newEncryptProcessor(ContentAlgorithm algorithm) throws GeneralSecurityException {
+        if (algorithm.isSegmented()) {
+            throw new NoSuchAlgorithmException(String.format("%s content cannot be encrypted by a processor", algorithm));
+        }
+
+        final Cipher cipher = Cipher.getInstance(algorithm.getTransformation());
+        final Key symmetricKey = generateKey();
+        final KeyMaterialPool pool = keyMaterialPool;
+
+        if (pool != null) {
+            cipher.init(Cipher.ENCRYPT_MODE, symmetricKey, new IvParameterSpec(pool.nextIV()));
+        } else {
+            cipher.init(Cipher.ENCRYPT_MODE, symmetricKey);
+        }
+
+        // the IV is known as soon as the cipher is initialized, so the header is complete but for the trailer
+        final ContainerHeader header = createHeader(algorithm, 0, null, false, cryptoProvider.signature(), symmetricKey, null, true);
+        header.setIV(cipher.getIV());
+
+        return new EncryptProcessor(header, cipher, MessageDigest.getInstance(cryptoProvider.messageDigest().getAlgorithm()));
     }
 
     /**
-     * Serializes the config and writes it to disk
+     * Creates the header of a container, wrapping the symmetric key for the recipient,
+     * and for ourselves in case the engine encrypts files again
      *
-     * @param config   the config map
-     * @param filePath the original file for which the config is relevant
-     * @throws IOException for IO issues
+     * @param manifest         the signed batch recording the container, or null in case it is signed on its own
+     * @param signatureTrailer whether the signature follows the payload, for containers written to a stream
+     */
+    private ContainerHeader createHeader(IFileEncrypt fileEncrypt, Signature signature, Key symmetricKey, BatchManifest manifest, boolean signatureTrailer) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        final Compression compression = fileEncrypt.getCompression() != Compression.NONE ? fileEncrypt.getCompression() : null;
+
+        return createHeader(fileEncrypt.getAlgorithm(), fileEncrypt.getSegmentSize(), compression, fileEncrypt instanceof ManifestFileEncrypt,
+                signature, symmetricKey, manifest, signatureTrailer);
+    }
+
+    /**
+     * Creates the header of a container of the given content algorithm
+     *
+     * @param compression      the codec the content may be compressed with, or null for content that is not
+     * @param keepSenderKey    whether to wrap the symmetric key for ourselves as well
+     * @param manifest         the signed batch recording the container, or null in case it is signed on its own
+     * @param signatureTrailer whether the signature follows the payload, for containers written to a stream
+     */
+    private ContainerHeader createHeader(ContentAlgorithm algorithm, int segmentSize, Compression compression, boolean keepSenderKey, Signature signature,
+                                         Key symmetricKey, BatchManifest manifest, boolean signatureTrailer) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        final KeyEncryptionKey batchKey = keyEncryptionKey;
+        final byte[] senderKey = keepSenderKey ? wrapForMyself(symmetricKey) : null;
+        final byte[] batchId = manifest != null ? manifest.getId() : null;
+
+        final List<Recipient> recipients = otherRecipients;
+
+        if (batchKey != null) {
+            if (!recipients.isEmpty()) {
+                throw new IllegalStateException("A batch key is wrapped for a single recipient");
+            }
+
+            // wrap symmetric key with the batch's key-encryption key
+            final ContainerHeader header = new ContainerHeader(algorithm, segmentSize, signature.getAlgorithm(),
+                    batchKey.getWrappedKey(), batchKey.wrap(symmetricKey), senderKey, batchId, compression, myPrivateKey, signatureTrailer);
+            header.setSuite(suite);
+
+            return header;
+        }
+
+        // encrypt symmetric key with recipient's public key
+        byte[] symmetricKeyEncrypted = wrap(symmetricKey, recipientCertificate.getPublicKey());
+
+        final ContainerHeader header = new ContainerHeader(algorithm, segmentSize, signature.getAlgorithm(),
+                null, symmetricKeyEncrypted, senderKey, batchId, compression, myPrivateKey, signatureTrailer);
+        header.setSuite(suite);
+
+        // the content is encrypted once, only its key is wrapped again for every other recipient
+        for (Recipient recipient : recipients) {
+            header.addRecipientKey(recipient.fingerprint, wrap(symmetricKey, recipient.certificate.getPublicKey()));
+        }
+
+        if (algorithm == ContentAlgorithm.AES_GCM_CHUNKED && batchId == null && recipients.isEmpty()) {
+            // segments may be read on their own, so the recipient authenticates the sender by the header alone
+            header.reserveHeaderSignature(myPrivateKey);
+        }
+
+        return header;
+    }
+
+    /**
+     * Signs the content digest into the header, or records it in the signed batch the header belongs to
+     */
+    private void signContent(ContainerHeader header, Signature signature, byte[] fileDigest, Path filePath, Path output) throws IOException, InvalidKeyException, SignatureException {
+        if (header.getBatchId() == null) {
+            header.setSignature(sign(signature, fileDigest));
+            return;
+        }
+
+        final BatchManifest manifest = batchManifest;
+
+        if (manifest == null || !Arrays.equals(manifest.getId(), header.getBatchId())) {
+            throw new IllegalStateException("Signed batch ended while its files were being encrypted");
+        }
+
+        manifest.add(output, Files.size(filePath), fileDigest);
+    }
+
+    /**
+     * Signs the complete header, IV and codec included, in case room was reserved for its signature
+     */
+    private void signHeader(ContainerHeader header, Signature signature) throws InvalidKeyException, SignatureException {
+        if (header.getHeaderSignature() != null) {
+            header.setHeaderSignature(sign(signature, header.getSignedBytes()));
+        }
+    }
+
+    /**
+     * Moves an existing container to the current signed batch, as long as both are validated the same way,
+     * since its header is rewritten in place and cannot change its length
+     */
+    private void joinCurrentBatch(ContainerHeader header, Path output) throws IOException {
+        final BatchManifest manifest = batchManifest;
+
+        if (header.getBatchId() != null && manifest == null) {
+            throw new IOException(String.format("%s is validated against a batch manifest, it can only be encrypted again in a signed batch", output.getFileName()));
+        }
+
+        if (header.getBatchId() == null && manifest != null) {
+            throw new IOException(String.format("%s holds a signature of its own, it cannot be encrypted again in a signed batch", output.getFileName()));
+        }
+
+        if (manifest != null) {
+            header.setBatchId(manifest.getId());
+        }
+    }
+
+    /**
+     * Wraps a symmetric key with our own public key, so only we can recover it
+     */
+    private byte[] wrapForMyself(Key symmetricKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        return wrap(symmetricKey, myCertificate.getPublicKey());
+    }
+
+    private Key unwrapForMyself(byte[] wrappedKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.KEY_UNWRAP)) {
+            final Key key = new SecretKeySpec(keyWrapper().unwrap(wrappedKey, myPrivateKey), cryptoProvider.keyGenerator().getAlgorithm());
+            timer.stop();
+
+            return key;
+        }
+    }
+
+    private byte[] wrap(Key symmetricKey, PublicKey publicKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.KEY_WRAP)) {
+            final byte[] wrappedKey = keyWrapper().wrap(symmetricKey.getEncoded(), publicKey);
+            timer.stop();
+
+            return wrappedKey;
+        }
+    }
+
+    private IKeyWrapper keyWrapper() {
+        final KeyMaterialPool pool = keyMaterialPool;
+
+        return suite.newKeyWrapper(cryptoProvider, pool != null ? pool.getRandom() : null);
+    }
+
+    private SecretKey generateKey() {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.KEY_GENERATION)) {
+            final KeyMaterialPool pool = keyMaterialPool;
+            final SecretKey key = pool != null ? pool.nextKey() : cryptoProvider.keyGenerator().generateKey();
+            timer.stop();
+
+            return key;
+        }
+    }
+
+    private byte[] sign(Signature signature, byte[] digest) throws InvalidKeyException, SignatureException {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.SIGN)) {
+            final byte[] signed = new DataSigner(signature).sign(digest, (PrivateKey) myPrivateKey);
+            timer.stop();
+
+            return signed;
+        }
+    }
+
+    /**
+     * A recipient the content key is wrapped for, picked by the fingerprint of its certificate when decrypting
+     */
+    private static final class Recipient {
+
+        final Certificate certificate;
+        final byte[] fingerprint;
+
+        Recipient(Certificate certificate) throws CertificateEncodingException {
+            this.certificate = certificate;
+            this.fingerprint = ContainerHeader.fingerprint(certificate);
+        }
+    }
+
+    /**
+     * Encrypts the chunks of a single container with instances of its own, as its chunks may arrive on any thread
+     */
+    private class EncryptProcessor extends ContentProcessor {
+
+        private final ContainerHeader header;
+        private final Cipher cipher;
+        private final MessageDigest digest;
+
+        private byte[] headerBytes;
+
+        EncryptProcessor(ContainerHeader header, Cipher cipher, MessageDigest digest) {
+            this.header = header;
+            this.cipher = cipher;
+            this.digest = digest;
+            this.headerBytes = header.getBytes();
+        }
+
+        @Override
+        protected ByteBuffer process(ByteBuffer chunk) throws ShortBufferException {
+            digest.update(chunk.duplicate());
+
+            final ByteBuffer output = allocate(cipher.getOutputSize(chunk.remaining()));
+            cipher.update(chunk, output);
+            output.flip();
+
+            return output;
+        }
+
+        @Override
+        protected ByteBuffer finish() throws GeneralSecurityException {
+            final byte[] fileDigest = digest.digest();
+            final ByteBuffer output = allocate(cipher.getOutputSize(0) + header.getTrailerLength());
+
+            cipher.doFinal(ByteBuffer.allocate(0), output);
+            header.setSignature(sign(cryptoProvider.signature(), fileDigest));
+            output.put(header.getTrailer());
+            output.flip();
+
+            resolve(fileDigest, header.getSignature());
+
+            return output;
+        }
+
+        /**
+         * Allocates an output chunk, starting with the header in case it is the first one
+         */
+        private ByteBuffer allocate(int size) {
+            if (headerBytes == null) {
+                return ByteBuffer.allocate(size);
+            }
+
+            final ByteBuffer output = ByteBuffer.allocate(headerBytes.length + size).put(headerBytes);
+            headerBytes = null;
+
+            return output;
+        }
+    }
+
+    /**
+     * Writes the container header right before the first payload byte, once the engine's IV is known and it is signed
      */
-    private void createConfigFileFor(HashMap<String, String> config, Path filePath) throws IOException {
-        final Path configFile = Paths.get(String.format(CONFIG_FILE_TEMPLATE, filePath.toAbsolutePath()));
-        System.out.print(String.format("Writing configuration file to: %s\t...", configFile.toAbsolutePath()));
+    private class HeaderFirstOutputStream extends FilterOutputStream {
 
-        final FileOutputStream outputStream = new FileOutputStream(configFile.toFile());
-        final String configJson = gson.toJson(config);
+        private final ContainerHeader header;
+        private final IFileEncrypt fileEncrypt;
+        private final Signature signature;
 
-        outputStream.write(configJson.getBytes());
-        outputStream.close();
+        private boolean headerWritten;
 
-        System.out.println("DONE");
+        HeaderFirstOutputStream(OutputStream out, ContainerHeader header, IFileEncrypt fileEncrypt, Signature signature) {
+            super(out);
+            this.header = header;
+            this.fileEncrypt = fileEncrypt;
+            this.signature = signature;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writeHeader();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeHeader();
+            out.write(b, off, len);
+        }
+
+        void writeHeader() throws IOException {
+            if (!headerWritten) {
+                header.setIV(fileEncrypt.getIV());
+                header.setCompression(fileEncrypt.getContentCompression());
+
+                try {
+                    signHeader(header, signature);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Container header cannot be signed", e);
+                }
+
+                header.write(out);
+                headerWritten = true;
+            }
+        }
     }
 }
@@ -1,22 +1,69 @@
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.spec.IvParameterSpec;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.util.zip.Inflater;
 
 @SuppressWarnings("WeakerAccess")
 public class FileDecrypt implements IFileDecrypt {
 
+    static final long MAP_THRESHOLD = 16 * 1024 * 1024; // bytes
+
     private final Cipher cipher;
+    private final IoMode ioMode;
+
+    private PipelinedTransfer pipeline;
+
+    private Compression compression = Compression.NONE;
+    private Inflater inflater;
 
     @SuppressWarnings("WeakerAccess")
     public FileDecrypt(Cipher cipher) {
+        this(cipher, IoMode.STREAM);
+    }
+
+    /**
+     * Initializes a new FileDecrypt
+     *
+     * @param cipher the Cipher instance of your choice
+     * @param ioMode the way bytes are moved between the disk and the cipher
+     */
+    public FileDecrypt(Cipher cipher, IoMode ioMode) {
         this.cipher = cipher;
+        this.ioMode = ioMode;
+        this.pipeline = ioMode == IoMode.PIPELINED ? new PipelinedTransfer() : null;
+    }
+
+    /**
+     * Sets the pipeline content is moved through in {@link IoMode#PIPELINED} mode, such as one with deeper rings
+     *
+     * @param pipeline the pipeline, used by this engine only
+     */
+    public void setPipeline(PipelinedTransfer pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Decompresses plain content after it is decrypted, as recorded in its container.
+     * Compressed content is moved as a stream regardless of the IO mode.
+     *
+     * @param compression the codec, {@link Compression#NONE} by default
+     */
+    public void setCompression(Compression compression) {
+        if (compression != this.compression) {
+            this.compression = compression;
+            this.inflater = compression.newInflater();
+        }
     }
 
     /**
@@ -31,16 +78,117 @@ public class FileDecrypt implements IFileDecrypt {
      */
     @Override
     public void decrypt(Path sourceFilePath, Path destFilePath, Key key, byte[] iv) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        decryptFile(sourceFilePath, destFilePath, key, iv, null);
+    }
+
+    /**
+     * Decrypts a file and digests the plain content as it is written
+     *
+     * @param sourceFilePath the path to the encrypted file to be decrypted
+     * @param destFilePath   the path to the decrypted file
+     * @param key            the decryption key to be used
+     * @param iv             the initialization vector used for encryption
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] decrypt(Path sourceFilePath, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        digest.reset();
+        decryptFile(sourceFilePath, destFilePath, key, iv, digest);
+
+        return digest.digest();
+    }
+
+    /**
+     * Decrypts a region of an open file, such as the payload of an encrypted container,
+     * and digests the plain content as it is written
+     *
+     * @param source       the channel of the encrypted file
+     * @param position     the position the encrypted content starts at
+     * @param length       the length of the encrypted content
+     * @param destFilePath the path to the decrypted file
+     * @param key          the decryption key to be used
+     * @param iv           the initialization vector used for encryption
+     * @param digest       the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] decrypt(FileChannel source, long position, long length, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        digest.reset();
+        decryptFrom(source, position, length, destFilePath, key, iv, digest);
+
+        return digest.digest();
+    }
+
+    /**
+     * Decrypts a stream into another, and digests the plain content as it is written. Neither stream is closed.
+     *
+     * @param source the encrypted stream, read to its end
+     * @param dest   the stream to write the plain content to
+     * @param key    the decryption key to be used
+     * @param iv     the initialization vector used for encryption
+     * @param digest the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case of read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] decrypt(InputStream source, OutputStream dest, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        digest.reset();
+        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+
+        Utils.pipeStreams(decompressing(new CipherInputStream(source, cipher)), dest, digest);
+
+        return digest.digest();
+    }
+
+    private void decryptFile(Path sourceFilePath, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
         Utils.ensurePathReadable(sourceFilePath);
+
+        try (FileChannel source = FileChannel.open(sourceFilePath, StandardOpenOption.READ)) {
+            decryptFrom(source, 0, source.size(), destFilePath, key, iv, digest);
+        }
+    }
+
+    private void decryptFrom(FileChannel source, long position, long length, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
         Utils.ensurePathWritable(destFilePath);
 
         cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
 
-        CipherInputStream decryptStream = new CipherInputStream(new FileInputStream(sourceFilePath.toFile()), cipher);
-        FileOutputStream destStream = new FileOutputStream(destFilePath.toFile());
+        if (ioMode == IoMode.STREAM || compression != Compression.NONE) {
+            // closed on failure too, such as content rejected while it inflates
+            try (InputStream decryptStream = decompressing(new CipherInputStream(Utils.newInputStream(source, position, length), cipher));
+                 FileOutputStream destStream = new FileOutputStream(destFilePath.toFile())) {
 
-        Utils.pipeStreams(decryptStream, destStream);
-        decryptStream.close();
-        destStream.close();
+                if (digest == null) {
+                    Utils.pipeStreams(decryptStream, destStream);
+                } else {
+                    Utils.pipeStreams(decryptStream, destStream, digest);
+                }
+            }
+
+            return;
+        }
+
+        try (FileChannel dest = FileChannel.open(destFilePath, StandardOpenOption.WRITE)) {
+            if (ioMode == IoMode.PIPELINED) {
+                pipeline.pipe(source, position, length, dest, cipher, null, digest);
+                return;
+            }
+
+            boolean mapped = ioMode == IoMode.MAPPED && length >= MAP_THRESHOLD;
+            Utils.pipeChannels(source, position, length, dest, cipher, mapped, null, digest);
+        }
+    }
+
+    /**
+     * Wraps the stream with the decompressor of the content, if any
+     */
+    private InputStream decompressing(InputStream decryptStream) {
+        return compression != Compression.NONE ? Compression.decompress(decryptStream, inflater) : decryptStream;
     }
 }
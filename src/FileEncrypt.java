@@ -1,18 +1,82 @@
 import javax.crypto.Cipher;
 import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.util.zip.Deflater;
 
 public class FileEncrypt implements IFileEncrypt {
 
+    static final long MAP_THRESHOLD = 16 * 1024 * 1024; // bytes
+    private static final int SAMPLE_BLOCKS = 4;
+    private static final int SAMPLE_BLOCK_SIZE = 16 * 1024; // bytes
+
     private final Cipher cipher;
+    private final IoMode ioMode;
+
+    private PipelinedTransfer pipeline;
+    private KeyMaterialPool keyMaterialPool;
+
+    private Compression compression = Compression.NONE;
+    private Deflater deflater;
+    private Compression contentCompression = Compression.NONE;
 
     public FileEncrypt(Cipher cipher) {
+        this(cipher, IoMode.STREAM);
+    }
+
+    /**
+     * Initializes a new FileEncrypt
+     *
+     * @param cipher the Cipher instance of your choice
+     * @param ioMode the way bytes are moved between the disk and the cipher
+     */
+    public FileEncrypt(Cipher cipher, IoMode ioMode) {
         this.cipher = cipher;
+        this.ioMode = ioMode;
+        this.pipeline = ioMode == IoMode.PIPELINED ? new PipelinedTransfer() : null;
+    }
+
+    /**
+     * Sets the pipeline content is moved through in {@link IoMode#PIPELINED} mode, such as one with deeper rings
+     *
+     * @param pipeline the pipeline, used by this engine only
+     */
+    public void setPipeline(PipelinedTransfer pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Compresses plain content before it is encrypted, unless a sample of it is found incompressible.
+     * Compressed content is moved as a stream regardless of the IO mode.
+     *
+     * @param compression the codec, {@link Compression#NONE} by default
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+        this.deflater = compression.newDeflater();
+    }
+
+    /**
+     * Takes the IV of every file from a pool generating them ahead of time, instead of having the cipher generate it
+     *
+     * @param keyMaterialPool the pool, or null
+     */
+    public void setKeyMaterialPool(KeyMaterialPool keyMaterialPool) {
+        this.keyMaterialPool = keyMaterialPool;
     }
 
     /**
@@ -26,19 +90,103 @@ public class FileEncrypt implements IFileEncrypt {
      */
     @Override
     public void encrypt(Path sourceFilePath, Path destFilePath, Key key) throws IOException, InvalidKeyException {
+        encryptFile(sourceFilePath, destFilePath, key, null);
+    }
+
+    /**
+     * Encrypts a file and digests its plain content in the same read pass
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param destFilePath   the path to the encrypted file
+     * @param key            the encryption key to be used
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] encrypt(Path sourceFilePath, Path destFilePath, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        digest.reset();
+        encryptFile(sourceFilePath, destFilePath, key, digest);
+
+        return digest.digest();
+    }
+
+    /**
+     * Encrypts a file into an open channel, starting at its current position, and digests its plain content
+     * in the same read pass. The channel position is left right after the encrypted content.
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param dest           the channel to write the encrypted content to
+     * @param key            the encryption key to be used
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] encrypt(Path sourceFilePath, FileChannel dest, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
         Utils.ensurePathReadable(sourceFilePath);
-        Utils.ensurePathWritable(destFilePath);
 
-        cipher.init(Cipher.ENCRYPT_MODE, key);
+        digest.reset();
+        encryptTo(sourceFilePath, dest, key, digest);
+
+        return digest.digest();
+    }
+
+    /**
+     * Encrypts a stream into another, and digests its plain content in the same pass.
+     * Neither stream is closed. The IV is available as soon as the first byte is written to dest.
+     *
+     * @param source the plain stream, read to its end
+     * @param dest   the stream to write the encrypted content to
+     * @param key    the encryption key to be used
+     * @param digest the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case of read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] encrypt(InputStream source, OutputStream dest, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        digest.reset();
+        initCipher(key);
+        contentCompression = Compression.NONE;
+
+        if (compression != Compression.NONE) {
+            // sample the head of the stream, then encrypt it along with the rest
+            final byte[] sample = new byte[SAMPLE_BLOCKS * SAMPLE_BLOCK_SIZE];
+            final int sampleLength = Utils.fill(source, sample, sample.length);
 
-        FileInputStream sourceStream = new FileInputStream(sourceFilePath.toFile());
-        CipherOutputStream encryptStream = new CipherOutputStream(new FileOutputStream(destFilePath.toFile()), cipher);
+            contentCompression = Compression.isCompressible(sample, sampleLength, deflater) ? compression : Compression.NONE;
+            source = new SequenceInputStream(new ByteArrayInputStream(sample, 0, sampleLength), source);
+        }
 
-        Utils.pipeStreams(sourceStream, encryptStream);
-        sourceStream.close();
+        OutputStream encryptStream = compressing(new CipherOutputStream(Utils.nonClosing(dest), cipher));
+        Utils.pipeStreams(source, encryptStream, digest);
         encryptStream.close();
+
+        return digest.digest();
+    }
+
+    @Override
+    public ContentAlgorithm getAlgorithm() {
+        return ContentAlgorithm.forTransformation(cipher.getAlgorithm());
+    }
+
+    @Override
+    public int getSegmentSize() {
+        return 0;
+    }
+
+    @Override
+    public Compression getCompression() {
+        return compression;
     }
 
+    @Override
+    public Compression getContentCompression() {
+        return contentCompression;
+    }
 
     /**
      * Gets the initialization vector used for encryption
@@ -49,4 +197,89 @@ public class FileEncrypt implements IFileEncrypt {
     public byte[] getIV() {
         return cipher.getIV();
     }
+
+    private void initCipher(Key key) throws InvalidKeyException {
+        if (keyMaterialPool == null) {
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            return;
+        }
+
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(keyMaterialPool.nextIV()));
+
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException(String.format("%s does not take IVs of %d bytes", cipher.getAlgorithm(), KeyMaterialPool.IV_LENGTH), e);
+        }
+    }
+
+    private void encryptFile(Path sourceFilePath, Path destFilePath, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        Utils.ensurePathReadable(sourceFilePath);
+        Utils.ensurePathWritable(destFilePath);
+
+        try (FileChannel dest = FileChannel.open(destFilePath, StandardOpenOption.WRITE)) {
+            encryptTo(sourceFilePath, dest, key, digest);
+        }
+    }
+
+    private void encryptTo(Path sourceFilePath, FileChannel dest, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        initCipher(key);
+        contentCompression = compression != Compression.NONE && isCompressible(sourceFilePath) ? compression : Compression.NONE;
+
+        if (ioMode == IoMode.STREAM || contentCompression != Compression.NONE) {
+            FileInputStream sourceStream = new FileInputStream(sourceFilePath.toFile());
+            OutputStream encryptStream = compressing(new CipherOutputStream(Utils.nonClosing(Channels.newOutputStream(dest)), cipher));
+
+            if (digest == null) {
+                Utils.pipeStreams(sourceStream, encryptStream);
+            } else {
+                Utils.pipeStreams(sourceStream, encryptStream, digest);
+            }
+
+            sourceStream.close();
+            encryptStream.close();
+            return;
+        }
+
+        try (FileChannel source = FileChannel.open(sourceFilePath, StandardOpenOption.READ)) {
+            final long size = source.size();
+
+            if (ioMode == IoMode.PIPELINED) {
+                pipeline.pipe(source, 0, size, dest, cipher, digest, null);
+                return;
+            }
+
+            boolean mapped = ioMode == IoMode.MAPPED && size >= MAP_THRESHOLD;
+            Utils.pipeChannels(source, 0, size, dest, cipher, mapped, digest, null);
+        }
+    }
+
+    /**
+     * Wraps the stream with the compressor of the current content, if any
+     */
+    private OutputStream compressing(OutputStream encryptStream) {
+        return contentCompression != Compression.NONE ? Compression.compress(encryptStream, deflater) : encryptStream;
+    }
+
+    /**
+     * Samples blocks spread evenly through the file, or all of it in case it is small
+     */
+    private boolean isCompressible(Path sourceFilePath) throws IOException {
+        final byte[] sample = new byte[SAMPLE_BLOCKS * SAMPLE_BLOCK_SIZE];
+
+        try (FileChannel source = FileChannel.open(sourceFilePath, StandardOpenOption.READ)) {
+            final long size = source.size();
+
+            if (size <= sample.length) {
+                Utils.readFully(source, ByteBuffer.wrap(sample, 0, (int) size), 0);
+                return Compression.isCompressible(sample, (int) size, deflater);
+            }
+
+            for (int block = 0; block < SAMPLE_BLOCKS; block++) {
+                final long position = (size - SAMPLE_BLOCK_SIZE) * block / (SAMPLE_BLOCKS - 1);
+                Utils.readFully(source, ByteBuffer.wrap(sample, block * SAMPLE_BLOCK_SIZE, SAMPLE_BLOCK_SIZE), position);
+            }
+
+            return Compression.isCompressible(sample, sample.length, deflater);
+        }
+    }
 }
@@ -0,0 +1,43 @@
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+
+@SuppressWarnings("WeakerAccess")
+public interface ICryptoProvider {
+
+    /**
+     * Gets the Cipher used for file encryption and decryption
+     *
+     * @return a Cipher instance the calling thread may use
+     */
+    Cipher symmetricCipher();
+
+    /**
+     * Gets the Cipher used for wrapping and unwrapping the symmetric key
+     *
+     * @return a Cipher instance the calling thread may use
+     */
+    Cipher asymmetricCipher();
+
+    /**
+     * Gets the MessageDigest used for digesting file contents
+     *
+     * @return a MessageDigest instance the calling thread may use
+     */
+    MessageDigest messageDigest();
+
+    /**
+     * Gets the Signature used for signing and verifying file digests
+     *
+     * @return a Signature instance the calling thread may use
+     */
+    Signature signature();
+
+    /**
+     * Gets the KeyGenerator used for generating symmetric keys
+     *
+     * @return an initialized KeyGenerator instance the calling thread may use
+     */
+    KeyGenerator keyGenerator();
+}
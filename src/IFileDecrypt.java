@@ -1,8 +1,12 @@
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
+import java.security.MessageDigest;
 
 @SuppressWarnings("WeakerAccess")
 public interface IFileDecrypt {
@@ -18,4 +22,67 @@ public interface IFileDecrypt {
      * @throws InvalidKeyException in case of key issues
      */
     void decrypt(Path sourceFilePath, Path destFilePath, Key key, byte[] iv) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException;
+
+    /**
+     * Decrypts a file and digests the plain content as it is written
+     *
+     * @param sourceFilePath the path to the encrypted file to be decrypted
+     * @param destFilePath   the path to the decrypted file
+     * @param key            the decryption key to be used
+     * @param iv             the initialization vector used for encryption
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    byte[] decrypt(Path sourceFilePath, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException;
+
+    /**
+     * Decrypts a region of an open file, such as the payload of an encrypted container,
+     * and digests the plain content as it is written
+     *
+     * @param source       the channel of the encrypted file
+     * @param position     the position the encrypted content starts at
+     * @param length       the length of the encrypted content
+     * @param destFilePath the path to the decrypted file
+     * @param key          the decryption key to be used
+     * @param iv           the initialization vector used for encryption
+     * @param digest       the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    byte[] decrypt(FileChannel source, long position, long length, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException;
+
+    /**
+     * Decrypts a stream into another, and digests the plain content as it is written. Neither stream is closed.
+     *
+     * @param source the encrypted stream, read to its end
+     * @param dest   the stream to write the plain content to
+     * @param key    the decryption key to be used
+     * @param iv     the initialization vector used for encryption
+     * @param digest the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case of read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    byte[] decrypt(InputStream source, OutputStream dest, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException;
+
+    /**
+     * Decrypts a region of an open file only to digest its plain content, which is discarded as it is decrypted,
+     * so a file can be validated without writing its plain content anywhere
+     *
+     * @param source   the channel of the encrypted file
+     * @param position the position the encrypted content starts at
+     * @param length   the length of the encrypted content
+     * @param key      the decryption key to be used
+     * @param iv       the initialization vector used for encryption
+     * @param digest   the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case of read issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    default byte[] digest(FileChannel source, long position, long length, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        return decrypt(Utils.newInputStream(source, position, length), Utils.discarding(), key, iv, digest);
+    }
 }
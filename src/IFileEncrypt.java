@@ -1,7 +1,11 @@
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.security.InvalidKeyException;
 import java.security.Key;
+import java.security.MessageDigest;
 
 @SuppressWarnings("WeakerAccess")
 public interface IFileEncrypt {
@@ -17,6 +21,76 @@ public interface IFileEncrypt {
      */
     void encrypt(Path sourceFilePath, Path destFilePath, Key key) throws IOException, InvalidKeyException;
 
+    /**
+     * Encrypts a file and digests its plain content in the same read pass
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param destFilePath   the path to the encrypted file
+     * @param key            the encryption key to be used
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    byte[] encrypt(Path sourceFilePath, Path destFilePath, Key key, MessageDigest digest) throws IOException, InvalidKeyException;
+
+    /**
+     * Encrypts a file into an open channel, starting at its current position, and digests its plain content
+     * in the same read pass. The channel position is left right after the encrypted content.
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param dest           the channel to write the encrypted content to
+     * @param key            the encryption key to be used
+     * @param digest         the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    byte[] encrypt(Path sourceFilePath, FileChannel dest, Key key, MessageDigest digest) throws IOException, InvalidKeyException;
+
+    /**
+     * Encrypts a stream into another, and digests its plain content in the same pass.
+     * Neither stream is closed. The IV is available as soon as the first byte is written to dest.
+     *
+     * @param source the plain stream, read to its end
+     * @param dest   the stream to write the encrypted content to
+     * @param key    the encryption key to be used
+     * @param digest the digest to be updated with the plain content, reset before use
+     * @return the digest of the plain content
+     * @throws IOException         in case of read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    byte[] encrypt(InputStream source, OutputStream dest, Key key, MessageDigest digest) throws IOException, InvalidKeyException;
+
+    /**
+     * Gets the content algorithm, as recorded in encrypted containers
+     *
+     * @return the content algorithm
+     */
+    ContentAlgorithm getAlgorithm();
+
+    /**
+     * Gets the plain size of the segments the content is sealed in
+     *
+     * @return the segment size, or 0 when the content is encrypted as a single stream
+     */
+    int getSegmentSize();
+
+    /**
+     * Gets the codec plain content is compressed with before it is encrypted, so its container can record it
+     *
+     * @return the codec, {@link Compression#NONE} for engines that do not compress
+     */
+    Compression getCompression();
+
+    /**
+     * Gets the codec the last content was actually compressed with, which is {@link Compression#NONE}
+     * for content sampled as incompressible
+     *
+     * @return the codec
+     */
+    Compression getContentCompression();
+
     /**
      * Gets the initialization vector used for encryption
      *
@@ -0,0 +1,28 @@
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.PublicKey;
+
+@SuppressWarnings("WeakerAccess")
+public interface IKeyWrapper {
+
+    /**
+     * Wraps a secret, such as a content key or IV, so only the holder of the private key can recover it
+     *
+     * @param secret    the secret to be wrapped
+     * @param publicKey the recipient's public key
+     * @return the wrapped secret
+     */
+    byte[] wrap(byte[] secret, PublicKey publicKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException;
+
+    /**
+     * Recovers a secret wrapped for us
+     *
+     * @param wrapped    the wrapped secret
+     * @param privateKey our private key
+     * @return the secret
+     * @throws BadPaddingException in case the secret was not wrapped for us, or was tampered with
+     */
+    byte[] unwrap(byte[] wrapped, Key privateKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException;
+}
@@ -0,0 +1,25 @@
+/**
+ * The way file engines move bytes between the disk and the cipher
+ */
+public enum IoMode {
+
+    /**
+     * Heap buffers through FileInputStream / CipherOutputStream / FileOutputStream
+     */
+    STREAM,
+
+    /**
+     * Large direct buffers through FileChannel, ciphered with Cipher.update(ByteBuffer, ByteBuffer)
+     */
+    CHANNEL,
+
+    /**
+     * Like CHANNEL, but large sources are read through memory-mapped regions
+     */
+    MAPPED,
+
+    /**
+     * Like CHANNEL, but reading, ciphering and writing overlap on separate threads (see {@link PipelinedTransfer})
+     */
+    PIPELINED
+}
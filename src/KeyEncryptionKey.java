@@ -0,0 +1,139 @@
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+
+/**
+ * A symmetric key-encryption key shared by a batch of files, so the asymmetric operations are paid once per batch.
+ * The key-encryption key itself is wrapped with the recipient's public key, and every file's content key is
+ * wrapped with the key-encryption key using AES key wrap (RFC 3394).
+ */
+@SuppressWarnings("WeakerAccess")
+public final class KeyEncryptionKey {
+
+    private static final String WRAP_TRANSFORMATION = "AESWrap";
+
+    private static final ThreadLocal<Cipher> wrapCiphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(WRAP_TRANSFORMATION);
+
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final SecretKey key;
+    private final byte[] wrappedKey;
+
+    private KeyEncryptionKey(SecretKey key, byte[] wrappedKey) {
+        this.key = key;
+        this.wrappedKey = wrappedKey;
+    }
+
+    /**
+     * Creates a new key-encryption key wrapped for the recipient
+     *
+     * @param key              a freshly generated AES key
+     * @param asymmetricCipher the Cipher to wrap the key with
+     * @param recipientKey     the recipient's public key
+     * @return the key-encryption key
+     * @throws InvalidKeyException for recipient key issues
+     */
+    public static KeyEncryptionKey create(SecretKey key, Cipher asymmetricCipher, PublicKey recipientKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        return create(key, new CipherKeyWrapper(asymmetricCipher), recipientKey);
+    }
+
+    /**
+     * Creates a new key-encryption key wrapped for the recipient
+     *
+     * @param key          a freshly generated AES key
+     * @param keyWrapper   the key wrapper of the recipient's key
+     * @param recipientKey the recipient's public key
+     * @return the key-encryption key
+     * @throws InvalidKeyException for recipient key issues
+     */
+    public static KeyEncryptionKey create(SecretKey key, IKeyWrapper keyWrapper, PublicKey recipientKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        return new KeyEncryptionKey(key, keyWrapper.wrap(key.getEncoded(), recipientKey));
+    }
+
+    /**
+     * Recovers a key-encryption key wrapped for us
+     *
+     * @param wrappedKey       the wrapped key-encryption key
+     * @param asymmetricCipher the Cipher to unwrap the key with
+     * @param privateKey       our private key
+     * @return the key-encryption key
+     * @throws InvalidKeyException for private key issues
+     * @throws BadPaddingException in case the key was not wrapped for us
+     */
+    public static KeyEncryptionKey unwrap(byte[] wrappedKey, Cipher asymmetricCipher, Key privateKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        return unwrap(wrappedKey, new CipherKeyWrapper(asymmetricCipher), privateKey);
+    }
+
+    /**
+     * Recovers a key-encryption key wrapped for us
+     *
+     * @param wrappedKey the wrapped key-encryption key
+     * @param keyWrapper the key wrapper of our private key
+     * @param privateKey our private key
+     * @return the key-encryption key
+     * @throws InvalidKeyException for private key issues
+     * @throws BadPaddingException in case the key was not wrapped for us
+     */
+    public static KeyEncryptionKey unwrap(byte[] wrappedKey, IKeyWrapper keyWrapper, Key privateKey) throws InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        return new KeyEncryptionKey(new SecretKeySpec(keyWrapper.unwrap(wrappedKey, privateKey), "AES"), wrappedKey.clone());
+    }
+
+    /**
+     * Gets the key-encryption key as wrapped for the recipient
+     *
+     * @return the wrapped key-encryption key
+     */
+    public byte[] getWrappedKey() {
+        return wrappedKey.clone();
+    }
+
+    /**
+     * Wraps a content key
+     *
+     * @param contentKey the content key
+     * @return the wrapped content key
+     * @throws InvalidKeyException in case the content key cannot be wrapped
+     */
+    public byte[] wrap(Key contentKey) throws InvalidKeyException {
+        Cipher cipher = wrapCiphers.get();
+        cipher.init(Cipher.WRAP_MODE, key);
+
+        try {
+            return cipher.wrap(contentKey);
+
+        } catch (IllegalBlockSizeException e) {
+            throw new InvalidKeyException(e);
+        }
+    }
+
+    /**
+     * Unwraps a content key
+     *
+     * @param wrappedContentKey the wrapped content key
+     * @return the content key
+     * @throws InvalidKeyException in case the content key cannot be unwrapped, e.g. wrapped by another key
+     */
+    public Key unwrap(byte[] wrappedContentKey) throws InvalidKeyException {
+        Cipher cipher = wrapCiphers.get();
+        cipher.init(Cipher.UNWRAP_MODE, key);
+
+        try {
+            return cipher.unwrap(wrappedContentKey, "AES", Cipher.SECRET_KEY);
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Generates symmetric keys and IVs ahead of time, so encrypting a file never waits on the entropy pool.
+ * <p>
+ * A deterministic random bit generator is seeded once from the given source, usually a blocking strong one,
+ * and expanded from then on. Two background threads keep a bounded queue of keys and one of IVs full;
+ * taking from an empty queue counts a stall and generates on the calling thread, from the same generator,
+ * so a burst is slowed down rather than blocked. Depth and stalls are exposed over JMX.
+ */
+@SuppressWarnings("WeakerAccess")
+public class KeyMaterialPool implements KeyMaterialPoolMBean, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final int IV_LENGTH = 16; // bytes, an AES block
+
+    private static final String GENERATOR_ALGORITHM = "SHA1PRNG";
+    private static final int SEED_LENGTH = 32; // bytes
+
+    private final SecureRandom random;
+    private final KeyGenerator stallKeyGenerator;
+    private final int capacity;
+    private final BlockingQueue<SecretKey> keys;
+    private final BlockingQueue<byte[]> ivs;
+    private final ExecutorService fillers;
+
+    private final LongAdder keysTaken = new LongAdder();
+    private final LongAdder ivsTaken = new LongAdder();
+    private final LongAdder keyStalls = new LongAdder();
+    private final LongAdder ivStalls = new LongAdder();
+
+    /**
+     * Initializes a new KeyMaterialPool of {@value #DEFAULT_CAPACITY} keys and IVs, and starts filling it
+     *
+     * @param seedSource   the source of the generator's seed, read once
+     * @param keyAlgorithm the KeyGenerator algorithm
+     * @param keyBits      length in bits of the keys
+     * @throws NoSuchAlgorithmException in case the key algorithm is not supported
+     */
+    public KeyMaterialPool(SecureRandom seedSource, String keyAlgorithm, int keyBits) throws NoSuchAlgorithmException {
+        this(seedSource, keyAlgorithm, keyBits, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes a new KeyMaterialPool, and starts filling it
+     *
+     * @param seedSource   the source of the generator's seed, read once
+     * @param keyAlgorithm the KeyGenerator algorithm
+     * @param keyBits      length in bits of the keys
+     * @param capacity     the keys, and the IVs, kept ready
+     * @throws NoSuchAlgorithmException in case the key algorithm is not supported
+     */
+    public KeyMaterialPool(SecureRandom seedSource, String keyAlgorithm, int keyBits, int capacity) throws NoSuchAlgorithmException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Key material pool capacity should be positive");
+        }
+
+        // seeded before its first use, the generator never gathers entropy of its own
+        this.random = SecureRandom.getInstance(GENERATOR_ALGORITHM);
+        this.random.setSeed(seedSource.generateSeed(SEED_LENGTH));
+
+        this.stallKeyGenerator = newKeyGenerator(keyAlgorithm, keyBits);
+        this.capacity = capacity;
+        this.keys = new ArrayBlockingQueue<>(capacity);
+        this.ivs = new ArrayBlockingQueue<>(capacity);
+        this.fillers = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "key-material");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final KeyGenerator keyGenerator = newKeyGenerator(keyAlgorithm, keyBits);
+
+        fillers.execute(() -> fill(keys, keyGenerator::generateKey));
+        fillers.execute(() -> fill(ivs, this::generateIV));
+    }
+
+    /**
+     * Takes a ready key, or generates one in case none is
+     *
+     * @return a key used once
+     */
+    public SecretKey nextKey() {
+        keysTaken.increment();
+        SecretKey key = keys.poll();
+
+        if (key == null) {
+            keyStalls.increment();
+
+            synchronized (stallKeyGenerator) {
+                key = stallKeyGenerator.generateKey();
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Takes a ready IV, or generates one in case none is
+     *
+     * @return an IV of {@value #IV_LENGTH} bytes, used once
+     */
+    public byte[] nextIV() {
+        ivsTaken.increment();
+        byte[] iv = ivs.poll();
+
+        if (iv == null) {
+            ivStalls.increment();
+            iv = generateIV();
+        }
+
+        return iv;
+    }
+
+    /**
+     * Gets the generator the material is expanded from, for nonces of other sizes
+     *
+     * @return the seeded generator, safe for concurrent use
+     */
+    public SecureRandom getRandom() {
+        return random;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getKeyDepth() {
+        return keys.size();
+    }
+
+    @Override
+    public int getIvDepth() {
+        return ivs.size();
+    }
+
+    @Override
+    public long getKeyStalls() {
+        return keyStalls.sum();
+    }
+
+    @Override
+    public long getIvStalls() {
+        return ivStalls.sum();
+    }
+
+    @Override
+    public long getKeysTaken() {
+        return keysTaken.sum();
+    }
+
+    @Override
+    public long getIvsTaken() {
+        return ivsTaken.sum();
+    }
+
+    /**
+     * Gets a summary of the material taken so far
+     *
+     * @return keys and IVs taken, and how many of them stalled
+     */
+    public String getStats() {
+        return String.format("%d keys taken (%d stalled), %d IVs taken (%d stalled), %d / %d keys ready",
+                getKeysTaken(), getKeyStalls(), getIvsTaken(), getIvStalls(), getKeyDepth(), capacity);
+    }
+
+    /**
+     * Registers the pool's MBean, named domain:type=KeyMaterialPool
+     *
+     * @param server the MBean server, usually the platform's
+     * @param domain the domain of the name
+     * @throws JMException in case registration fails, or a pool of that domain is already registered
+     */
+    public void registerMBean(MBeanServer server, String domain) throws JMException {
+        server.registerMBean(this, new ObjectName(String.format("%s:type=KeyMaterialPool", domain)));
+    }
+
+    /**
+     * Stops filling the pool. Material still ready is handed out, then every take generates.
+     */
+    @Override
+    public void close() {
+        fillers.shutdownNow();
+
+        try {
+            fillers.awaitTermination(1, TimeUnit.SECONDS);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] generateIV() {
+        final byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+
+        return iv;
+    }
+
+    private KeyGenerator newKeyGenerator(String keyAlgorithm, int keyBits) throws NoSuchAlgorithmException {
+        final KeyGenerator keyGenerator = KeyGenerator.getInstance(keyAlgorithm);
+        keyGenerator.init(keyBits, random);
+
+        return keyGenerator;
+    }
+
+    private <T> void fill(BlockingQueue<T> queue, Supplier<T> generator) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                queue.put(generator.get());
+            }
+
+        } catch (InterruptedException ignored) {
+            // closed
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * The JMX view of a {@link KeyMaterialPool}
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public interface KeyMaterialPoolMBean {
+
+    int getCapacity();
+
+    int getKeyDepth();
+
+    int getIvDepth();
+
+    /**
+     * Gets the keys taken while none was ready, and generated on the taking thread
+     *
+     * @return the key stalls
+     */
+    long getKeyStalls();
+
+    /**
+     * Gets the IVs taken while none was ready, and generated on the taking thread
+     *
+     * @return the IV stalls
+     */
+    long getIvStalls();
+
+    long getKeysTaken();
+
+    long getIvsTaken();
+}
@@ -0,0 +1,295 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Resolves private keys and certificates of a keystore by alias, keeping them in a bounded cache so the
+ * password-based unwrap of a private key runs once per alias rather than once per lookup. Encrypters and
+ * decrypters of many sender and recipient aliases can thus share one resolver.
+ * <p>
+ * Lookups never lock: hits are served from a concurrent map, and two threads missing the same alias at once
+ * may both read it from the keystore. Entries expire after a time to live, so keystore changes are picked up,
+ * and the least recently used entry is evicted once the cache is full. A cached private key is only handed
+ * out to callers presenting the password it was unlocked with, compared as a salted digest.
+ */
+@SuppressWarnings("WeakerAccess")
+public class KeyResolver implements KeyResolverMBean {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final long DEFAULT_TTL_MINUTES = 10;
+
+    private static final String PRIVATE_KEY_PREFIX = "key:";
+    private static final String CERTIFICATE_PREFIX = "cert:";
+
+    /**
+     * A cached key or certificate
+     */
+    private static final class Entry {
+
+        final Object value;
+        final byte[] passwordDigest;
+        final long expiresAt;
+
+        volatile long lastAccess;
+
+        Entry(Object value, byte[] passwordDigest, long now, long ttlNanos) {
+            this.value = value;
+            this.passwordDigest = passwordDigest;
+            this.expiresAt = now + ttlNanos;
+            this.lastAccess = now;
+        }
+    }
+
+    private final KeyStore keystore;
+    private final int capacity;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final byte[] salt = new byte[16];
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Initializes a new KeyResolver caching {@value #DEFAULT_CAPACITY} entries for {@value #DEFAULT_TTL_MINUTES} minutes
+     *
+     * @param keystore a loaded keystore
+     */
+    public KeyResolver(KeyStore keystore) {
+        this(keystore, DEFAULT_CAPACITY, DEFAULT_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Initializes a new KeyResolver
+     *
+     * @param keystore a loaded keystore
+     * @param capacity the keys and certificates cached at most
+     * @param ttl      the time an entry is cached for
+     * @param unit     the unit of ttl
+     */
+    public KeyResolver(KeyStore keystore, int capacity, long ttl, TimeUnit unit) {
+        this(keystore, capacity, ttl, unit, System::nanoTime);
+    }
+
+    KeyResolver(KeyStore keystore, int capacity, long ttl, TimeUnit unit, LongSupplier clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Key cache capacity should be positive");
+        }
+
+        this.keystore = keystore;
+        this.capacity = capacity;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Gets the private key of an alias, unlocking it in case it is not cached
+     *
+     * @param alias    the alias of the private key entry
+     * @param password the password of the private key
+     * @return the private key
+     * @throws KeyStoreException in case the alias is not a private key entry, or for a bad password
+     */
+    public PrivateKey getPrivateKey(String alias, String password) throws KeyStoreException {
+        final String cacheKey = PRIVATE_KEY_PREFIX + alias;
+        final byte[] passwordDigest = digest(password);
+        final Entry entry = lookup(cacheKey);
+
+        if (entry != null && MessageDigest.isEqual(entry.passwordDigest, passwordDigest)) {
+            hits.increment();
+            return (PrivateKey) entry.value;
+        }
+
+        misses.increment();
+
+        if (!keystore.isKeyEntry(alias)) {
+            throw new KeyStoreException("private key alias not found in keystore");
+        }
+
+        final Key key;
+
+        try {
+            key = keystore.getKey(alias, password.toCharArray());
+
+        } catch (NoSuchAlgorithmException | UnrecoverableKeyException e) {
+            throw new KeyStoreException("Bad private key password");
+        }
+
+        if (!(key instanceof PrivateKey)) {
+            throw new KeyStoreException("private key alias not found in keystore");
+        }
+
+        store(cacheKey, new Entry(key, passwordDigest, clock.getAsLong(), ttlNanos));
+
+        return (PrivateKey) key;
+    }
+
+    /**
+     * Gets the certificate of an alias, of a private key entry or a trusted certificate entry
+     *
+     * @param alias the alias
+     * @return the certificate, or null in case the alias has none
+     * @throws KeyStoreException in case the keystore is not loaded
+     */
+    public Certificate getCertificate(String alias) throws KeyStoreException {
+        final String cacheKey = CERTIFICATE_PREFIX + alias;
+        final Entry entry = lookup(cacheKey);
+
+        if (entry != null) {
+            hits.increment();
+            return (Certificate) entry.value;
+        }
+
+        misses.increment();
+
+        final Certificate certificate = keystore.getCertificate(alias);
+
+        if (certificate != null) {
+            store(cacheKey, new Entry(certificate, null, clock.getAsLong(), ttlNanos));
+        }
+
+        return certificate;
+    }
+
+    /**
+     * Gets whether an alias is a trusted certificate entry, as recipients' and senders' certificates are
+     *
+     * @param alias the alias
+     * @return true for a trusted certificate entry
+     * @throws KeyStoreException in case the keystore is not loaded
+     */
+    public boolean isCertificateEntry(String alias) throws KeyStoreException {
+        return keystore.isCertificateEntry(alias);
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        final long hit = hits.sum();
+        final long lookups = hit + misses.sum();
+
+        return lookups == 0 ? 0.0 : (double) hit / lookups;
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets a summary of the lookups so far
+     *
+     * @return hits, misses and the hit rate
+     */
+    public String getStats() {
+        return String.format("%d key lookups, %.1f%% cached, %d entries, %d evicted",
+                getHits() + getMisses(), getHitRate() * 100, getSize(), getEvictions());
+    }
+
+    /**
+     * Registers the resolver's MBean, named domain:type=KeyResolver
+     *
+     * @param server the MBean server, usually the platform's
+     * @param domain the domain of the name
+     * @throws JMException in case registration fails, or a resolver of that domain is already registered
+     */
+    public void registerMBean(MBeanServer server, String domain) throws JMException {
+        server.registerMBean(this, new ObjectName(String.format("%s:type=KeyResolver", domain)));
+    }
+
+    /**
+     * Gets a live entry, dropping it in case it expired
+     */
+    private Entry lookup(String cacheKey) {
+        final Entry entry = entries.get(cacheKey);
+
+        if (entry == null) {
+            return null;
+        }
+
+        final long now = clock.getAsLong();
+
+        if (now - entry.expiresAt >= 0) {
+            entries.remove(cacheKey, entry);
+            return null;
+        }
+
+        entry.lastAccess = now;
+        return entry;
+    }
+
+    /**
+     * Caches an entry, evicting the least recently used ones while the cache is over capacity
+     */
+    private void store(String cacheKey, Entry entry) {
+        entries.put(cacheKey, entry);
+
+        while (entries.size() > capacity) {
+            Map.Entry<String, Entry> eldest = null;
+
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (eldest == null || candidate.getValue().lastAccess - eldest.getValue().lastAccess < 0) {
+                    eldest = candidate;
+                }
+            }
+
+            if (eldest != null && entries.remove(eldest.getKey(), eldest.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private byte[] digest(String password) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * The JMX view of a {@link KeyResolver}
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public interface KeyResolverMBean {
+
+    int getCapacity();
+
+    int getSize();
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    /**
+     * Gets the share of lookups served from the cache
+     *
+     * @return the hit rate, between 0 and 1
+     */
+    double getHitRate();
+
+    /**
+     * Drops every cached key and certificate, so they are read from the keystore again
+     */
+    void clear();
+}
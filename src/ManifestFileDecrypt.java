@@ -0,0 +1,281 @@
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decrypts files written by {@link ManifestFileEncrypt}, opening segments concurrently on a fork-join pool
+ * and checking every one of them against the manifest. See {@link ManifestFormat} for the layout.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ManifestFileDecrypt implements IFileDecrypt {
+
+    private static final String DEFAULT_DIGEST = "SHA-256";
+
+    private final int segmentSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Initializes a new ManifestFileDecrypt using the default segment size and the common pool
+     */
+    public ManifestFileDecrypt() {
+        this(ChunkedFormat.DEFAULT_SEGMENT_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initializes a new ManifestFileDecrypt
+     *
+     * @param segmentSize the plain size of every segment, as recorded in the container
+     * @param pool        the pool segments are opened on
+     */
+    public ManifestFileDecrypt(int segmentSize, ForkJoinPool pool) {
+        this.segmentSize = segmentSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Decrypts a file, checking its segments against SHA-256 hashes
+     *
+     * @param sourceFilePath the path to the encrypted file to be decrypted
+     * @param destFilePath   the path to the decrypted file
+     * @param key            the decryption key to be used
+     * @param iv             the base nonce the manifest was sealed with
+     * @throws IOException         in case files are not accessible, read / write issues or failed authentication
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public void decrypt(Path sourceFilePath, Path destFilePath, Key key, byte[] iv) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        try {
+            decrypt(sourceFilePath, destFilePath, key, iv, MessageDigest.getInstance(DEFAULT_DIGEST));
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decrypts a file, checking every segment against the manifest
+     *
+     * @param sourceFilePath the path to the encrypted file to be decrypted
+     * @param destFilePath   the path to the decrypted file
+     * @param key            the decryption key to be used
+     * @param iv             the base nonce the manifest was sealed with
+     * @param digest         the digest segments and the manifest were hashed with, reset before use
+     * @return the digest of the manifest, which is what was signed
+     * @throws IOException         in case files are not accessible, read / write issues or failed authentication
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] decrypt(Path sourceFilePath, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        Utils.ensurePathReadable(sourceFilePath);
+
+        try (FileChannel source = FileChannel.open(sourceFilePath, StandardOpenOption.READ)) {
+            return decrypt(source, 0, source.size(), destFilePath, key, iv, digest);
+        }
+    }
+
+    /**
+     * Decrypts a region of an open file, such as the payload of an encrypted container,
+     * checking every segment against the manifest
+     *
+     * @param source       the channel of the encrypted file
+     * @param position     the position the encrypted content starts at
+     * @param length       the length of the encrypted content
+     * @param destFilePath the path to the decrypted file
+     * @param key          the decryption key to be used
+     * @param iv           the base nonce the manifest was sealed with
+     * @param digest       the digest segments and the manifest were hashed with, reset before use
+     * @return the digest of the manifest, which is what was signed
+     * @throws IOException         in case files are not accessible, read / write issues or failed authentication
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] decrypt(FileChannel source, long position, long length, Path destFilePath, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        Utils.ensurePathWritable(destFilePath);
+
+        try (FileChannel dest = FileChannel.open(destFilePath, StandardOpenOption.WRITE)) {
+            return openSegments(source, position, length, dest, key, iv, digest);
+        }
+    }
+
+    /**
+     * Checks a region of an open file against its manifest without writing the plain content anywhere
+     *
+     * @param source   the channel of the encrypted file
+     * @param position the position the encrypted content starts at
+     * @param length   the length of the encrypted content
+     * @param key      the decryption key to be used
+     * @param iv       the base nonce the manifest was sealed with
+     * @param digest   the digest segments and the manifest were hashed with, reset before use
+     * @return the digest of the manifest, which is what was signed
+     * @throws IOException         in case of read issues or failed authentication
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] digest(FileChannel source, long position, long length, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        return openSegments(source, position, length, null, key, iv, digest);
+    }
+
+    /**
+     * Opens and checks the segments, writing them to the decrypted file unless it is null
+     */
+    private byte[] openSegments(FileChannel source, long position, long length, FileChannel dest, Key key, byte[] iv, MessageDigest digest) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException {
+        if (iv.length != ManifestFormat.NONCE_LENGTH) {
+            throw new InvalidAlgorithmParameterException(String.format("Base nonce should be %d bytes long", ManifestFormat.NONCE_LENGTH));
+        }
+
+        // fail fast on key issues before anything is read
+        ManifestFormat.cipherFor(Cipher.DECRYPT_MODE, key, iv, 0);
+
+        digest.reset();
+        final ByteBuffer manifest = ManifestFormat.readManifest(source, position, length, key, iv);
+        final long plainSize = manifest.getLong();
+        final long segments = ChunkedFormat.segmentsCount(plainSize, segmentSize);
+        final int entryLength = ManifestFormat.NONCE_LENGTH + digest.getDigestLength();
+
+        if (manifest.remaining() != segments * entryLength) {
+            throw new IOException("Manifest is malformed");
+        }
+
+        if (ManifestFormat.segmentsLength(plainSize, segmentSize) + manifest.capacity() + ManifestFormat.TAG_LENGTH + Integer.BYTES != length) {
+            throw new IOException("Encrypted content does not match its manifest");
+        }
+
+        final int storedSegmentSize = segmentSize + ManifestFormat.TAG_LENGTH;
+        final int window = pool.getParallelism() * 2;
+        final byte[][][] slots = new byte[2][window][];
+
+        List<OpenSegment> inFlightTasks = new ArrayList<>();
+        ForkJoinTask<?> inFlight = null;
+
+        try {
+            for (long first = 0, round = 0; first < segments; first += window, round++) {
+                final byte[][] buffers = slots[(int) (round % 2)];
+                final List<OpenSegment> tasks = new ArrayList<>();
+
+                // read this window while the previous one is being opened
+                for (int i = 0; i < window && first + i < segments; i++) {
+                    final long index = first + i;
+                    final int sealedLength = (int) Math.min(storedSegmentSize, plainSize - index * segmentSize + ManifestFormat.TAG_LENGTH);
+                    final byte[] nonce = new byte[ManifestFormat.NONCE_LENGTH];
+                    final byte[] hash = new byte[digest.getDigestLength()];
+
+                    if (buffers[i] == null) {
+                        buffers[i] = new byte[storedSegmentSize];
+                    }
+
+                    manifest.get(nonce).get(hash);
+                    Utils.readFully(source, ByteBuffer.wrap(buffers[i], 0, sealedLength), position + index * storedSegmentSize);
+                    tasks.add(new OpenSegment(dest, key, nonce, hash, index, buffers[i], sealedLength));
+                }
+
+                ChunkedFormat.await(inFlight);
+                checkSegments(inFlightTasks, digest);
+
+                inFlightTasks = tasks;
+                inFlight = pool.submit(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            }
+
+            ChunkedFormat.await(inFlight);
+            checkSegments(inFlightTasks, digest);
+
+        } finally {
+            // never close the channels under segments still in flight
+            if (inFlight != null) {
+                inFlight.quietlyJoin();
+            }
+        }
+
+        digest.update(manifest.array());
+        return digest.digest();
+    }
+
+    /**
+     * Manifest content cannot be decrypted from a stream, as the manifest follows the segments it checks
+     *
+     * @throws IOException always
+     */
+    @Override
+    public byte[] decrypt(InputStream source, OutputStream dest, Key key, byte[] iv, MessageDigest digest) throws IOException {
+        throw new IOException(String.format("%s content can only be decrypted from a file", ContentAlgorithm.AES_GCM_MANIFEST));
+    }
+
+    /**
+     * Checks the plain content of opened segments against their manifest hashes, on the calling thread
+     */
+    private static void checkSegments(List<OpenSegment> segments, MessageDigest digest) throws IOException {
+        for (OpenSegment segment : segments) {
+            digest.update(segment.buffer, 0, segment.plainLength);
+
+            if (!MessageDigest.isEqual(digest.digest(), segment.hash)) {
+                throw new IOException(String.format("Segment %d does not match the manifest", segment.index));
+            }
+        }
+    }
+
+    /**
+     * Opens one segment in place and writes it to its position in the decrypted file, if any
+     */
+    private class OpenSegment extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel dest;
+        private final Key key;
+        private final byte[] nonce;
+        private final byte[] hash;
+        private final long index;
+        private final byte[] buffer;
+        private final int length;
+
+        private int plainLength;
+
+        OpenSegment(FileChannel dest, Key key, byte[] nonce, byte[] hash, long index, byte[] buffer, int length) {
+            this.dest = dest;
+            this.key = key;
+            this.nonce = nonce;
+            this.hash = hash;
+            this.index = index;
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Cipher cipher = ManifestFormat.cipherFor(Cipher.DECRYPT_MODE, key, nonce, index);
+                plainLength = cipher.doFinal(buffer, 0, length, buffer, 0);
+
+                if (dest != null) {
+                    Utils.writeFully(dest, ByteBuffer.wrap(buffer, 0, plainLength), index * segmentSize);
+                }
+
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+
+            } catch (AEADBadTagException e) {
+                throw new UncheckedIOException(new CorruptContentException(String.format("Segment %d failed authentication", index), e));
+
+            } catch (GeneralSecurityException e) {
+                throw new UncheckedIOException(new IOException(String.format("Segment %d cannot be opened", index), e));
+            }
+        }
+    }
+}
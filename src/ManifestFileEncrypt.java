@@ -0,0 +1,336 @@
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encrypts files in fixed size AES-GCM segments recorded in a manifest, sealed concurrently on a fork-join pool,
+ * and encrypts changed files again in place, resealing only the segments that changed.
+ * See {@link ManifestFormat} for the layout.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ManifestFileEncrypt implements IFileEncrypt {
+
+    private static final String DEFAULT_DIGEST = "SHA-256";
+
+    private final SecureRandom secureRandom;
+    private final int segmentSize;
+    private final ForkJoinPool pool;
+
+    private byte[] iv;
+    private long resealedSegments;
+
+    /**
+     * Initializes a new ManifestFileEncrypt using the default segment size and the common pool
+     *
+     * @param secureRandom the source for the base nonce of every run
+     */
+    public ManifestFileEncrypt(SecureRandom secureRandom) {
+        this(secureRandom, ChunkedFormat.DEFAULT_SEGMENT_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initializes a new ManifestFileEncrypt
+     *
+     * @param secureRandom the source for the base nonce of every run
+     * @param segmentSize  the plain size of every segment, recorded in the container
+     * @param pool         the pool segments are sealed on
+     */
+    public ManifestFileEncrypt(SecureRandom secureRandom, int segmentSize, ForkJoinPool pool) {
+        this.secureRandom = secureRandom;
+        this.segmentSize = segmentSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Encrypts a file, hashing its segments with SHA-256
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param destFilePath   the path to the encrypted file
+     * @param key            the encryption key to be used
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public void encrypt(Path sourceFilePath, Path destFilePath, Key key) throws IOException, InvalidKeyException {
+        try {
+            encrypt(sourceFilePath, destFilePath, key, MessageDigest.getInstance(DEFAULT_DIGEST));
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encrypts a file, hashing every segment into the manifest in the same read pass
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param destFilePath   the path to the encrypted file
+     * @param key            the encryption key to be used
+     * @param digest         the digest segments and the manifest are hashed with, reset before use
+     * @return the digest of the manifest, which is what should be signed
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] encrypt(Path sourceFilePath, Path destFilePath, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        Utils.ensurePathReadable(sourceFilePath);
+        Utils.ensurePathWritable(destFilePath);
+
+        try (FileChannel dest = FileChannel.open(destFilePath, StandardOpenOption.WRITE)) {
+            return encrypt(sourceFilePath, dest, key, digest);
+        }
+    }
+
+    /**
+     * Encrypts a file into an open channel, starting at its current position, hashing every segment into the
+     * manifest in the same read pass. The channel position is left right after the encrypted content.
+     *
+     * @param sourceFilePath the path to the file to be encrypted
+     * @param dest           the channel to write the encrypted content to
+     * @param key            the encryption key to be used
+     * @param digest         the digest segments and the manifest are hashed with, reset before use
+     * @return the digest of the manifest, which is what should be signed
+     * @throws IOException         in case files are not accessible or read / write issues
+     * @throws InvalidKeyException in case of key issues
+     */
+    @Override
+    public byte[] encrypt(Path sourceFilePath, FileChannel dest, Key key, MessageDigest digest) throws IOException, InvalidKeyException {
+        Utils.ensurePathReadable(sourceFilePath);
+
+        digest.reset();
+        return sealSegments(sourceFilePath, dest, key, digest, null);
+    }
+
+    /**
+     * Encrypts a changed file again over its previous encrypted content, starting at the channel's current position.
+     * Segments whose hash matches the previous manifest keep their ciphertext, only the others are sealed and written,
+     * and the content is truncated in case the file shrank. The channel position is left right after the encrypted
+     * content. An interrupted run leaves content that fails validation, to be encrypted again.
+     *
+     * @param sourceFilePath the path to the changed file
+     * @param dest           the channel of the previous encrypted content, readable and writable, up to its end
+     * @param key            the key the previous content was encrypted with
+     * @param previousIV     the base nonce of the run that encrypted the previous content
+     * @param digest         the digest segments and the manifest are hashed with, reset before use
+     * @return the digest of the new manifest, which is what should be signed
+     * @throws IOException         in case files are not accessible, read / write issues or previous content that fails authentication
+     * @throws InvalidKeyException in case of key issues
+     */
+    public byte[] reencrypt(Path sourceFilePath, FileChannel dest, Key key, byte[] previousIV, MessageDigest digest) throws IOException, InvalidKeyException {
+        Utils.ensurePathReadable(sourceFilePath);
+
+        final ByteBuffer previous = ManifestFormat.readManifest(dest, dest.position(), dest.size() - dest.position(), key, previousIV);
+
+        digest.reset();
+        return sealSegments(sourceFilePath, dest, key, digest, previous);
+    }
+
+    /**
+     * Manifest content cannot be encrypted into a stream, as the manifest is only known once all of it is read
+     * and decryption needs it first
+     *
+     * @throws IOException always
+     */
+    @Override
+    public byte[] encrypt(InputStream source, OutputStream dest, Key key, MessageDigest digest) throws IOException {
+        throw new IOException(String.format("%s content can only be encrypted into a file", getAlgorithm()));
+    }
+
+    @Override
+    public ContentAlgorithm getAlgorithm() {
+        return ContentAlgorithm.AES_GCM_MANIFEST;
+    }
+
+    @Override
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    @Override
+    public Compression getCompression() {
+        return Compression.NONE;
+    }
+
+    @Override
+    public Compression getContentCompression() {
+        return Compression.NONE;
+    }
+
+    /**
+     * Gets the base nonce of the last run, which sealed its manifest
+     *
+     * @return byte array containing the base nonce
+     */
+    @Override
+    public byte[] getIV() {
+        return iv;
+    }
+
+    /**
+     * Gets the count of segments the last run sealed, all of them unless it encrypted a changed file again
+     *
+     * @return the segments count
+     */
+    public long getResealedSegments() {
+        return resealedSegments;
+    }
+
+    private byte[] sealSegments(Path sourceFilePath, FileChannel dest, Key key, MessageDigest digest, ByteBuffer previous) throws IOException, InvalidKeyException {
+        final byte[] baseNonce = new byte[ManifestFormat.NONCE_LENGTH];
+        secureRandom.nextBytes(baseNonce);
+        iv = baseNonce;
+        resealedSegments = 0;
+
+        try {
+            // fail fast on key issues before any segment is dispatched, without consuming a nonce for encryption
+            ManifestFormat.cipherFor(Cipher.DECRYPT_MODE, key, baseNonce, 0);
+
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final int entryLength = ManifestFormat.NONCE_LENGTH + digest.getDigestLength();
+        final long previousSegments = previous == null ? 0 : ChunkedFormat.segmentsCount(previous.getLong(), segmentSize);
+
+        if (previous != null && previous.remaining() != previousSegments * entryLength) {
+            throw new IOException("Manifest is malformed");
+        }
+
+        try (FileChannel source = FileChannel.open(sourceFilePath, StandardOpenOption.READ)) {
+            final long base = dest.position();
+            final long plainSize = source.size();
+            final long segments = ChunkedFormat.segmentsCount(plainSize, segmentSize);
+            final ByteBuffer manifest = ByteBuffer.allocate(Math.toIntExact(Long.BYTES + segments * entryLength)).putLong(plainSize);
+            final byte[] previousNonce = new byte[ManifestFormat.NONCE_LENGTH];
+            final byte[] previousHash = new byte[digest.getDigestLength()];
+            final int window = pool.getParallelism() * 2;
+            final byte[][][] slots = new byte[2][window][];
+
+            ForkJoinTask<?> inFlight = null;
+
+            try {
+                for (long first = 0, round = 0; first < segments; first += window, round++) {
+                    final byte[][] buffers = slots[(int) (round % 2)];
+                    final List<SealSegment> tasks = new ArrayList<>();
+
+                    // read and hash this window while the previous one is being sealed
+                    for (int i = 0; i < window && first + i < segments; i++) {
+                        final long index = first + i;
+                        final int length = (int) Math.min(segmentSize, plainSize - index * segmentSize);
+
+                        if (buffers[i] == null) {
+                            buffers[i] = new byte[segmentSize + ManifestFormat.TAG_LENGTH];
+                        }
+
+                        Utils.readFully(source, ByteBuffer.wrap(buffers[i], 0, length), index * segmentSize);
+
+                        digest.update(buffers[i], 0, length);
+                        final byte[] hash = digest.digest();
+
+                        if (index < previousSegments) {
+                            previous.get(previousNonce).get(previousHash);
+
+                            if (MessageDigest.isEqual(hash, previousHash)) {
+                                // unchanged, its ciphertext is already in place
+                                manifest.put(previousNonce).put(hash);
+                                continue;
+                            }
+                        }
+
+                        final byte[] nonce = ManifestFormat.nonceFor(baseNonce, index);
+                        final long position = base + index * (segmentSize + ManifestFormat.TAG_LENGTH);
+
+                        manifest.put(nonce).put(hash);
+                        tasks.add(new SealSegment(dest, position, key, nonce, index, buffers[i], length));
+                    }
+
+                    resealedSegments += tasks.size();
+
+                    ChunkedFormat.await(inFlight);
+                    inFlight = pool.submit(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+                }
+
+                ChunkedFormat.await(inFlight);
+
+            } finally {
+                // never close the channels under segments still in flight
+                if (inFlight != null) {
+                    inFlight.quietlyJoin();
+                }
+            }
+
+            manifest.flip();
+            digest.update(manifest.array());
+
+            final long end = ManifestFormat.writeManifest(dest, base + ManifestFormat.segmentsLength(plainSize, segmentSize), key, baseNonce, manifest);
+
+            if (previous != null) {
+                dest.truncate(end);
+            }
+
+            dest.position(end);
+
+            return digest.digest();
+        }
+    }
+
+    /**
+     * Seals one segment in place and writes it to its slot in the encrypted file
+     */
+    private static class SealSegment extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel dest;
+        private final long position;
+        private final Key key;
+        private final byte[] nonce;
+        private final long index;
+        private final byte[] buffer;
+        private final int length;
+
+        SealSegment(FileChannel dest, long position, Key key, byte[] nonce, long index, byte[] buffer, int length) {
+            this.dest = dest;
+            this.position = position;
+            this.key = key;
+            this.nonce = nonce;
+            this.index = index;
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Cipher cipher = ManifestFormat.cipherFor(Cipher.ENCRYPT_MODE, key, nonce, index);
+                int sealedLength = cipher.doFinal(buffer, 0, length, buffer, 0);
+
+                Utils.writeFully(dest, ByteBuffer.wrap(buffer, 0, sealedLength), position);
+
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+
+            } catch (GeneralSecurityException e) {
+                throw new UncheckedIOException(new IOException(String.format("Segment %d cannot be sealed", index), e));
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Layout shared by the manifest AES-GCM engines, made for content that is encrypted again as it changes.
+ * <p>
+ * Like {@link ChunkedFormat}, the plain content is split into fixed size segments, each sealed on its own and
+ * stored at a fixed slot as ciphertext followed by its tag, with its index as AAD. A manifest follows the segments,
+ * recording the nonce and the plain hash of every segment:
+ * <pre>
+ * segments   slot i at i * (segment size + 16)
+ * manifest   plain size (8 bytes), then nonce (12 bytes) and hash of every segment - sealed
+ * length     4 bytes   sealed manifest length
+ * </pre>
+ * Every encryption run draws a random base nonce, recorded as the container IV, and seals segment i with the base
+ * nonce XOR i and the manifest with the base nonce XOR -1. Encrypting a changed file again keeps the ciphertext and
+ * nonce of every segment whose hash did not change, and reseals only the others under the new run's nonces, so a
+ * nonce is never reused for different content. The signature covers the manifest, and decryption checks every
+ * segment against it.
+ */
+@SuppressWarnings("WeakerAccess")
+final class ManifestFormat {
+
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int NONCE_LENGTH = 12; // bytes
+    static final int TAG_LENGTH = 16; // bytes
+
+    private static final long MANIFEST_INDEX = -1;
+
+    private static final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * Static class
+     */
+    private ManifestFormat() {
+    }
+
+    /**
+     * Derives the nonce a run seals the given segment with
+     *
+     * @param baseNonce the run's base nonce
+     * @param index     the segment index, or -1 for the manifest
+     * @return the nonce
+     */
+    static byte[] nonceFor(byte[] baseNonce, long index) {
+        byte[] nonce = baseNonce.clone();
+        for (int i = 0; i < Long.BYTES; i++) {
+            nonce[NONCE_LENGTH - 1 - i] ^= (byte) (index >>> (8 * i));
+        }
+
+        return nonce;
+    }
+
+    /**
+     * Gets a cipher initialized for the given segment, owned by the calling thread
+     *
+     * @param mode  Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+     * @param key   the content key
+     * @param nonce the segment's nonce
+     * @param index the segment index
+     * @return the initialized cipher
+     */
+    static Cipher cipherFor(int mode, Key key, byte[] nonce, long index) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        Cipher cipher = ciphers.get();
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(ByteBuffer.allocate(Long.BYTES).putLong(index).array());
+
+        return cipher;
+    }
+
+    /**
+     * Seals the manifest and writes it along with its length at the given position
+     *
+     * @param dest      the channel of the encrypted file
+     * @param position  the position right after the last segment
+     * @param key       the content key
+     * @param baseNonce the run's base nonce
+     * @param manifest  the plain manifest
+     * @return the position right after the manifest, which is the end of the encrypted content
+     * @throws IOException in case of write issues
+     */
+    static long writeManifest(FileChannel dest, long position, Key key, byte[] baseNonce, ByteBuffer manifest) throws IOException {
+        final ByteBuffer sealed = ByteBuffer.allocate(manifest.remaining() + TAG_LENGTH + Integer.BYTES);
+
+        try {
+            cipherFor(Cipher.ENCRYPT_MODE, key, nonceFor(baseNonce, MANIFEST_INDEX), MANIFEST_INDEX).doFinal(manifest, sealed);
+
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Manifest cannot be sealed", e);
+        }
+
+        sealed.putInt(sealed.position());
+        sealed.flip();
+        Utils.writeFully(dest, sealed, position);
+
+        return position + sealed.limit();
+    }
+
+    /**
+     * Reads and opens the manifest at the end of the encrypted content
+     *
+     * @param source    the channel of the encrypted file
+     * @param base      the position the encrypted content starts at
+     * @param length    the length of the encrypted content
+     * @param key       the content key
+     * @param baseNonce the base nonce of the run that wrote the manifest
+     * @return the plain manifest
+     * @throws IOException in case of read issues, truncated content or failed authentication
+     */
+    static ByteBuffer readManifest(FileChannel source, long base, long length, Key key, byte[] baseNonce) throws IOException {
+        if (length < Integer.BYTES + TAG_LENGTH) {
+            throw new CorruptContentException("Encrypted content is truncated");
+        }
+
+        final ByteBuffer sealedLength = ByteBuffer.allocate(Integer.BYTES);
+        Utils.readFully(source, sealedLength, base + length - Integer.BYTES);
+
+        final int manifestLength = sealedLength.getInt(0);
+        if (manifestLength < TAG_LENGTH + Long.BYTES || manifestLength > length - Integer.BYTES) {
+            throw new CorruptContentException("Encrypted content is truncated");
+        }
+
+        final ByteBuffer sealed = ByteBuffer.allocate(manifestLength);
+        Utils.readFully(source, sealed, base + length - Integer.BYTES - manifestLength);
+        sealed.flip();
+
+        final ByteBuffer manifest = ByteBuffer.allocate(manifestLength - TAG_LENGTH);
+
+        try {
+            cipherFor(Cipher.DECRYPT_MODE, key, nonceFor(baseNonce, MANIFEST_INDEX), MANIFEST_INDEX).doFinal(sealed, manifest);
+
+        } catch (AEADBadTagException e) {
+            throw new CorruptContentException("Manifest failed authentication", e);
+
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Manifest cannot be opened", e);
+        }
+
+        manifest.flip();
+
+        return manifest;
+    }
+
+    /**
+     * Gets the length of the sealed segments of a plain content of the given size
+     *
+     * @param plainSize   the plain content size
+     * @param segmentSize the segment size
+     * @return the length in bytes, up to where the manifest starts
+     */
+    static long segmentsLength(long plainSize, int segmentSize) {
+        return plainSize + ChunkedFormat.segmentsCount(plainSize, segmentSize) * TAG_LENGTH;
+    }
+}
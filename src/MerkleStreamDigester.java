@@ -0,0 +1,389 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Digests data as the root of a Merkle tree, hashing fixed size leaves concurrently on a fork-join pool.
+ * <p>
+ * Every leaf is hashed as H(0x00 || leaf) and every inner node as H(0x01 || left || right), a last node without
+ * a sibling moving up a level as is. Empty data takes a single empty leaf. Signing the root covers all the data,
+ * and any leaf can later be checked against the root with the hashes along its path, without hashing the rest.
+ */
+@SuppressWarnings("WeakerAccess")
+public class MerkleStreamDigester implements IStreamDigester {
+
+    static final int DEFAULT_LEAF_SIZE = 1024 * 1024; // bytes
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+
+    private final String algorithm;
+    private final int leafSize;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<MessageDigest> digests;
+    private final ThreadLocal<ByteBuffer> buffers;
+
+    /**
+     * Initializes a new MerkleStreamDigester using the default leaf size and the common pool
+     *
+     * @param algorithm the MessageDigest algorithm leaves and nodes are hashed with
+     * @throws NoSuchAlgorithmException in case algorithm not found
+     */
+    public MerkleStreamDigester(String algorithm) throws NoSuchAlgorithmException {
+        this(algorithm, DEFAULT_LEAF_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initializes a new MerkleStreamDigester
+     *
+     * @param algorithm the MessageDigest algorithm leaves and nodes are hashed with
+     * @param leafSize  the size of every leaf, must match the verifying side
+     * @param pool      the pool leaves are hashed on
+     * @throws NoSuchAlgorithmException in case algorithm not found
+     */
+    public MerkleStreamDigester(String algorithm, int leafSize, ForkJoinPool pool) throws NoSuchAlgorithmException {
+        MessageDigest.getInstance(algorithm);
+
+        this.algorithm = algorithm;
+        this.leafSize = leafSize;
+        this.pool = pool;
+        this.digests = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(algorithm);
+
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(leafSize));
+    }
+
+    /**
+     * Digests a data read from a stream until reaching end of stream. Leaves are read on the calling thread
+     * while the previously read ones are hashed.
+     *
+     * @param stream the stream to read
+     * @return the tree root
+     * @throws IOException for stream IO issues
+     */
+    @Override
+    public byte[] digestStream(InputStream stream) throws IOException {
+        final int window = pool.getParallelism() * 2;
+        final byte[][][] slots = new byte[2][window][];
+        final List<byte[]> leaves = new ArrayList<>();
+
+        List<HashLeaf> inFlightTasks = new ArrayList<>();
+        ForkJoinTask<?> inFlight = null;
+        boolean last = false;
+
+        try {
+            for (int round = 0; !last; round++) {
+                final byte[][] buffers = slots[round % 2];
+                final List<HashLeaf> tasks = new ArrayList<>();
+
+                // read this window while the previous one is being hashed
+                for (int i = 0; i < window && !last; i++) {
+                    if (buffers[i] == null) {
+                        buffers[i] = new byte[leafSize];
+                    }
+
+                    final int length = Utils.fill(stream, buffers[i], leafSize);
+                    last = length < leafSize;
+
+                    // a trailing empty leaf only stands for empty data
+                    if (length > 0 || round == 0 && i == 0) {
+                        tasks.add(new HashLeaf(buffers[i], length));
+                    }
+                }
+
+                ChunkedFormat.await(inFlight);
+                collectLeaves(inFlightTasks, leaves);
+
+                inFlightTasks = tasks;
+                inFlight = pool.submit(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            }
+
+            ChunkedFormat.await(inFlight);
+            collectLeaves(inFlightTasks, leaves);
+
+        } finally {
+            // never hand the buffers back under leaves still in flight
+            if (inFlight != null) {
+                inFlight.quietlyJoin();
+            }
+        }
+
+        return new Tree(leaves.toArray(new byte[0][])).getRoot();
+    }
+
+    /**
+     * Digests a data read from a file, reading and hashing all leaves concurrently
+     *
+     * @param filePath the file to digest
+     * @return the tree root
+     * @throws IOException for file IO issues
+     */
+    @Override
+    public byte[] digestStream(Path filePath) throws IOException {
+        return digestTree(filePath).getRoot();
+    }
+
+    /**
+     * Digests a data read from a file into a whole tree, so proofs of its leaves can be handed out
+     *
+     * @param filePath the file to digest
+     * @return the tree
+     * @throws IOException for file IO issues
+     */
+    public Tree digestTree(Path filePath) throws IOException {
+        Utils.ensurePathReadable(filePath);
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            final long leafCount = Math.max(1, (channel.size() + leafSize - 1) / leafSize);
+            final byte[][] leaves = new byte[Math.toIntExact(leafCount)][];
+
+            ChunkedFormat.await(pool.submit(new ReadLeaves(channel, leaves, 0, leaves.length)));
+
+            return new Tree(leaves);
+        }
+    }
+
+    /**
+     * Checks the given leaves of a file against a signed root, reading and hashing only those leaves, concurrently
+     *
+     * @param filePath  the file to check
+     * @param root      the tree root
+     * @param leafCount the count of leaves of the tree
+     * @param proofs    the proof of every leaf to check, by leaf index
+     * @return true in case all the leaves match the root
+     * @throws IOException for file IO issues
+     */
+    public boolean verifyLeaves(Path filePath, byte[] root, long leafCount, Map<Long, List<byte[]>> proofs) throws IOException {
+        Utils.ensurePathReadable(filePath);
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            final List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+
+            for (Map.Entry<Long, List<byte[]>> proof : proofs.entrySet()) {
+                tasks.add(pool.submit(() -> verifyLeaf(root, proof.getKey(), leafCount, hashLeaf(channel, proof.getKey()), proof.getValue())));
+            }
+
+            boolean valid = true;
+
+            for (ForkJoinTask<Boolean> task : tasks) {
+                ChunkedFormat.await(task);
+                valid &= task.join();
+            }
+
+            return valid;
+        }
+    }
+
+    /**
+     * Checks a leaf hash against a root, with the hashes along its path
+     *
+     * @param root      the tree root
+     * @param leafIndex the leaf index
+     * @param leafCount the count of leaves of the tree
+     * @param leafHash  the leaf hash, see {@link #hashLeaf(byte[], int, int)}
+     * @param proof     the sibling hashes from the leaf up, as given by {@link Tree#getProof(long)}
+     * @return true in case the leaf matches the root
+     */
+    public boolean verifyLeaf(byte[] root, long leafIndex, long leafCount, byte[] leafHash, List<byte[]> proof) {
+        if (leafIndex < 0 || leafIndex >= leafCount) {
+            return false;
+        }
+
+        byte[] node = leafHash;
+        int used = 0;
+
+        for (long index = leafIndex, count = leafCount; count > 1; index /= 2, count = (count + 1) / 2) {
+            final long sibling = index ^ 1;
+
+            if (sibling < count) {
+                if (used == proof.size()) {
+                    return false;
+                }
+
+                final byte[] siblingHash = proof.get(used++);
+                node = (index & 1) == 0 ? hashNode(node, siblingHash) : hashNode(siblingHash, node);
+            }
+        }
+
+        return used == proof.size() && MessageDigest.isEqual(node, root);
+    }
+
+    /**
+     * Hashes a leaf
+     *
+     * @param data   the buffer holding the leaf
+     * @param offset the leaf offset in the buffer
+     * @param length the leaf length, the leaf size for all but the last leaf
+     * @return the leaf hash
+     */
+    public byte[] hashLeaf(byte[] data, int offset, int length) {
+        final MessageDigest digest = digests.get();
+        digest.update(LEAF_PREFIX);
+        digest.update(data, offset, length);
+
+        return digest.digest();
+    }
+
+    public int getLeafSize() {
+        return leafSize;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    private byte[] hashLeaf(FileChannel channel, long index) throws IOException {
+        final ByteBuffer buffer = buffers.get();
+        final long position = index * leafSize;
+
+        buffer.clear();
+        buffer.limit((int) Math.max(0, Math.min(leafSize, channel.size() - position)));
+        Utils.readFully(channel, buffer, position);
+
+        return hashLeaf(buffer.array(), 0, buffer.limit());
+    }
+
+    private static void collectLeaves(List<HashLeaf> tasks, List<byte[]> leaves) {
+        for (HashLeaf task : tasks) {
+            leaves.add(task.hash);
+        }
+    }
+
+    private byte[] hashNode(byte[] left, byte[] right) {
+        final MessageDigest digest = digests.get();
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        digest.update(right);
+
+        return digest.digest();
+    }
+
+    /**
+     * A Merkle tree, holding the hashes of all its levels
+     */
+    public class Tree {
+
+        private final List<byte[][]> levels = new ArrayList<>();
+
+        private Tree(byte[][] leaves) {
+            byte[][] level = leaves;
+            levels.add(level);
+
+            while (level.length > 1) {
+                final byte[][] parent = new byte[(level.length + 1) / 2][];
+
+                for (int i = 0; i < parent.length; i++) {
+                    parent[i] = 2 * i + 1 < level.length ? hashNode(level[2 * i], level[2 * i + 1]) : level[2 * i];
+                }
+
+                level = parent;
+                levels.add(level);
+            }
+        }
+
+        public byte[] getRoot() {
+            return levels.get(levels.size() - 1)[0];
+        }
+
+        public long getLeafCount() {
+            return levels.get(0).length;
+        }
+
+        /**
+         * Gets the proof of a leaf, the hashes of its siblings along its path up to the root
+         *
+         * @param leafIndex the leaf index
+         * @return the sibling hashes from the leaf up
+         */
+        public List<byte[]> getProof(long leafIndex) {
+            final List<byte[]> proof = new ArrayList<>();
+            int index = Math.toIntExact(leafIndex);
+
+            for (int level = 0; level < levels.size() - 1; level++, index /= 2) {
+                final byte[][] nodes = levels.get(level);
+
+                if ((index ^ 1) < nodes.length) {
+                    proof.add(nodes[index ^ 1]);
+                }
+            }
+
+            return proof;
+        }
+    }
+
+    /**
+     * Hashes one leaf read from a stream, keeping its hash until collected in order
+     */
+    private class HashLeaf extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] buffer;
+        private final int length;
+
+        private byte[] hash;
+
+        HashLeaf(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        @Override
+        protected void compute() {
+            hash = hashLeaf(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Reads and hashes a range of leaves of a file, splitting it down to single leaves
+     */
+    private class ReadLeaves extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final byte[][] leaves;
+        private final int from;
+        private final int to;
+
+        ReadLeaves(FileChannel channel, byte[][] leaves, int from, int to) {
+            this.channel = channel;
+            this.leaves = leaves;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new ReadLeaves(channel, leaves, from, middle), new ReadLeaves(channel, leaves, middle, to));
+                return;
+            }
+
+            try {
+                leaves[from] = hashLeaf(channel, from);
+
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
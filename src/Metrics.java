@@ -0,0 +1,179 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Per-stage counters and latency histograms of encryption and decryption, exposed as JMX MBeans
+ * (see {@link StageMetricsMBean}) and optionally reported by a {@link MetricsReporter}.
+ * <p>
+ * Also carries the per-file console progress, which can be turned off so runs over many files
+ * neither format nor print lines for every file.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Metrics {
+
+    /**
+     * The stages timed, each file's content being encrypted or decrypted, digested and written in a single pass
+     */
+    public enum Stage {
+        KEYSTORE_LOAD,
+        KEY_GENERATION,
+        KEY_WRAP,
+        KEY_UNWRAP,
+        ENCRYPT,
+        DECRYPT,
+        SIGN,
+        VERIFY,
+        FILE_ENCRYPT,
+        FILE_DECRYPT;
+
+        /**
+         * Gets the name the stage is reported and registered with
+         *
+         * @return the lower case stage name
+         */
+        public String getName() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final Metrics defaultMetrics = new Metrics();
+
+    private final Map<Stage, StageMetrics> stages;
+
+    private volatile boolean console = true;
+
+    /**
+     * Initializes a new, empty Metrics instance
+     */
+    public Metrics() {
+        final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageMetrics());
+        }
+
+        this.stages = Collections.unmodifiableMap(stages);
+    }
+
+    /**
+     * Gets the instance shared by encrypters and decrypters that are not given one of their own
+     *
+     * @return the process wide instance
+     */
+    public static Metrics getDefault() {
+        return defaultMetrics;
+    }
+
+    public StageMetrics get(Stage stage) {
+        return stages.get(stage);
+    }
+
+    public Map<Stage, StageMetrics> getStages() {
+        return stages;
+    }
+
+    /**
+     * Starts timing a call of the given stage. The call is recorded once {@link Timer#stop} is called,
+     * and counted as a failure in case the timer is closed before that.
+     *
+     * @param stage the stage
+     * @return the running timer
+     */
+    public Timer time(Stage stage) {
+        return new Timer(stages.get(stage));
+    }
+
+    /**
+     * Registers an MBean per stage, named domain:type=Stage,name=stage
+     *
+     * @param server the MBean server, usually the platform's
+     * @param domain the domain of the names
+     * @throws JMException in case registration fails, or the stages of that domain are already registered
+     */
+    public void registerMBeans(MBeanServer server, String domain) throws JMException {
+        for (Map.Entry<Stage, StageMetrics> stage : stages.entrySet()) {
+            server.registerMBean(stage.getValue(), new ObjectName(String.format("%s:type=Stage,name=%s", domain, stage.getKey().getName())));
+        }
+    }
+
+    /**
+     * Turns the per-file console progress on or off, on by default
+     *
+     * @param console whether to print the progress of every file
+     */
+    public void setConsole(boolean console) {
+        this.console = console;
+    }
+
+    /**
+     * Prints per-file progress, only formatted when the console progress is on
+     *
+     * @param format the format string
+     * @param args   the format arguments
+     */
+    public void print(String format, Object... args) {
+        if (console) {
+            System.out.print(String.format(format, args));
+        }
+    }
+
+    /**
+     * Prints a line of per-file progress, only formatted when the console progress is on
+     *
+     * @param format the format string
+     * @param args   the format arguments
+     */
+    public void println(String format, Object... args) {
+        if (console) {
+            System.out.println(String.format(format, args));
+        }
+    }
+
+    /**
+     * Times a single call of a stage
+     */
+    public static final class Timer implements AutoCloseable {
+
+        private final StageMetrics stage;
+        private final long start = System.nanoTime();
+
+        private boolean stopped;
+
+        private Timer(StageMetrics stage) {
+            this.stage = stage;
+        }
+
+        /**
+         * Records the call as completed
+         */
+        public void stop() {
+            stop(0);
+        }
+
+        /**
+         * Records the call as completed
+         *
+         * @param bytes the bytes the call processed
+         */
+        public void stop(long bytes) {
+            if (!stopped) {
+                stopped = true;
+                stage.record(System.nanoTime() - start, bytes);
+            }
+        }
+
+        /**
+         * Records the call as failed, unless it was stopped
+         */
+        @Override
+        public void close() {
+            if (!stopped) {
+                stopped = true;
+                stage.fail();
+            }
+        }
+    }
+}
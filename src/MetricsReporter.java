@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the stages of a {@link Metrics} periodically, as log lines or as CSV rows, from a background thread.
+ * Stages no call reached yet are left out. Closing the reporter stops it after a last report.
+ */
+@SuppressWarnings("WeakerAccess")
+public class MetricsReporter implements AutoCloseable {
+
+    private static final String CSV_HEADER = "timestamp,stage,count,failures,bytes,total_ms,mean_us,p50_us,p99_us,max_us,mb_per_s";
+
+    private final Metrics metrics;
+    private final PrintStream out;
+    private final boolean csv;
+    private final ScheduledExecutorService scheduler;
+
+    private MetricsReporter(Metrics metrics, PrintStream out, boolean csv) {
+        this.metrics = metrics;
+        this.out = out;
+        this.csv = csv;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a reporter writing a log line per stage
+     *
+     * @param metrics the metrics to report
+     * @param out     the stream to write to, not closed by the reporter
+     * @return the reporter, to be started
+     */
+    public static MetricsReporter log(Metrics metrics, PrintStream out) {
+        return new MetricsReporter(metrics, out, false);
+    }
+
+    /**
+     * Creates a reporter appending a CSV row per stage to a file, writing the column names first in case it is new
+     *
+     * @param metrics the metrics to report
+     * @param csvFile the file to append to
+     * @return the reporter, to be started
+     * @throws IOException in case the file cannot be opened
+     */
+    public static MetricsReporter csv(Metrics metrics, Path csvFile) throws IOException {
+        final boolean exists = Files.exists(csvFile) && Files.size(csvFile) > 0;
+        final PrintStream out = new PrintStream(Files.newOutputStream(csvFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND), true, StandardCharsets.UTF_8.name());
+
+        if (!exists) {
+            out.println(CSV_HEADER);
+        }
+
+        return new MetricsReporter(metrics, out, true);
+    }
+
+    /**
+     * Starts reporting periodically
+     *
+     * @param period the time between reports
+     * @param unit   the unit of period
+     * @return this reporter
+     */
+    public MetricsReporter start(long period, TimeUnit unit) {
+        scheduler.scheduleAtFixedRate(this::report, period, period, unit);
+        return this;
+    }
+
+    /**
+     * Reports all stages now
+     */
+    public synchronized void report() {
+        final long timestamp = System.currentTimeMillis();
+
+        for (Map.Entry<Metrics.Stage, StageMetrics> entry : metrics.getStages().entrySet()) {
+            final StageMetrics stage = entry.getValue();
+
+            if (stage.getCount() == 0 && stage.getFailures() == 0) {
+                continue;
+            }
+
+            if (csv) {
+                out.println(String.format(Locale.ROOT, "%d,%s,%d,%d,%d,%d,%.1f,%d,%d,%d,%.2f",
+                        timestamp, entry.getKey().getName(), stage.getCount(), stage.getFailures(), stage.getBytes(), stage.getTotalMillis(),
+                        stage.getMeanMicros(), stage.getMedianMicros(), stage.get99thPercentileMicros(), stage.getMaxMicros(), stage.getThroughputMBps()));
+            } else {
+                out.println(String.format("%-14s %8d calls %4d failed  mean %9.1fus  p50 %8dus  p99 %8dus  max %8dus%s",
+                        entry.getKey().getName(), stage.getCount(), stage.getFailures(), stage.getMeanMicros(),
+                        stage.getMedianMicros(), stage.get99thPercentileMicros(), stage.getMaxMicros(),
+                        stage.getBytes() > 0 ? String.format("  %.1f MB/s", stage.getThroughputMBps()) : ""));
+            }
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Stops reporting after a last report, closing the CSV file if any
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        report();
+
+        if (csv) {
+            out.close();
+        }
+    }
+}
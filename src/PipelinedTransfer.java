@@ -0,0 +1,368 @@
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Moves a region of one channel to another through a cipher with reading, ciphering and writing overlapped:
+ * a reader thread fills input buffers with positional reads, the calling thread ciphers them into output buffers,
+ * and a writer thread drains those to the destination. Each side has a bounded ring of reusable direct buffers,
+ * so the reader is at most depth buffers ahead of the cipher, and the cipher depth buffers ahead of the writer.
+ * <p>
+ * Throughput approaches the slower of the disk and the cipher, rather than their sum as with {@link Utils#pipeChannels}.
+ * An instance keeps its buffers from one transfer to the next, so like the file engines holding it,
+ * it is used by a single thread at a time.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PipelinedTransfer {
+
+    public static final int DEFAULT_DEPTH = 4; // buffers
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024; // bytes
+
+    private static final long POLL_MILLIS = 50;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private static final ExecutorService ioThreads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "pipelined-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int depth;
+    private final int bufferSize;
+
+    private ByteBuffer[] inputBuffers;
+    private ByteBuffer[] outputBuffers;
+
+    /**
+     * Initializes a new PipelinedTransfer with rings of {@value #DEFAULT_DEPTH} buffers of 1 MiB
+     */
+    public PipelinedTransfer() {
+        this(DEFAULT_DEPTH, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Initializes a new PipelinedTransfer
+     *
+     * @param depth      the buffers of each ring, bounding how far a stage may run ahead of the next one
+     * @param bufferSize the size of the input buffers in bytes
+     */
+    public PipelinedTransfer(int depth, int bufferSize) {
+        if (depth < 1 || bufferSize < 1) {
+            throw new IllegalArgumentException("Pipeline depth and buffer size should be positive");
+        }
+
+        this.depth = depth;
+        this.bufferSize = bufferSize;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Pipes a region of one channel to another through an initialized cipher. The source is read with
+     * positional reads, the destination is written at its current position, and the cipher is finalized
+     * once the region is exhausted.
+     *
+     * @param in           the source channel
+     * @param position     the position the region starts at
+     * @param length       the region length
+     * @param out          the destination channel
+     * @param cipher       the initialized cipher
+     * @param sourceDigest the digest to update with the data read, may be null
+     * @param destDigest   the digest to update with the data written, may be null
+     * @throws IOException in case of read / write issues or cipher failures
+     */
+    public void pipe(FileChannel in, long position, long length, FileChannel out, Cipher cipher, MessageDigest sourceDigest, MessageDigest destDigest) throws IOException {
+        outputBuffers = buffers(outputBuffers, cipher.getOutputSize(bufferSize) + cipher.getBlockSize());
+
+        final Transfer transfer = new Transfer(in, position, length);
+        final BlockingQueue<ByteBuffer> freeOutput = ring(outputBuffers);
+        final BlockingQueue<ByteBuffer> written = new ArrayBlockingQueue<>(depth + 1);
+
+        try {
+            transfer.startWriter(() -> {
+                ByteBuffer buffer;
+
+                while ((buffer = transfer.take(written)) != END) {
+                    if (destDigest != null) {
+                        destDigest.update(buffer.duplicate());
+                    }
+
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+
+                    freeOutput.add(buffer);
+                }
+            });
+
+            ByteBuffer input;
+
+            while ((input = transfer.next()) != END) {
+                if (sourceDigest != null) {
+                    sourceDigest.update(input.duplicate());
+                }
+
+                final ByteBuffer output = transfer.take(freeOutput);
+                output.clear();
+                cipher.update(input, output);
+                output.flip();
+
+                transfer.recycle(input);
+                written.add(output);
+            }
+
+            final ByteBuffer output = transfer.take(freeOutput);
+            output.clear();
+            cipher.doFinal(ByteBuffer.allocate(0), output);
+            output.flip();
+
+            written.add(output);
+            written.add(END);
+
+            transfer.complete();
+
+        } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+            throw new IOException(e);
+
+        } finally {
+            transfer.close();
+        }
+    }
+
+    /**
+     * Digests a region of a channel, reading ahead on another thread while the calling thread digests
+     *
+     * @param in       the source channel
+     * @param position the position the region starts at
+     * @param length   the region length
+     * @param digest   the digest to update with the data read
+     * @throws IOException in case of read issues
+     */
+    public void digest(FileChannel in, long position, long length, MessageDigest digest) throws IOException {
+        final Transfer transfer = new Transfer(in, position, length);
+
+        try {
+            ByteBuffer input;
+
+            while ((input = transfer.next()) != END) {
+                digest.update(input);
+                transfer.recycle(input);
+            }
+
+            transfer.complete();
+
+        } finally {
+            transfer.close();
+        }
+    }
+
+    /**
+     * Keeps the buffers of a ring unless they are too small, allocating them on first use
+     */
+    private ByteBuffer[] buffers(ByteBuffer[] buffers, int size) {
+        if (buffers != null && buffers[0].capacity() >= size) {
+            return buffers;
+        }
+
+        buffers = new ByteBuffer[depth];
+        for (int i = 0; i < depth; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(size);
+        }
+
+        return buffers;
+    }
+
+    private BlockingQueue<ByteBuffer> ring(ByteBuffer[] buffers) {
+        // room for every buffer and the end marker, so handing a buffer over never blocks
+        final BlockingQueue<ByteBuffer> ring = new ArrayBlockingQueue<>(depth + 1);
+        for (ByteBuffer buffer : buffers) {
+            ring.add(buffer);
+        }
+
+        return ring;
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws IOException;
+    }
+
+    /**
+     * The state of a single transfer: the input ring with its reader thread, and the first failure of any stage.
+     * Stages wait on their rings in short polls, so they all stop soon after one fails or the caller gives up.
+     */
+    private class Transfer implements AutoCloseable {
+
+        private final BlockingQueue<ByteBuffer> freeInput;
+        private final BlockingQueue<ByteBuffer> read = new ArrayBlockingQueue<>(depth + 1);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final Future<?> reader;
+        private Future<?> writer;
+
+        private volatile boolean done;
+
+        Transfer(FileChannel in, long position, long length) {
+            final long end = position + length;
+
+            inputBuffers = buffers(inputBuffers, bufferSize);
+            freeInput = ring(inputBuffers);
+
+            reader = start(() -> {
+                for (long readPosition = position; readPosition < end; ) {
+                    final ByteBuffer buffer = take(freeInput);
+                    buffer.clear();
+                    buffer.limit((int) Math.min(bufferSize, end - readPosition));
+
+                    Utils.readFully(in, buffer, readPosition);
+                    readPosition += buffer.limit();
+
+                    buffer.flip();
+                    read.add(buffer);
+                }
+
+                read.add(END);
+            });
+        }
+
+        /**
+         * Runs the writer stage on an IO thread, draining what the cipher produces
+         */
+        void startWriter(Stage stage) {
+            writer = start(stage);
+        }
+
+        /**
+         * Runs a stage on an IO thread, recording its failure for the other stages to see
+         */
+        private Future<?> start(Stage stage) {
+            return ioThreads.submit(() -> {
+                try {
+                    stage.run();
+
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    done = true;
+                }
+            });
+        }
+
+        /**
+         * Gets the next buffer read, or END once the region is exhausted
+         */
+        ByteBuffer next() throws IOException {
+            return take(read);
+        }
+
+        void recycle(ByteBuffer input) {
+            freeInput.add(input);
+        }
+
+        /**
+         * Waits for a buffer, giving up as soon as any stage failed or the transfer is over
+         */
+        ByteBuffer take(BlockingQueue<ByteBuffer> ring) throws IOException {
+            try {
+                ByteBuffer buffer;
+
+                while ((buffer = ring.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    checkFailure();
+
+                    if (done) {
+                        throw new InterruptedIOException("Pipelined transfer was aborted");
+                    }
+                }
+
+                return buffer;
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Pipelined transfer was interrupted");
+            }
+        }
+
+        /**
+         * Waits for the reader, and the writer if any, to finish, and fails in case either did
+         */
+        void complete() throws IOException {
+            for (Future<?> stage : new Future<?>[]{reader, writer}) {
+                if (stage == null) {
+                    continue;
+                }
+
+                try {
+                    stage.get();
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Pipelined transfer was interrupted");
+
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+
+            checkFailure();
+        }
+
+        private void checkFailure() throws IOException {
+            final Throwable e = failure.get();
+
+            if (e instanceof IOException) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+
+        /**
+         * Stops the stages that are still running, and waits for them so none touches the channels afterwards
+         */
+        @Override
+        public void close() {
+            done = true;
+
+            for (Future<?> stage : new Future<?>[]{reader, writer}) {
+                if (stage == null) {
+                    continue;
+                }
+
+                try {
+                    stage.get();
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+
+                } catch (ExecutionException ignored) {
+                    // recorded as the transfer's failure
+                }
+            }
+        }
+    }
+}
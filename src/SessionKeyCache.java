@@ -0,0 +1,238 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the content keys and IVs a decrypter unwrapped with its private key, so decrypting the same container
+ * again skips the private key operations. Entries are looked up by the SHA-256 digest of the wrapped blob,
+ * expire after a time to live, and the least recently used one is evicted once the cache is full.
+ * <p>
+ * The unwrapped bytes are zeroed as soon as an entry is evicted, expires or the cache is cleared, and every
+ * hit hands out a copy. A cache holds the secrets of one private key, so it is only shared by decrypters of
+ * the same private key.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SessionKeyCache implements SessionKeyCacheMBean {
+
+    public static final long DEFAULT_TTL_MINUTES = 10;
+
+    /**
+     * Recovers the secret of a wrapped blob, with a private key operation
+     */
+    @FunctionalInterface
+    public interface Unwrapper {
+        byte[] unwrap(byte[] wrapped) throws GeneralSecurityException;
+    }
+
+    /**
+     * A cached secret, zeroed once dropped
+     */
+    private static final class CachedSecret {
+
+        final byte[] secret;
+        final long expiresAt;
+
+        CachedSecret(byte[] secret, long expiresAt) {
+            this.secret = secret;
+            this.expiresAt = expiresAt;
+        }
+
+        void wipe() {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<ByteBuffer, CachedSecret> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Initializes a new SessionKeyCache keeping secrets for {@value #DEFAULT_TTL_MINUTES} minutes
+     *
+     * @param capacity the secrets cached at most
+     */
+    public SessionKeyCache(int capacity) {
+        this(capacity, DEFAULT_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Initializes a new SessionKeyCache
+     *
+     * @param capacity the secrets cached at most
+     * @param ttl      the time a secret is cached for
+     * @param unit     the unit of ttl
+     */
+    public SessionKeyCache(int capacity, long ttl, TimeUnit unit) {
+        this(capacity, ttl, unit, System::nanoTime);
+    }
+
+    SessionKeyCache(int capacity, long ttl, TimeUnit unit, LongSupplier clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Session key cache capacity should be positive");
+        }
+
+        this.capacity = capacity;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<ByteBuffer, CachedSecret>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CachedSecret> eldest) {
+                if (size() <= SessionKeyCache.this.capacity) {
+                    return false;
+                }
+
+                eldest.getValue().wipe();
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets the secret of a wrapped blob, unwrapping it in case it is not cached. The unwrap runs outside the
+     * cache's lock, so two threads missing the same blob at once may both unwrap it.
+     *
+     * @param wrapped   the wrapped blob
+     * @param unwrapper recovers the secret on a miss
+     * @return a copy of the secret, the caller's to wipe
+     * @throws GeneralSecurityException in case the blob cannot be unwrapped
+     */
+    public byte[] unwrap(byte[] wrapped, Unwrapper unwrapper) throws GeneralSecurityException {
+        final ByteBuffer cacheKey = ByteBuffer.wrap(digest(wrapped));
+
+        synchronized (entries) {
+            final CachedSecret entry = entries.get(cacheKey);
+
+            if (entry != null && clock.getAsLong() - entry.expiresAt < 0) {
+                hits.increment();
+                return entry.secret.clone();
+            }
+
+            if (entry != null) {
+                entries.remove(cacheKey).wipe();
+            }
+        }
+
+        misses.increment();
+
+        final byte[] secret = unwrapper.unwrap(wrapped);
+        final CachedSecret entry = new CachedSecret(secret.clone(), clock.getAsLong() + ttlNanos);
+
+        synchronized (entries) {
+            final CachedSecret replaced = entries.put(cacheKey, entry);
+
+            if (replaced != null) {
+                replaced.wipe();
+            }
+        }
+
+        return secret;
+    }
+
+    /**
+     * Wipes and drops the secrets that expired, which are otherwise only dropped once looked up or evicted
+     */
+    public void purgeExpired() {
+        final long now = clock.getAsLong();
+
+        synchronized (entries) {
+            for (Iterator<CachedSecret> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+                final CachedSecret entry = iterator.next();
+
+                if (now - entry.expiresAt >= 0) {
+                    entry.wipe();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        final long hit = hits.sum();
+        final long lookups = hit + misses.sum();
+
+        return lookups == 0 ? 0.0 : (double) hit / lookups;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (entries) {
+            entries.values().forEach(CachedSecret::wipe);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Gets a summary of the unwraps so far
+     *
+     * @return hits, misses and the hit rate
+     */
+    public String getStats() {
+        return String.format("%d key unwraps, %.1f%% cached, %d entries, %d evicted",
+                getHits() + getMisses(), getHitRate() * 100, getSize(), getEvictions());
+    }
+
+    /**
+     * Registers the cache's MBean, named domain:type=SessionKeyCache
+     *
+     * @param server the MBean server, usually the platform's
+     * @param domain the domain of the name
+     * @throws JMException in case registration fails, or a cache of that domain is already registered
+     */
+    public void registerMBean(MBeanServer server, String domain) throws JMException {
+        server.registerMBean(this, new ObjectName(String.format("%s:type=SessionKeyCache", domain)));
+    }
+
+    private static byte[] digest(byte[] wrapped) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(wrapped);
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * The JMX view of a {@link SessionKeyCache}
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public interface SessionKeyCacheMBean {
+
+    int getCapacity();
+
+    int getSize();
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    /**
+     * Gets the share of unwraps served from the cache, each sparing a private key operation
+     *
+     * @return the hit rate, between 0 and 1
+     */
+    double getHitRate();
+
+    /**
+     * Wipes and drops every cached key
+     */
+    void clear();
+}
@@ -0,0 +1,73 @@
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+
+/**
+ * Provides the very same crypto instances to every caller, so it may only be used by a single thread at a time.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SingleCryptoProvider implements ICryptoProvider {
+
+    private final Cipher symmetricCipher;
+    private final Cipher asymmetricCipher;
+    private final MessageDigest messageDigest;
+    private final Signature signature;
+    private final KeyGenerator keyGenerator;
+
+    /**
+     * Initializes a new SingleCryptoProvider
+     *
+     * @param symmetricCipher        a Cipher instance
+     * @param asymmetricCipher       a Cipher instance
+     * @param messageDigest          a MessageDigest instance
+     * @param signature              a Signature instance
+     * @param keyGenerator           a KeyGenerator instance, may be null when only decrypting
+     * @param secureRandom           a SecureRandom instance for the key generator
+     * @param symmetricKeyLengthBits length in bits of the symmetric key
+     */
+    public SingleCryptoProvider(Cipher symmetricCipher,
+                                Cipher asymmetricCipher,
+                                MessageDigest messageDigest,
+                                Signature signature,
+                                KeyGenerator keyGenerator,
+                                SecureRandom secureRandom,
+                                int symmetricKeyLengthBits) {
+
+        this.symmetricCipher = symmetricCipher;
+        this.asymmetricCipher = asymmetricCipher;
+        this.messageDigest = messageDigest;
+        this.signature = signature;
+        this.keyGenerator = keyGenerator;
+
+        if (keyGenerator != null) {
+            keyGenerator.init(symmetricKeyLengthBits, secureRandom);
+        }
+    }
+
+    @Override
+    public Cipher symmetricCipher() {
+        return symmetricCipher;
+    }
+
+    @Override
+    public Cipher asymmetricCipher() {
+        return asymmetricCipher;
+    }
+
+    @Override
+    public MessageDigest messageDigest() {
+        return messageDigest;
+    }
+
+    @Override
+    public Signature signature() {
+        return signature;
+    }
+
+    @Override
+    public KeyGenerator keyGenerator() {
+        return keyGenerator;
+    }
+}
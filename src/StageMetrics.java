@@ -0,0 +1,139 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters and latency histogram of a single stage. Safe for concurrent use, recording takes no locks.
+ * The histogram has a bucket per power of two nanoseconds, so percentiles are exact to within a factor of two.
+ */
+@SuppressWarnings("WeakerAccess")
+public class StageMetrics implements StageMetricsMBean {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+    /**
+     * Records a completed call
+     *
+     * @param nanos          the call's latency
+     * @param bytesProcessed the bytes it processed, or 0
+     */
+    void record(long nanos, long bytesProcessed) {
+        count.increment();
+        bytes.add(bytesProcessed);
+        addLatency(nanos);
+    }
+
+    /**
+     * Records a failed call, which is not part of the latencies
+     */
+    void fail() {
+        failures.increment();
+    }
+
+    private void addLatency(long nanos) {
+        nanos = Math.max(nanos, 1);
+
+        totalNanos.add(nanos);
+        buckets.incrementAndGet(Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos));
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getTotalMillis() {
+        return totalNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        final long calls = count.sum();
+        return calls == 0 ? 0 : totalNanos.sum() / 1e3 / calls;
+    }
+
+    @Override
+    public long getMedianMicros() {
+        return percentileMicros(0.5);
+    }
+
+    @Override
+    public long get99thPercentileMicros() {
+        return percentileMicros(0.99);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return maxNanos.get() / 1000;
+    }
+
+    @Override
+    public double getThroughputMBps() {
+        final long nanos = totalNanos.sum();
+        return nanos == 0 ? 0 : bytes.sum() / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        failures.reset();
+        bytes.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    /**
+     * Gets the latency under which the given share of calls completed
+     *
+     * @param quantile the share of calls, between 0 and 1
+     * @return the upper bound of the bucket holding the quantile, in microseconds
+     */
+    public long percentileMicros(double quantile) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+
+        for (int i = 0; i < buckets.length() - 1; i++) {
+            seen += buckets.get(i);
+
+            if (seen >= rank) {
+                return Math.min((1L << (i + 1)), maxNanos.get()) / 1000;
+            }
+        }
+
+        return maxNanos.get() / 1000;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * The JMX view of a {@link StageMetrics}. Latencies are in microseconds, percentiles are the upper bound of
+ * their power of two histogram bucket.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public interface StageMetricsMBean {
+
+    long getCount();
+
+    long getFailures();
+
+    long getBytes();
+
+    long getTotalMillis();
+
+    double getMeanMicros();
+
+    long getMedianMicros();
+
+    long get99thPercentileMicros();
+
+    long getMaxMicros();
+
+    /**
+     * Gets the bytes processed per second spent in the stage, summed over all threads
+     *
+     * @return the throughput in MiB/s
+     */
+    double getThroughputMBps();
+
+    void reset();
+}
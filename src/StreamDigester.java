@@ -1,7 +1,9 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -10,6 +12,7 @@ public class StreamDigester implements IStreamDigester {
 
     private static final int bufferSize = 1024; // bytes
     private MessageDigest messageDigest;
+    private final PipelinedTransfer pipeline;
 
     /**
      * Initializes a new StreamDigester
@@ -17,7 +20,18 @@ public class StreamDigester implements IStreamDigester {
      * @param md the given MessageDigest object
      */
     public StreamDigester(MessageDigest md) {
+        this(md, null);
+    }
+
+    /**
+     * Initializes a new StreamDigester that reads files ahead on another thread while digesting
+     *
+     * @param md       the given MessageDigest object
+     * @param pipeline the pipeline files are read through, may be null to read them as a stream
+     */
+    public StreamDigester(MessageDigest md, PipelinedTransfer pipeline) {
         messageDigest = md;
+        this.pipeline = pipeline;
     }
 
     /**
@@ -59,8 +73,17 @@ public class StreamDigester implements IStreamDigester {
      * @throws IOException for stream IO issues
      */
     public byte[] digestStream(Path filePath) throws IOException {
-        InputStream inputStream = new FileInputStream(filePath.toFile());
+        if (pipeline != null) {
+            try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+                messageDigest.reset();
+                pipeline.digest(channel, 0, channel.size(), messageDigest);
+
+                return messageDigest.digest();
+            }
+        }
 
-        return digestStream(inputStream);
+        try (InputStream inputStream = new FileInputStream(filePath.toFile())) {
+            return digestStream(inputStream);
+        }
     }
 }
@@ -0,0 +1,205 @@
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Provides every thread with crypto instances of its own, created lazily on first use and reused afterwards,
+ * so any number of threads may share it. The key generators of all threads still draw from the one SecureRandom,
+ * the only state threads contend on, so its draws are timed, waiting for it included, to measure that contention.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ThreadLocalCryptoProvider implements ICryptoProvider {
+
+    /**
+     * Creates a crypto instance
+     */
+    private interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    /**
+     * Times every draw from the SecureRandom it wraps, the time spent waiting for it included
+     */
+    private static final class TimedSecureRandom extends SecureRandom {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SecureRandom secureRandom;
+        private final LongAdder draws = new LongAdder();
+        private final LongAdder drawNanos = new LongAdder();
+
+        TimedSecureRandom(SecureRandom secureRandom) {
+            super(null, secureRandom.getProvider());
+            this.secureRandom = secureRandom;
+        }
+
+        @Override
+        public void nextBytes(byte[] bytes) {
+            long start = System.nanoTime();
+            secureRandom.nextBytes(bytes);
+
+            drawNanos.add(System.nanoTime() - start);
+            draws.increment();
+        }
+
+        @Override
+        public byte[] generateSeed(int numBytes) {
+            return secureRandom.generateSeed(numBytes);
+        }
+
+        @Override
+        public void setSeed(byte[] seed) {
+            secureRandom.setSeed(seed);
+        }
+
+        @Override
+        public void setSeed(long seed) {
+            // called by the Random constructor, before there is anything to seed
+            if (secureRandom != null) {
+                secureRandom.setSeed(seed);
+            }
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return secureRandom.getAlgorithm();
+        }
+
+        @Override
+        public String toString() {
+            return secureRandom.toString();
+        }
+    }
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder creations = new LongAdder();
+    private final TimedSecureRandom sharedRandom;
+
+    private final ThreadLocal<Cipher> symmetricCiphers;
+    private final ThreadLocal<Cipher> asymmetricCiphers;
+    private final ThreadLocal<MessageDigest> messageDigests;
+    private final ThreadLocal<Signature> signatures;
+    private final ThreadLocal<KeyGenerator> keyGenerators;
+
+    /**
+     * Initializes a new ThreadLocalCryptoProvider
+     *
+     * @param symmetricTransformation  the symmetric Cipher transformation
+     * @param asymmetricTransformation the asymmetric Cipher transformation
+     * @param digestAlgorithm          the MessageDigest algorithm
+     * @param signatureAlgorithm       the Signature algorithm
+     * @param keyAlgorithm             the KeyGenerator algorithm
+     * @param symmetricKeyLengthBits   length in bits of the symmetric key
+     * @param secureRandom             a SecureRandom instance, shared by all key generators
+     */
+    public ThreadLocalCryptoProvider(String symmetricTransformation,
+                                     String asymmetricTransformation,
+                                     String digestAlgorithm,
+                                     String signatureAlgorithm,
+                                     String keyAlgorithm,
+                                     int symmetricKeyLengthBits,
+                                     SecureRandom secureRandom) {
+
+        this.symmetricCiphers = perThread(() -> Cipher.getInstance(symmetricTransformation));
+        this.asymmetricCiphers = perThread(() -> Cipher.getInstance(asymmetricTransformation));
+        this.messageDigests = perThread(() -> MessageDigest.getInstance(digestAlgorithm));
+        this.signatures = perThread(() -> Signature.getInstance(signatureAlgorithm));
+        this.sharedRandom = new TimedSecureRandom(secureRandom);
+        this.keyGenerators = perThread(() -> {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance(keyAlgorithm);
+            keyGenerator.init(symmetricKeyLengthBits, sharedRandom);
+
+            return keyGenerator;
+        });
+    }
+
+    @Override
+    public Cipher symmetricCipher() {
+        return acquire(symmetricCiphers);
+    }
+
+    @Override
+    public Cipher asymmetricCipher() {
+        return acquire(asymmetricCiphers);
+    }
+
+    @Override
+    public MessageDigest messageDigest() {
+        return acquire(messageDigests);
+    }
+
+    @Override
+    public Signature signature() {
+        return acquire(signatures);
+    }
+
+    @Override
+    public KeyGenerator keyGenerator() {
+        return acquire(keyGenerators);
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long getCreations() {
+        return creations.sum();
+    }
+
+    /**
+     * Gets the number of draws the key generators made from the shared SecureRandom
+     *
+     * @return the number of draws
+     */
+    public long getRandomDraws() {
+        return sharedRandom.draws.sum();
+    }
+
+    /**
+     * Gets the average time a draw from the shared SecureRandom took, which grows as threads contend on it
+     *
+     * @return the average draw time in nanoseconds, the time spent waiting for it included
+     */
+    public double getAverageRandomDrawNanos() {
+        long draws = sharedRandom.draws.sum();
+
+        return draws == 0 ? 0.0 : (double) sharedRandom.drawNanos.sum() / draws;
+    }
+
+    /**
+     * Gets a summary of the instances handed out so far and the draws from the shared SecureRandom
+     *
+     * @return acquisitions, instances created, and the draws with the average time they took
+     */
+    public String getStats() {
+        return String.format("%d crypto acquisitions, %d instances created, %d shared SecureRandom draws, %.0f ns average draw",
+                getAcquisitions(),
+                getCreations(),
+                getRandomDraws(),
+                getAverageRandomDrawNanos());
+    }
+
+    private <T> T acquire(ThreadLocal<T> instances) {
+        acquisitions.increment();
+
+        return instances.get();
+    }
+
+    private <T> ThreadLocal<T> perThread(Factory<T> factory) {
+        return ThreadLocal.withInitial(() -> {
+            try {
+                T instance = factory.create();
+                creations.increment();
+
+                return instance;
+
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
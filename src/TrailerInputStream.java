@@ -0,0 +1,109 @@
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads a stream that ends with a trailer of known length, yielding everything before the trailer
+ * and holding the trailer back until the stream ends.
+ */
+@SuppressWarnings("WeakerAccess")
+final class TrailerInputStream extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024; // bytes
+
+    private final int trailerLength;
+    private final byte[] buffer;
+
+    private int start;
+    private int end;
+    private boolean ended;
+
+    /**
+     * Initializes a new TrailerInputStream
+     *
+     * @param in            the underlying stream
+     * @param trailerLength the length of the trailer ending the stream
+     */
+    TrailerInputStream(InputStream in, int trailerLength) {
+        super(in);
+        this.trailerLength = trailerLength;
+        this.buffer = new byte[trailerLength + BUFFER_SIZE];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        // keep the trailer's worth of bytes buffered, as any of them may be the trailer
+        while (end - start <= trailerLength && !ended) {
+            if (end == buffer.length) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+
+            int bytesRead = in.read(buffer, end, buffer.length - end);
+
+            if (bytesRead < 0) {
+                ended = true;
+            } else {
+                end += bytesRead;
+            }
+        }
+
+        int available = end - start - trailerLength;
+
+        if (available <= 0) {
+            return -1;
+        }
+
+        int count = Math.min(len, available);
+        System.arraycopy(buffer, start, b, off, count);
+        start += count;
+
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        throw new IOException("Skipping is not supported");
+    }
+
+    @Override
+    public int available() {
+        return Math.max(0, end - start - trailerLength);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Gets the trailer, once everything before it was read
+     *
+     * @return the trailer
+     * @throws IOException in case the stream did not end yet, or ended before a whole trailer
+     */
+    byte[] getTrailer() throws IOException {
+        if (!ended || available() > 0) {
+            throw new IOException("Trailer is only known once the stream is read to its end");
+        }
+
+        if (end - start < trailerLength) {
+            throw new EOFException("Stream ended before its trailer");
+        }
+
+        return Arrays.copyOfRange(buffer, start, end);
+    }
+}
@@ -1,5 +1,13 @@
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.List;
 import java.util.Map;
 import java.util.MissingFormatArgumentException;
@@ -10,6 +18,8 @@ public final class Utils {
     private static final char[] hexArray = "0123456789ABCDEF".toCharArray();
 
     private static final int BUFFER_SIZE = 1024; // bytes
+    private static final int CHANNEL_BUFFER_SIZE = 1024 * 1024; // bytes
+    private static final long MAP_REGION_SIZE = 64 * 1024 * 1024; // bytes
 
     /**
      * Static class
@@ -82,14 +92,220 @@ public final class Utils {
      * @throws IOException in case of read / write issues
      */
     public static void pipeStreams(InputStream in, OutputStream out) throws IOException {
+        pipeStreams(in, out, BUFFER_SIZE);
+    }
+
+    /**
+     * Pipes data from one stream to another using a buffer of the given size
+     *
+     * @param in         the source stream
+     * @param out        the destination stream
+     * @param bufferSize the buffer size in bytes
+     * @throws IOException in case of read / write issues
+     */
+    public static void pipeStreams(InputStream in, OutputStream out, int bufferSize) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        int bytesRead;
+
+        while ((bytesRead = in.read(buffer)) > 0) {
+            out.write(buffer, 0, bytesRead);
+        }
+    }
+
+    /**
+     * Pipes data from one stream to another, feeding every buffer read into the digest as well
+     *
+     * @param in     the source stream
+     * @param out    the destination stream
+     * @param digest the digest to update with the piped data
+     * @throws IOException in case of read / write issues
+     */
+    public static void pipeStreams(InputStream in, OutputStream out, MessageDigest digest) throws IOException {
         byte[] buffer = new byte[BUFFER_SIZE];
         int bytesRead;
 
         while ((bytesRead = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, bytesRead);
             out.write(buffer, 0, bytesRead);
         }
     }
 
+    /**
+     * Pipes a region of one channel to another through an initialized cipher, using direct buffers.
+     * The source is read with positional reads, the destination is written at its current position,
+     * and the cipher is finalized once the region is exhausted.
+     *
+     * @param in           the source channel
+     * @param position     the position the region starts at
+     * @param length       the region length
+     * @param out          the destination channel
+     * @param cipher       the initialized cipher
+     * @param mapped       whether to read the source through memory-mapped regions
+     * @param sourceDigest the digest to update with the data read, may be null
+     * @param destDigest   the digest to update with the data written, may be null
+     * @throws IOException in case of read / write issues or cipher failures
+     */
+    public static void pipeChannels(FileChannel in, long position, long length, FileChannel out, Cipher cipher, boolean mapped, MessageDigest sourceDigest, MessageDigest destDigest) throws IOException {
+        final ByteBuffer output = ByteBuffer.allocateDirect(cipher.getOutputSize(CHANNEL_BUFFER_SIZE) + cipher.getBlockSize());
+        final long end = position + length;
+
+        try {
+            if (mapped) {
+                for (long regionStart = position; regionStart < end; regionStart += MAP_REGION_SIZE) {
+                    MappedByteBuffer region = in.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(MAP_REGION_SIZE, end - regionStart));
+
+                    while (region.hasRemaining()) {
+                        ByteBuffer slice = region.duplicate();
+                        slice.limit(Math.min(slice.position() + CHANNEL_BUFFER_SIZE, slice.limit()));
+                        region.position(slice.limit());
+
+                        cipherBuffer(slice, output, out, cipher, sourceDigest, destDigest);
+                    }
+                }
+
+            } else {
+                final ByteBuffer input = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+
+                for (long readPosition = position; readPosition < end; readPosition += input.limit()) {
+                    input.clear();
+                    input.limit((int) Math.min(CHANNEL_BUFFER_SIZE, end - readPosition));
+
+                    readFully(in, input, readPosition);
+                    input.flip();
+                    cipherBuffer(input, output, out, cipher, sourceDigest, destDigest);
+                }
+            }
+
+            output.clear();
+            cipher.doFinal(ByteBuffer.allocate(0), output);
+            output.flip();
+            writeBuffer(output, out, destDigest);
+
+        } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Opens a stream over a region of a channel, reading with positional reads so the channel position is untouched.
+     * Closing the stream leaves the channel open.
+     *
+     * @param channel  the source channel
+     * @param position the position the region starts at
+     * @param length   the region length
+     * @return the stream
+     */
+    public static InputStream newInputStream(FileChannel channel, long position, long length) {
+        return new InputStream() {
+            private long next = position;
+            private final long end = position + length;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (next >= end) {
+                    return -1;
+                }
+
+                int bytesRead = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - next)), next);
+                if (bytesRead < 0) {
+                    throw new EOFException(String.format("Unexpected end of file at position %d", next));
+                }
+
+                next += bytesRead;
+                return bytesRead;
+            }
+        };
+    }
+
+    /**
+     * Gets a stream discarding whatever is written to it
+     *
+     * @return the stream
+     */
+    public static OutputStream discarding() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+    }
+
+    /**
+     * Wraps a stream so that closing the wrapper only flushes it, leaving the underlying stream open
+     *
+     * @param out the underlying stream
+     * @return the wrapper
+     */
+    public static OutputStream nonClosing(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    private static void cipherBuffer(ByteBuffer input, ByteBuffer output, FileChannel out, Cipher cipher, MessageDigest sourceDigest, MessageDigest destDigest) throws IOException, ShortBufferException {
+        if (sourceDigest != null) {
+            sourceDigest.update(input.duplicate());
+        }
+
+        output.clear();
+        cipher.update(input, output);
+        output.flip();
+        writeBuffer(output, out, destDigest);
+    }
+
+    private static void writeBuffer(ByteBuffer buffer, FileChannel out, MessageDigest digest) throws IOException {
+        if (digest != null) {
+            digest.update(buffer.duplicate());
+        }
+
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Reads from the stream until the given length is read or the stream ends
+     *
+     * @param in     the source stream
+     * @param buffer the buffer to read into, from its start
+     * @param length the number of bytes to read
+     * @return the number of bytes read, less than length only when the stream ended
+     * @throws IOException in case of read issues
+     */
+    public static int fill(InputStream in, byte[] buffer, int length) throws IOException {
+        int total = 0;
+
+        while (total < length) {
+            int bytesRead = in.read(buffer, total, length - total);
+
+            if (bytesRead < 0) {
+                break;
+            }
+
+            total += bytesRead;
+        }
+
+        return total;
+    }
+
     /**
      * Validates source file exists
      *
@@ -117,12 +333,55 @@ public final class Utils {
     public static void ensurePathWritable(Path destFilePath) throws IOException {
         File destFile = destFilePath.toFile();
 
-        if (destFile.exists()) {
-            throw new IllegalArgumentException(String.format("File already exists in path %s", destFilePath.toAbsolutePath()));
-        }
+        ensurePathAvailable(destFilePath);
 
         if (!destFile.createNewFile()) {
             throw new FileNotFoundException(String.format("File cannot be created %s", destFilePath.toAbsolutePath()));
         }
     }
+
+    /**
+     * Validates no file exists in the destination path, without creating one.
+     *
+     * @param destFilePath the path
+     */
+    public static void ensurePathAvailable(Path destFilePath) {
+        if (destFilePath.toFile().exists()) {
+            throw new IllegalArgumentException(String.format("File already exists in path %s", destFilePath.toAbsolutePath()));
+        }
+    }
+
+    /**
+     * Reads from the channel at the given position until the buffer is full
+     *
+     * @param channel  the source channel
+     * @param buffer   the buffer to fill
+     * @param position the file position to start reading from
+     * @throws IOException in case of read issues or when the channel ends before the buffer is full
+     */
+    public static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+
+            if (bytesRead < 0) {
+                throw new EOFException(String.format("Unexpected end of file at position %d", position));
+            }
+
+            position += bytesRead;
+        }
+    }
+
+    /**
+     * Writes the whole buffer to the channel at the given position
+     *
+     * @param channel  the destination channel
+     * @param buffer   the buffer to write
+     * @param position the file position to start writing at
+     * @throws IOException in case of write issues
+     */
+    public static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
 }
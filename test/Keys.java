@@ -0,0 +1,24 @@
+import javax.crypto.KeyGenerator;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Creates content keys for tests that drive the file engines directly, without an Encrypter
+ */
+final class Keys {
+
+    private Keys() {
+    }
+
+    /**
+     * Generates a fresh 128 bits AES key, the content key the tool uses by default
+     *
+     * @return the key
+     */
+    static Key newAesKey() throws NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+
+        return keyGenerator.generateKey();
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+
+/**
+ * Creates keystores for tests that encrypt and decrypt end to end, the way java_keytool/keytool_script.txt does
+ */
+final class Keystores {
+
+    private static final String KEYSTORE_FILE = "test.jks";
+
+    private Keystores() {
+    }
+
+    /**
+     * Creates a single keystore holding a key pair under each alias, and its certificate under the alias
+     * followed by "-cert"
+     *
+     * @param directory the directory to create the keystore in
+     * @param password  the password of the keystore and of every key
+     * @param aliases   the key aliases
+     * @return the loaded keystore
+     */
+    static KeyStore create(Path directory, String password, String... aliases) throws Exception {
+        Path keystoreFile = directory.resolve(KEYSTORE_FILE);
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+
+        for (String alias : aliases) {
+            keytool(keytool, "-genkeypair", "-alias", alias, "-keyalg", "RSA", "-keysize", "2048", "-storetype", "JKS",
+                    "-keystore", keystoreFile.toString(), "-dname", "CN=" + alias, "-storepass", password, "-keypass", password);
+
+            Path certificate = directory.resolve(alias + ".crt");
+            keytool(keytool, "-exportcert", "-alias", alias, "-keystore", keystoreFile.toString(),
+                    "-file", certificate.toString(), "-storepass", password);
+            keytool(keytool, "-importcert", "-alias", alias + "-cert", "-keystore", keystoreFile.toString(),
+                    "-file", certificate.toString(), "-storepass", password, "-noprompt");
+        }
+
+        KeyStore keystore = KeyStore.getInstance("JKS");
+        try (InputStream in = new FileInputStream(keystoreFile.toFile())) {
+            keystore.load(in, password.toCharArray());
+        }
+
+        return keystore;
+    }
+
+    /**
+     * Deletes a keystore created in the directory, and the directory
+     */
+    static void delete(Path directory, String... aliases) throws IOException {
+        Files.deleteIfExists(directory.resolve(KEYSTORE_FILE));
+
+        for (String alias : aliases) {
+            Files.deleteIfExists(directory.resolve(alias + ".crt"));
+        }
+
+        Files.deleteIfExists(directory);
+    }
+
+    private static void keytool(String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Utils.pipeStreams(process.getInputStream(), Utils.discarding());
+
+        if (process.waitFor() != 0) {
+            throw new IOException(String.format("keytool failed: %s", String.join(" ", command)));
+        }
+    }
+}
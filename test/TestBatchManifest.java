@@ -0,0 +1,70 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import static org.junit.Assert.*;
+
+public class TestBatchManifest {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+    private KeyPair signingKeyPair;
+    private Path directory;
+    private Path manifestFile;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+
+        signingKeyPair = keyPairGenerator.generateKeyPair();
+        directory = Files.createTempDirectory("batch");
+        manifestFile = directory.resolve("manifest.json");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(manifestFile);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void testSignWriteReadVerify() throws GeneralSecurityException, IOException {
+        BatchManifest manifest = BatchManifest.create(manifestFile, SIGNATURE_ALGORITHM);
+        manifest.add(directory.resolve("a-encrypted"), 10, new byte[]{1, 2, 3});
+        manifest.add(directory.resolve("sub/b-encrypted"), 20, new byte[]{4, 5, 6});
+        manifest.sign(new DataSigner(SIGNATURE_ALGORITHM), signingKeyPair.getPrivate());
+        manifest.write(manifestFile);
+
+        BatchManifest read = BatchManifest.read(manifestFile);
+
+        assertTrue(read.verify(new DataSigner(SIGNATURE_ALGORITHM), signingKeyPair.getPublic()));
+        assertArrayEquals(manifest.getId(), read.getId());
+        assertEquals(2, read.size());
+        assertTrue(read.matches(directory.resolve("sub").resolve("b-encrypted"), new byte[]{4, 5, 6}));
+        assertFalse(read.matches(directory.resolve("sub/b-encrypted"), new byte[]{1, 2, 3}));
+        assertFalse(read.matches(directory.resolve("c-encrypted"), new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void testTamperedEntry() throws GeneralSecurityException, IOException {
+        BatchManifest manifest = BatchManifest.create(manifestFile, SIGNATURE_ALGORITHM);
+        manifest.add(directory.resolve("a-encrypted"), 10, new byte[]{1, 2, 3});
+        manifest.sign(new DataSigner(SIGNATURE_ALGORITHM), signingKeyPair.getPrivate());
+        manifest.write(manifestFile);
+
+        // record a larger size for the same container
+        String json = new String(Files.readAllBytes(manifestFile), StandardCharsets.UTF_8);
+        Files.write(manifestFile, json.replace("\"size\": 10", "\"size\": 11").getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(BatchManifest.read(manifestFile).verify(new DataSigner(SIGNATURE_ALGORITHM), signingKeyPair.getPublic()));
+    }
+}
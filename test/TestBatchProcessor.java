@@ -0,0 +1,92 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class TestBatchProcessor {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PrintStream stdout;
+    private PrintStream stderr;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    @Before
+    public void initialize() throws IOException {
+        stdout = System.out;
+        stderr = System.err;
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+
+        System.setOut(new PrintStream(out, true, "UTF-8"));
+        System.setErr(new PrintStream(err, true, "UTF-8"));
+    }
+
+    @After
+    public void cleanup() {
+        System.setOut(stdout);
+        System.setErr(stderr);
+    }
+
+    @Test
+    public void testFailuresCounted() throws Exception {
+        List<Path> files = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            files.add(Files.write(folder.getRoot().toPath().resolve("file" + i), new byte[100]));
+        }
+
+        // one file fails in its task, another one is gone before it is processed
+        Path failing = files.get(2);
+        files.add(folder.getRoot().toPath().resolve("missing"));
+
+        Set<Path> processed = ConcurrentHashMap.newKeySet();
+
+        int failed = new BatchProcessor(3).process(files, () -> file -> {
+            if (file.equals(failing)) {
+                throw new IOException("Disk on fire");
+            }
+
+            processed.add(file);
+        });
+
+        assertEquals(2, failed);
+        assertEquals(5, processed.size());
+
+        String summary = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(summary, summary.startsWith("Processed 7 files (2 failed) in "));
+        assertTrue(summary, summary.contains(" on 3 workers: "));
+
+        String errors = new String(err.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(errors, errors.contains(String.format("Failed processing %s: java.io.IOException: Disk on fire", failing)));
+        assertTrue(errors, errors.contains("missing"));
+    }
+
+    @Test
+    public void testNoFailures() throws Exception {
+        Path file = Files.write(folder.getRoot().toPath().resolve("file"), new byte[100]);
+
+        assertEquals(0, new BatchProcessor(2).process(Collections.singletonList(file), () -> f -> {
+        }));
+
+        String summary = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(summary, summary.startsWith("Processed 1 files (0 failed) in "));
+    }
+}
@@ -0,0 +1,127 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TestCheckpoint {
+
+    private static final int SEGMENT_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path encrypted;
+    private Path decrypted;
+    private Key key;
+    private byte[] baseNonce;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        key = Keys.newAesKey();
+
+        byte[] plain = new byte[10 * SEGMENT_SIZE + 123];
+        new Random(5).nextBytes(plain);
+
+        // checkpoints are kept next to their output, in the folder as well
+        source = folder.newFile("plain").toPath();
+        encrypted = folder.newFile("encrypted").toPath();
+        decrypted = folder.newFile("decrypted").toPath();
+        Files.write(source, plain);
+    }
+
+    @Test
+    public void testResumeEncryption() throws GeneralSecurityException, IOException {
+        byte[] digest = encrypt(Checkpoint.start(encrypted, source, SEGMENT_SIZE, null));
+        byte[] complete = Files.readAllBytes(encrypted);
+
+        // lose everything written after the last checkpoint
+        Checkpoint checkpoint = Checkpoint.resume(encrypted, source, SEGMENT_SIZE);
+        assertNotNull(checkpoint);
+        assertEquals(10, checkpoint.getSegments());
+
+        byte[] interrupted = complete.clone();
+        Arrays.fill(interrupted, 10 * (SEGMENT_SIZE + ChunkedFormat.TAG_LENGTH), interrupted.length, (byte) 0);
+        Files.write(encrypted, interrupted);
+
+        assertArrayEquals(digest, encrypt(checkpoint));
+        assertArrayEquals(complete, Files.readAllBytes(encrypted));
+    }
+
+    @Test(expected = IOException.class)
+    public void testResumeChangedFile() throws GeneralSecurityException, IOException {
+        encrypt(Checkpoint.start(encrypted, source, SEGMENT_SIZE, null));
+        Checkpoint checkpoint = Checkpoint.resume(encrypted, source, SEGMENT_SIZE);
+
+        // same size and modification time, different content
+        FileTime modified = Files.getLastModifiedTime(source);
+        byte[] plain = Files.readAllBytes(source);
+        plain[0] ^= 1;
+        Files.setLastModifiedTime(Files.write(source, plain), modified);
+
+        encrypt(checkpoint);
+    }
+
+    @Test
+    public void testCorruptContentNotResumable() throws GeneralSecurityException, IOException {
+        encrypt(Checkpoint.start(encrypted, source, SEGMENT_SIZE, null));
+        byte[] complete = Files.readAllBytes(encrypted);
+
+        // a segment past the first checkpoints is tampered with, the content is truncated
+        byte[] tampered = complete.clone();
+        tampered[7 * (SEGMENT_SIZE + ChunkedFormat.TAG_LENGTH) + 5] ^= 1;
+
+        for (byte[] corrupt : new byte[][]{tampered, Arrays.copyOf(complete, 10 * (SEGMENT_SIZE + ChunkedFormat.TAG_LENGTH) + 3)}) {
+            Files.write(encrypted, corrupt);
+
+            try {
+                decrypt(Checkpoint.start(decrypted, encrypted, SEGMENT_SIZE, null));
+                fail("Corrupt content should not decrypt");
+
+            } catch (CorruptContentException ignored) {
+            }
+        }
+
+        // the intact content still decrypts
+        Files.write(encrypted, complete);
+        decrypt(Checkpoint.start(decrypted, encrypted, SEGMENT_SIZE, null));
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(decrypted));
+    }
+
+    private byte[] decrypt(Checkpoint checkpoint) throws GeneralSecurityException, IOException {
+        ChunkedFileDecrypt fileDecrypt = new ChunkedFileDecrypt(SEGMENT_SIZE, new ForkJoinPool(1));
+        Files.deleteIfExists(decrypted);
+
+        try (FileChannel source = FileChannel.open(encrypted, StandardOpenOption.READ)) {
+            return fileDecrypt.decrypt(source, 0, source.size(), decrypted, key, baseNonce, MessageDigest.getInstance("SHA-256"), checkpoint);
+        }
+    }
+
+    private byte[] encrypt(Checkpoint checkpoint) throws GeneralSecurityException, IOException {
+        // a window of two segments, checkpointed after every window, on threads of a new run
+        ChunkedFileEncrypt fileEncrypt = new ChunkedFileEncrypt(new SecureRandom(), SEGMENT_SIZE, new ForkJoinPool(1));
+
+        try (FileChannel dest = FileChannel.open(encrypted, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            byte[] digest = fileEncrypt.encrypt(source, dest, key, MessageDigest.getInstance("SHA-256"), checkpoint);
+            baseNonce = fileEncrypt.getIV();
+
+            return digest;
+        }
+    }
+}
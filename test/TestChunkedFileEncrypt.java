@@ -0,0 +1,162 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TestChunkedFileEncrypt {
+
+    private static final int SEGMENT_SIZE = 1000;
+    private static final int STORED_SEGMENT_SIZE = SEGMENT_SIZE + ChunkedFormat.TAG_LENGTH;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ForkJoinPool pool;
+    private Path source;
+    private Path encrypted;
+    private Path decrypted;
+    private Key key;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        key = Keys.newAesKey();
+
+        // a window of four segments, so larger files take several rounds
+        pool = new ForkJoinPool(2);
+
+        source = folder.newFile("plain").toPath();
+        encrypted = folder.newFile("encrypted").toPath();
+        decrypted = folder.newFile("decrypted").toPath();
+    }
+
+    @After
+    public void cleanup() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testRoundTrip() throws GeneralSecurityException, IOException {
+        int[] sizes = {0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE, 4 * SEGMENT_SIZE, 25 * SEGMENT_SIZE + 7};
+
+        for (int size : sizes) {
+            byte[] plain = new byte[size];
+            new Random(size).nextBytes(plain);
+            byte[] expectedDigest = MessageDigest.getInstance("SHA-256").digest(plain);
+
+            // files
+            ChunkedFileEncrypt fileEncrypt = new ChunkedFileEncrypt(new SecureRandom(), SEGMENT_SIZE, pool);
+            Files.write(source, plain);
+            Files.delete(encrypted);
+
+            assertArrayEquals("Size " + size, expectedDigest, fileEncrypt.encrypt(source, encrypted, key, sha256()));
+            byte[] iv = fileEncrypt.getIV();
+            byte[] encryptedFile = Files.readAllBytes(encrypted);
+
+            assertArrayEquals("Size " + size, expectedDigest, decryptFile(iv));
+            assertArrayEquals("Size " + size, plain, Files.readAllBytes(decrypted));
+
+            // streams, interchangeable with files
+            ByteArrayOutputStream encryptedStream = new ByteArrayOutputStream();
+            assertArrayEquals("Size " + size, expectedDigest, fileEncrypt.encrypt(new ByteArrayInputStream(plain), encryptedStream, key, sha256()));
+            byte[] streamIv = fileEncrypt.getIV();
+
+            assertEquals("Size " + size, encryptedFile.length, encryptedStream.size());
+
+            ByteArrayOutputStream decryptedStream = new ByteArrayOutputStream();
+            assertArrayEquals("Size " + size, expectedDigest, decryptStream(encryptedFile, decryptedStream, iv));
+            assertArrayEquals("Size " + size, plain, decryptedStream.toByteArray());
+
+            Files.write(encrypted, encryptedStream.toByteArray());
+            assertArrayEquals("Size " + size, expectedDigest, decryptFile(streamIv));
+        }
+    }
+
+    @Test
+    public void testCorruptContentRejected() throws GeneralSecurityException, IOException {
+        for (int size : new int[]{4 * SEGMENT_SIZE, 4 * SEGMENT_SIZE + 321}) {
+            byte[] plain = new byte[size];
+            new Random(size).nextBytes(plain);
+            Files.write(source, plain);
+            Files.delete(encrypted);
+
+            ChunkedFileEncrypt fileEncrypt = new ChunkedFileEncrypt(new SecureRandom(), SEGMENT_SIZE, pool);
+            fileEncrypt.encrypt(source, encrypted, key);
+            byte[] iv = fileEncrypt.getIV();
+            byte[] complete = Files.readAllBytes(encrypted);
+
+            // the last segment dropped, cut in the middle, or cut short of a tag
+            assertRejected(Arrays.copyOf(complete, complete.length - (complete.length - 1) % STORED_SEGMENT_SIZE - 1), iv);
+            assertRejected(Arrays.copyOf(complete, complete.length - 10), iv);
+            assertRejected(Arrays.copyOf(complete, 3 * STORED_SEGMENT_SIZE + ChunkedFormat.TAG_LENGTH - 1), iv);
+            assertRejected(new byte[0], iv);
+
+            // the first two segments swapped
+            byte[] reordered = complete.clone();
+            System.arraycopy(complete, 0, reordered, STORED_SEGMENT_SIZE, STORED_SEGMENT_SIZE);
+            System.arraycopy(complete, STORED_SEGMENT_SIZE, reordered, 0, STORED_SEGMENT_SIZE);
+            assertRejected(reordered, iv);
+
+            // a ciphertext byte flipped, and a tag byte flipped
+            byte[] flipped = complete.clone();
+            flipped[2 * STORED_SEGMENT_SIZE + 17] ^= 1;
+            assertRejected(flipped, iv);
+
+            flipped = complete.clone();
+            flipped[flipped.length - 1] ^= 1;
+            assertRejected(flipped, iv);
+
+            // the content under another base nonce
+            byte[] otherIv = iv.clone();
+            otherIv[0] ^= 1;
+            assertRejected(complete, otherIv);
+        }
+    }
+
+    private void assertRejected(byte[] corrupt, byte[] iv) throws GeneralSecurityException, IOException {
+        Files.write(encrypted, corrupt);
+
+        try {
+            decryptFile(iv);
+            fail("Corrupt content should not decrypt from a file");
+
+        } catch (CorruptContentException ignored) {
+        }
+
+        try {
+            decryptStream(corrupt, new ByteArrayOutputStream(), iv);
+            fail("Corrupt content should not decrypt from a stream");
+
+        } catch (CorruptContentException ignored) {
+        }
+    }
+
+    private byte[] decryptFile(byte[] iv) throws GeneralSecurityException, IOException {
+        Files.deleteIfExists(decrypted);
+
+        return new ChunkedFileDecrypt(SEGMENT_SIZE, pool).decrypt(encrypted, decrypted, key, iv, sha256());
+    }
+
+    private byte[] decryptStream(byte[] encryptedContent, ByteArrayOutputStream dest, byte[] iv) throws GeneralSecurityException, IOException {
+        return new ChunkedFileDecrypt(SEGMENT_SIZE, pool).decrypt(new ByteArrayInputStream(encryptedContent), dest, key, iv, sha256());
+    }
+
+    private static MessageDigest sha256() throws GeneralSecurityException {
+        return MessageDigest.getInstance("SHA-256");
+    }
+}
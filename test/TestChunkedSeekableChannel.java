@@ -0,0 +1,94 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TestChunkedSeekableChannel {
+
+    private static final int SEGMENT_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] plain;
+    private Path source;
+    private Path encrypted;
+    private Key key;
+    private byte[] iv;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        key = Keys.newAesKey();
+
+        plain = new byte[10 * SEGMENT_SIZE + 123];
+        new Random(3).nextBytes(plain);
+
+        source = folder.newFile("plain").toPath();
+        encrypted = folder.getRoot().toPath().resolve("encrypted");
+        Files.write(source, plain);
+
+        ChunkedFileEncrypt fileEncrypt = new ChunkedFileEncrypt(new SecureRandom(), SEGMENT_SIZE, ForkJoinPool.commonPool());
+        fileEncrypt.encrypt(source, encrypted, key);
+        iv = fileEncrypt.getIV();
+    }
+
+    @Test
+    public void testReadRanges() throws GeneralSecurityException, IOException {
+        try (ChunkedSeekableChannel channel = open()) {
+            assertEquals(plain.length, channel.size());
+
+            for (int[] range : new int[][]{{0, 10}, {995, 10}, {4500, 2000}, {plain.length - 50, 50}, {0, plain.length}}) {
+                ByteBuffer buffer = ByteBuffer.allocate(range[1]);
+                channel.position(range[0]);
+
+                assertEquals(range[1], channel.read(buffer));
+                assertArrayEquals(Arrays.copyOfRange(plain, range[0], range[0] + range[1]), buffer.array());
+            }
+
+            channel.position(plain.length);
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    public void testTamperedSegment() throws GeneralSecurityException, IOException {
+        // flip a byte of the fourth segment
+        byte[] content = Files.readAllBytes(encrypted);
+        content[3 * (SEGMENT_SIZE + 16) + 5] ^= 1;
+        Files.write(encrypted, content);
+
+        try (ChunkedSeekableChannel channel = open()) {
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            channel.position(SEGMENT_SIZE);
+            channel.read(buffer);
+            assertArrayEquals(Arrays.copyOfRange(plain, SEGMENT_SIZE, SEGMENT_SIZE + 100), buffer.array());
+
+            channel.position(3 * SEGMENT_SIZE);
+            channel.read(ByteBuffer.allocate(100));
+            fail("Tampered segment should fail authentication");
+
+        } catch (IOException e) {
+            assertEquals("Segment 3 failed authentication", e.getMessage());
+        }
+    }
+
+    private ChunkedSeekableChannel open() throws GeneralSecurityException, IOException {
+        FileChannel channel = FileChannel.open(encrypted, StandardOpenOption.READ);
+        return new ChunkedSeekableChannel(channel, 0, channel.size(), SEGMENT_SIZE, key, iv);
+    }
+}
@@ -0,0 +1,171 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+public class TestCompression {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileEncrypt fileEncrypt;
+    private FileDecrypt fileDecrypt;
+    private Path source;
+    private Path encrypted;
+    private Path decrypted;
+    private Key key;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        key = Keys.newAesKey();
+
+        fileEncrypt = new FileEncrypt(Cipher.getInstance("AES/CBC/PKCS5Padding"), IoMode.CHANNEL);
+        fileEncrypt.setCompression(Compression.DEFLATE);
+        fileDecrypt = new FileDecrypt(Cipher.getInstance("AES/CBC/PKCS5Padding"), IoMode.CHANNEL);
+
+        source = folder.newFile("source").toPath();
+        encrypted = folder.getRoot().toPath().resolve("encrypted");
+        decrypted = folder.getRoot().toPath().resolve("decrypted");
+    }
+
+    @Test
+    public void testCompressibleFile() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            csv.append(i).append(",name-").append(i % 97).append(",").append(i * 31 % 1000).append('\n');
+        }
+
+        byte[] plain = csv.toString().getBytes(StandardCharsets.UTF_8);
+        Files.write(source, plain);
+
+        byte[] digest = fileEncrypt.encrypt(source, encrypted, key, MessageDigest.getInstance("SHA-256"));
+
+        assertEquals(Compression.DEFLATE, fileEncrypt.getContentCompression());
+        assertTrue(Files.size(encrypted) < plain.length / 3);
+
+        fileDecrypt.setCompression(Compression.DEFLATE);
+        byte[] decryptedDigest = fileDecrypt.decrypt(encrypted, decrypted, key, fileEncrypt.getIV(), MessageDigest.getInstance("SHA-256"));
+
+        assertArrayEquals(plain, Files.readAllBytes(decrypted));
+        assertArrayEquals(digest, decryptedDigest);
+    }
+
+    @Test
+    public void testUniformFile() throws Exception {
+        // about as far as our own compressed content inflates
+        byte[] plain = new byte[16 * 1024 * 1024];
+        Files.write(source, plain);
+
+        fileEncrypt.encrypt(source, encrypted, key);
+        assertEquals(Compression.DEFLATE, fileEncrypt.getContentCompression());
+
+        // the encoder keeps to half the bound decompression enforces, which a zlib build squeezing harder breaks
+        assertTrue(plain.length <= Compression.MAX_EXPANSION / 2 * Files.size(encrypted));
+
+        fileDecrypt.setCompression(Compression.DEFLATE);
+        fileDecrypt.decrypt(encrypted, decrypted, key, fileEncrypt.getIV());
+
+        assertArrayEquals(plain, Files.readAllBytes(decrypted));
+    }
+
+    @Test
+    public void testDeflateBombRejected() throws Exception {
+        // 256 MB of zeros compressed as tightly as deflate goes, encrypted as the engine would
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+            byte[] zeros = new byte[1024 * 1024];
+            for (int i = 0; i < 256; i++) {
+                out.write(zeros);
+            }
+        }
+
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        Files.write(encrypted, cipher.doFinal(compressed.toByteArray()));
+
+        fileDecrypt.setCompression(Compression.DEFLATE);
+
+        try {
+            fileDecrypt.decrypt(encrypted, decrypted, key, cipher.getIV());
+            fail("Content inflating that far should be rejected");
+
+        } catch (CorruptContentException ignored) {
+        }
+
+        // rejected early, long before the whole content was written
+        assertTrue(Files.size(decrypted) < 2 * Compression.MAX_EXPANSION * Files.size(encrypted));
+    }
+
+    @Test
+    public void testIncompressibleFileIsStoredAsIs() throws Exception {
+        byte[] plain = new byte[300 * 1024];
+        new Random(5).nextBytes(plain);
+        Files.write(source, plain);
+
+        fileEncrypt.encrypt(source, encrypted, key, MessageDigest.getInstance("SHA-256"));
+
+        assertEquals(Compression.NONE, fileEncrypt.getContentCompression());
+        assertEquals(plain.length + 16 - plain.length % 16, Files.size(encrypted));
+
+        fileDecrypt.setCompression(Compression.NONE);
+        fileDecrypt.decrypt(encrypted, decrypted, key, fileEncrypt.getIV());
+
+        assertArrayEquals(plain, Files.readAllBytes(decrypted));
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        byte[] plain = new byte[100 * 1024];
+        for (int i = 0; i < plain.length; i++) {
+            plain[i] = (byte) ('a' + i % 7);
+        }
+
+        ByteArrayOutputStream encryptedStream = new ByteArrayOutputStream();
+        fileEncrypt.encrypt(new ByteArrayInputStream(plain), encryptedStream, key, MessageDigest.getInstance("SHA-256"));
+
+        assertEquals(Compression.DEFLATE, fileEncrypt.getContentCompression());
+
+        fileDecrypt.setCompression(Compression.DEFLATE);
+        ByteArrayOutputStream decryptedStream = new ByteArrayOutputStream();
+        fileDecrypt.decrypt(new ByteArrayInputStream(encryptedStream.toByteArray()), decryptedStream, key, fileEncrypt.getIV(), MessageDigest.getInstance("SHA-256"));
+
+        assertArrayEquals(plain, decryptedStream.toByteArray());
+    }
+
+    @Test
+    public void testHeaderRecordsCodecUsed() throws IOException {
+        ContainerHeader header = new ContainerHeader(ContentAlgorithm.AES_CBC, 0, "SHA256withRSA",
+                null, new byte[]{4, 5}, null, null, Compression.DEFLATE, null, true);
+        long length = header.getLength();
+
+        header.setCompression(Compression.NONE);
+        assertEquals(length, header.getLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.write(out);
+        assertEquals(Compression.NONE, ContainerHeader.read(new ByteArrayInputStream(out.toByteArray())).getCompression());
+
+        header.setCompression(Compression.DEFLATE);
+        out.reset();
+        header.write(out);
+        assertEquals(Compression.DEFLATE, ContainerHeader.read(new ByteArrayInputStream(out.toByteArray())).getCompression());
+    }
+}
@@ -0,0 +1,136 @@
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class TestConcurrentCrypto {
+
+    private static final String PASSWORD = "secret";
+    private static final int THREADS = 8;
+    private static final int FILES_PER_THREAD = 6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Path keystoreDirectory;
+    private static KeyStore keystore;
+
+    private SecureRandom secureRandom;
+
+    @BeforeClass
+    public static void createKeystore() throws Exception {
+        keystoreDirectory = Files.createTempDirectory("keystore");
+        keystore = Keystores.create(keystoreDirectory, PASSWORD, "sender", "recipient");
+    }
+
+    @AfterClass
+    public static void deleteKeystore() throws IOException {
+        Keystores.delete(keystoreDirectory, "sender", "recipient");
+    }
+
+    @Before
+    public void initialize() {
+        secureRandom = new SecureRandom();
+    }
+
+    @Test
+    public void testSharedInstances() throws Exception {
+        for (boolean chunked : new boolean[]{false, true}) {
+            Metrics metrics = new Metrics();
+            metrics.setConsole(false);
+
+            ForkJoinPool pool = new ForkJoinPool(2);
+            ThreadLocalCryptoProvider cryptoProvider = new ThreadLocalCryptoProvider(
+                    "AES/CBC/PKCS5Padding", "RSA/ECB/PKCS1Padding", "SHA-256", "SHA256withRSA", "AES", 128, secureRandom);
+
+            // one encrypter and one decrypter for all threads, every thread with file engines of its own
+            Encrypter encrypter = new Encrypter(keystore, cryptoProvider, () -> chunked ?
+                    new ChunkedFileEncrypt(secureRandom, 1000, pool) :
+                    new FileEncrypt(cryptoProvider.symmetricCipher()));
+            encrypter.setMetrics(metrics);
+            encrypter.initialize("sender", PASSWORD, "recipient-cert");
+
+            Decrypter decrypter = new Decrypter(keystore, cryptoProvider, () -> chunked ?
+                    new ChunkedFileDecrypt(1000, pool) :
+                    new FileDecrypt(cryptoProvider.symmetricCipher()));
+            decrypter.setMetrics(metrics);
+            decrypter.initialize("recipient", PASSWORD, "sender-cert");
+
+            Path directory = folder.newFolder().toPath();
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            List<Callable<Void>> workers = new ArrayList<>();
+
+            for (int thread = 0; thread < THREADS; thread++) {
+                int worker = thread;
+
+                workers.add(() -> {
+                    start.await();
+
+                    for (int i = 0; i < FILES_PER_THREAD; i++) {
+                        byte[] plain = new byte[(worker * FILES_PER_THREAD + i) * 997];
+                        new Random(worker * 100 + i).nextBytes(plain);
+
+                        // files
+                        Path source = Files.write(directory.resolve(String.format("plain-%d-%d", worker, i)), plain);
+                        Path encrypted = directory.resolve(String.format("encrypted-%d-%d", worker, i));
+                        Path decrypted = directory.resolve(String.format("decrypted-%d-%d", worker, i));
+
+                        encrypter.encryptAndSign(source, encrypted);
+                        decrypter.decryptAndValidate(encrypted, decrypted);
+                        assertArrayEquals(String.format("File %d of worker %d", i, worker), plain, Files.readAllBytes(decrypted));
+
+                        // streams
+                        ByteArrayOutputStream encryptedStream = new ByteArrayOutputStream();
+                        ByteArrayOutputStream decryptedStream = new ByteArrayOutputStream();
+
+                        encrypter.encryptAndSign(new ByteArrayInputStream(plain), encryptedStream);
+                        decrypter.decryptAndValidate(new ByteArrayInputStream(encryptedStream.toByteArray()), decryptedStream);
+                        assertArrayEquals(String.format("Stream %d of worker %d", i, worker), plain, decryptedStream.toByteArray());
+                    }
+
+                    return null;
+                });
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+            try {
+                for (Future<Void> result : executor.invokeAll(workers)) {
+                    result.get();
+                }
+            } finally {
+                executor.shutdownNow();
+                pool.shutdown();
+            }
+
+            // every thread created instances of its own, and every content key was drawn from the shared source
+            assertTrue(cryptoProvider.getCreations() >= THREADS);
+            assertTrue(cryptoProvider.getCreations() < cryptoProvider.getAcquisitions());
+            assertEquals(2 * THREADS * FILES_PER_THREAD, metrics.get(Metrics.Stage.FILE_ENCRYPT).getCount());
+            assertEquals(2 * THREADS * FILES_PER_THREAD, metrics.get(Metrics.Stage.FILE_DECRYPT).getCount());
+            assertTrue(cryptoProvider.getRandomDraws() >= 2 * THREADS * FILES_PER_THREAD);
+            assertTrue(cryptoProvider.getAverageRandomDrawNanos() > 0);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TestContainerHeader {
+
+    private static KeyPair signingKeyPair;
+    private Path container;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+
+        signingKeyPair = keyPairGenerator.generateKeyPair();
+        container = Files.createTempFile("container", ".tmp");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(container);
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        ContainerHeader header = new ContainerHeader(ContentAlgorithm.AES_GCM_CHUNKED, 4096, "SHA256withRSA",
+                new byte[]{1, 2, 3}, new byte[]{4, 5}, signingKeyPair.getPrivate(), false);
+
+        // RSA is what containers recording no suite use, so it takes no room
+        long length = header.getLength();
+        header.setSuite(AsymmetricSuite.RSA);
+        assertEquals(length, header.getLength());
+
+        try (FileChannel channel = FileChannel.open(container, StandardOpenOption.WRITE)) {
+            header.write(channel);
+            Utils.writeFully(channel, ByteBuffer.wrap(new byte[]{9, 9, 9}), header.getLength());
+
+            // the header keeps its length once the IV and signature are filled in
+            header.setIV(new byte[12]);
+            header.setSignature(new byte[]{6, 7, 8});
+            header.write(channel);
+        }
+
+        try (FileChannel channel = FileChannel.open(container, StandardOpenOption.READ)) {
+            ContainerHeader read = ContainerHeader.read(channel);
+
+            assertNotNull(read);
+            assertEquals(header.getLength(), read.getLength());
+            assertEquals(channel.size() - 3, read.getLength());
+            assertEquals(ContentAlgorithm.AES_GCM_CHUNKED, read.getContentAlgorithm());
+            assertEquals(4096, read.getSegmentSize());
+            assertEquals("SHA256withRSA", read.getSignatureAlgorithm());
+            assertArrayEquals(new byte[]{1, 2, 3}, read.getKeyEncryptionKey());
+            assertArrayEquals(new byte[]{4, 5}, read.getKey());
+            assertArrayEquals(new byte[12], read.getIV());
+            assertArrayEquals(new byte[]{6, 7, 8}, read.getSignature());
+            assertEquals(AsymmetricSuite.RSA, read.getSuite());
+        }
+    }
+
+    @Test
+    public void testRecipientKeys() throws IOException {
+        ContainerHeader header = new ContainerHeader(ContentAlgorithm.AES_CBC, 0, "SHA256withRSA",
+                null, new byte[]{4, 5}, signingKeyPair.getPrivate(), true);
+        long singleRecipientLength = header.getLength();
+
+        byte[] second = new byte[ContainerHeader.FINGERPRINT_LENGTH];
+        byte[] third = new byte[ContainerHeader.FINGERPRINT_LENGTH];
+        Arrays.fill(second, (byte) 2);
+        Arrays.fill(third, (byte) 3);
+
+        header.addRecipientKey(second, new byte[]{20, 21});
+        header.addRecipientKey(third, new byte[]{30});
+        header.setSuite(AsymmetricSuite.EC);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.write(out);
+        assertEquals(out.size(), header.getLength());
+        assertTrue(header.getLength() > singleRecipientLength);
+
+        ContainerHeader read = ContainerHeader.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(3, read.getRecipients());
+        assertEquals(AsymmetricSuite.EC, read.getSuite());
+        assertArrayEquals(new byte[]{20, 21}, read.getKeyFor(second));
+        assertArrayEquals(new byte[]{30}, read.getKeyFor(third));
+
+        // the first recipient, and anyone else, gets the key field
+        assertArrayEquals(new byte[]{4, 5}, read.getKeyFor(new byte[ContainerHeader.FINGERPRINT_LENGTH]));
+    }
+
+    @Test
+    public void testHeaderSignature() throws IOException {
+        ContainerHeader header = new ContainerHeader(ContentAlgorithm.AES_GCM_CHUNKED, 4096, "SHA256withRSA",
+                null, new byte[]{4, 5}, signingKeyPair.getPrivate(), true);
+        assertNull(header.getHeaderSignature());
+
+        long unsignedLength = header.getLength();
+        header.reserveHeaderSignature(signingKeyPair.getPrivate());
+        assertTrue(header.getLength() > unsignedLength);
+
+        header.setIV(new byte[12]);
+        byte[] signedBytes = header.getSignedBytes();
+        header.setHeaderSignature(new byte[]{6, 7, 8});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.write(out);
+        assertEquals(out.size(), header.getLength());
+
+        ContainerHeader read = ContainerHeader.read(new ByteArrayInputStream(out.toByteArray()));
+
+        // the signed bytes leave out the header signature itself, so they read back the same
+        assertEquals(header.getLength(), read.getLength());
+        assertArrayEquals(new byte[]{6, 7, 8}, read.getHeaderSignature());
+        assertArrayEquals(signedBytes, read.getSignedBytes());
+
+        read.setIV(new byte[]{1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        assertFalse(Arrays.equals(signedBytes, read.getSignedBytes()));
+    }
+
+    @Test
+    public void testUnknownFields() throws IOException {
+        ContainerHeader header = new ContainerHeader(ContentAlgorithm.AES_GCM_CHUNKED, 4096, "SHA256withRSA",
+                null, new byte[]{4, 5}, signingKeyPair.getPrivate(), false);
+        header.reserveHeaderSignature(signingKeyPair.getPrivate());
+        header.setHeaderSignature(new byte[]{6, 7, 8});
+
+        byte[] written = header.getBytes();
+        byte[] unknownField = {99, 0, 2, 1, 2};
+
+        // a later revision appends a field of its own, the payload still starts right after it
+        byte[] appended = withField(written, written.length, unknownField);
+        Files.write(container, appended);
+        Files.write(container, new byte[]{9, 9, 9}, StandardOpenOption.APPEND);
+
+        try (FileChannel channel = FileChannel.open(container, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ContainerHeader read = ContainerHeader.read(channel);
+
+            assertNotNull(read);
+            assertEquals(channel.size() - 3, read.getLength());
+            assertArrayEquals(new byte[]{6, 7, 8}, read.getHeaderSignature());
+
+            read.setSignature(new byte[]{10, 11});
+            read.write(channel);
+        }
+
+        header.setSignature(new byte[]{10, 11});
+        byte[] rewritten = Arrays.copyOf(Files.readAllBytes(container), appended.length);
+        assertArrayEquals(withField(header.getBytes(), written.length, unknownField), rewritten);
+
+        // one among the known fields cannot be written back where it was
+        byte[] inserted = withField(written, ContainerHeader.PREFIX_LENGTH, unknownField);
+        ContainerHeader read = ContainerHeader.read(new ByteArrayInputStream(inserted));
+
+        assertEquals(inserted.length, read.getLength());
+        assertNull(read.getHeaderSignature());
+
+        try {
+            read.write(new ByteArrayOutputStream());
+            fail("A header that cannot be reproduced should not be rewritten");
+
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void testReadNonContainer() throws IOException {
+        Files.write(container, "some plain content".getBytes());
+
+        try (FileChannel channel = FileChannel.open(container, StandardOpenOption.READ)) {
+            assertNull(ContainerHeader.read(channel));
+        }
+    }
+
+    @Test
+    public void testReadOversizedFieldsLength() throws IOException {
+        byte[] header = new ContainerHeader(ContentAlgorithm.AES_CBC, 0, "SHA256withRSA",
+                null, new byte[]{4, 5}, signingKeyPair.getPrivate(), true).getBytes();
+        ByteBuffer.wrap(header).putInt(ContainerHeader.PREFIX_LENGTH - Integer.BYTES, Integer.MAX_VALUE);
+
+        try {
+            ContainerHeader.read(new ByteArrayInputStream(header));
+            fail("A fields length beyond what a header holds should be rejected before it is allocated");
+
+        } catch (IOException ignored) {
+        }
+
+        Files.write(container, header);
+        try (FileChannel channel = FileChannel.open(container, StandardOpenOption.READ)) {
+            ContainerHeader.read(channel);
+            fail("A fields length beyond what a header holds should be rejected before it is allocated");
+
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Inserts an encoded field into a written header, updating the fields length of its prefix
+     */
+    private static byte[] withField(byte[] header, int position, byte[] field) {
+        ByteBuffer buffer = ByteBuffer.allocate(header.length + field.length)
+                .put(header, 0, position)
+                .put(field)
+                .put(header, position, header.length - position);
+
+        buffer.putInt(ContainerHeader.PREFIX_LENGTH - Integer.BYTES, buffer.capacity() - ContainerHeader.PREFIX_LENGTH);
+
+        return buffer.array();
+    }
+}
@@ -0,0 +1,235 @@
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestContentProcessor {
+
+    private static final String PASSWORD = "password";
+
+    private static Path directory;
+    private static Encrypter encrypter;
+    private static Decrypter decrypter;
+
+    @BeforeClass
+    public static void initialize() throws Exception {
+        directory = Files.createTempDirectory("processor");
+        final KeyStore keystore = createKeystore();
+        final ThreadLocalCryptoProvider cryptoProvider = new ThreadLocalCryptoProvider("AES/CBC/PKCS5Padding", "RSA/ECB/PKCS1Padding",
+                "SHA-256", "SHA256withRSA", "AES", 128, new SecureRandom());
+
+        encrypter = new Encrypter(keystore, cryptoProvider, () -> new FileEncrypt(cryptoProvider.symmetricCipher()));
+        encrypter.initialize("sender", PASSWORD, "recipient-cert");
+
+        decrypter = new Decrypter(keystore, cryptoProvider, (algorithm, segmentSize) -> algorithm.newFileDecrypt(segmentSize, IoMode.STREAM), ContentAlgorithm.AES_CBC);
+        decrypter.initialize("recipient", PASSWORD, "sender-cert");
+    }
+
+    @AfterClass
+    public static void cleanup() throws IOException {
+        for (String file : new String[]{"test.jks", "sender.crt", "recipient.crt"}) {
+            Files.deleteIfExists(directory.resolve(file));
+        }
+
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] plain = new byte[50_000];
+        new Random(1).nextBytes(plain);
+
+        ContentProcessor encrypt = encrypter.newEncryptProcessor(ContentAlgorithm.AES_CTR);
+        byte[] container = transfer(plain, 1000, encrypt);
+        ContentProcessor.Result encrypted = encrypt.getResult().get(10, TimeUnit.SECONDS);
+
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(plain), encrypted.getDigest());
+
+        // odd chunk sizes split the header and the trailer across chunks
+        for (int chunkSize : new int[]{7, 4096, container.length}) {
+            ContentProcessor decrypt = decrypter.newDecryptProcessor();
+
+            assertArrayEquals(plain, transfer(container, chunkSize, decrypt));
+            assertArrayEquals(encrypted.getSignature(), decrypt.getResult().get(10, TimeUnit.SECONDS).getSignature());
+        }
+
+        // the container is the one written to a stream
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        decrypter.decryptAndValidate(new ByteArrayInputStream(container), decrypted);
+        assertArrayEquals(plain, decrypted.toByteArray());
+    }
+
+    @Test
+    public void testTamperedContainerFails() throws Exception {
+        byte[] plain = new byte[10_000];
+        new Random(2).nextBytes(plain);
+
+        byte[] container = transfer(plain, 3000, encrypter.newEncryptProcessor(ContentAlgorithm.AES_CBC));
+        container[container.length / 2] ^= 1;
+
+        ContentProcessor decrypt = decrypter.newDecryptProcessor();
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        decrypt.subscribe(subscriber);
+        new ChunkPublisher(container, 1000).subscribe(decrypt);
+
+        try {
+            decrypt.getResult().get(10, TimeUnit.SECONDS);
+            fail("Tampered content should not validate");
+
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SignatureException);
+        }
+
+        assertTrue(subscriber.done.isCompletedExceptionally());
+    }
+
+    /**
+     * Pushes the content through the processor in chunks of the given size, one chunk requested at a time
+     */
+    private static byte[] transfer(byte[] content, int chunkSize, ContentProcessor processor) throws Exception {
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        processor.subscribe(subscriber);
+        new ChunkPublisher(content, chunkSize).subscribe(processor);
+
+        return subscriber.done.get(10, TimeUnit.SECONDS);
+    }
+
+    private static KeyStore createKeystore() throws Exception {
+        final Path keystoreFile = directory.resolve("test.jks");
+        final String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+
+        for (String alias : new String[]{"sender", "recipient"}) {
+            keytool(keytool, "-genkeypair", "-alias", alias, "-keyalg", "RSA", "-keysize", "2048", "-storetype", "JKS",
+                    "-keystore", keystoreFile.toString(), "-dname", "CN=" + alias, "-storepass", PASSWORD, "-keypass", PASSWORD);
+
+            Path certificate = directory.resolve(alias + ".crt");
+            keytool(keytool, "-exportcert", "-alias", alias, "-keystore", keystoreFile.toString(),
+                    "-file", certificate.toString(), "-storepass", PASSWORD);
+            keytool(keytool, "-importcert", "-alias", alias + "-cert", "-keystore", keystoreFile.toString(),
+                    "-file", certificate.toString(), "-storepass", PASSWORD, "-noprompt");
+        }
+
+        final KeyStore keystore = KeyStore.getInstance("JKS");
+        try (InputStream in = new FileInputStream(keystoreFile.toFile())) {
+            keystore.load(in, PASSWORD.toCharArray());
+        }
+
+        return keystore;
+    }
+
+    private static void keytool(String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Utils.pipeStreams(process.getInputStream(), new ByteArrayOutputStream());
+
+        if (process.waitFor() != 0) {
+            throw new IOException(String.format("keytool failed: %s", String.join(" ", command)));
+        }
+    }
+
+    /**
+     * Publishes content in chunks as they are requested, never more
+     */
+    private static class ChunkPublisher implements ContentFlow.Publisher<ByteBuffer> {
+
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+
+        ChunkPublisher(byte[] content, int chunkSize) {
+            for (int offset = 0; offset < content.length; offset += chunkSize) {
+                chunks.add(ByteBuffer.wrap(content, offset, Math.min(chunkSize, content.length - offset)));
+            }
+        }
+
+        @Override
+        public void subscribe(ContentFlow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new ContentFlow.Subscription() {
+                private long demand;
+                private int next;
+                private boolean emitting;
+                private boolean cancelled;
+
+                @Override
+                public void request(long n) {
+                    demand += n;
+
+                    // requests made from onNext are served by the loop already running
+                    if (emitting) {
+                        return;
+                    }
+
+                    emitting = true;
+                    while (demand > 0 && next < chunks.size() && !cancelled) {
+                        demand--;
+                        subscriber.onNext(chunks.get(next++));
+                    }
+
+                    if (next == chunks.size() && !cancelled) {
+                        next++;
+                        subscriber.onComplete();
+                    }
+                    emitting = false;
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Collects whatever is published, requesting a chunk at a time
+     */
+    private static class CollectingSubscriber implements ContentFlow.Subscriber<ByteBuffer> {
+
+        final CompletableFuture<byte[]> done = new CompletableFuture<>();
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private ContentFlow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(ContentFlow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ByteBuffer chunk) {
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            content.write(bytes, 0, bytes.length);
+
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(content.toByteArray());
+        }
+    }
+}
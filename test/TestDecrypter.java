@@ -0,0 +1,106 @@
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestDecrypter {
+
+    private static final String PASSWORD = "secret";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Path keystoreDirectory;
+    private static KeyStore keystore;
+
+    private Decrypter decrypter;
+    private byte[] plain;
+    private Path encrypted;
+    private Path output;
+    private Path partialOutput;
+
+    @BeforeClass
+    public static void createKeystore() throws Exception {
+        keystoreDirectory = Files.createTempDirectory("keystore");
+        keystore = Keystores.create(keystoreDirectory, PASSWORD, "sender", "recipient");
+    }
+
+    @AfterClass
+    public static void deleteKeystore() throws IOException {
+        Keystores.delete(keystoreDirectory, "sender", "recipient");
+    }
+
+    @Before
+    public void initialize() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.setConsole(false);
+
+        ThreadLocalCryptoProvider cryptoProvider = new ThreadLocalCryptoProvider(
+                "AES/CBC/PKCS5Padding", "RSA/ECB/PKCS1Padding", "SHA-256", "SHA256withRSA", "AES", 128, new SecureRandom());
+
+        Encrypter encrypter = new Encrypter(keystore, cryptoProvider, () -> new FileEncrypt(cryptoProvider.symmetricCipher()));
+        encrypter.setMetrics(metrics);
+        encrypter.initialize("sender", PASSWORD, "recipient-cert");
+
+        decrypter = new Decrypter(keystore, cryptoProvider, () -> new FileDecrypt(cryptoProvider.symmetricCipher()));
+        decrypter.setMetrics(metrics);
+        decrypter.initialize("recipient", PASSWORD, "sender-cert");
+
+        plain = new byte[100 * 1024 + 3];
+        new Random(1).nextBytes(plain);
+
+        Path source = Files.write(folder.getRoot().toPath().resolve("plain"), plain);
+        encrypted = folder.getRoot().toPath().resolve("encrypted");
+        output = folder.getRoot().toPath().resolve("decrypted");
+        partialOutput = Paths.get(output.toAbsolutePath() + ".part");
+
+        encrypter.encryptAndSign(source, encrypted);
+    }
+
+    @Test
+    public void testOutputPublishedOnceVerified() throws Exception {
+        decrypter.decryptAndValidate(encrypted, output);
+
+        // the partial file was renamed onto the output, nothing of it is left
+        assertArrayEquals(plain, Files.readAllBytes(output));
+        assertFalse(Files.exists(partialOutput));
+    }
+
+    @Test
+    public void testCorruptSignatureLeavesNoOutput() throws Exception {
+        try (FileChannel channel = FileChannel.open(encrypted, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ContainerHeader header = ContainerHeader.read(channel);
+            byte[] signature = header.getSignature().clone();
+            signature[signature.length / 2] ^= 1;
+
+            header.setSignature(signature);
+            header.write(channel);
+        }
+
+        try {
+            decrypter.decryptAndValidate(encrypted, output);
+            fail("Content whose signature does not verify should not be published");
+
+        } catch (SignatureException e) {
+            assertEquals("File's content signature is invalid", e.getMessage());
+        }
+
+        assertFalse(Files.exists(output));
+        assertFalse(Files.exists(partialOutput));
+    }
+}
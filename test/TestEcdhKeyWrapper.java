@@ -0,0 +1,101 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.BadPaddingException;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TestEcdhKeyWrapper {
+
+    private static final byte[] SECRET = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+
+    private KeyPair recipientKeyPair;
+    private KeyPair otherKeyPair;
+    private EcdhKeyWrapper keyWrapper;
+
+    @Before
+    public void initialize() throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+
+        recipientKeyPair = keyPairGenerator.generateKeyPair();
+        otherKeyPair = keyPairGenerator.generateKeyPair();
+        keyWrapper = new EcdhKeyWrapper(new SecureRandom());
+    }
+
+    @Test
+    public void testWrapAndUnwrap() throws GeneralSecurityException {
+        byte[] wrapped = keyWrapper.wrap(SECRET, recipientKeyPair.getPublic());
+        byte[] wrappedAgain = keyWrapper.wrap(SECRET, recipientKeyPair.getPublic());
+
+        // every wrap agrees on a key of its own
+        assertFalse(Arrays.equals(wrapped, wrappedAgain));
+
+        assertArrayEquals(SECRET, keyWrapper.unwrap(wrapped, recipientKeyPair.getPrivate()));
+        assertArrayEquals(SECRET, new EcdhKeyWrapper(null).unwrap(wrappedAgain, recipientKeyPair.getPrivate()));
+    }
+
+    @Test
+    public void testUnwrapFailures() throws GeneralSecurityException {
+        byte[] wrapped = keyWrapper.wrap(SECRET, recipientKeyPair.getPublic());
+
+        try {
+            keyWrapper.unwrap(wrapped, otherKeyPair.getPrivate());
+            fail("A secret wrapped for another key should not unwrap");
+
+        } catch (BadPaddingException ignored) {
+        }
+
+        wrapped[wrapped.length - 1] ^= 1;
+
+        try {
+            keyWrapper.unwrap(wrapped, recipientKeyPair.getPrivate());
+            fail("A tampered secret should not unwrap");
+
+        } catch (BadPaddingException ignored) {
+        }
+
+        try {
+            keyWrapper.unwrap(Arrays.copyOf(wrapped, 10), recipientKeyPair.getPrivate());
+            fail("A truncated secret should not unwrap");
+
+        } catch (BadPaddingException ignored) {
+        }
+    }
+
+    @Test(expected = InvalidKeyException.class)
+    public void testWrapForRsaKey() throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+
+        keyWrapper.wrap(SECRET, keyPairGenerator.generateKeyPair().getPublic());
+    }
+
+    @Test
+    public void testHkdf() {
+        // RFC 5869, test case 1
+        byte[] ikm = new byte[22];
+        Arrays.fill(ikm, (byte) 0x0b);
+
+        byte[] okm = EcdhKeyWrapper.hkdf(hex("000102030405060708090a0b0c"), ikm, hex("f0f1f2f3f4f5f6f7f8f9"), 42);
+
+        assertArrayEquals(hex("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865"), okm);
+    }
+
+    private static byte[] hex(String value) {
+        byte[] bytes = new byte[value.length() / 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+        }
+
+        return bytes;
+    }
+}
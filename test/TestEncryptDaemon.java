@@ -0,0 +1,137 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TestEncryptDaemon {
+
+    private static final String TOKEN = "0123456789abcdef";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Encrypter encrypter;
+    private Decrypter decrypter;
+    private EncryptDaemon daemon;
+
+    @Before
+    public void initialize() {
+        encrypter = mock(Encrypter.class);
+        decrypter = mock(Decrypter.class);
+        daemon = new EncryptDaemon(encrypter, decrypter, 2, TOKEN);
+    }
+
+    @Test
+    public void testRequests() throws Exception {
+        doThrow(new SignatureException("File's content signature is invalid")).when(decrypter).validate(Paths.get("bad"));
+
+        Map<Integer, String[]> responses = serve("AUTH\t" + TOKEN,
+                "PING",
+                "encrypt\tplain\tout",
+                "DECRYPT\tin\tout",
+                "DECRYPT\tin\tconfig\tout",
+                "VERIFY\tin",
+                "VERIFY\tin\tconfig",
+                "VERIFY\tbad",
+                "",
+                "ENCRYPT\tplain",
+                "VERIFY\ta\tb\tc",
+                "SHRED\tin");
+
+        assertEquals(10, responses.size());
+
+        // every job is answered once, with its number and elapsed time
+        for (int job = 1; job <= 6; job++) {
+            assertEquals("OK", responses.get(job)[0]);
+            assertEquals(3, responses.get(job).length);
+            assertTrue(Long.parseLong(responses.get(job)[2]) >= 0);
+        }
+
+        assertArrayEquals(new String[]{"ERR", "7", "File's content signature is invalid"}, responses.get(7));
+        assertArrayEquals(new String[]{"ERR", "8", "ENCRYPT expects 3 tab separated fields"}, responses.get(8));
+        assertArrayEquals(new String[]{"ERR", "9", "VERIFY expects 2 to 3 tab separated fields"}, responses.get(9));
+        assertArrayEquals(new String[]{"ERR", "10", "Unknown request SHRED"}, responses.get(10));
+
+        verify(encrypter).encryptAndSign(Paths.get("plain"), Paths.get("out"));
+        verify(decrypter).decryptAndValidate(Paths.get("in"), Paths.get("out"));
+        verify(decrypter).decryptAndValidate(Paths.get("in"), Paths.get("config"), Paths.get("out"));
+
+        // verifying never decrypts to a file
+        verify(decrypter).validate(Paths.get("in"));
+        verify(decrypter).validate(Paths.get("in"), Paths.get("config"));
+        verify(decrypter).validate(Paths.get("bad"));
+        verifyNoMoreInteractions(encrypter, decrypter);
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorAnswered() throws Exception {
+        doThrow(new OutOfMemoryError("Java heap space")).when(decrypter).validate(Paths.get("huge"));
+
+        // the connection still ends once every job is answered
+        Map<Integer, String[]> responses = serve("AUTH\t" + TOKEN, "VERIFY\thuge", "PING");
+
+        assertEquals(2, responses.size());
+        assertArrayEquals(new String[]{"ERR", "1", "Java heap space"}, responses.get(1));
+        assertEquals("OK", responses.get(2)[0]);
+    }
+
+    @Test
+    public void testUnauthenticated() throws Exception {
+        for (String auth : new String[]{"AUTH\twrong", "AUTH\t" + TOKEN + "0", "AUTH\t", TOKEN, "PING"}) {
+            Map<Integer, String[]> responses = serve(auth, "ENCRYPT\tplain\tout", "VERIFY\tin");
+
+            assertEquals(1, responses.size());
+            assertArrayEquals(new String[]{"ERR", "0", "Authentication failed"}, responses.get(0));
+        }
+
+        assertEquals(1, serve().size());
+        verifyNoInteractions(encrypter, decrypter);
+    }
+
+    @Test
+    public void testWriteToken() throws Exception {
+        Path tokenFile = folder.getRoot().toPath().resolve("token");
+        Files.write(tokenFile, "stale".getBytes(StandardCharsets.UTF_8));
+
+        String token = EncryptDaemon.writeToken(tokenFile, new SecureRandom());
+
+        assertEquals(64, token.length());
+        assertEquals(token, new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile)));
+        assertNotEquals(token, EncryptDaemon.writeToken(tokenFile, new SecureRandom()));
+    }
+
+    /**
+     * Serves a connection of the given lines, and collects its responses by job number
+     */
+    private Map<Integer, String[]> serve(String... lines) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        daemon.handle(new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8)), out);
+
+        Map<Integer, String[]> responses = new TreeMap<>();
+
+        for (String response : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\r?\n")) {
+            if (!response.isEmpty()) {
+                String[] fields = response.split("\t");
+                assertNull("Job answered twice", responses.put(Integer.parseInt(fields[1]), fields));
+            }
+        }
+
+        return responses;
+    }
+}
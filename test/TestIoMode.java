@@ -0,0 +1,102 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestIoMode {
+
+    private static final IoMode[] MODES = {IoMode.STREAM, IoMode.CHANNEL, IoMode.MAPPED};
+    private static final int CONTAINER_OFFSET = 123; // bytes
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path source;
+    private Path encrypted;
+    private Path container;
+    private Path decrypted;
+    private Key key;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        key = Keys.newAesKey();
+
+        source = folder.newFile("plain").toPath();
+        encrypted = folder.newFile("encrypted").toPath();
+        container = folder.newFile("container").toPath();
+        decrypted = folder.newFile("decrypted").toPath();
+    }
+
+    @Test
+    public void testModesInterchangeable() throws GeneralSecurityException, IOException {
+        // below and above the size MAPPED starts mapping the source at
+        long[] sizes = {0, 15, 16, 100 * 1000 + 3, FileEncrypt.MAP_THRESHOLD + 12345};
+
+        for (long size : sizes) {
+            byte[] plain = new byte[(int) size];
+            new Random(size).nextBytes(plain);
+            Files.write(source, plain);
+
+            byte[] expectedDigest = MessageDigest.getInstance("SHA-256").digest(plain);
+
+            for (IoMode encryptMode : MODES) {
+                FileEncrypt fileEncrypt = new FileEncrypt(Cipher.getInstance("AES/CBC/PKCS5Padding"), encryptMode);
+                Files.deleteIfExists(encrypted);
+
+                String message = String.format("%d bytes encrypted in %s", size, encryptMode);
+                assertArrayEquals(message, expectedDigest, fileEncrypt.encrypt(source, encrypted, key, sha256()));
+                assertEquals(message, (size / 16 + 1) * 16, Files.size(encrypted));
+
+                byte[] iv = fileEncrypt.getIV();
+                writeContainer();
+
+                // whatever mode encrypted it, every mode decrypts the same content
+                for (IoMode decryptMode : MODES) {
+                    String decryptMessage = String.format("%s, decrypted in %s", message, decryptMode);
+                    FileDecrypt fileDecrypt = new FileDecrypt(Cipher.getInstance("AES/CBC/PKCS5Padding"), decryptMode);
+
+                    Files.deleteIfExists(decrypted);
+                    assertArrayEquals(decryptMessage, expectedDigest, fileDecrypt.decrypt(encrypted, decrypted, key, iv, sha256()));
+                    assertArrayEquals(decryptMessage, plain, Files.readAllBytes(decrypted));
+
+                    // content at an offset, as in a container
+                    Files.deleteIfExists(decrypted);
+                    try (FileChannel channel = FileChannel.open(container, StandardOpenOption.READ)) {
+                        byte[] digest = fileDecrypt.decrypt(channel, CONTAINER_OFFSET, Files.size(encrypted), decrypted, key, iv, sha256());
+                        assertArrayEquals(decryptMessage, expectedDigest, digest);
+                    }
+                    assertArrayEquals(decryptMessage, plain, Files.readAllBytes(decrypted));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the encrypted content between a header and a trailer of junk
+     */
+    private void writeContainer() throws IOException {
+        try (FileChannel channel = FileChannel.open(container, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(new byte[CONTAINER_OFFSET]));
+            channel.write(ByteBuffer.wrap(Files.readAllBytes(encrypted)));
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        }
+    }
+
+    private static MessageDigest sha256() throws GeneralSecurityException {
+        return MessageDigest.getInstance("SHA-256");
+    }
+}
@@ -0,0 +1,46 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.security.*;
+
+import static org.junit.Assert.*;
+
+public class TestKeyEncryptionKey {
+
+    private static KeyPair recipientKeyPair;
+    private static KeyGenerator keyGenerator;
+    private static Cipher asymmetricCipher;
+
+    @Before
+    public void initialize() throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+
+        recipientKeyPair = keyPairGenerator.generateKeyPair();
+        keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        asymmetricCipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+    }
+
+    @Test
+    public void testWrapAndUnwrap() throws GeneralSecurityException {
+        KeyEncryptionKey senderKey = KeyEncryptionKey.create(keyGenerator.generateKey(), asymmetricCipher, recipientKeyPair.getPublic());
+        SecretKey contentKey = keyGenerator.generateKey();
+        byte[] wrappedContentKey = senderKey.wrap(contentKey);
+
+        KeyEncryptionKey recipientKey = KeyEncryptionKey.unwrap(senderKey.getWrappedKey(), asymmetricCipher, recipientKeyPair.getPrivate());
+
+        assertArrayEquals(contentKey.getEncoded(), recipientKey.unwrap(wrappedContentKey).getEncoded());
+    }
+
+    @Test(expected = InvalidKeyException.class)
+    public void testUnwrapWithAnotherKey() throws GeneralSecurityException {
+        KeyEncryptionKey senderKey = KeyEncryptionKey.create(keyGenerator.generateKey(), asymmetricCipher, recipientKeyPair.getPublic());
+        KeyEncryptionKey otherKey = KeyEncryptionKey.create(keyGenerator.generateKey(), asymmetricCipher, recipientKeyPair.getPublic());
+
+        otherKey.unwrap(senderKey.wrap(keyGenerator.generateKey()));
+    }
+}
@@ -0,0 +1,85 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TestKeyMaterialPool {
+
+    private KeyMaterialPool pool;
+
+    @Before
+    public void initialize() throws NoSuchAlgorithmException {
+        pool = new KeyMaterialPool(new SecureRandom(), "AES", 128, 4);
+    }
+
+    @After
+    public void cleanup() {
+        pool.close();
+    }
+
+    @Test
+    public void testStallsOnceDrained() throws InterruptedException {
+        // wait for the fillers to top both queues up
+        for (int i = 0; i < 100 && (pool.getKeyDepth() < 4 || pool.getIvDepth() < 4); i++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(4, pool.getKeyDepth());
+        assertEquals(4, pool.getIvDepth());
+
+        // material still ready is handed out once closed, then every take generates
+        pool.close();
+
+        Set<String> keys = new HashSet<>();
+        Set<String> ivs = new HashSet<>();
+
+        for (int i = 0; i < 7; i++) {
+            SecretKey key = pool.nextKey();
+            byte[] iv = pool.nextIV();
+
+            assertEquals("AES", key.getAlgorithm());
+            assertEquals(16, key.getEncoded().length);
+            assertEquals(KeyMaterialPool.IV_LENGTH, iv.length);
+
+            keys.add(Arrays.toString(key.getEncoded()));
+            ivs.add(Arrays.toString(iv));
+        }
+
+        assertEquals(7, keys.size());
+        assertEquals(7, ivs.size());
+        assertEquals(3, pool.getKeyStalls());
+        assertEquals(3, pool.getIvStalls());
+        assertEquals(7, pool.getKeysTaken());
+        assertEquals(0, pool.getKeyDepth());
+    }
+
+    @Test
+    public void testFileEncryptTakesPooledIV() throws Exception {
+        FileEncrypt fileEncrypt = new FileEncrypt(Cipher.getInstance("AES/CBC/PKCS5Padding"));
+        fileEncrypt.setKeyMaterialPool(pool);
+
+        byte[] plain = "content encrypted with pooled key material".getBytes();
+        SecretKey key = pool.nextKey();
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        fileEncrypt.encrypt(new ByteArrayInputStream(plain), encrypted, key, MessageDigest.getInstance("SHA-256"));
+
+        assertEquals(1, pool.getIvsTaken());
+
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(fileEncrypt.getIV()));
+        assertArrayEquals(plain, cipher.doFinal(encrypted.toByteArray()));
+    }
+}
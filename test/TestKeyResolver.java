@@ -0,0 +1,102 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.KeyStoreSpi;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TestKeyResolver {
+
+    private KeyStoreSpi keystoreSpi;
+    private KeyStore keystore;
+    private PrivateKey privateKey;
+    private AtomicLong clock;
+
+    @Before
+    public void initialize() throws Exception {
+        keystoreSpi = mock(KeyStoreSpi.class);
+        privateKey = mock(PrivateKey.class);
+        clock = new AtomicLong();
+
+        when(keystoreSpi.engineIsKeyEntry("sender")).thenReturn(true);
+        when(keystoreSpi.engineGetKey("sender", "secret".toCharArray())).thenReturn(privateKey);
+        when(keystoreSpi.engineGetKey("sender", "wrong".toCharArray())).thenThrow(new UnrecoverableKeyException());
+
+        for (String alias : new String[]{"a", "b", "c"}) {
+            when(keystoreSpi.engineGetCertificate(alias)).thenReturn(mock(Certificate.class));
+        }
+
+        keystore = new KeyStore(keystoreSpi, Security.getProvider("SUN"), "mock") {
+        };
+        keystore.load(null, null);
+    }
+
+    @Test
+    public void testPrivateKeyUnlockedOnce() throws Exception {
+        KeyResolver resolver = new KeyResolver(keystore);
+
+        assertSame(privateKey, resolver.getPrivateKey("sender", "secret"));
+        assertSame(privateKey, resolver.getPrivateKey("sender", "secret"));
+        assertSame(privateKey, resolver.getPrivateKey("sender", "secret"));
+
+        verify(keystoreSpi, times(1)).engineGetKey("sender", "secret".toCharArray());
+        assertEquals(2, resolver.getHits());
+        assertEquals(1, resolver.getMisses());
+
+        // a cached key is not handed out for another password
+        try {
+            resolver.getPrivateKey("sender", "wrong");
+            fail("A bad password should not unlock a cached key");
+
+        } catch (KeyStoreException e) {
+            assertEquals("Bad private key password", e.getMessage());
+        }
+
+        try {
+            resolver.getPrivateKey("unknown", "secret");
+            fail("An unknown alias should not resolve");
+
+        } catch (KeyStoreException e) {
+            assertEquals("private key alias not found in keystore", e.getMessage());
+        }
+
+        assertEquals(0.4, resolver.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvictedAndExpired() throws Exception {
+        KeyResolver resolver = new KeyResolver(keystore, 2, 10, TimeUnit.NANOSECONDS, clock::get);
+
+        resolver.getCertificate("a");
+        clock.incrementAndGet();
+        resolver.getCertificate("b");
+        clock.incrementAndGet();
+        resolver.getCertificate("a");
+        clock.incrementAndGet();
+
+        // b is the least recently used
+        resolver.getCertificate("c");
+        assertEquals(1, resolver.getEvictions());
+        assertEquals(2, resolver.getSize());
+
+        resolver.getCertificate("a");
+        verify(keystoreSpi, times(1)).engineGetCertificate("a");
+
+        resolver.getCertificate("b");
+        verify(keystoreSpi, times(2)).engineGetCertificate("b");
+
+        // a is read again once its time to live is over
+        clock.addAndGet(10);
+        resolver.getCertificate("a");
+        verify(keystoreSpi, times(2)).engineGetCertificate("a");
+    }
+}
@@ -0,0 +1,115 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TestManifestFileEncrypt {
+
+    private static final int SEGMENT_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ManifestFileEncrypt fileEncrypt;
+    private byte[] plain;
+    private Path source;
+    private Path encrypted;
+    private Path decrypted;
+    private Key key;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        key = Keys.newAesKey();
+
+        plain = new byte[10 * SEGMENT_SIZE + 123];
+        new Random(9).nextBytes(plain);
+
+        source = folder.newFile("plain").toPath();
+        encrypted = folder.getRoot().toPath().resolve("encrypted");
+        decrypted = folder.newFile("decrypted").toPath();
+        Files.write(source, plain);
+
+        fileEncrypt = new ManifestFileEncrypt(new SecureRandom(), SEGMENT_SIZE, ForkJoinPool.commonPool());
+    }
+
+    @Test
+    public void testReencryptChanges() throws GeneralSecurityException, IOException {
+        byte[] digest = fileEncrypt.encrypt(source, encrypted, key, MessageDigest.getInstance("SHA-256"));
+        assertEquals(11, fileEncrypt.getResealedSegments());
+        assertDecrypts(digest);
+
+        // change a byte in the fourth segment
+        plain[3 * SEGMENT_SIZE + 7] ^= 1;
+        Files.write(source, plain);
+        assertDecrypts(reencrypt());
+        assertEquals(1, fileEncrypt.getResealedSegments());
+
+        // append, which reseals the partial last segment
+        plain = Arrays.copyOf(plain, plain.length + 2 * SEGMENT_SIZE);
+        Files.write(source, plain);
+        assertDecrypts(reencrypt());
+        assertEquals(3, fileEncrypt.getResealedSegments());
+
+        // shrink, which only rewrites the manifest
+        plain = Arrays.copyOf(plain, 5 * SEGMENT_SIZE);
+        Files.write(source, plain);
+        assertDecrypts(reencrypt());
+        assertEquals(0, fileEncrypt.getResealedSegments());
+    }
+
+    @Test
+    public void testReplayedSegment() throws GeneralSecurityException, IOException {
+        fileEncrypt.encrypt(source, encrypted, key, MessageDigest.getInstance("SHA-256"));
+        byte[] previous = Files.readAllBytes(encrypted);
+
+        plain[2 * SEGMENT_SIZE] ^= 1;
+        Files.write(source, plain);
+        reencrypt();
+
+        // put the previous ciphertext of the changed segment back
+        byte[] content = Files.readAllBytes(encrypted);
+        int slot = 2 * (SEGMENT_SIZE + ManifestFormat.TAG_LENGTH);
+        System.arraycopy(previous, slot, content, slot, SEGMENT_SIZE + ManifestFormat.TAG_LENGTH);
+        Files.write(encrypted, content);
+        Files.delete(decrypted);
+
+        try {
+            new ManifestFileDecrypt(SEGMENT_SIZE, ForkJoinPool.commonPool()).decrypt(encrypted, decrypted, key, fileEncrypt.getIV());
+            fail("Replayed segment should fail authentication");
+
+        } catch (IOException e) {
+            assertEquals("Segment 2 failed authentication", e.getMessage());
+        }
+    }
+
+    private byte[] reencrypt() throws GeneralSecurityException, IOException {
+        try (FileChannel dest = FileChannel.open(encrypted, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return fileEncrypt.reencrypt(source, dest, key, fileEncrypt.getIV(), MessageDigest.getInstance("SHA-256"));
+        }
+    }
+
+    private void assertDecrypts(byte[] digest) throws GeneralSecurityException, IOException {
+        Files.deleteIfExists(decrypted);
+
+        byte[] decryptedDigest = new ManifestFileDecrypt(SEGMENT_SIZE, ForkJoinPool.commonPool())
+                .decrypt(encrypted, decrypted, key, fileEncrypt.getIV(), MessageDigest.getInstance("SHA-256"));
+
+        assertArrayEquals(digest, decryptedDigest);
+        assertArrayEquals(plain, Files.readAllBytes(decrypted));
+    }
+}
@@ -0,0 +1,102 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TestMerkleStreamDigester {
+
+    private static final int LEAF_SIZE = 100;
+
+    private MerkleStreamDigester digester;
+    private Path source;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        digester = new MerkleStreamDigester("SHA-256", LEAF_SIZE, new ForkJoinPool(3));
+        source = Files.createTempFile("plain", ".tmp");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(source);
+    }
+
+    @Test
+    public void testStreamMatchesFile() throws IOException {
+        for (int size : new int[]{0, 1, LEAF_SIZE, LEAF_SIZE + 1, 7 * LEAF_SIZE, 13 * LEAF_SIZE + 5}) {
+            byte[] plain = plain(size);
+            Files.write(source, plain);
+
+            assertArrayEquals("size " + size, digester.digestStream(source), digester.digestStream(new ByteArrayInputStream(plain)));
+        }
+    }
+
+    @Test
+    public void testProofs() throws IOException {
+        byte[] plain = plain(13 * LEAF_SIZE + 5);
+        Files.write(source, plain);
+
+        MerkleStreamDigester.Tree tree = digester.digestTree(source);
+        assertEquals(14, tree.getLeafCount());
+
+        for (int i = 0; i < tree.getLeafCount(); i++) {
+            int length = Math.min(LEAF_SIZE, plain.length - i * LEAF_SIZE);
+            byte[] leafHash = digester.hashLeaf(plain, i * LEAF_SIZE, length);
+            List<byte[]> proof = tree.getProof(i);
+
+            assertTrue("leaf " + i, digester.verifyLeaf(tree.getRoot(), i, tree.getLeafCount(), leafHash, proof));
+            assertFalse("leaf " + i, digester.verifyLeaf(tree.getRoot(), (i + 1) % 14, tree.getLeafCount(), leafHash, proof));
+        }
+    }
+
+    @Test
+    public void testVerifyLeavesOfChangedFile() throws GeneralSecurityException, IOException {
+        byte[] plain = plain(10 * LEAF_SIZE);
+        Files.write(source, plain);
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair keyPair = generator.generateKeyPair();
+        DataSigner signer = new DataSigner("SHA256withRSA");
+
+        MerkleStreamDigester.Tree tree = digester.digestTree(source);
+        byte[] signature = signer.sign(digester, source, keyPair.getPrivate());
+        assertTrue(signer.verify(tree.getRoot(), signature, keyPair.getPublic()));
+
+        Map<Long, List<byte[]>> proofs = new HashMap<>();
+        for (long i = 0; i < 5; i++) {
+            proofs.put(i, tree.getProof(i));
+        }
+
+        // change the last leaf, which only the whole file check sees
+        plain[plain.length - 1] ^= 1;
+        Files.write(source, plain);
+
+        assertTrue(digester.verifyLeaves(source, tree.getRoot(), tree.getLeafCount(), proofs));
+        assertFalse(signer.verify(digester, source, signature, keyPair.getPublic()));
+
+        proofs.put(9L, tree.getProof(9));
+        assertFalse(digester.verifyLeaves(source, tree.getRoot(), tree.getLeafCount(), proofs));
+    }
+
+    private static byte[] plain(int size) {
+        byte[] plain = new byte[size];
+        new Random(size).nextBytes(plain);
+
+        return plain;
+    }
+}
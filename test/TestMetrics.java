@@ -0,0 +1,54 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestMetrics {
+
+    private Metrics metrics;
+
+    @Before
+    public void initialize() {
+        metrics = new Metrics();
+    }
+
+    @Test
+    public void testTimer() {
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.ENCRYPT)) {
+            timer.stop(1000);
+        }
+
+        try (Metrics.Timer timer = metrics.time(Metrics.Stage.ENCRYPT)) {
+            // closed without being stopped, as when the call throws
+            assertNotNull(timer);
+        }
+
+        StageMetrics stage = metrics.get(Metrics.Stage.ENCRYPT);
+
+        assertEquals(1, stage.getCount());
+        assertEquals(1, stage.getFailures());
+        assertEquals(1000, stage.getBytes());
+        assertEquals(0, metrics.get(Metrics.Stage.DECRYPT).getCount());
+    }
+
+    @Test
+    public void testPercentiles() {
+        StageMetrics stage = new StageMetrics();
+
+        // 98 calls of 10us and 2 calls of 5ms
+        for (int i = 0; i < 98; i++) {
+            stage.record(10_000, 0);
+        }
+        stage.record(5_000_000, 0);
+        stage.record(5_000_000, 0);
+
+        assertEquals(100, stage.getCount());
+        assertEquals(5000, stage.getMaxMicros());
+        assertTrue(stage.getMedianMicros() >= 10 && stage.getMedianMicros() < 20);
+        assertTrue(stage.get99thPercentileMicros() >= 5000 / 2 && stage.get99thPercentileMicros() <= 5000);
+
+        stage.reset();
+        assertEquals(0, stage.getCount());
+        assertEquals(0, stage.getMedianMicros());
+    }
+}
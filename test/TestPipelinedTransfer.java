@@ -0,0 +1,114 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestPipelinedTransfer {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PipelinedTransfer pipeline;
+    private byte[] plain;
+    private Path source;
+    private Path encrypted;
+    private Path decrypted;
+    private Key key;
+
+    @Before
+    public void initialize() throws GeneralSecurityException, IOException {
+        key = Keys.newAesKey();
+
+        // small buffers and a shallow ring, so the stages wait on each other many times
+        pipeline = new PipelinedTransfer(2, 1000);
+
+        plain = new byte[100 * 1000 + 7];
+        new Random(3).nextBytes(plain);
+
+        source = folder.newFile("source").toPath();
+        encrypted = folder.newFile("encrypted").toPath();
+        decrypted = folder.newFile("decrypted").toPath();
+        Files.write(source, plain);
+    }
+
+    @Test
+    public void testPipeRoundTrip() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        MessageDigest sourceDigest = MessageDigest.getInstance("SHA-256");
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(encrypted, StandardOpenOption.WRITE)) {
+
+            // the destination is written from its current position, as after a container header
+            out.position(10);
+            pipeline.pipe(in, 0, in.size(), out, cipher, sourceDigest, null);
+        }
+
+        Cipher decipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        decipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(cipher.getIV()));
+        MessageDigest destDigest = MessageDigest.getInstance("SHA-256");
+
+        // the same pipeline reuses its buffers for the next transfer
+        try (FileChannel in = FileChannel.open(encrypted, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(decrypted, StandardOpenOption.WRITE)) {
+
+            pipeline.pipe(in, 10, in.size() - 10, out, decipher, null, destDigest);
+        }
+
+        assertArrayEquals(plain, Files.readAllBytes(decrypted));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(plain), sourceDigest.digest());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(plain), destDigest.digest());
+
+        StreamDigester digester = new StreamDigester(MessageDigest.getInstance("SHA-256"), pipeline);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(plain), digester.digestStream(source));
+    }
+
+    @Test
+    public void testFailureStopsAllStages() throws Exception {
+        Cipher decipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        decipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(new byte[16]));
+
+        // plain content is not a whole number of blocks, so finalizing the cipher fails
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(decrypted, StandardOpenOption.WRITE)) {
+
+            pipeline.pipe(in, 0, in.size(), out, decipher, null, null);
+            fail("Content of a partial block should not decrypt");
+
+        } catch (IOException e) {
+            // expected
+        }
+
+        // reading past the end of the source fails the reader, and the calling thread with it
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            pipeline.digest(in, 0, in.size() + 5000, MessageDigest.getInstance("SHA-256"));
+            fail("Reading past the end of the source should fail");
+
+        } catch (IOException e) {
+            // expected
+        }
+
+        // the pipeline is still usable
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            pipeline.digest(in, 0, in.size(), digest);
+
+            assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(plain), digest.digest());
+        }
+    }
+}
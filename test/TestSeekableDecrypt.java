@@ -0,0 +1,193 @@
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TestSeekableDecrypt {
+
+    private static final String PASSWORD = "secret";
+    private static final int SEGMENT_SIZE = 1000;
+    private static final int STORED_SEGMENT_SIZE = SEGMENT_SIZE + ChunkedFormat.TAG_LENGTH;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Path keystoreDirectory;
+    private static KeyStore keystore;
+
+    private ForkJoinPool pool;
+    private ThreadLocalCryptoProvider cryptoProvider;
+    private Decrypter decrypter;
+    private byte[] plain;
+    private Path source;
+    private Path encrypted;
+
+    @BeforeClass
+    public static void createKeystore() throws Exception {
+        keystoreDirectory = Files.createTempDirectory("keystore");
+        keystore = Keystores.create(keystoreDirectory, PASSWORD, "sender", "recipient", "other");
+    }
+
+    @AfterClass
+    public static void deleteKeystore() throws IOException {
+        Keystores.delete(keystoreDirectory, "sender", "recipient", "other");
+    }
+
+    @Before
+    public void initialize() throws Exception {
+        pool = new ForkJoinPool(2);
+        cryptoProvider = new ThreadLocalCryptoProvider(
+                "AES/CBC/PKCS5Padding", "RSA/ECB/PKCS1Padding", "SHA-256", "SHA256withRSA", "AES", 128, new SecureRandom());
+
+        decrypter = new Decrypter(keystore, cryptoProvider, () -> new ChunkedFileDecrypt(SEGMENT_SIZE, pool));
+        decrypter.setMetrics(quietMetrics());
+        decrypter.initialize("recipient", PASSWORD, "sender-cert");
+
+        plain = new byte[5 * SEGMENT_SIZE + 17];
+        new Random(1).nextBytes(plain);
+
+        source = Files.write(folder.getRoot().toPath().resolve("plain"), plain);
+        encrypted = folder.getRoot().toPath().resolve("encrypted");
+    }
+
+    @After
+    public void cleanup() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testRangeOfSignedHeader() throws Exception {
+        encrypt(Collections.singletonList("recipient-cert"));
+
+        assertArrayEquals(Arrays.copyOfRange(plain, 1500, 2600), decrypter.decryptRange(encrypted, 1500, 1100));
+        assertArrayEquals(Arrays.copyOfRange(plain, plain.length - 10, plain.length), decrypter.decryptRange(encrypted, plain.length - 10, 100));
+
+        // only the segments read are authenticated, under the key the sender signed
+        flipPayloadByte(3 * STORED_SEGMENT_SIZE + 5);
+        assertArrayEquals(Arrays.copyOfRange(plain, 0, 2000), decrypter.decryptRange(encrypted, 0, 2000));
+
+        try {
+            decrypter.decryptRange(encrypted, 3 * SEGMENT_SIZE, 10);
+            fail("A corrupt segment should not decrypt");
+
+        } catch (CorruptContentException ignored) {
+        }
+    }
+
+    @Test
+    public void testForgedHeaderRejected() throws Exception {
+        encrypt(Collections.singletonList("recipient-cert"));
+
+        try (FileChannel channel = FileChannel.open(encrypted, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ContainerHeader header = ContainerHeader.read(channel);
+            byte[] iv = header.getIV().clone();
+            iv[0] ^= 1;
+
+            header.setIV(iv);
+            header.write(channel);
+        }
+
+        try {
+            decrypter.openSeekable(encrypted).close();
+            fail("A header the sender did not sign should not open");
+
+        } catch (SignatureException e) {
+            assertEquals("File's header signature is invalid", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSharedKeyValidatedWhole() throws Exception {
+        // the other recipient holds the content key as well, so the whole content is validated first
+        encrypt(Arrays.asList("recipient-cert", "other-cert"));
+
+        assertArrayEquals(Arrays.copyOfRange(plain, 1500, 2600), decrypter.decryptRange(encrypted, 1500, 1100));
+
+        flipPayloadByte(3 * STORED_SEGMENT_SIZE + 5);
+
+        try {
+            decrypter.decryptRange(encrypted, 0, 10);
+            fail("Content that fails validation should not open");
+
+        } catch (CorruptContentException ignored) {
+        }
+    }
+
+    @Test
+    public void testOtherRecipientDecrypts() throws Exception {
+        // the decrypter's key is a recipient key field, the key field is wrapped for the first recipient
+        encrypt(Arrays.asList("other-cert", "recipient-cert"));
+
+        Path decrypted = folder.getRoot().toPath().resolve("decrypted");
+        decrypter.decryptAndValidate(encrypted, decrypted);
+
+        assertArrayEquals(plain, Files.readAllBytes(decrypted));
+        assertArrayEquals(Arrays.copyOfRange(plain, 1500, 2600), decrypter.decryptRange(encrypted, 1500, 1100));
+    }
+
+    @Test
+    public void testTooManyRecipientsRejected() throws Exception {
+        // a 2048 bits key wraps to 256 bytes, so the keys of 100 other recipients do not fit in a header
+        List<String> recipients = new ArrayList<>(Collections.nCopies(101, "other-cert"));
+        recipients.set(0, "recipient-cert");
+
+        try {
+            encrypt(recipients);
+            fail("More recipients than a header holds the keys of should be rejected up front");
+
+        } catch (KeyStoreException e) {
+            assertEquals(String.format("the content key wrapped for 100 recipients takes %d bytes, at most %d bytes fit in a container header",
+                    100 * ContainerHeader.recipientKeyLength(256), ContainerHeader.MAX_RECIPIENT_KEYS_LENGTH), e.getMessage());
+        }
+
+        assertFalse(Files.exists(encrypted));
+    }
+
+    private void encrypt(List<String> recipients) throws Exception {
+        Encrypter encrypter = new Encrypter(keystore, cryptoProvider, () -> new ChunkedFileEncrypt(new SecureRandom(), SEGMENT_SIZE, pool));
+        encrypter.setMetrics(quietMetrics());
+        encrypter.initialize("sender", PASSWORD, recipients);
+        encrypter.encryptAndSign(source, encrypted);
+    }
+
+    private void flipPayloadByte(long payloadPosition) throws IOException {
+        try (FileChannel channel = FileChannel.open(encrypted, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = ContainerHeader.read(channel).getLength() + payloadPosition;
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+
+            Utils.readFully(channel, buffer, position);
+            buffer.put(0, (byte) (buffer.get(0) ^ 1));
+            buffer.rewind();
+            Utils.writeFully(channel, buffer, position);
+        }
+    }
+
+    private static Metrics quietMetrics() {
+        Metrics metrics = new Metrics();
+        metrics.setConsole(false);
+
+        return metrics;
+    }
+}
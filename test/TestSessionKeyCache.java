@@ -0,0 +1,94 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.BadPaddingException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TestSessionKeyCache {
+
+    private AtomicLong clock;
+    private AtomicInteger unwraps;
+    private SessionKeyCache.Unwrapper unwrapper;
+
+    @Before
+    public void initialize() {
+        clock = new AtomicLong();
+        unwraps = new AtomicInteger();
+
+        // stands in for the private key operation, recovering the blob reversed
+        unwrapper = wrapped -> {
+            unwraps.incrementAndGet();
+
+            byte[] secret = new byte[wrapped.length];
+            for (int i = 0; i < wrapped.length; i++) {
+                secret[i] = wrapped[wrapped.length - 1 - i];
+            }
+
+            return secret;
+        };
+    }
+
+    @Test
+    public void testRepeatedUnwrapsHit() throws GeneralSecurityException {
+        SessionKeyCache cache = new SessionKeyCache(2, 10, TimeUnit.NANOSECONDS, clock::get);
+
+        byte[] first = cache.unwrap(new byte[]{1, 2, 3}, unwrapper);
+        assertArrayEquals(new byte[]{3, 2, 1}, first);
+
+        // every hit hands out a copy, the cached secret is not wiped by its callers
+        first[0] = 0;
+        assertArrayEquals(new byte[]{3, 2, 1}, cache.unwrap(new byte[]{1, 2, 3}, unwrapper));
+        assertArrayEquals(new byte[]{3, 2, 1}, cache.unwrap(new byte[]{1, 2, 3}, unwrapper));
+
+        assertEquals(1, unwraps.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // a blob that does not unwrap is not cached
+        try {
+            cache.unwrap(new byte[]{9}, wrapped -> {
+                throw new BadPaddingException();
+            });
+            fail("A blob that does not unwrap should fail");
+
+        } catch (BadPaddingException e) {
+            assertEquals(1, cache.getSize());
+        }
+    }
+
+    @Test
+    public void testEvictedAndExpired() throws GeneralSecurityException {
+        SessionKeyCache cache = new SessionKeyCache(2, 10, TimeUnit.NANOSECONDS, clock::get);
+
+        cache.unwrap(new byte[]{1}, unwrapper);
+        cache.unwrap(new byte[]{2}, unwrapper);
+        cache.unwrap(new byte[]{1}, unwrapper);
+
+        // 2 is the least recently used
+        cache.unwrap(new byte[]{3}, unwrapper);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, unwraps.get());
+
+        cache.unwrap(new byte[]{1}, unwrapper);
+        assertEquals(3, unwraps.get());
+
+        cache.unwrap(new byte[]{2}, unwrapper);
+        assertEquals(4, unwraps.get());
+
+        // every entry expires, and is unwrapped again
+        clock.addAndGet(10);
+        cache.unwrap(new byte[]{1}, unwrapper);
+        assertEquals(5, unwraps.get());
+
+        cache.purgeExpired();
+        assertEquals(1, cache.getSize());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+}
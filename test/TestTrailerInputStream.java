@@ -0,0 +1,39 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestTrailerInputStream {
+
+    @Test
+    public void testSplitsTrailer() throws IOException {
+        byte[] data = new byte[200 * 1024];
+        new Random(7).nextBytes(data);
+
+        TrailerInputStream in = new TrailerInputStream(new ByteArrayInputStream(data), 300);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int bytesRead;
+
+        while ((bytesRead = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, bytesRead);
+        }
+
+        assertArrayEquals(Arrays.copyOf(data, data.length - 300), out.toByteArray());
+        assertArrayEquals(Arrays.copyOfRange(data, data.length - 300, data.length), in.getTrailer());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testShorterThanTrailer() throws IOException {
+        TrailerInputStream in = new TrailerInputStream(new ByteArrayInputStream(new byte[10]), 300);
+
+        assertEquals(-1, in.read());
+        in.getTrailer();
+    }
+}